@@ -312,6 +312,7 @@
 import org.h2.expression.function.CSVWriteFunction;
 import org.h2.expression.function.CardinalityExpression;
 import org.h2.expression.function.CastSpecification;
+import org.h2.expression.function.ChangeCheckpointFunction;
 import org.h2.expression.function.CoalesceFunction;
 import org.h2.expression.function.CompatibilitySequenceValueFunction;
 import org.h2.expression.function.CompressFunction;
@@ -352,6 +353,7 @@
 import org.h2.expression.function.XMLFunction;
 import org.h2.expression.function.table.ArrayTableFunction;
 import org.h2.expression.function.table.CSVReadFunction;
+import org.h2.expression.function.table.ChangesFunction;
 import org.h2.expression.function.table.JavaTableFunction;
 import org.h2.expression.function.table.LinkSchemaFunction;
 import org.h2.expression.function.table.TableFunction;
@@ -1698,6 +1700,8 @@ private void parseValuesForCommand(CommandWithValues command) {
     private TableFilter readTablePrimary() {
         Table table;
         String alias = null;
+        Expression pointInTime = null;
+        boolean pointInTimeVersion = false;
         label: if (readIf(OPEN_PAREN)) {
             if (isDerivedTable()) {
                 // Derived table
@@ -1770,6 +1774,15 @@ private TableFilter readTablePrimary() {
                 }
             } else {
                 table = readTableOrView(tableName, /*resolveMaterializedView*/true);
+                if (readIf(FOR, "SYSTEM_TIME")) {
+                    read(AS);
+                    read("OF");
+                    pointInTimeVersion = readIf("VERSION");
+                    if (!pointInTimeVersion) {
+                        read("TIMESTAMP");
+                    }
+                    pointInTime = readExpression().optimize(session);
+                }
             }
         }
         ArrayList<String> derivedColumnNames = null;
@@ -1785,7 +1798,11 @@ private TableFilter readTablePrimary() {
                 }
             }
         }
-        return buildTableFilter(table, alias, derivedColumnNames, indexHints);
+        TableFilter filter = buildTableFilter(table, alias, derivedColumnNames, indexHints);
+        if (pointInTime != null) {
+            filter.setPointInTime(pointInTime, pointInTimeVersion);
+        }
+        return filter;
     }
 
     private TableFilter readCorrelation(TableFilter tableFilter) {
@@ -1916,6 +1933,8 @@ private TableFunction readTableFunction(String name, Schema schema) {
             case "LINK_SCHEMA":
                 recompileAlways = true;
                 return readParameters(new LinkSchemaFunction());
+            case "CHANGES":
+                return readParameters(new ChangesFunction());
             }
         }
         FunctionAlias functionAlias = getFunctionAliasWithinPath(name, schema);
@@ -4287,6 +4306,8 @@ private Expression readBuiltinFunctionIf(String upperName) {
             return new SessionControlFunction(readIfSingleArgument(), SessionControlFunction.ABORT_SESSION);
         case "CANCEL_SESSION":
             return new SessionControlFunction(readIfSingleArgument(), SessionControlFunction.CANCEL_SESSION);
+        case "CHANGES_CHECKPOINT":
+            return new ChangeCheckpointFunction(readExpression(), readNextArgument(), readLastArgument());
         case "AUTOCOMMIT":
             read(CLOSE_PAREN);
             return new SysInfoFunction(SysInfoFunction.AUTOCOMMIT);
@@ -7402,6 +7423,9 @@ private boolean parseBasicSequenceOption(SequenceOptions options) {
                 options.setCycle(Sequence.Cycle.NO_CYCLE);
             } else if (readIf("CACHE")) {
                 options.setCacheSize(ValueExpression.get(ValueBigint.get(1)));
+            } else if (readIf("SESSION")) {
+                read("CACHE");
+                options.setSessionCacheSize(ValueExpression.get(ValueBigint.get(1)));
             } else {
                 throw getSyntaxError();
             }
@@ -7409,6 +7433,9 @@ private boolean parseBasicSequenceOption(SequenceOptions options) {
             options.setCycle(Sequence.Cycle.EXHAUSTED);
         } else if (readIf("CACHE")) {
             options.setCacheSize(readExpression());
+        } else if (readIf("SESSION")) {
+            read("CACHE");
+            options.setSessionCacheSize(readExpression());
             // Various compatibility options
         } else if (readIfCompat("NOMINVALUE")) {
             options.setMinValue(ValueExpression.NULL);
@@ -7594,6 +7621,18 @@ private Prepared parseSet() {
             Set command = new Set(session, SetTypes.JAVA_OBJECT_SERIALIZER);
             command.setString(readString());
             return command;
+        } else if (readIf("SYNCHRONOUS_COMMIT")) {
+            readIfEqualOrTo();
+            Set command = new Set(session, SetTypes.SYNCHRONOUS_COMMIT);
+            command.setInt(readBooleanSetting() ? 1 : 0);
+            return command;
+        } else if (readIf("LOCAL")) {
+            read("SYNCHRONOUS_COMMIT");
+            readIfEqualOrTo();
+            Set command = new Set(session, SetTypes.SYNCHRONOUS_COMMIT);
+            command.setString("LOCAL");
+            command.setInt(readBooleanSetting() ? 1 : 0);
+            return command;
         } else if (readIf("IGNORE_CATALOGS")) {
             readIfEqualOrTo();
             Set command = new Set(session, SetTypes.IGNORE_CATALOGS);
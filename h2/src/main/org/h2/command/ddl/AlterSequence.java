@@ -89,7 +89,8 @@ long update(Schema schema) {
                 options.getRestartValue(session, startValue != null ? startValue : sequence.getStartValue()),
                 startValue,
                 options.getMinValue(sequence, session), options.getMaxValue(sequence, session),
-                options.getIncrement(session), options.getCycle(), options.getCacheSize(session));
+                options.getIncrement(session), options.getCycle(), options.getCacheSize(session),
+                options.getSessionCacheSize(session));
         sequence.flush(session);
         if (column != null && always != null) {
             column.setSequence(sequence, always);
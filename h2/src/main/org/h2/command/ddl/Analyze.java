@@ -13,6 +13,8 @@
 import org.h2.engine.Right;
 import org.h2.engine.SessionLocal;
 import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.mvstore.db.MVPrimaryIndex;
 import org.h2.result.Row;
 import org.h2.schema.Schema;
 import org.h2.table.Column;
@@ -187,7 +189,13 @@ public static void analyzeTable(SessionLocal session, Table table, int sample, b
         if (columnCount == 0) {
             return;
         }
-        Cursor cursor = table.getScanIndex(session).find(session, null, null, false);
+        Index scanIndex = table.getScanIndex(session);
+        Cursor cursor = sample > 0 && scanIndex instanceof MVPrimaryIndex
+                // the same positions for the same table, so that results
+                // are reproducible
+                ? ((MVPrimaryIndex) scanIndex).sample(session, sample, table.getId())
+                : scanIndex.find(session, null, null, false);
+        int[] selectivities = new int[columnCount];
         if (cursor.next()) {
             SelectivityData[] array = new SelectivityData[columnCount];
             for (int i = 0; i < columnCount; i++) {
@@ -209,15 +217,15 @@ public static void analyzeTable(SessionLocal session, Table table, int sample, b
             } while ((sample <= 0 || rowNumber < sample) && cursor.next());
             for (int i = 0; i < columnCount; i++) {
                 SelectivityData selectivity = array[i];
-                if (selectivity != null) {
-                    columns[i].setSelectivity(selectivity.getSelectivity(rowNumber));
-                }
-            }
-        } else {
-            for (int i = 0; i < columnCount; i++) {
-                columns[i].setSelectivity(0);
+                selectivities[i] = selectivity != null ? selectivity.getSelectivity(rowNumber)
+                        : columns[i].getSelectivity();
             }
         }
+        // install all values at once, and invalidate the cached plans
+        for (int i = 0; i < columnCount; i++) {
+            columns[i].setSelectivity(selectivities[i]);
+        }
+        table.setModified();
         session.getDatabase().updateMeta(session, table);
     }
 
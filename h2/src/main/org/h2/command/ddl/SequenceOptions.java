@@ -37,6 +37,8 @@ public class SequenceOptions {
 
     private Expression cacheSize;
 
+    private Expression sessionCacheSize;
+
     private long[] bounds;
 
     private final Sequence oldSequence;
@@ -75,8 +77,11 @@ public SequenceOptions(Sequence oldSequence, TypeInfo dataType) {
 
     public TypeInfo getDataType() {
         if (oldSequence != null) {
-            synchronized (oldSequence) {
+            oldSequence.lock();
+            try {
                 copyFromOldSequence();
+            } finally {
+                oldSequence.unlock();
             }
         }
         return dataType;
@@ -103,6 +108,7 @@ private void copyFromOldSequence() {
         increment = ValueExpression.get(ValueBigint.get(oldSequence.getIncrement()));
         cycle = oldSequence.getCycle();
         cacheSize = ValueExpression.get(ValueBigint.get(oldSequence.getCacheSize()));
+        sessionCacheSize = ValueExpression.get(ValueBigint.get(oldSequence.getSessionCacheSize()));
     }
 
     public void setDataType(TypeInfo dataType) {
@@ -356,6 +362,25 @@ public void setCacheSize(Expression cacheSize) {
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * Gets session cache size.
+     *
+     * @param session The session to calculate the value.
+     * @return session cache size or {@code null} if value is not defined.
+     */
+    public Long getSessionCacheSize(SessionLocal session) {
+        return getLong(session, sessionCacheSize);
+    }
+
+    /**
+     * Sets session cache size.
+     *
+     * @param sessionCacheSize session cache size.
+     */
+    public void setSessionCacheSize(Expression sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
     private long getCurrentStart(Sequence sequence, SessionLocal session) {
         return start != null ? getStartValue(session) : sequence.getBaseValue();
     }
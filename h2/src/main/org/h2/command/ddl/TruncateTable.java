@@ -48,7 +48,7 @@ public long update() {
             for (Column column : table.getColumns()) {
                 Sequence sequence = column.getSequence();
                 if (sequence != null) {
-                    sequence.modify(sequence.getStartValue(), null, null, null, null, null, null);
+                    sequence.modify(sequence.getStartValue(), null, null, null, null, null, null, null);
                     getDatabase().updateMeta(session, sequence);
                 }
             }
@@ -30,6 +30,7 @@
 import org.h2.result.ResultInterface;
 import org.h2.result.ResultTarget;
 import org.h2.result.Row;
+import org.h2.schema.Sequence;
 import org.h2.table.Column;
 import org.h2.table.DataChangeDeltaTable;
 import org.h2.table.DataChangeDeltaTable.ResultOption;
@@ -147,48 +148,62 @@ private long insertRows() {
         int listSize = valuesExpressionList.size();
         if (listSize > 0) {
             int columnLen = columns.length;
-            for (int x = 0; x < listSize; x++) {
-                Row newRow = table.getTemplateRow();
-                Expression[] expr = valuesExpressionList.get(x);
-                setCurrentRowNumber(x + 1);
-                for (int i = 0; i < columnLen; i++) {
-                    Column c = columns[i];
-                    int index = c.getColumnId();
-                    Expression e = expr[i];
-                    if (e != ValueExpression.DEFAULT) {
-                        try {
-                            newRow.setValue(index, e.getValue(session));
-                        } catch (DbException ex) {
-                            throw setRow(ex, x, getSimpleSQL(expr));
+            Sequence sequence = null;
+            if (listSize > 1) {
+                // reserve the identity values for all rows with one call
+                Column identityColumn = table.getIdentityColumn();
+                if (identityColumn != null && (sequence = identityColumn.getSequence()) != null) {
+                    session.reserveSequenceValues(sequence, listSize);
+                }
+            }
+            try {
+                for (int x = 0; x < listSize; x++) {
+                    Row newRow = table.getTemplateRow();
+                    Expression[] expr = valuesExpressionList.get(x);
+                    setCurrentRowNumber(x + 1);
+                    for (int i = 0; i < columnLen; i++) {
+                        Column c = columns[i];
+                        int index = c.getColumnId();
+                        Expression e = expr[i];
+                        if (e != ValueExpression.DEFAULT) {
+                            try {
+                                newRow.setValue(index, e.getValue(session));
+                            } catch (DbException ex) {
+                                throw setRow(ex, x, getSimpleSQL(expr));
+                            }
                         }
                     }
-                }
-                rowNumber++;
-                table.convertInsertRow(session, newRow, overridingSystem);
-                if (deltaChangeCollectionMode == ResultOption.NEW) {
-                    deltaChangeCollector.addRow(newRow.getValueList().clone());
-                }
-                if (!table.fireBeforeRow(session, null, newRow)) {
-                    table.lock(session, Table.WRITE_LOCK);
-                    try {
-                        table.addRow(session, newRow);
-                    } catch (DbException de) {
-                        if (handleOnDuplicate(de, null)) {
-                            // MySQL returns 2 for updated row
-                            // TODO: detect no-op change
-                            rowNumber++;
-                        } else {
-                            // INSERT IGNORE case
-                            rowNumber--;
+                    rowNumber++;
+                    table.convertInsertRow(session, newRow, overridingSystem);
+                    if (deltaChangeCollectionMode == ResultOption.NEW) {
+                        deltaChangeCollector.addRow(newRow.getValueList().clone());
+                    }
+                    if (!table.fireBeforeRow(session, null, newRow)) {
+                        table.lock(session, Table.WRITE_LOCK);
+                        try {
+                            table.addRow(session, newRow);
+                        } catch (DbException de) {
+                            if (handleOnDuplicate(de, null)) {
+                                // MySQL returns 2 for updated row
+                                // TODO: detect no-op change
+                                rowNumber++;
+                            } else {
+                                // INSERT IGNORE case
+                                rowNumber--;
+                            }
+                            continue;
                         }
-                        continue;
+                        DataChangeDeltaTable.collectInsertedFinalRow(session, table, deltaChangeCollector,
+                                deltaChangeCollectionMode, newRow);
+                        table.fireAfterRow(session, null, newRow, false);
+                    } else {
+                        DataChangeDeltaTable.collectInsertedFinalRow(session, table, deltaChangeCollector,
+                                deltaChangeCollectionMode, newRow);
                     }
-                    DataChangeDeltaTable.collectInsertedFinalRow(session, table, deltaChangeCollector,
-                            deltaChangeCollectionMode, newRow);
-                    table.fireAfterRow(session, null, newRow, false);
-                } else {
-                    DataChangeDeltaTable.collectInsertedFinalRow(session, table, deltaChangeCollector,
-                            deltaChangeCollectionMode, newRow);
+                }
+            } finally {
+                if (sequence != null) {
+                    session.releaseSequenceValues(sequence);
                 }
             }
         } else {
@@ -75,6 +75,7 @@ public boolean isTransactional() {
         case SetTypes.VARIABLE_BINARY:
         case SetTypes.TRUNCATE_LARGE_LENGTH:
         case SetTypes.WRITE_DELAY:
+        case SetTypes.SYNCHRONOUS_COMMIT:
             return true;
         default:
         }
@@ -92,9 +93,12 @@ public long update() {
             if (value < 0 || value > 2) {
                 throw DbException.getInvalidValueException("ALLOW_LITERALS", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setAllowLiterals(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -104,9 +108,12 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("CACHE_SIZE", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setCacheSize(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -128,9 +135,12 @@ public long update() {
                 // (if any) is not committed
                 SessionLocal sysSession = database.getSystemSession();
                 synchronized (sysSession) {
-                    synchronized (database) {
+                    database.lock();
+                    try {
                         addOrUpdateSetting(sysSession, name, value, 0);
                         sysSession.commit(true);
+                    } finally {
+                        database.unlock();
                     }
                 }
             }
@@ -156,7 +166,8 @@ public long update() {
                 }
                 compareMode = CompareMode.getInstance(stringValue, strength);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 CompareMode old = database.getCompareMode();
                 if (old.equals(compareMode)) {
                     break;
@@ -167,6 +178,8 @@ public long update() {
                 }
                 addOrUpdateSetting(name, buff.toString(), 0);
                 database.setCompareMode(compareMode);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -176,8 +189,11 @@ public long update() {
                 // just ignore the command if not starting
                 // this avoids problems when running recovery scripts
                 int value = getIntValue();
-                synchronized (database) {
+                database.lock();
+                try {
                     addOrUpdateSetting(name, null, value);
+                } finally {
+                    database.unlock();
                 }
             }
             break;
@@ -197,9 +213,12 @@ public long update() {
             } else if (value < 0) {
                 throw DbException.getInvalidValueException("DB_CLOSE_DELAY", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setCloseDelay(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -209,17 +228,23 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("DEFAULT_LOCK_TIMEOUT", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
         case SetTypes.DEFAULT_TABLE_TYPE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setDefaultTableType(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -249,7 +274,8 @@ public long update() {
         }
         case SetTypes.JAVA_OBJECT_SERIALIZER: {
             session.getUser().checkAdmin();
-            synchronized (database) {
+            database.lock();
+            try {
                 Table table = database.getFirstUserTable();
                 if (table != null) {
                     throw DbException.get(ErrorCode.JAVA_OBJECT_SERIALIZER_CHANGE_WITH_DATA_TABLE,
@@ -257,24 +283,32 @@ public long update() {
                 }
                 database.setJavaObjectSerializerName(stringValue);
                 addOrUpdateSetting(name, stringValue, 0);
+            } finally {
+                database.unlock();
             }
             break;
         }
         case SetTypes.IGNORECASE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setIgnoreCase(value == 1);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
         case SetTypes.LOCK_MODE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setLockMode(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -292,9 +326,12 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("MAX_LENGTH_INPLACE_LOB", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setMaxLengthInplaceLob(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -312,9 +349,12 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("MAX_MEMORY_ROWS", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setMaxMemoryRows(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -324,8 +364,11 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("MAX_MEMORY_UNDO", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -435,9 +478,12 @@ public long update() {
                 throw DbException.getInvalidValueException("TRACE_MAX_FILE_SIZE", value);
             }
             int size = value * (1024 * 1024);
-            synchronized (database) {
+            database.lock();
+            try {
                 database.getTraceSystem().setMaxFileSize(size);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -460,9 +506,12 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("WRITE_DELAY", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setWriteDelay(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -472,9 +521,12 @@ public long update() {
             if (value < 0) {
                 throw DbException.getInvalidValueException("RETENTION_TIME", value);
             }
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setRetentionTime(value);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -487,6 +539,15 @@ public long update() {
             session.setLazyQueryExecution(value == 1);
             break;
         }
+        case SetTypes.SYNCHRONOUS_COMMIT: {
+            boolean value = expression.optimize(session).getBooleanValue(session);
+            if (stringValue != null) {
+                session.setTransactionSynchronousCommit(value);
+            } else {
+                session.setSynchronousCommit(value);
+            }
+            break;
+        }
         case SetTypes.BUILTIN_ALIAS_OVERRIDE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
@@ -501,13 +562,16 @@ public long update() {
             session.getUser().checkAdmin();
             boolean value = expression.optimize(session).getBooleanValue(session);
             try {
-                synchronized (database) {
+                database.lock();
+                try {
                     if (value) {
                         database.setAuthenticator(AuthenticatorFactory.createAuthenticator());
                     } else {
                         database.setAuthenticator(null);
                     }
                     addOrUpdateSetting(name, value ? "TRUE" : "FALSE", 0);
+                } finally {
+                    database.unlock();
                 }
             } catch (Exception e) {
                 // Errors during start are ignored to allow to open the database
@@ -523,9 +587,12 @@ public long update() {
         case SetTypes.IGNORE_CATALOGS: {
             session.getUser().checkAdmin();
             int value = getIntValue();
-            synchronized (database) {
+            database.lock();
+            try {
                 database.setIgnoreCatalogs(value == 1);
                 addOrUpdateSetting(name, null, value);
+            } finally {
+                database.unlock();
             }
             break;
         }
@@ -600,7 +667,7 @@ private void addOrUpdateSetting(String name, String s, int v) {
 
     private void addOrUpdateSetting(SessionLocal session, String name, String s, int v) {
         Database database = session.getDatabase();
-        assert Thread.holdsLock(database);
+        assert database.isLockedByCurrentThread();
         if (database.isReadOnly()) {
             return;
         }
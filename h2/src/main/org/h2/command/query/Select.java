@@ -1215,7 +1215,7 @@ public void prepareExpressions() {
             condition = condition.optimizeCondition(session);
         }
         if (isGroupQuery && groupIndex == null && havingIndex < 0 && qualifyIndex < 0 && condition == null
-                && filters.size() == 1) {
+                && filters.size() == 1 && filters.get(0).getPointInTime() == null) {
             isQuickAggregateQuery = isEverything(ExpressionVisitor.getOptimizableVisitor(filters.get(0).getTable()));
         }
         expressionArray = expressions.toArray(new Expression[0]);
@@ -1238,8 +1238,10 @@ public void preparePlan() {
             }
         }
         cost = preparePlan(session.isParsingCreateView());
+        // old versions can only be scanned
+        boolean history = topTableFilter.getPointInTime() != null;
         if (distinct && getDatabase().getSettings().optimizeDistinct && !isGroupQuery && filters.size() == 1
-                && expressions.size() == 1 && condition == null) {
+                && expressions.size() == 1 && condition == null && !history) {
             Expression expr = expressions.get(0);
             expr = expr.getNonAliasExpression();
             if (expr instanceof ExpressionColumn) {
@@ -1256,7 +1258,7 @@ public void preparePlan() {
                 }
             }
         }
-        if (sort != null && !isQuickAggregateQuery && !isGroupQuery) {
+        if (sort != null && !isQuickAggregateQuery && !isGroupQuery && !history) {
             List<IndexSort> sortIndexes = getIndexSorts();
             Index current = topTableFilter.getIndex();
             if (sortIndexes != null && current != null) {
@@ -1293,7 +1295,7 @@ public void preparePlan() {
                 indexSortedColumns = 0;
             }
         }
-        if (!isQuickAggregateQuery && isGroupQuery) {
+        if (!isQuickAggregateQuery && isGroupQuery && !history) {
             Index index = getGroupSortedIndex();
             if (index != null) {
                 Index current = topTableFilter.getIndex();
@@ -1568,6 +1570,13 @@ public void setForUpdate(ForUpdate b) {
         if (b != null && (isAnyDistinct() || isGroupQuery)) {
             throw DbException.get(ErrorCode.FOR_UPDATE_IS_NOT_ALLOWED_IN_DISTINCT_OR_GROUPED_SELECT);
         }
+        if (b != null) {
+            for (TableFilter f : filters) {
+                if (f.getPointInTime() != null) {
+                    throw DbException.getUnsupportedException("FOR UPDATE with FOR SYSTEM_TIME AS OF");
+                }
+            }
+        }
         this.forUpdate = b;
     }
 
@@ -1704,7 +1713,7 @@ public boolean isEverything(ExpressionVisitor visitor) {
                 return false;
             }
             for (TableFilter f : filters) {
-                if (!f.getTable().isDeterministic()) {
+                if (!f.getTable().isDeterministic() || f.getPointInTime() != null) {
                     return false;
                 }
             }
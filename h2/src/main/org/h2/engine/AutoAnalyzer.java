@@ -0,0 +1,141 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.h2.command.ddl.Analyze;
+import org.h2.message.Trace;
+import org.h2.table.Table;
+import org.h2.util.Utils;
+
+/**
+ * Runs the automatic ANALYZE of tables in a background thread, so that the
+ * sessions which changed the tables don't wait for it. The thread has the
+ * lowest priority, and it waits for the delay set with ANALYZE_AUTO_DELAY
+ * between two tables.
+ */
+final class AutoAnalyzer {
+
+    private final Database database;
+    private final Trace trace;
+
+    /**
+     * The session used to analyze tables.
+     */
+    final SessionLocal session;
+
+    private final long delayNanos;
+    private final int sampleRows;
+
+    /**
+     * The tables which are queued, so that a table is not queued twice.
+     */
+    private final Set<Table> pending = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition closedCondition = lock.newCondition();
+    private volatile boolean closed;
+
+    /**
+     * The earliest time of the next analysis, accessed only by the worker
+     * thread.
+     */
+    private long nextRun;
+
+    AutoAnalyzer(Database database, SessionLocal session) {
+        this.database = database;
+        this.session = session;
+        trace = database.getTrace(Trace.DATABASE);
+        DbSettings settings = database.getSettings();
+        delayNanos = settings.analyzeAutoDelay * 1_000_000L;
+        sampleRows = settings.analyzeSample / 10;
+        nextRun = System.nanoTime();
+        executor = Utils.createSingleThreadExecutor("H2-analyze");
+    }
+
+    /**
+     * Queue a table to be analyzed, unless it is queued already.
+     *
+     * @param table the table
+     */
+    void schedule(Table table) {
+        if (!closed && pending.add(table)) {
+            try {
+                executor.execute(() -> analyze(table));
+            } catch (RejectedExecutionException e) {
+                pending.remove(table);
+            }
+        }
+    }
+
+    private void analyze(Table table) {
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        if (!awaitNextRun()) {
+            return;
+        }
+        // changes made from now on need another analysis
+        pending.remove(table);
+        session.lock();
+        try {
+            Analyze.analyzeTable(session, table, sampleRows, false);
+            // analyze can lock the meta
+            database.unlockMeta(session);
+            session.commit(true);
+        } catch (Throwable e) {
+            trace.error(e, "analyze {0}", table.getName());
+            try {
+                session.rollback();
+                database.unlockMeta(session);
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        } finally {
+            session.unlock();
+            nextRun = System.nanoTime() + delayNanos;
+        }
+    }
+
+    private boolean awaitNextRun() {
+        lock.lock();
+        try {
+            long wait;
+            while (!closed && (wait = nextRun - System.nanoTime()) > 0L) {
+                closedCondition.awaitNanos(wait);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background thread, waiting for a running analysis to finish,
+     * and close the session. Queued tables are not analyzed.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            closedCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Utils.shutdownExecutor(executor);
+        pending.clear();
+        session.close();
+    }
+
+}
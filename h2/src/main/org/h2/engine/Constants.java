@@ -433,6 +433,11 @@ public class Constants {
      */
     public static final String SUFFIX_MV_STORE_TEMP_FILE = ".tempFile";
 
+    /**
+     * The file name suffix of a redo log of a MVStore file.
+     */
+    public static final String SUFFIX_MV_STORE_REDO_FILE = ".redoLog";
+
     /**
      * The file name suffix of temporary files.
      */
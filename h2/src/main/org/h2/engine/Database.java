@@ -16,9 +16,12 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 import org.h2.api.DatabaseEventListener;
@@ -145,6 +148,18 @@ public final class Database implements DataHandler, CastDataProvider {
     private final Set<SessionLocal> userSessions = Collections.synchronizedSet(new HashSet<>());
     private final AtomicReference<SessionLocal> exclusiveSession = new AtomicReference<>();
     private final BitSet objectIds = new BitSet();
+
+    /**
+     * The lock of this database. It is used instead of the monitor of this
+     * object, so that threads, which wait for it or perform I/O while holding
+     * it, don't pin the carrier threads of virtual threads.
+     */
+    private final ReentrantLock databaseLock = new ReentrantLock();
+
+    /**
+     * The condition used to wait for other sessions to close.
+     */
+    private final Condition sessionsClosed = databaseLock.newCondition();
     private final Object lobSyncObject = new Object();
 
     private final Schema mainSchema;
@@ -181,6 +196,7 @@ public final class Database implements DataHandler, CastDataProvider {
     private int powerOffCount = initialPowerOffCount;
     private volatile int closeDelay;
     private DelayedDatabaseCloser delayedCloser;
+    private volatile AutoAnalyzer autoAnalyzer;
     private volatile boolean closing;
     private boolean ignoreCase;
     private boolean deleteFilesOnDisconnect;
@@ -734,7 +750,7 @@ private void recompileInvalidViews() {
     }
 
     private void addMeta(SessionLocal session, DbObject obj) {
-        assert Thread.holdsLock(this);
+        assert isLockedByCurrentThread();
         int id = obj.getId();
         if (id > 0 && !obj.isTemporary()) {
             if (!isReadOnly()) {
@@ -772,6 +788,42 @@ public void verifyMetaLocked(SessionLocal session) {
         }
     }
 
+    /**
+     * Locks this database with a reentrant lock. It is used to protect the
+     * list of sessions and changes of database objects.
+     *
+     * <pre>
+     * database.lock();
+     * try {
+     *     ...
+     * } finally {
+     *     database.unlock();
+     * }
+     * </pre>
+     */
+    public void lock() {
+        databaseLock.lock();
+    }
+
+    /**
+     * Unlocks this database.
+     *
+     * @see #lock()
+     */
+    public void unlock() {
+        databaseLock.unlock();
+    }
+
+    /**
+     * Returns whether this database is locked by the current thread.
+     *
+     * @return {@code true} if it locked by the current thread, {@code false} if
+     *         it is locked by another thread or is not locked at all
+     */
+    public boolean isLockedByCurrentThread() {
+        return databaseLock.isHeldByCurrentThread();
+    }
+
     /**
      * Lock the metadata table for updates.
      *
@@ -779,8 +831,8 @@ public void verifyMetaLocked(SessionLocal session) {
      * @return whether it was already locked before by this session
      */
     public boolean lockMeta(SessionLocal session) {
-        // this method can not be synchronized on the database object,
-        // as unlocking is also synchronized on the database object -
+        // this method can not lock the database,
+        // as unlocking also locks the database -
         // so if locking starts just before unlocking, locking could
         // never be successful
         if (meta == null) {
@@ -923,9 +975,12 @@ public void addSchemaObject(SessionLocal session, SchemaObject obj) {
             checkWritingAllowed();
         }
         lockMeta(session);
-        synchronized (this) {
+        lock();
+        try {
             obj.getSchema().add(obj);
             addMeta(session, obj);
+        } finally {
+            unlock();
         }
     }
 
@@ -935,25 +990,30 @@ public void addSchemaObject(SessionLocal session, SchemaObject obj) {
      * @param session the session
      * @param obj the object to add
      */
-    public synchronized void addDatabaseObject(SessionLocal session, DbObject obj) {
-        int id = obj.getId();
-        if (id > 0 && !starting) {
-            checkWritingAllowed();
-        }
-        ConcurrentHashMap<String, DbObject> map = getMap(obj.getType());
-        if (obj.getType() == DbObject.USER) {
-            User user = (User) obj;
-            if (user.isAdmin() && systemUser.getName().equals(SYSTEM_USER_NAME)) {
-                systemUser.rename(user.getName());
+    public void addDatabaseObject(SessionLocal session, DbObject obj) {
+        lock();
+        try {
+            int id = obj.getId();
+            if (id > 0 && !starting) {
+                checkWritingAllowed();
+            }
+            ConcurrentHashMap<String, DbObject> map = getMap(obj.getType());
+            if (obj.getType() == DbObject.USER) {
+                User user = (User) obj;
+                if (user.isAdmin() && systemUser.getName().equals(SYSTEM_USER_NAME)) {
+                    systemUser.rename(user.getName());
+                }
             }
+            String name = obj.getName();
+            if (SysProperties.CHECK && map.get(name) != null) {
+                throw DbException.getInternalError("object already exists");
+            }
+            lockMeta(session);
+            addMeta(session, obj);
+            map.put(name, obj);
+        } finally {
+            unlock();
         }
-        String name = obj.getName();
-        if (SysProperties.CHECK && map.get(name) != null) {
-            throw DbException.getInternalError("object already exists");
-        }
-        lockMeta(session);
-        addMeta(session, obj);
-        map.put(name, obj);
     }
 
     /**
@@ -1050,25 +1110,30 @@ public RightOwner findUserOrRole(String name) {
      * @return the session, or null if the database is currently closing
      * @throws DbException if the database is in exclusive mode
      */
-    synchronized SessionLocal createSession(User user, NetworkConnectionInfo networkConnectionInfo) {
-        if (closing) {
-            return null;
-        }
-        if (exclusiveSession.get() != null) {
-            throw DbException.get(ErrorCode.DATABASE_IS_IN_EXCLUSIVE_MODE);
-        }
-        SessionLocal session = createSession(user);
-        session.setNetworkConnectionInfo(networkConnectionInfo);
-        userSessions.add(session);
-        trace.info("connecting session #{0} to {1}", session.getId(), databaseName);
-        if (delayedCloser != null) {
-            delayedCloser.reset();
-            delayedCloser = null;
+    SessionLocal createSession(User user, NetworkConnectionInfo networkConnectionInfo) {
+        lock();
+        try {
+            if (closing) {
+                return null;
+            }
+            if (exclusiveSession.get() != null) {
+                throw DbException.get(ErrorCode.DATABASE_IS_IN_EXCLUSIVE_MODE);
+            }
+            SessionLocal session = createSession(user);
+            session.setNetworkConnectionInfo(networkConnectionInfo);
+            userSessions.add(session);
+            trace.info("connecting session #{0} to {1}", session.getId(), databaseName);
+            if (delayedCloser != null) {
+                delayedCloser.reset();
+                delayedCloser = null;
+            }
+            return session;
+        } finally {
+            unlock();
         }
-        return session;
     }
 
-    private SessionLocal createSession(User user) {
+    SessionLocal createSession(User user) {
         int id = ++nextSessionId;
         return new SessionLocal(this, user, id);
     }
@@ -1078,82 +1143,119 @@ private SessionLocal createSession(User user) {
      *
      * @param session the session
      */
-    public synchronized void removeSession(SessionLocal session) {
-        if (session != null) {
-            exclusiveSession.compareAndSet(session, null);
-            if (userSessions.remove(session)) {
-                trace.info("disconnecting session #{0}", session.getId());
-            }
-        }
-        if (isUserSession(session)) {
-            if (userSessions.isEmpty()) {
-                if (closeDelay == 0) {
-                    close();
-                } else if (closeDelay < 0) {
-                    return;
-                } else {
-                    delayedCloser = new DelayedDatabaseCloser(this, closeDelay * 1000);
+    public void removeSession(SessionLocal session) {
+        lock();
+        try {
+            if (session != null) {
+                exclusiveSession.compareAndSet(session, null);
+                if (userSessions.remove(session)) {
+                    trace.info("disconnecting session #{0}", session.getId());
+                    sessionsClosed.signalAll();
                 }
             }
-            if (session != null) {
-                trace.info("disconnected session #{0}", session.getId());
+            if (isUserSession(session)) {
+                if (userSessions.isEmpty()) {
+                    if (closeDelay == 0) {
+                        close();
+                    } else if (closeDelay < 0) {
+                        return;
+                    } else {
+                        delayedCloser = new DelayedDatabaseCloser(this, closeDelay * 1000);
+                    }
+                }
+                if (session != null) {
+                    trace.info("disconnected session #{0}", session.getId());
+                }
             }
+        } finally {
+            unlock();
         }
     }
 
     boolean isUserSession(SessionLocal session) {
-        return session != systemSession && session != lobSession;
+        AutoAnalyzer analyzer = autoAnalyzer;
+        return session != systemSession && session != lobSession
+                && (analyzer == null || session != analyzer.session);
     }
 
-    private synchronized void closeAllSessionsExcept(SessionLocal except) {
-        SessionLocal[] all = userSessions.toArray(EMPTY_SESSION_ARRAY);
-        boolean done = true;
-        for (SessionLocal s : all) {
-            if (s != except) {
-                // indicate that session need to be closed ASAP
-                s.suspend();
-                done = false;
+    /**
+     * Analyze a table in the background thread, unless it is queued
+     * already.
+     *
+     * @param table the table
+     */
+    public void analyzeInBackground(Table table) {
+        AutoAnalyzer analyzer = autoAnalyzer;
+        if (analyzer == null) {
+            lock();
+            try {
+                if (closing) {
+                    return;
+                }
+                analyzer = autoAnalyzer;
+                if (analyzer == null) {
+                    autoAnalyzer = analyzer = new AutoAnalyzer(this, createSession(systemUser));
+                }
+            } finally {
+                unlock();
             }
         }
-        if (done) {
-            return;
-        }
-        int lockTimeout = getLockTimeout();
-        // 'sleep' should be strictly greater than zero, otherwise real time is
-        // not taken into consideration
-        // and the thread simply waits until notified
-        long sleepMillis = Math.max(lockTimeout / 10, 1);
-        // LOCK_TIMEOUT * 2
-        long timeoutNanos = lockTimeout * 2_000_000L;
-        long start = System.nanoTime();
-        do {
-            done = true;
+        analyzer.schedule(table);
+    }
+
+    private void closeAllSessionsExcept(SessionLocal except) {
+        lock();
+        try {
+            SessionLocal[] all = userSessions.toArray(EMPTY_SESSION_ARRAY);
+            boolean done = true;
             for (SessionLocal s : all) {
-                if (s != except && !s.isClosed()) {
+                if (s != except) {
+                    // indicate that session need to be closed ASAP
+                    s.suspend();
                     done = false;
-                    break;
                 }
             }
             if (done) {
                 return;
             }
-            try {
-                // although nobody going to notify us
-                // it is vital to give up lock on a database
-                wait(sleepMillis);
-            } catch (InterruptedException e1) {
-                // ignore
-            }
-        } while (System.nanoTime() - start <= timeoutNanos);
-        for (SessionLocal s : all) {
-            if (s != except && !s.isClosed()) {
+            int lockTimeout = getLockTimeout();
+            // 'sleep' should be strictly greater than zero, otherwise real time is
+            // not taken into consideration
+            // and the thread simply waits until notified
+            long sleepMillis = Math.max(lockTimeout / 10, 1);
+            // LOCK_TIMEOUT * 2
+            long timeoutNanos = lockTimeout * 2_000_000L;
+            long start = System.nanoTime();
+            do {
+                done = true;
+                for (SessionLocal s : all) {
+                    if (s != except && !s.isClosed()) {
+                        done = false;
+                        break;
+                    }
+                }
+                if (done) {
+                    return;
+                }
                 try {
-                    // this will roll back outstanding transaction
-                    s.close();
-                } catch (Throwable e) {
-                    trace.error(e, "disconnecting session #{0}", s.getId());
+                    // it is vital to give up lock on a database
+                    sessionsClosed.await(sleepMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e1) {
+                    // ignore
+                }
+            } while (System.nanoTime() - start <= timeoutNanos);
+            for (SessionLocal s : all) {
+                if (s != except && !s.isClosed()) {
+                    try {
+                        // this will roll back outstanding transaction
+                        s.close();
+                    } catch (Throwable e) {
+                        trace.error(e, "disconnecting session #{0}", s.getId());
+                    }
                 }
             }
+        } finally {
+            unlock();
         }
     }
 
@@ -1198,7 +1300,8 @@ private void close(boolean fromShutdownHook) {
     }
 
     private void closeImpl(boolean fromShutdownHook) {
-        synchronized (this) {
+        lock();
+        try {
             if (closing || !fromShutdownHook && !userSessions.isEmpty()) {
                 return;
             }
@@ -1224,9 +1327,16 @@ private void closeImpl(boolean fromShutdownHook) {
                     closeAllSessionsExcept(null);
                 }
             }
+        } finally {
+            unlock();
         }
         try {
             try {
+                AutoAnalyzer analyzer = autoAnalyzer;
+                if (analyzer != null) {
+                    analyzer.close();
+                    autoAnalyzer = null;
+                }
                 if (systemSession != null) {
                     if (powerOffCount != -1) {
                         for (Schema schema : schemas.values()) {
@@ -1290,43 +1400,53 @@ private void closeImpl(boolean fromShutdownHook) {
     /**
      * Close all open files and unlock the database.
      */
-    private synchronized void closeOpenFilesAndUnlock() {
+    private void closeOpenFilesAndUnlock() {
+        lock();
         try {
-            if (lobStorage != null) {
-                lobStorage.close();
-            }
-            if (store != null && !store.getMvStore().isClosed()) {
-                if (compactMode == CommandInterface.SHUTDOWN_IMMEDIATELY) {
-                    store.closeImmediately();
-                } else {
-                    int allowedCompactionTime =
-                            compactMode == CommandInterface.SHUTDOWN_COMPACT ||
-                            compactMode == CommandInterface.SHUTDOWN_DEFRAG ||
-                            dbSettings.defragAlways ? -1 : dbSettings.maxCompactTime;
-                    store.close(allowedCompactionTime);
+            try {
+                if (lobStorage != null) {
+                    lobStorage.close();
                 }
-                if (persistent) {
-                    // Don't delete temp files if everything is already closed
-                    // (maybe in checkPowerOff), the database could be open now
-                    // (even from within another process).
-                    if (lock != null || fileLockMethod == FileLockMethod.NO || fileLockMethod == FileLockMethod.FS) {
-                        deleteOldTempFiles();
+                if (store != null && !store.getMvStore().isClosed()) {
+                    if (compactMode == CommandInterface.SHUTDOWN_IMMEDIATELY) {
+                        store.closeImmediately();
+                    } else {
+                        int allowedCompactionTime =
+                                compactMode == CommandInterface.SHUTDOWN_COMPACT ||
+                                compactMode == CommandInterface.SHUTDOWN_DEFRAG ||
+                                dbSettings.defragAlways ? -1 : dbSettings.maxCompactTime;
+                        store.close(allowedCompactionTime);
                     }
+                    if (persistent) {
+                        // Don't delete temp files if everything is already closed
+                        // (maybe in checkPowerOff), the database could be open now
+                        // (even from within another process).
+                        if (lock != null || fileLockMethod == FileLockMethod.NO || fileLockMethod == FileLockMethod.FS) {
+                            deleteOldTempFiles();
+                        }
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                    lock = null;
                 }
             }
         } finally {
-            if (lock != null) {
-                lock.unlock();
-                lock = null;
-            }
+            unlock();
         }
     }
 
-    private synchronized void closeFiles() {
+    private void closeFiles() {
+        lock();
         try {
-            store.closeImmediately();
-        } catch (DbException e) {
-            trace.error(e, "close");
+            try {
+                store.closeImmediately();
+            } catch (DbException e) {
+                trace.error(e, "close");
+            }
+        } finally {
+            unlock();
         }
     }
 
@@ -1465,10 +1585,13 @@ public String getName() {
      */
     public SessionLocal[] getSessions(boolean includingSystemSession) {
         ArrayList<SessionLocal> list;
-        // need to synchronized on this database,
+        // need to lock this database,
         // otherwise the list may contain null elements
-        synchronized (this) {
+        lock();
+        try {
             list = new ArrayList<>(userSessions);
+        } finally {
+            unlock();
         }
         if (includingSystemSession) {
             // copy, to ensure the reference is stable
@@ -1515,27 +1638,37 @@ public void updateMeta(SessionLocal session, DbObject obj) {
      * @param obj the object
      * @param newName the new name
      */
-    public synchronized void renameSchemaObject(SessionLocal session,
+    public void renameSchemaObject(SessionLocal session,
             SchemaObject obj, String newName) {
-        checkWritingAllowed();
-        obj.getSchema().rename(obj, newName);
-        updateMetaAndFirstLevelChildren(session, obj);
-    }
-
-    private synchronized void updateMetaAndFirstLevelChildren(SessionLocal session, DbObject obj) {
-        ArrayList<DbObject> list = obj.getChildren();
-        Comment comment = findComment(obj);
-        if (comment != null) {
-            throw DbException.getInternalError(comment.toString());
-        }
-        updateMeta(session, obj);
-        // remember that this scans only one level deep!
-        if (list != null) {
-            for (DbObject o : list) {
-                if (o.getCreateSQL() != null) {
-                    updateMeta(session, o);
+        lock();
+        try {
+            checkWritingAllowed();
+            obj.getSchema().rename(obj, newName);
+            updateMetaAndFirstLevelChildren(session, obj);
+        } finally {
+            unlock();
+        }
+    }
+
+    private void updateMetaAndFirstLevelChildren(SessionLocal session, DbObject obj) {
+        lock();
+        try {
+            ArrayList<DbObject> list = obj.getChildren();
+            Comment comment = findComment(obj);
+            if (comment != null) {
+                throw DbException.getInternalError(comment.toString());
+            }
+            updateMeta(session, obj);
+            // remember that this scans only one level deep!
+            if (list != null) {
+                for (DbObject o : list) {
+                    if (o.getCreateSQL() != null) {
+                        updateMeta(session, o);
+                    }
                 }
             }
+        } finally {
+            unlock();
         }
     }
 
@@ -1546,24 +1679,29 @@ private synchronized void updateMetaAndFirstLevelChildren(SessionLocal session,
      * @param obj the object
      * @param newName the new name
      */
-    public synchronized void renameDatabaseObject(SessionLocal session,
+    public void renameDatabaseObject(SessionLocal session,
             DbObject obj, String newName) {
-        checkWritingAllowed();
-        int type = obj.getType();
-        ConcurrentHashMap<String, DbObject> map = getMap(type);
-        if (SysProperties.CHECK) {
-            if (!map.containsKey(obj.getName())) {
-                throw DbException.getInternalError("not found: " + obj.getName());
-            }
-            if (obj.getName().equals(newName) || map.containsKey(newName)) {
-                throw DbException.getInternalError("object already exists: " + newName);
+        lock();
+        try {
+            checkWritingAllowed();
+            int type = obj.getType();
+            ConcurrentHashMap<String, DbObject> map = getMap(type);
+            if (SysProperties.CHECK) {
+                if (!map.containsKey(obj.getName())) {
+                    throw DbException.getInternalError("not found: " + obj.getName());
+                }
+                if (obj.getName().equals(newName) || map.containsKey(newName)) {
+                    throw DbException.getInternalError("object already exists: " + newName);
+                }
             }
+            obj.checkRename();
+            map.remove(obj.getName());
+            obj.rename(newName);
+            map.put(newName, obj);
+            updateMetaAndFirstLevelChildren(session, obj);
+        } finally {
+            unlock();
         }
-        obj.checkRename();
-        map.remove(obj.getName());
-        obj.rename(newName);
-        map.put(newName, obj);
-        updateMetaAndFirstLevelChildren(session, obj);
     }
 
     private void deleteOldTempFiles() {
@@ -1598,23 +1736,28 @@ public Schema getSchema(String schemaName) {
      * @param session the session
      * @param obj the object to remove
      */
-    public synchronized void removeDatabaseObject(SessionLocal session, DbObject obj) {
-        checkWritingAllowed();
-        String objName = obj.getName();
-        int type = obj.getType();
-        ConcurrentHashMap<String, DbObject> map = getMap(type);
-        if (SysProperties.CHECK && !map.containsKey(objName)) {
-            throw DbException.getInternalError("not found: " + objName);
-        }
-        Comment comment = findComment(obj);
-        lockMeta(session);
-        if (comment != null) {
-            removeDatabaseObject(session, comment);
+    public void removeDatabaseObject(SessionLocal session, DbObject obj) {
+        lock();
+        try {
+            checkWritingAllowed();
+            String objName = obj.getName();
+            int type = obj.getType();
+            ConcurrentHashMap<String, DbObject> map = getMap(type);
+            if (SysProperties.CHECK && !map.containsKey(objName)) {
+                throw DbException.getInternalError("not found: " + objName);
+            }
+            Comment comment = findComment(obj);
+            lockMeta(session);
+            if (comment != null) {
+                removeDatabaseObject(session, comment);
+            }
+            int id = obj.getId();
+            obj.removeChildrenAndResources(session);
+            map.remove(objName);
+            removeMeta(session, id);
+        } finally {
+            unlock();
         }
-        int id = obj.getId();
-        obj.removeChildrenAndResources(session);
-        map.remove(objName);
-        removeMeta(session, id);
     }
 
     /**
@@ -1685,7 +1828,8 @@ public void removeSchemaObject(SessionLocal session,
         }
         checkWritingAllowed();
         lockMeta(session);
-        synchronized (this) {
+        lock();
+        try {
             Comment comment = findComment(obj);
             if (comment != null) {
                 removeDatabaseObject(session, comment);
@@ -1701,6 +1845,8 @@ public void removeSchemaObject(SessionLocal session,
                 obj.removeChildrenAndResources(session);
             }
             removeMeta(session, id);
+        } finally {
+            unlock();
         }
     }
 
@@ -1717,18 +1863,28 @@ public TraceSystem getTraceSystem() {
         return traceSystem;
     }
 
-    public synchronized void setCacheSize(int kb) {
-        if (starting) {
-            int max = MathUtils.convertLongToInt(Utils.getMemoryMax()) / 2;
-            kb = Math.min(kb, max);
+    public void setCacheSize(int kb) {
+        lock();
+        try {
+            if (starting) {
+                int max = MathUtils.convertLongToInt(Utils.getMemoryMax()) / 2;
+                kb = Math.min(kb, max);
+            }
+            store.setCacheSize(Math.max(1, kb));
+        } finally {
+            unlock();
         }
-        store.setCacheSize(Math.max(1, kb));
     }
 
-    public synchronized void setMasterUser(User user) {
-        lockMeta(systemSession);
-        addDatabaseObject(systemSession, user);
-        systemSession.commit(true);
+    public void setMasterUser(User user) {
+        lock();
+        try {
+            lockMeta(systemSession);
+            addDatabaseObject(systemSession, user);
+            systemSession.commit(true);
+        } finally {
+            unlock();
+        }
     }
 
     public Role getPublicRole() {
@@ -1812,9 +1968,14 @@ public ArrayList<InDoubtTransaction> getInDoubtTransactions() {
      * @param session the session
      * @param transaction the name of the transaction
      */
-    synchronized void prepareCommit(SessionLocal session, String transaction) {
-        if (!readOnly) {
-            store.prepareCommit(session, transaction);
+    void prepareCommit(SessionLocal session, String transaction) {
+        lock();
+        try {
+            if (!readOnly) {
+                store.prepareCommit(session, transaction);
+            }
+        } finally {
+            unlock();
         }
     }
 
@@ -1851,14 +2012,19 @@ public Throwable getBackgroundException() {
     /**
      * Flush all pending changes to the transaction log.
      */
-    public synchronized void flush() {
-        if (!readOnly) {
-            try {
-                store.flush();
-            } catch (RuntimeException e) {
-                backgroundException.compareAndSet(null, DbException.convert(e));
-                throw e;
+    public void flush() {
+        lock();
+        try {
+            if (!readOnly) {
+                try {
+                    store.flush();
+                } catch (RuntimeException e) {
+                    backgroundException.compareAndSet(null, DbException.convert(e));
+                    throw e;
+                }
             }
+        } finally {
+            unlock();
         }
     }
 
@@ -1926,11 +2092,16 @@ public void exceptionThrown(SQLException e, String sql) {
      * Synchronize the files with the file system. This method is called when
      * executing the SQL statement CHECKPOINT SYNC.
      */
-    public synchronized void sync() {
-        if (readOnly) {
-            return;
+    public void sync() {
+        lock();
+        try {
+            if (readOnly) {
+                return;
+            }
+            store.sync();
+        } finally {
+            unlock();
         }
-        store.sync();
     }
 
     public int getMaxMemoryRows() {
@@ -2007,8 +2178,13 @@ public boolean getIgnoreCatalogs() {
     }
 
 
-    public synchronized void setDeleteFilesOnDisconnect(boolean b) {
-        this.deleteFilesOnDisconnect = b;
+    public void setDeleteFilesOnDisconnect(boolean b) {
+        lock();
+        try {
+            this.deleteFilesOnDisconnect = b;
+        } finally {
+            unlock();
+        }
     }
 
     public void setAllowLiterals(int value) {
@@ -2042,10 +2218,13 @@ public boolean getReferentialIntegrity() {
 
     public void setQueryStatistics(boolean b) {
         queryStatistics = b;
-        synchronized (this) {
+        lock();
+        try {
             if (!b) {
                 queryStatisticsData.set(null);
             }
+        } finally {
+            unlock();
         }
     }
 
@@ -2406,7 +2585,8 @@ private void initJavaObjectSerializer() {
         if (javaObjectSerializerInitialized) {
             return;
         }
-        synchronized (this) {
+        lock();
+        try {
             if (javaObjectSerializerInitialized) {
                 return;
             }
@@ -2424,14 +2604,19 @@ private void initJavaObjectSerializer() {
                 }
             }
             javaObjectSerializerInitialized = true;
+        } finally {
+            unlock();
         }
     }
 
     public void setJavaObjectSerializerName(String serializerName) {
-        synchronized (this) {
+        lock();
+        try {
             javaObjectSerializerInitialized = false;
             javaObjectSerializerName = serializerName;
             getNextRemoteSettingsId();
+        } finally {
+            unlock();
         }
     }
 
@@ -2442,7 +2627,7 @@ public void setJavaObjectSerializerName(String serializerName) {
      * @return the class
      */
     public TableEngine getTableEngine(String tableEngine) {
-        assert Thread.holdsLock(this);
+        assert isLockedByCurrentThread();
 
         TableEngine engine = tableEngines.get(tableEngine);
         if (engine == null) {
@@ -46,12 +46,36 @@ public class DbSettings extends SettingsBase {
      */
     public final int analyzeAuto = get("ANALYZE_AUTO", 2000);
 
+    /**
+     * Database setting <code>ANALYZE_AUTO_ASYNC</code> (default: true).
+     * Whether the automatic ANALYZE runs in a background thread. Otherwise it
+     * runs in the session which changed the table, when it commits. Local
+     * temporary tables are always analyzed by their session.
+     */
+    public final boolean analyzeAutoAsync = get("ANALYZE_AUTO_ASYNC", true);
+
+    /**
+     * Database setting <code>ANALYZE_AUTO_DELAY</code> (default: 1000).
+     * The minimum time in milliseconds between two automatic ANALYZE runs in
+     * the background thread.
+     */
+    public final int analyzeAutoDelay = get("ANALYZE_AUTO_DELAY", 1000);
+
     /**
      * Database setting <code>ANALYZE_SAMPLE</code> (default: 10000).
      * The default sample size when analyzing a table.
      */
     public final int analyzeSample = get("ANALYZE_SAMPLE", 10_000);
 
+    /**
+     * Database setting <code>ASYNC_COMMIT_DELAY</code> (default: 200).
+     * The maximum time in milliseconds until changes of transactions, which
+     * were committed with SYNCHRONOUS_COMMIT set to OFF, are written and
+     * synced to disk. Such commits are synchronous if set to 0.
+     * This setting only affects MVStore engine.
+     */
+    public final int asyncCommitDelay = get("ASYNC_COMMIT_DELAY", 200);
+
     /**
      * Database setting <code>AUTO_COMPACT_FILL_RATE</code>
      * (default: 90, which means 90%, 0 disables auto-compacting).
@@ -65,6 +89,25 @@ public class DbSettings extends SettingsBase {
      */
     public final int autoCompactFillRate = get("AUTO_COMPACT_FILL_RATE", 90);
 
+    /**
+     * Database setting <code>AUTO_COMPACT_CPU_LOAD</code>
+     * (default: 10, which means 10%).
+     * The maximum share of time the background compaction may spend on
+     * re-writing chunks. Only used if <code>AUTO_COMPACT_RATE</code> is set.
+     * This setting only affects MVStore engine.
+     */
+    public final int autoCompactCpuLoad = get("AUTO_COMPACT_CPU_LOAD", 10);
+
+    /**
+     * Database setting <code>AUTO_COMPACT_RATE</code>
+     * (default: 0, which means compaction is only done when the store is idle).
+     * The rate in MB per second, at which chunks with low fill rate are
+     * continuously re-written in background. Bytes written by other
+     * operations are taken from this rate.
+     * This setting only affects MVStore engine.
+     */
+    public final int autoCompactRate = get("AUTO_COMPACT_RATE", 0);
+
     /**
      * Database setting <code>DATABASE_TO_LOWER</code> (default: false).
      * When set to true unquoted identifiers and short name of database are
@@ -80,6 +123,31 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean databaseToUpper;
 
+    /**
+     * Database setting <code>CACHE_ADMISSION_FILTER</code> (default: false).
+     * When set to true, a page is only added to the full page cache if it is
+     * accessed more frequently than the page it would replace (TinyLFU), so
+     * that large scans do not evict frequently used pages. This setting only
+     * affects MVStore engine.
+     */
+    public final boolean cacheAdmissionFilter = get("CACHE_ADMISSION_FILTER", false);
+
+    /**
+     * Database setting <code>CACHE_BUFFERED_READS</code> (default: false).
+     * When set to true, a hit in the page cache does not lock the cache
+     * segment, the access is recorded in a buffer and applied later. This
+     * setting only affects MVStore engine.
+     */
+    public final boolean cacheBufferedReads = get("CACHE_BUFFERED_READS", false);
+
+    /**
+     * Database setting <code>CACHE_OFF_HEAP_SIZE</code> (default: 0).
+     * The size in MB of the second level page cache, which keeps serialized
+     * pages outside of the Java heap. This setting only affects MVStore
+     * engine.
+     */
+    public final int cacheOffHeapSize = get("CACHE_OFF_HEAP_SIZE", 0);
+
     /**
      * Database setting <code>CASE_INSENSITIVE_IDENTIFIERS</code> (default:
      * false).
@@ -88,6 +156,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean caseInsensitiveIdentifiers = get("CASE_INSENSITIVE_IDENTIFIERS", false);
 
+    /**
+     * Database setting <code>CREATE_INDEX_THREADS</code> (default: 1).
+     * The number of threads used to read and sort the rows of a large table
+     * when an index is created. The default 1 uses the session thread only,
+     * 0 means the number of available processors.
+     * This setting only affects MVStore engine.
+     */
+    public final int createIndexThreads = get("CREATE_INDEX_THREADS", 1);
+
     /**
      * Database setting <code>DEFAULT_CONNECTION</code> (default: false).
      * Whether Java functions can use
@@ -129,6 +206,32 @@ public class DbSettings extends SettingsBase {
     public final int estimatedFunctionTableRows = get(
             "ESTIMATED_FUNCTION_TABLE_ROWS", 1000);
 
+    /**
+     * Database setting <code>GROUP_COMMIT_BATCH_SIZE</code> (default: 0).
+     * The maximum number of concurrent commits, which are written and synced
+     * to disk together, when each commit is stored immediately (write delay
+     * is 0). Group commit is disabled if set to 0.
+     * This setting only affects MVStore engine.
+     */
+    public final int groupCommitBatchSize = get("GROUP_COMMIT_BATCH_SIZE", 0);
+
+    /**
+     * Database setting <code>GROUP_COMMIT_MAX_WAIT</code> (default: 1000).
+     * The maximum time in microseconds to wait for more concurrent commits
+     * before a group of commits is written.
+     * This setting only affects MVStore engine.
+     */
+    public final int groupCommitMaxWait = get("GROUP_COMMIT_MAX_WAIT", 1000);
+
+    /**
+     * Database setting <code>HISTORY_RETENTION_TIME</code> (default: 0).
+     * How long in milliseconds old versions of a persistent database are
+     * kept for queries with FOR SYSTEM_TIME AS OF. Versions are kept at each
+     * commit of the store, so that the precision of a timestamp is the auto
+     * commit delay of the store. 0 disables point-in-time queries.
+     */
+    public final int historyRetentionTime = get("HISTORY_RETENTION_TIME", 0);
+
     /**
      * Database setting <code>LOB_TIMEOUT</code> (default: 300000,
      * which means 5 minutes).
@@ -138,6 +241,14 @@ public class DbSettings extends SettingsBase {
      */
     public final int lobTimeout = get("LOB_TIMEOUT", 300_000);
 
+    /**
+     * Database setting <code>MAPPED_READS</code> (default: false).
+     * Read pages from a memory mapped view of the database file, instead of
+     * copying them to the heap first. This setting only affects MVStore
+     * engine, and is ignored for encrypted databases.
+     */
+    public final boolean mappedReads = get("MAPPED_READS", false);
+
     /**
      * Database setting <code>MAX_COMPACT_TIME</code> (default: 200).
      * The maximum time in milliseconds used to compact a database when closing.
@@ -229,6 +340,14 @@ public class DbSettings extends SettingsBase {
      */
     public final int queryCacheSize = get("QUERY_CACHE_SIZE", 8);
 
+    /**
+     * Database setting <code>READ_AHEAD</code> (default: 0).
+     * The maximum number of pages to read ahead in background, when an index
+     * or a table is scanned sequentially. This setting only affects MVStore
+     * engine.
+     */
+    public final int readAhead = get("READ_AHEAD", 0);
+
     /**
      * Database setting <code>RECOMPILE_ALWAYS</code> (default: false).
      * Always recompile prepared statements.
@@ -243,6 +362,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean reuseSpace = get("REUSE_SPACE", true);
 
+    /**
+     * Database setting <code>SERIALIZATION_THREADS</code> (default: 1).
+     * The number of threads used to serialize and compress the changed pages
+     * of a chunk. More than one thread speeds up the commits of large changes,
+     * such as bulk loads. This setting has no effect if the database is
+     * already open. This setting only affects MVStore engine.
+     */
+    public final int serializationThreads = get("SERIALIZATION_THREADS", 1);
+
     /**
      * Database setting <code>SHARE_LINKED_CONNECTIONS</code>
      * (default: true).
@@ -253,6 +381,17 @@ public class DbSettings extends SettingsBase {
     public final boolean shareLinkedConnections = get(
             "SHARE_LINKED_CONNECTIONS", true);
 
+    /**
+     * Database setting <code>WRITE_COMBINING</code> (default: false).
+     * If many sessions write to the same map concurrently, the session, which
+     * holds the lock of the map, also applies the queued changes of other
+     * sessions, instead of letting them retry. This includes inserts into the
+     * same table by many sessions, which all add rows at the end of its
+     * primary index.
+     * This setting only affects MVStore engine.
+     */
+    public final boolean writeCombining = get("WRITE_COMBINING", false);
+
     /**
      * Database setting <code>DEFAULT_TABLE_ENGINE</code>
      * (default: null).
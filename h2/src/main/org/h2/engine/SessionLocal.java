@@ -155,6 +155,7 @@ static Session getThreadLocalSession() {
 
     private HashMap<SequenceAndPrepared, RowNumberAndValue> nextValueFor;
     private WeakHashMap<Sequence, Value> currentValueFor;
+    private WeakHashMap<Sequence, Sequence.Block> sequenceBlocks;
     private Value lastIdentity = ValueNull.INSTANCE;
 
     private HashMap<String, Savepoint> savepoints;
@@ -182,6 +183,8 @@ static Session getThreadLocalSession() {
     private int queryTimeout;
     private boolean commitOrRollbackDisabled;
     private Table waitForLock;
+    private int waitForLockType;
+    private long waitForLockStart;
     private Thread waitForLockThread;
     private int modificationId;
     private int objectId;
@@ -192,6 +195,7 @@ static Session getThreadLocalSession() {
     private volatile SmallLRUCache<Object, QueryExpressionIndex> viewIndexCache;
     private HashMap<Object, QueryExpressionIndex> derivedTableIndexCache;
     private boolean lazyQueryExecution;
+    private boolean synchronousCommit = true;
 
     private BitSet nonKeywords;
 
@@ -416,8 +420,11 @@ public void removeLocalTempTable(Table table) {
             modificationId++;
             Database db = database;
             if (db != null) {
-                synchronized (db) {
+                db.lock();
+                try {
                     table.removeChildrenAndResources(this);
+                } finally {
+                    db.unlock();
                 }
             }
         }
@@ -467,8 +474,11 @@ public void addLocalTempTableIndex(Index index) {
     public void removeLocalTempTableIndex(Index index) {
         if (localTempTableIndexes != null) {
             localTempTableIndexes.remove(index.getName());
-            synchronized (database) {
+            database.lock();
+            try {
                 index.removeChildrenAndResources(this);
+            } finally {
+                database.unlock();
             }
         }
     }
@@ -524,8 +534,11 @@ public void addLocalTempTableConstraint(Constraint constraint) {
     void removeLocalTempTableConstraint(Constraint constraint) {
         if (localTempTableConstraints != null) {
             localTempTableConstraints.remove(constraint.getName());
-            synchronized (database) {
+            database.lock();
+            try {
                 constraint.removeChildrenAndResources(this);
+            } finally {
+                database.unlock();
             }
         }
     }
@@ -548,6 +561,33 @@ public int getLockTimeout() {
         return lockTimeout;
     }
 
+    /**
+     * Set whether commits of this session wait until changes are durable.
+     * The setting also applies to the current transaction.
+     *
+     * @param synchronousCommit whether commits are synchronous
+     */
+    public void setSynchronousCommit(boolean synchronousCommit) {
+        this.synchronousCommit = synchronousCommit;
+        if (hasTransaction()) {
+            transaction.setSynchronousCommit(synchronousCommit);
+        }
+    }
+
+    public boolean isSynchronousCommit() {
+        return synchronousCommit;
+    }
+
+    /**
+     * Set whether the commit of the current transaction waits until its
+     * changes are durable.
+     *
+     * @param synchronousCommit whether the commit is synchronous
+     */
+    public void setTransactionSynchronousCommit(boolean synchronousCommit) {
+        getTransaction().setSynchronousCommit(synchronousCommit);
+    }
+
     public void setLockTimeout(int lockTimeout) {
         this.lockTimeout = lockTimeout;
         if (hasTransaction()) {
@@ -725,15 +765,25 @@ private void analyzeTables() {
             // back into markTableForAnalyze while iterating here
             HashSet<Table> tablesToAnalyzeLocal = tablesToAnalyze;
             tablesToAnalyze = null;
+            boolean async = getDatabase().getSettings().analyzeAutoAsync;
+            boolean analyzed = false;
             int rowCount = getDatabase().getSettings().analyzeSample / 10;
             for (Table table : tablesToAnalyzeLocal) {
-                Analyze.analyzeTable(this, table, rowCount, false);
+                // local temporary tables are only visible to this session
+                if (async && (!table.isTemporary() || table.isGlobalTemporary())) {
+                    getDatabase().analyzeInBackground(table);
+                } else {
+                    Analyze.analyzeTable(this, table, rowCount, false);
+                    analyzed = true;
+                }
+            }
+            if (analyzed) {
+                // analyze can lock the meta
+                getDatabase().unlockMeta(this);
+                // table analysis opens a new transaction(s),
+                // so we need to commit afterward whatever leftovers might be
+                commit(true);
             }
-            // analyze can lock the meta
-            getDatabase().unlockMeta(this);
-            // table analysis opens a new transaction(s),
-            // so we need to commit afterward whatever leftovers might be
-            commit(true);
         }
     }
 
@@ -908,6 +958,13 @@ public void close() {
                     commit(true);       // temp table removal may have opened new transaction
                 }
 
+                if (sequenceBlocks != null) {
+                    for (Map.Entry<Sequence, Sequence.Block> entry : sequenceBlocks.entrySet()) {
+                        entry.getKey().release(entry.getValue());
+                    }
+                    sequenceBlocks = null;
+                }
+
                 // Table#removeChildrenAndResources can take the meta lock,
                 // and we need to unlock before we call removeSession(), which might
                 // want to take the meta lock using the system session.
@@ -1034,7 +1091,7 @@ public Value getNextValueFor(Sequence sequence, Prepared prepared) {
         Value value;
         Mode mode = getMode();
         if (mode.nextValueReturnsDifferentValues || prepared == null) {
-            value = sequence.getNext(this);
+            value = getNextValue(sequence);
         } else {
             if (nextValueFor == null) {
                 nextValueFor = new HashMap<>();
@@ -1046,11 +1103,11 @@ public Value getNextValueFor(Sequence sequence, Prepared prepared) {
                 if (data.rowNumber == rowNumber) {
                     value = data.nextValue;
                 } else {
-                    data.nextValue = value = sequence.getNext(this);
+                    data.nextValue = value = getNextValue(sequence);
                     data.rowNumber = rowNumber;
                 }
             } else {
-                value = sequence.getNext(this);
+                value = getNextValue(sequence);
                 nextValueFor.put(key, new RowNumberAndValue(rowNumber, value));
             }
         }
@@ -1065,6 +1122,59 @@ public Value getNextValueFor(Sequence sequence, Prepared prepared) {
         return value;
     }
 
+    private Value getNextValue(Sequence sequence) {
+        WeakHashMap<Sequence, Sequence.Block> sequenceBlocks = this.sequenceBlocks;
+        Sequence.Block block = sequenceBlocks != null ? sequenceBlocks.get(sequence) : null;
+        if (block == null) {
+            if (sequence.getSessionCacheSize() <= 1L) {
+                return sequence.getNext(this);
+            }
+            block = getSequenceBlock(sequence);
+        }
+        return sequence.getNext(this, block);
+    }
+
+    private Sequence.Block getSequenceBlock(Sequence sequence) {
+        WeakHashMap<Sequence, Sequence.Block> sequenceBlocks = this.sequenceBlocks;
+        if (sequenceBlocks == null) {
+            this.sequenceBlocks = sequenceBlocks = new WeakHashMap<>();
+        }
+        return sequenceBlocks.computeIfAbsent(sequence, k -> new Sequence.Block());
+    }
+
+    /**
+     * Reserves the specified number of values of the sequence for this session
+     * with one call, for example, for a multi-row insert. Values are reserved
+     * until {@link #releaseSequenceValues(Sequence)} is called, or, if the
+     * sequence has a session cache, until they are used.
+     *
+     * @param sequence
+     *            the sequence
+     * @param count
+     *            the number of values
+     */
+    public void reserveSequenceValues(Sequence sequence, long count) {
+        sequence.reserve(this, getSequenceBlock(sequence), count);
+    }
+
+    /**
+     * Returns values of the sequence reserved by
+     * {@link #reserveSequenceValues(Sequence, long)} and not used yet, unless
+     * the sequence has a session cache.
+     *
+     * @param sequence
+     *            the sequence
+     */
+    public void releaseSequenceValues(Sequence sequence) {
+        WeakHashMap<Sequence, Sequence.Block> sequenceBlocks = this.sequenceBlocks;
+        if (sequenceBlocks != null && sequence.getSessionCacheSize() <= 1L) {
+            Sequence.Block block = sequenceBlocks.remove(sequence);
+            if (block != null) {
+                sequence.release(block);
+            }
+        }
+    }
+
     /**
      * Returns the current value of the sequence in this session.
      *
@@ -1567,9 +1677,12 @@ public int getQueryTimeout() {
      * waiting.
      *
      * @param waitForLock the table
+     * @param lockType the type of the requested lock
      * @param waitForLockThread the current thread (the one that is waiting)
      */
-    public void setWaitForLock(Table waitForLock, Thread waitForLockThread) {
+    public void setWaitForLock(Table waitForLock, int lockType, Thread waitForLockThread) {
+        this.waitForLockType = lockType;
+        this.waitForLockStart = waitForLock != null ? System.nanoTime() : 0L;
         this.waitForLock = waitForLock;
         this.waitForLockThread = waitForLockThread;
     }
@@ -1578,6 +1691,20 @@ public Table getWaitForLock() {
         return waitForLock;
     }
 
+    public int getWaitForLockType() {
+        return waitForLockType;
+    }
+
+    /**
+     * Get the time since this session waits for a lock.
+     *
+     * @return the wait time in nanoseconds, or 0 if the session does not wait
+     */
+    public long getWaitForLockNanos() {
+        long start = waitForLockStart;
+        return start == 0L ? 0L : System.nanoTime() - start;
+    }
+
     public Thread getWaitForLockThread() {
         return waitForLockThread;
     }
@@ -1616,6 +1743,9 @@ public Transaction getTransaction() {
                 throw DbException.get(ErrorCode.DATABASE_IS_CLOSED, backgroundException);
             }
             transaction = store.getTransactionStore().begin(this, this.lockTimeout, id, isolationLevel);
+            if (!synchronousCommit) {
+                transaction.setSynchronousCommit(false);
+            }
             startStatement = -1;
         }
         return transaction;
@@ -79,6 +79,8 @@ public final class BuiltinFunctions {
                 "RAND", "RANDOM", "SECURE_RAND", "RANDOM_UUID", "UUID",
                 // SessionControlFunction
                 "ABORT_SESSION", "CANCEL_SESSION",
+                // ChangeCheckpointFunction
+                "CHANGES_CHECKPOINT",
                 // SysInfoFunction
                 "AUTOCOMMIT", "DATABASE_PATH", "H2VERSION", "LOCK_MODE", "LOCK_TIMEOUT", "MEMORY_FREE", "MEMORY_USED",
                 "READONLY", "SESSION_ID", "TRANSACTION_ID",
@@ -108,6 +110,8 @@ public final class BuiltinFunctions {
                 "CSVREAD",
                 // LinkSchemaFunction
                 "LINK_SCHEMA",
+                // ChangesFunction
+                "CHANGES",
                 //
         };
         HashSet<String> set = new HashSet<>(128);
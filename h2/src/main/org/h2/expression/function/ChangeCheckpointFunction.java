@@ -0,0 +1,75 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression.function;
+
+import org.h2.command.Parser;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTable;
+import org.h2.table.Table;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueNull;
+
+/**
+ * A CHANGES_CHECKPOINT function, which sets the checkpoint of a consumer of
+ * captured row changes of a table.
+ */
+public final class ChangeCheckpointFunction extends FunctionN {
+
+    public ChangeCheckpointFunction(Expression arg1, Expression arg2, Expression arg3) {
+        super(new Expression[] { arg1, arg2, arg3 });
+    }
+
+    @Override
+    public Value getValue(SessionLocal session) {
+        Value v1 = args[0].getValue(session);
+        Value v2 = args[1].getValue(session);
+        if (v1 == ValueNull.INSTANCE || v2 == ValueNull.INSTANCE) {
+            return ValueNull.INSTANCE;
+        }
+        session.getUser().checkAdmin();
+        Table table = new Parser(session).parseTableName(v1.getString());
+        if (!(table instanceof MVTable) || !table.isPersistData() || table.isTemporary()) {
+            throw DbException.getUnsupportedException(getName() + '(' + table.getTraceSQL() + ')');
+        }
+        MVTable mvTable = (MVTable) table;
+        Value v3 = args[2].getValue(session);
+        if (v3 == ValueNull.INSTANCE) {
+            mvTable.removeChangeConsumer(v2.getString());
+        } else {
+            mvTable.setChangeCheckpoint(v2.getString(), v3.getLong());
+        }
+        return ValueBigint.get(mvTable.getLastChangePosition());
+    }
+
+    @Override
+    public Expression optimize(SessionLocal session) {
+        optimizeArguments(session, false);
+        type = TypeInfo.TYPE_BIGINT;
+        return this;
+    }
+
+    @Override
+    public boolean isEverything(ExpressionVisitor visitor) {
+        switch (visitor.getType()) {
+        case ExpressionVisitor.DETERMINISTIC:
+        case ExpressionVisitor.READONLY:
+        case ExpressionVisitor.QUERY_COMPARABLE:
+            return false;
+        }
+        return super.isEverything(visitor);
+    }
+
+    @Override
+    public String getName() {
+        return "CHANGES_CHECKPOINT";
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression.function.table;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.Parser;
+import org.h2.engine.Right;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTable;
+import org.h2.mvstore.tx.CommittedChange;
+import org.h2.result.ResultInterface;
+import org.h2.result.SearchRow;
+import org.h2.result.SimpleResult;
+import org.h2.table.Column;
+import org.h2.table.Table;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueInteger;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueVarchar;
+
+/**
+ * A CHANGES function, which returns the captured committed row changes of a
+ * table.
+ */
+public final class ChangesFunction extends TableFunction {
+
+    public ChangesFunction() {
+        super(new Expression[3]);
+    }
+
+    @Override
+    public ResultInterface getValue(SessionLocal session) {
+        MVTable table = getTable(session);
+        Value v = args[1].getValue(session);
+        if (v == ValueNull.INSTANCE) {
+            return getValueTemplate(session);
+        }
+        long from = v.getLong();
+        long limit = Long.MAX_VALUE;
+        if (args.length > 2) {
+            v = args[2].getValue(session);
+            if (v != ValueNull.INSTANCE) {
+                limit = v.getLong();
+            }
+        }
+        SimpleResult result = createResult(table);
+        Column[] columns = table.getColumns();
+        int columnCount = columns.length;
+        Iterator<Entry<Long, CommittedChange<Long, SearchRow>>> it = table.getChanges(from);
+        for (long count = 0; count < limit && it.hasNext(); count++) {
+            Entry<Long, CommittedChange<Long, SearchRow>> e = it.next();
+            CommittedChange<Long, SearchRow> change = e.getValue();
+            SearchRow oldRow = change.oldValue, newRow = change.newValue;
+            Value[] row = new Value[4 + 2 * columnCount];
+            row[0] = ValueBigint.get(e.getKey());
+            row[1] = ValueBigint.get(change.commitVersion);
+            row[2] = ValueInteger.get(change.transactionId);
+            row[3] = ValueVarchar.get(oldRow == null ? "INSERT" : newRow == null ? "DELETE" : "UPDATE");
+            for (int i = 0; i < columnCount; i++) {
+                row[4 + i] = oldRow == null ? ValueNull.INSTANCE : oldRow.getValue(i);
+                row[4 + columnCount + i] = newRow == null ? ValueNull.INSTANCE : newRow.getValue(i);
+            }
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    private MVTable getTable(SessionLocal session) {
+        Value v = args[0].getValue(session);
+        if (v == ValueNull.INSTANCE) {
+            throw DbException.get(ErrorCode.PARAMETER_NOT_SET_1, "tableName");
+        }
+        Table table = new Parser(session).parseTableName(v.getString());
+        if (!(table instanceof MVTable) || !table.isPersistData() || table.isTemporary()) {
+            throw DbException.getUnsupportedException("CHANGES(" + table.getTraceSQL() + ')');
+        }
+        session.getUser().checkTableRight(table, Right.SELECT);
+        return (MVTable) table;
+    }
+
+    private static SimpleResult createResult(Table table) {
+        SimpleResult result = new SimpleResult();
+        result.addColumn("POSITION", TypeInfo.TYPE_BIGINT);
+        result.addColumn("COMMIT_VERSION", TypeInfo.TYPE_BIGINT);
+        result.addColumn("TRANSACTION_ID", TypeInfo.TYPE_INTEGER);
+        result.addColumn("OPERATION", TypeInfo.getTypeInfo(Value.VARCHAR, 6, 0, null));
+        Column[] columns = table.getColumns();
+        for (Column column : columns) {
+            result.addColumn("OLD_" + column.getName(), column.getType());
+        }
+        for (Column column : columns) {
+            result.addColumn("NEW_" + column.getName(), column.getType());
+        }
+        return result;
+    }
+
+    @Override
+    public void optimize(SessionLocal session) {
+        super.optimize(session);
+        int len = args.length;
+        if (len < 2 || len > 3) {
+            throw DbException.get(ErrorCode.INVALID_PARAMETER_COUNT_2, getName(), "2..3");
+        }
+    }
+
+    @Override
+    public ResultInterface getValueTemplate(SessionLocal session) {
+        return createResult(getTable(session));
+    }
+
+    @Override
+    public String getName() {
+        return "CHANGES";
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+}
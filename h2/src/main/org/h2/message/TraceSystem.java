@@ -19,6 +19,7 @@
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.h2.api.ErrorCode;
 import org.h2.engine.Constants;
@@ -107,6 +108,12 @@ public class TraceSystem implements TraceWriter {
     private TraceWriter writer = this;
     private PrintStream sysOut = System.out;
 
+    /**
+     * The lock for the trace file. A monitor would pin the carrier thread of
+     * a virtual thread while it writes to the file.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
     /**
      * Create a new trace system object.
      *
@@ -282,7 +289,8 @@ public void write(int level, String module, String s, Throwable t) {
         }
     }
 
-    private synchronized void writeFile(String s, Throwable t) {
+    private void writeFile(String s, Throwable t) {
+        writeLock.lock();
         try {
             checkSize = (checkSize + 1) % CHECK_SIZE_EACH_WRITES;
             if (checkSize == 0) {
@@ -316,6 +324,8 @@ private synchronized void writeFile(String s, Throwable t) {
             }
         } catch (Exception e) {
             logWritingError(e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -352,19 +362,24 @@ private boolean openWriter() {
         return true;
     }
 
-    private synchronized void closeWriter() {
-        if (printWriter != null) {
-            printWriter.flush();
-            printWriter.close();
-            printWriter = null;
-        }
-        if (fileWriter != null) {
-            try {
-                fileWriter.close();
-            } catch (IOException e) {
-                // ignore
+    private void closeWriter() {
+        writeLock.lock();
+        try {
+            if (printWriter != null) {
+                printWriter.flush();
+                printWriter.close();
+                printWriter = null;
+            }
+            if (fileWriter != null) {
+                try {
+                    fileWriter.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                fileWriter = null;
             }
-            fileWriter = null;
+        } finally {
+            writeLock.unlock();
         }
     }
 
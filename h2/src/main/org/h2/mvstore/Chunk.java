@@ -482,6 +482,49 @@ ByteBuffer readBufferForPage(FileStore<C> fileStore, int offset, long pos) {
         }
     }
 
+    /**
+     * Read a range of the chunk, which contains a number of pages, into a
+     * ByteBuffer. The range is truncated at the end of the chunk.
+     *
+     * @param fileStore to use
+     * @param offset of the range
+     * @param length of the range
+     * @return ByteBuffer containing the data
+     */
+    ByteBuffer readBufferForRange(FileStore<C> fileStore, int offset, int length) {
+        assert isSaved() : this;
+        while (true) {
+            long originalBlock = block;
+            try {
+                long filePos = originalBlock * FileStore.BLOCK_SIZE;
+                long maxPos = filePos + (long) len * FileStore.BLOCK_SIZE;
+                filePos += offset;
+                int l = (int) Math.min(maxPos - filePos, length);
+                if (filePos < 0 || l < 0) {
+                    throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                            "Illegal range {0} reading at {1}; max pos {2}, c={3}", l, filePos, maxPos,
+                            toString());
+                }
+                ByteBuffer buff = buffer;
+                if (buff == null) {
+                    buff = readFully(fileStore, filePos, l);
+                } else {
+                    buff = buff.duplicate();
+                    buff.position(offset);
+                    buff = buff.slice();
+                    buff.limit(l);
+                }
+                if (originalBlock == block) {
+                    return buff;
+                }
+            } catch (MVStoreException ex) {
+                if (originalBlock == block) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
     long[] readToC(FileStore<C> fileStore) {
         assert buffer != null || isAllocated() : this;
         assert tocPos > 0;
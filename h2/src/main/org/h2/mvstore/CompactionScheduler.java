@@ -0,0 +1,126 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Class CompactionScheduler drives incremental compaction from the background
+ * writer thread. On every housekeeping cycle it rewrites live pages of the
+ * least filled chunks, limited by an I/O budget (bytes per second) and a CPU
+ * budget (share of the wall-clock time spent on rewriting), instead of
+ * waiting for the store to become idle and then compacting in bursts.
+ * <p>
+ * I/O budget is accumulated as a token bucket, which holds at most one second
+ * worth of the rate. Bytes written by foreground operations since the
+ * previous cycle are taken from the budget, so that compaction backs off when
+ * the foreground write rate is high, but it always keeps a quarter of its rate
+ * to make some progress.
+ */
+final class CompactionScheduler {
+
+    /**
+     * The minimum amount of live data to rewrite in one cycle.
+     */
+    private static final int MIN_WRITE = 64 * 1024;
+
+    private final FileStore<?> fileStore;
+
+    private final long bytesPerSecond;
+
+    private final int cpuPercent;
+
+    private long lastTime;
+
+    private long lastWriteBytes;
+
+    /**
+     * Available I/O budget in bytes.
+     */
+    private long budget;
+
+    /**
+     * Time spent on rewriting over the CPU budget, in nanoseconds.
+     */
+    private long debtNanos;
+
+    /**
+     * Bytes expected to be written by the rewrite of the previous cycle,
+     * which should not be counted as foreground writes.
+     */
+    private long ownWriteBytes;
+
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong rewrittenPages = new AtomicLong();
+    private final AtomicLong rewrittenBytes = new AtomicLong();
+    private final AtomicLong rewriteNanos = new AtomicLong();
+
+    CompactionScheduler(FileStore<?> fileStore, int mbPerSecond, int cpuPercent) {
+        this.fileStore = fileStore;
+        this.bytesPerSecond = (long) mbPerSecond << 20;
+        this.cpuPercent = Math.max(1, Math.min(100, cpuPercent));
+        lastTime = System.nanoTime();
+        lastWriteBytes = fileStore.getWriteBytes();
+    }
+
+    /**
+     * Perform one compaction cycle. Called by the background writer thread
+     * only.
+     *
+     * @param mvStore the store
+     * @return false if the cycle was skipped, because the budget is exhausted
+     *         or the store lock was not available, true otherwise
+     * @throws InterruptedException if interrupted while waiting for the store lock
+     */
+    boolean run(MVStore mvStore) throws InterruptedException {
+        long now = System.nanoTime();
+        long elapsed = now - lastTime;
+        lastTime = now;
+        long writeBytes = fileStore.getWriteBytes();
+        long foreground = Math.max(0, writeBytes - lastWriteBytes - ownWriteBytes);
+        lastWriteBytes = writeBytes;
+        ownWriteBytes = 0;
+
+        long quota = bytesPerSecond * Math.min(elapsed, TimeUnit.SECONDS.toNanos(1)) / TimeUnit.SECONDS.toNanos(1);
+        budget = Math.min(bytesPerSecond, budget + Math.max(quota / 4, quota - foreground));
+        debtNanos = Math.max(0, debtNanos - elapsed * cpuPercent / 100);
+        if (debtNanos > 0 || budget < MIN_WRITE) {
+            return false;
+        }
+        int targetFillRate = fileStore.getAutoCompactFillRate();
+        if (fileStore.getRewritableChunksFillRate() >= targetFillRate) {
+            return true;
+        }
+        int writeLimit = (int) Math.min(budget, Integer.MAX_VALUE);
+        Boolean done = mvStore.tryExecuteUnderStoreLock(() -> {
+            cycles.incrementAndGet();
+            long start = System.nanoTime();
+            long[] result = fileStore.rewriteLeastFilledChunks(writeLimit, targetFillRate);
+            long time = System.nanoTime() - start;
+            rewriteNanos.addAndGet(time);
+            debtNanos += time;
+            if (result != null) {
+                rewrittenPages.addAndGet(result[0]);
+                rewrittenBytes.addAndGet(result[1]);
+                budget -= result[1];
+                ownWriteBytes = result[1];
+                fileStore.dropUnusedChunks();
+            }
+            return true;
+        });
+        return done != null;
+    }
+
+    void populateInfo(BiConsumer<String, String> consumer) {
+        consumer.accept("info.COMPACT_CYCLES", Long.toString(cycles.get()));
+        consumer.accept("info.COMPACT_REWRITTEN_PAGES", Long.toString(rewrittenPages.get()));
+        consumer.accept("info.COMPACT_REWRITTEN_BYTES", Long.toString(rewrittenBytes.get()));
+        consumer.accept("info.COMPACT_TIME_MS",
+                Long.toString(TimeUnit.NANOSECONDS.toMillis(rewriteNanos.get())));
+    }
+}
@@ -17,6 +17,11 @@
 public final class Cursor<K,V> implements Iterator<K> {
     private final boolean reverse;
     private final K to;
+    /**
+     * Whether the map has long keys, which are compared without boxing.
+     */
+    private final boolean longKeys;
+    private final long longTo;
     private CursorPos<K,V> cursorPos;
     private CursorPos<K,V> keeper;
     private K current;
@@ -24,6 +29,17 @@
     private V lastValue;
     private Page<K,V> lastPage;
 
+    /**
+     * The maximum number of child pages to read ahead, 0 if disabled.
+     */
+    private final int readAhead;
+    /**
+     * The number of child pages entered by sequential traversal.
+     */
+    private int sequentialSteps;
+    private long[] readAheadPositions;
+    private Page<K,V> readAheadPage;
+    private int readAheadIndex;
 
     public Cursor(RootReference<K,V> rootReference, K from, K to) {
         this(rootReference, from, to, false);
@@ -40,6 +56,10 @@ public Cursor(RootReference<K,V> rootReference, K from, K to, boolean reverse) {
         this.cursorPos = traverseDown(lastPage, from, reverse);
         this.to = to;
         this.reverse = reverse;
+        longKeys = lastPage.map.hasLongKeys();
+        longTo = longKeys && to != null ? (Long) to : 0L;
+        FileStore<?> fileStore = lastPage.map.store.getFileStore();
+        this.readAhead = fileStore == null ? 0 : fileStore.getReadAhead();
     }
 
     @Override
@@ -61,6 +81,9 @@ public boolean hasNext() {
                 } else {
                     // traverse down to the leaf taking the leftmost path
                     while (!page.isLeaf()) {
+                        if (readAhead > 0) {
+                            readAhead(page, index);
+                        }
                         page = page.getChildPage(index);
                         index = reverse ? upperBound(page) - 1 : 0;
                         if (keeper == null) {
@@ -75,9 +98,21 @@ public boolean hasNext() {
                         }
                     }
                     if (reverse ? index >= 0 : index < page.getKeyCount()) {
-                        K key = page.getKey(index);
-                        if (to != null && Integer.signum(page.map.getKeyType().compare(key, to)) == increment) {
-                            return false;
+                        K key;
+                        if (longKeys) {
+                            long k = page.getLongKey(index);
+                            if (to != null && Integer.signum(Long.compare(k, longTo)) == increment) {
+                                return false;
+                            }
+                            // the key is only boxed when it is returned
+                            @SuppressWarnings("unchecked")
+                            K boxed = (K) Long.valueOf(k);
+                            key = boxed;
+                        } else {
+                            key = page.getKey(index);
+                            if (to != null && Integer.signum(page.map.getKeyType().compare(key, to)) == increment) {
+                                return false;
+                            }
                         }
                         current = last = key;
                         lastValue = page.getValue(index);
@@ -179,6 +214,44 @@ static <K,V> CursorPos<K,V> traverseDown(Page<K,V> page, K key, boolean reverse)
         return cursorPos;
     }
 
+    /**
+     * Read child pages of the node, which follow the given one in the
+     * direction of traversal, ahead of time. This is only done once the
+     * traversal is known to be sequential, and repeated after half of the
+     * pages read ahead are passed.
+     *
+     * @param page the node
+     * @param index the index of the child page to be entered now
+     */
+    private void readAhead(Page<K,V> page, int index) {
+        if (++sequentialSteps < 2 || page == readAheadPage
+                && (reverse ? index > readAheadIndex : index < readAheadIndex)) {
+            return;
+        }
+        long[] positions = readAheadPositions;
+        if (positions == null) {
+            readAheadPositions = positions = new long[readAhead];
+        }
+        int increment = reverse ? -1 : 1;
+        int upper = upperBound(page);
+        int n = 0;
+        for (int i = index + increment; n < readAhead && i >= 0 && i < upper; i += increment) {
+            if (to != null) {
+                // stop at the first child page, which is out of range
+                int c = page.map.getKeyType().compare(page.getKey(reverse ? i : i - 1), to);
+                if (reverse ? c <= 0 : c > 0) {
+                    break;
+                }
+            }
+            positions[n++] = page.getChildPagePos(i);
+        }
+        readAheadPage = page;
+        readAheadIndex = index + increment * Math.max(1, readAhead / 2);
+        if (n > 0) {
+            page.map.store.getFileStore().readAhead(page.map, positions, n);
+        }
+    }
+
     private static <K,V> int upperBound(Page<K,V> page) {
         return page.isLeaf() ? page.getKeyCount() : page.map.getChildPageCount(page);
     }
@@ -51,6 +51,22 @@ public CursorPos(Page<K,V> page, int index, CursorPos<K,V> parent) {
      * @return head of the CursorPos chain (insertion point)
      */
     static <K,V> CursorPos<K,V> traverseDown(Page<K,V> page, K key) {
+        if (page.map.hasLongKeys()) {
+            return traverseDown(page, ((Long) key).longValue());
+        }
+        CursorPos<K,V> cursorPos = null;
+        while (!page.isLeaf()) {
+            int index = page.binarySearch(key) + 1;
+            if (index < 0) {
+                index = -index;
+            }
+            cursorPos = new CursorPos<>(page, index, cursorPos);
+            page = page.getChildPage(index);
+        }
+        return new CursorPos<>(page, page.binarySearch(key), cursorPos);
+    }
+
+    private static <K,V> CursorPos<K,V> traverseDown(Page<K,V> page, long key) {
         CursorPos<K,V> cursorPos = null;
         while (!page.isLeaf()) {
             int index = page.binarySearch(key) + 1;
@@ -5,9 +5,13 @@
  */
 package org.h2.mvstore;
 
+import org.h2.compress.CompressDeflate;
+import org.h2.compress.CompressLZF;
+import org.h2.compress.Compressor;
 import org.h2.engine.Constants;
 import static org.h2.mvstore.MVStore.INITIAL_VERSION;
 import org.h2.mvstore.cache.CacheLongKeyLIRS;
+import org.h2.mvstore.cache.CacheLongKeyOffHeap;
 import org.h2.mvstore.type.StringDataType;
 import org.h2.util.MathUtils;
 import org.h2.util.Utils;
@@ -22,6 +26,7 @@
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,11 +39,13 @@
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
@@ -147,6 +154,47 @@
      */
     private ThreadPoolExecutor bufferSaveExecutor;
 
+    /**
+     * Number of threads to serialize leaf pages of a chunk with.
+     */
+    private final int serializationThreads;
+
+    /**
+     * The maximum number of pages to read ahead of a sequential scan,
+     * 0 to disable read-ahead.
+     */
+    private final int readAhead;
+
+    /**
+     * Executor for read-ahead of pages, created on first use.
+     */
+    private ThreadPoolExecutor readAheadExecutor;     // guarded by readAheadLock
+
+    private final ReentrantLock readAheadLock = new ReentrantLock();
+
+    /**
+     * Positions of pages, which are being read ahead right now.
+     */
+    private final ConcurrentHashMap<Long, CountDownLatch> readAheadInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of submitted read-ahead tasks, which are not finished yet.
+     */
+    private final AtomicInteger readAheadTasks = new AtomicInteger();
+
+    private final AtomicLong readAheadPages = new AtomicLong();
+
+    /**
+     * Executor for parallel serialization of leaf pages,
+     * only used if serializationThreads is greater than 1
+     */
+    private ThreadPoolExecutor serializationWorkers;     // guarded by serializationLock
+
+    /**
+     * The number of leaf pages, which were serialized by worker threads.
+     */
+    private final AtomicLong parallelSerializedPages = new AtomicLong();
+
 
     /**
      * The page cache. The default size is 16 MB, and the average size is 2 KB.
@@ -155,6 +203,12 @@
      */
     private final CacheLongKeyLIRS<Page<?,?>> cache;
 
+    /**
+     * The optional second level cache of serialized pages, kept outside of
+     * the heap, consulted before reading a page from the file.
+     */
+    private final CacheLongKeyOffHeap offHeapCache;
+
     /**
      * Cache for chunks "Table of Content" used to translate page's
      * sequential number within containing chunk into byte position
@@ -203,11 +257,29 @@
 
     private final int autoCompactFillRate;
 
+    /**
+     * Background compaction with I/O and CPU budget, or null if compaction is
+     * only done when the store is idle.
+     */
+    private final CompactionScheduler compactionScheduler;
+
     /**
      * The delay in milliseconds to automatically commit and write changes.
      */
     private int autoCommitDelay;
 
+    /**
+     * The maximum delay in milliseconds to write and sync changes of
+     * asynchronous commits, or 0 if asynchronous commits are disabled.
+     */
+    private volatile int asyncCommitDelay;
+
+    /**
+     * The time of the oldest asynchronous commit, which is not written and
+     * synced yet, or -1 if there is none.
+     */
+    private volatile long asyncCommitTime = -1;
+
     private long autoCompactLastFileOpCount;
 
     private long lastCommitTime;
@@ -216,12 +288,31 @@
 
     public static final int PIPE_LENGTH = 3;
 
+    /**
+     * The maximum number of pending read-ahead tasks.
+     */
+    private static final int MAX_READ_AHEAD_TASKS = 16;
+
+    /**
+     * The maximum number of unneeded bytes between pages, which are read
+     * together.
+     */
+    private static final int MAX_READ_GAP = 64 * 1024;
+
+    /**
+     * The maximum number of bytes read at once, when reading a number of pages.
+     */
+    private static final int MAX_READ_LENGTH = 1024 * 1024;
+
 
 
 
     protected FileStore(Map<String, Object> config) {
         recoveryMode = config.containsKey("recoveryMode");
         autoCompactFillRate = DataUtils.getConfigParam(config, "autoCompactFillRate", 90);
+        int autoCompactRate = DataUtils.getConfigParam(config, "autoCompactRate", 0);
+        compactionScheduler = autoCompactRate <= 0 ? null : new CompactionScheduler(this, autoCompactRate,
+                DataUtils.getConfigParam(config, "autoCompactCpuLoad", 10));
         CacheLongKeyLIRS.Config cc = null;
         int mb = DataUtils.getConfigParam(config, "cacheSize", 16);
         if (mb > 0) {
@@ -231,8 +322,13 @@ protected FileStore(Map<String, Object> config) {
             if (o != null) {
                 cc.segmentCount = (Integer)o;
             }
+            cc.admissionFilter = config.containsKey("cacheAdmissionFilter");
+            cc.bufferedReads = config.containsKey("cacheBufferedReads");
         }
         cache = cc == null ? null : new CacheLongKeyLIRS<>(cc);
+        int offHeapMB = DataUtils.getConfigParam(config, "cacheOffHeapSize", 0);
+        offHeapCache = offHeapMB <= 0 ? null : new CacheLongKeyOffHeap((long) offHeapMB << 20,
+                cc == null ? 16 : cc.segmentCount, config.containsKey("cacheOffHeapCompress"));
 
         CacheLongKeyLIRS.Config cc2 = new CacheLongKeyLIRS.Config();
         cc2.maxMemory = 1024L * 1024L;
@@ -248,6 +344,8 @@ protected FileStore(Map<String, Object> config) {
             }
         }
         this.maxPageSize = maxPageSize;
+        serializationThreads = Math.max(1, DataUtils.getConfigParam(config, "serializationThreads", 1));
+        readAhead = Math.max(0, DataUtils.getConfigParam(config, "readAhead", 0));
     }
 
     public abstract void open(String fileName, boolean readOnly, char[] encryptionKey);
@@ -271,6 +369,7 @@ public final void bind(MVStore mvStore) {
     }
 
     public final void stop(long allowedCompactionTime) {
+        shutdownReadAhead();
         if (allowedCompactionTime > 0) {
             compactStore(allowedCompactionTime);
         }
@@ -279,8 +378,10 @@ public final void stop(long allowedCompactionTime) {
     }
 
     public void close() {
+        shutdownReadAhead();
         layout.close();
         closed = true;
+        shutdownSerializationWorkers();
         chunks.clear();
     }
 
@@ -421,20 +522,79 @@ public final void setAutoCommitDelay(int millis) {
             autoCommitDelay = millis;
             if (!isReadOnly()) {
                 stopBackgroundThread(millis >= 0);
-                // start the background thread if needed
-                if (millis > 0 && mvStore.isOpen()) {
-                    int sleep = Math.max(10, millis / 3);
-                    BackgroundWriterThread t = new BackgroundWriterThread(this, sleep, toString());
-                    if (backgroundWriterThread.compareAndSet(null, t)) {
-                        t.start();
-                        serializationExecutor = Utils.createSingleThreadExecutor("H2-serialization");
-                        bufferSaveExecutor = Utils.createSingleThreadExecutor("H2-save");
-                    }
+                // start the background thread if needed, a negative value
+                // is used while the store is being closed
+                if ((millis > 0 || millis == 0 && asyncCommitTime >= 0) && mvStore.isOpen()) {
+                    startBackgroundThread();
                 }
             }
         }
     }
 
+    private void startBackgroundThread() {
+        BackgroundWriterThread t = new BackgroundWriterThread(this, toString());
+        if (backgroundWriterThread.compareAndSet(null, t)) {
+            t.start();
+            // the pipeline is only used for changes written by auto-commit
+            if (autoCommitDelay > 0) {
+                serializationExecutor = Utils.createSingleThreadExecutor("H2-serialization");
+                bufferSaveExecutor = Utils.createSingleThreadExecutor("H2-save");
+            }
+        }
+    }
+
+    /**
+     * Get the time in milliseconds for the background writer to sleep between
+     * its runs.
+     *
+     * @return the time in milliseconds
+     */
+    private int getBackgroundWriterSleep() {
+        int delay = autoCommitDelay;
+        int asyncDelay = asyncCommitDelay;
+        if (delay <= 0 || asyncDelay > 0 && asyncDelay < delay) {
+            delay = asyncDelay;
+        }
+        return Math.max(10, delay / 3);
+    }
+
+    /**
+     * Get the maximum delay to write and sync changes of asynchronous commits.
+     *
+     * @return the delay in milliseconds, or 0 if asynchronous commits are
+     *         disabled
+     */
+    public final int getAsyncCommitDelay() {
+        return asyncCommitDelay;
+    }
+
+    /**
+     * Set the maximum delay in milliseconds to write and sync changes of
+     * asynchronous commits. The background writer is started with the first
+     * asynchronous commit, if auto-commit is disabled.
+     * <p>
+     * To disable asynchronous commits, set the value to 0.
+     *
+     * @param millis the maximum delay
+     */
+    public final void setAsyncCommitDelay(int millis) {
+        asyncCommitDelay = Math.max(0, millis);
+    }
+
+    /**
+     * Register an asynchronous commit, which changes are already applied to
+     * the maps. The background writer writes and syncs them within the
+     * asynchronous commit delay.
+     */
+    public final void scheduleAsyncCommit() {
+        if (asyncCommitTime < 0) {
+            asyncCommitTime = getTimeSinceCreation();
+        }
+        if (backgroundWriterThread.get() == null && autoCommitDelay >= 0 && !isReadOnly() && mvStore.isOpen()) {
+            startBackgroundThread();
+        }
+    }
+
     /**
      * Check whether all data can be read from this version. This requires that
      * all chunks referenced by this version are still available (not
@@ -663,6 +823,11 @@ public final void dropUnusedChunks() {
                             cache.remove(pagePos);
                         }
                     }
+                    if (toc != null && offHeapCache != null) {
+                        for (long tocElement : toc) {
+                            offHeapCache.remove(DataUtils.composePagePos(chunk.id, tocElement));
+                        }
+                    }
 
                     if (layout.remove(Chunk.getMetaKey(chunk.id)) != null) {
                         mvStore.markMetaChanged();
@@ -724,6 +889,17 @@ protected final ByteBuffer readFully(FileChannel file, long pos, int len) {
         return dst;
     }
 
+    /**
+     * Called before the data of a page is read and decoded. Until
+     * {@link #afterPageRead()} is called, readFully may return a buffer, which
+     * is only valid until then, instead of a copy of the data.
+     */
+    protected void beforePageRead() {}
+
+    /**
+     * Called after the data of a page is read and decoded.
+     */
+    protected void afterPageRead() {}
 
     /**
      * Allocate logical space and assign position of the buffer within the store.
@@ -1274,7 +1450,7 @@ public long getWriteCount() {
      *
      * @return the number of write operations
      */
-    private long getWriteBytes() {
+    final long getWriteBytes() {
         return writeBytes.get();
     }
 
@@ -1456,15 +1632,23 @@ private void serializeToBuffer(WriteBuffer buff, ArrayList<Page<?, ?>> changed,
 
         long version = c.version;
         PageSerializationManager pageSerializationManager = new PageSerializationManager(c, buff);
-        for (Page<?,?> p : changed) {
-            String key = MVMap.getMapRootKey(p.getMapId());
-            if (p.getTotalCount() == 0) {
-                layout.remove(key);
-            } else {
-                p.writeUnsavedRecursive(pageSerializationManager);
-                long root = p.getPos();
-                layout.put(key, Long.toHexString(root));
+        ThreadPoolExecutor workers = getSerializationWorkers();
+        if (workers != null) {
+            pageSerializationManager.serializeLeavesInParallel(changed, workers, serializationThreads);
+        }
+        try {
+            for (Page<?,?> p : changed) {
+                String key = MVMap.getMapRootKey(p.getMapId());
+                if (p.getTotalCount() == 0) {
+                    layout.remove(key);
+                } else {
+                    p.writeUnsavedRecursive(pageSerializationManager);
+                    long root = p.getPos();
+                    layout.put(key, Long.toHexString(root));
+                }
             }
+        } finally {
+            pageSerializationManager.releaseSerializedBodies();
         }
 
         acceptChunkOccupancyChanges(c.time, version);
@@ -1718,7 +1902,38 @@ public void populateInfo(BiConsumer<String, String> consumer) {
         consumer.accept("info.CACHE_MAX_SIZE", Integer.toString(getCacheSize()));
         consumer.accept("info.CACHE_SIZE", Integer.toString(getCacheSizeUsed()));
         consumer.accept("info.CACHE_HIT_RATIO", Integer.toString(getCacheHitRatio()));
+        if (cache != null) {
+            consumer.accept("info.CACHE_HITS", Long.toString(cache.getHits()));
+            consumer.accept("info.CACHE_MISSES", Long.toString(cache.getMisses()));
+            consumer.accept("info.CACHE_ADMISSION_REJECTS", Long.toString(cache.getAdmissionRejects()));
+        }
         consumer.accept("info.TOC_CACHE_HIT_RATIO", Integer.toString(getTocCacheHitRatio()));
+        if (offHeapCache != null) {
+            consumer.accept("info.CACHE_OFF_HEAP_MAX_SIZE", Long.toString(offHeapCache.getMaxMemory() >> 20));
+            consumer.accept("info.CACHE_OFF_HEAP_SIZE", Long.toString(offHeapCache.getUsedMemory() >> 20));
+            long hits = offHeapCache.getHits();
+            consumer.accept("info.CACHE_OFF_HEAP_HIT_RATIO",
+                    Long.toString(100 * hits / (hits + offHeapCache.getMisses() + 1)));
+        }
+        if (compactionScheduler != null) {
+            compactionScheduler.populateInfo(consumer);
+        }
+        if (readAhead > 0) {
+            consumer.accept("info.READ_AHEAD_PAGES", Long.toString(readAheadPages.get()));
+        }
+        if (serializationThreads > 1) {
+            consumer.accept("info.PARALLEL_SERIALIZED_PAGES", Long.toString(parallelSerializedPages.get()));
+        }
+    }
+
+    /**
+     * Get the scheduler of background compaction.
+     *
+     * @return the scheduler, or null if compaction is only done when the
+     *         store is idle
+     */
+    protected final CompactionScheduler getCompactionScheduler() {
+        return compactionScheduler;
     }
 
 
@@ -1777,6 +1992,33 @@ private void shutdownExecutors() {
         bufferSaveExecutor = null;
     }
 
+    /**
+     * Get the executor for parallel serialization of leaf pages. It is
+     * created on first use, for chunks written by the background thread and
+     * by explicit commits alike.
+     *
+     * @return the executor, or null if parallel serialization is disabled
+     */
+    private ThreadPoolExecutor getSerializationWorkers() {
+        assert serializationLock.isHeldByCurrentThread();
+        if (serializationWorkers == null && serializationThreads > 1 && !closed) {
+            serializationWorkers = Utils.createFixedThreadPool("H2-serialization-worker", serializationThreads);
+        }
+        return serializationWorkers;
+    }
+
+    private void shutdownSerializationWorkers() {
+        ThreadPoolExecutor workers;
+        serializationLock.lock();
+        try {
+            workers = serializationWorkers;
+            serializationWorkers = null;
+        } finally {
+            serializationLock.unlock();
+        }
+        Utils.shutdownExecutor(workers);
+    }
+
     private Iterable<C> findOldChunks(int writeLimit, int targetFillRate) {
         assert hasPersistentData();
         long time = getTimeSinceCreation();
@@ -1835,12 +2077,21 @@ void writeInBackground() {
                 // could also commit when there are many unsaved pages,
                 // but according to a test it doesn't really help
                 long time = getTimeSinceCreation();
-                if (time > lastCommitTime + autoCommitDelay) {
-                    mvStore.tryCommit();
+                if (autoCommitDelay > 0) {
+                    if (time > lastCommitTime + autoCommitDelay) {
+                        mvStore.tryCommit();
+                    }
+                    doHousekeeping(mvStore);
+                    // less than 10 I/O operations will still count as "idle"
+                    autoCompactLastFileOpCount = getWriteCount() + getReadCount() + 10;
+                }
+                long asyncTime = asyncCommitTime;
+                // do not wait for the next run, if it would be too late
+                if (asyncTime >= 0 && time + getBackgroundWriterSleep() >= asyncTime + asyncCommitDelay) {
+                    // later asynchronous commits schedule the next write
+                    asyncCommitTime = -1;
+                    mvStore.makeDurable(mvStore.getCurrentVersion());
                 }
-                doHousekeeping(mvStore);
-                // less than 10 I/O operations will still count as "idle"
-                autoCompactLastFileOpCount = getWriteCount() + getReadCount() + 10;
             }
         } catch (InterruptedException ignore) {
         } catch (Throwable e) {
@@ -1851,6 +2102,19 @@ void writeInBackground() {
     }
 
     protected boolean rewriteChunks(int writeLimit, int targetFillRate) {
+        return rewriteLeastFilledChunks(writeLimit, targetFillRate) != null;
+    }
+
+    /**
+     * Rewrite live pages of the chunks, which are most desirable to free up,
+     * with the total amount of live data up to the given limit.
+     *
+     * @param writeLimit the maximum total live length of chunks to rewrite
+     * @param targetFillRate only chunks with lower fill rate are rewritten
+     * @return the number of rewritten pages and the total live length of
+     *         rewritten chunks, or null if nothing was rewritten
+     */
+    final long[] rewriteLeastFilledChunks(int writeLimit, int targetFillRate) {
         serializationLock.lock();
         try {
             MVStore.TxCounter txCounter = mvStore.registerVersionUsage();
@@ -1858,13 +2122,20 @@ protected boolean rewriteChunks(int writeLimit, int targetFillRate) {
                 acceptChunkOccupancyChanges(getTimeSinceCreation(), mvStore.getCurrentVersion());
                 Iterable<C> old = findOldChunks(writeLimit, targetFillRate);
                 if (old != null) {
+                    long liveLength = 0;
+                    for (C c : old) {
+                        liveLength += c.maxLenLive;
+                    }
                     HashSet<Integer> idSet = createIdSet(old);
-                    return !idSet.isEmpty() && compactRewrite(idSet) > 0;
+                    int pageCount;
+                    if (!idSet.isEmpty() && (pageCount = compactRewrite(idSet)) > 0) {
+                        return new long[] { pageCount, liveLength };
+                    }
                 }
             } finally {
                 mvStore.deregisterVersionUsage(txCounter);
             }
-            return false;
+            return null;
         } finally {
             serializationLock.unlock();
         }
@@ -1951,42 +2222,68 @@ private int rewriteChunks(Set<Integer> set, boolean secondPass) {
      * @return the page
      */
     <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
+        return readPage(map, pos, readAhead > 0);
+    }
+
+    private <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos, boolean awaitReadAhead) {
         try {
             if (!DataUtils.isPageSaved(pos)) {
                 throw DataUtils.newMVStoreException(
                         DataUtils.ERROR_FILE_CORRUPT, "Position 0");
             }
             Page<K,V> page = readPageFromCache(pos);
+            if (page == null && awaitReadAhead) {
+                page = awaitReadAhead(pos);
+            }
             if (page == null) {
                 C chunk = getChunk(pos);
                 int pageOffset = DataUtils.getPageOffset(pos);
-                while(true) {
-                    MVStoreException exception = null;
-                    ByteBuffer buff = chunk.buffer;
-                    boolean alreadySaved = buff == null;
-                    if (alreadySaved) {
-                        buff = chunk.readBufferForPage(this, pageOffset, pos);
-                    } else {
-//                        System.err.println("Using unsaved buffer " + chunk.id + "/" + pageOffset);
-                        buff = buff.duplicate();
-                        buff.position(pageOffset);
-                        buff = buff.slice();
-                    }
-                    try {
-                        page = Page.read(buff, pos, map);
-                    } catch (MVStoreException e) {
-                        exception = e;
-                    } catch (Exception e) {
-                        exception = DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
-                                "Unable to read the page at position 0x{0}, chunk {1}, offset 0x{3}",
-                                Long.toHexString(pos), chunk, Long.toHexString(pageOffset), e);
-                    }
-                    if (alreadySaved) {
-                        if (exception == null) {
-                            break;
+                beforePageRead();
+                try {
+                    while(true) {
+                        MVStoreException exception = null;
+                        ByteBuffer buff = chunk.buffer;
+                        boolean alreadySaved = buff == null;
+                        ByteBuffer bytesToCache = null;
+                        long block = chunk.block;
+                        if (alreadySaved) {
+                            buff = offHeapCache == null ? null : offHeapCache.get(pos, chunk.version);
+                            if (buff == null) {
+                                buff = chunk.readBufferForPage(this, pageOffset, pos);
+                                bytesToCache = offHeapCache == null ? null : buff.duplicate();
+                            }
+                        } else {
+//                            System.err.println("Using unsaved buffer " + chunk.id + "/" + pageOffset);
+                            buff = buff.duplicate();
+                            buff.position(pageOffset);
+                            buff = buff.slice();
+                        }
+                        try {
+                            page = Page.read(buff, pos, map);
+                        } catch (MVStoreException e) {
+                            exception = e;
+                        } catch (Exception e) {
+                            exception = DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                                    "Unable to read the page at position 0x{0}, chunk {1}, offset 0x{3}",
+                                    Long.toHexString(pos), chunk, Long.toHexString(pageOffset), e);
+                        }
+                        if (alreadySaved) {
+                            if (chunk.block != block) {
+                                // the chunk was moved, and the old location may have been
+                                // overwritten while the page was decoded from a mapped buffer
+                                continue;
+                            }
+                            if (exception == null) {
+                                if (bytesToCache != null) {
+                                    cacheSerializedPage(pos, chunk, bytesToCache);
+                                }
+                                break;
+                            }
+                            throw exception;
                         }
-                        throw exception;
                     }
+                } finally {
+                    afterPageRead();
                 }
                 cachePage(page);
             }
@@ -2050,6 +2347,210 @@ private int calculatePageNo(long pos) {
         return pageNo;
     }
 
+    /**
+     * Add the serialized page to the off-heap cache.
+     *
+     * @param pos the page position
+     * @param chunk the chunk
+     * @param buff the buffer, positioned at the start of the page, and
+     *            possibly containing more data after it
+     */
+    private void cacheSerializedPage(long pos, C chunk, ByteBuffer buff) {
+        // only the page itself, without the rest of the read block
+        buff.limit(buff.position() + Math.min(buff.remaining(), buff.getInt(buff.position())));
+        offHeapCache.put(pos, chunk.version, buff);
+    }
+
+    /**
+     * Get the maximum number of pages to read ahead of a sequential scan.
+     *
+     * @return the number of pages, 0 if read-ahead is disabled
+     */
+    int getReadAhead() {
+        return cache == null ? 0 : readAhead;
+    }
+
+    /**
+     * Read pages ahead of a sequential scan into the cache, in background.
+     * Pages, which are already cached, are skipped. If too many read-ahead
+     * tasks are pending, the request is ignored.
+     *
+     * @param map the map
+     * @param positions the positions of the pages
+     * @param count the number of positions
+     */
+    void readAhead(MVMap<?,?> map, long[] positions, int count) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            long pos = positions[i];
+            if (DataUtils.isPageSaved(pos) && !cache.containsKey(pos)) {
+                positions[n++] = pos;
+            }
+        }
+        if (n == 0 || readAheadTasks.get() >= MAX_READ_AHEAD_TASKS) {
+            return;
+        }
+        long[] pages = Arrays.copyOf(positions, n);
+        // readers of these pages wait for the task, instead of reading them again
+        CountDownLatch done = new CountDownLatch(1);
+        for (long pos : pages) {
+            readAheadInFlight.putIfAbsent(pos, done);
+        }
+        readAheadTasks.incrementAndGet();
+        Runnable task = () -> {
+            try {
+                if (!closed) {
+                    readPages(map, pages, false);
+                    readAheadPages.addAndGet(pages.length);
+                }
+            } catch (Exception ignore) {
+                // read-ahead is only a hint, the page is read again when needed
+            } finally {
+                readAheadDone(pages, done);
+            }
+        };
+        try {
+            getReadAheadExecutor().execute(task);
+        } catch (RejectedExecutionException ex) {
+            readAheadDone(pages, done);
+        }
+    }
+
+    private void readAheadDone(long[] pages, CountDownLatch done) {
+        for (long pos : pages) {
+            readAheadInFlight.remove(pos, done);
+        }
+        done.countDown();
+        readAheadTasks.decrementAndGet();
+    }
+
+    /**
+     * If the page is being read ahead right now, wait until it is done.
+     *
+     * @param pos the page position
+     * @return the page, if it is in the cache now, or null
+     */
+    private <K,V> Page<K,V> awaitReadAhead(long pos) {
+        CountDownLatch latch = readAheadInFlight.get(pos);
+        if (latch == null) {
+            return null;
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // the caller reads the page synchronously
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return readPageFromCache(pos);
+    }
+
+    private ThreadPoolExecutor getReadAheadExecutor() {
+        readAheadLock.lock();
+        try {
+            if (readAheadExecutor == null) {
+                readAheadExecutor = Utils.createFixedThreadPool("H2-read-ahead",
+                        Math.min(4, Runtime.getRuntime().availableProcessors()));
+            }
+            return readAheadExecutor;
+        } finally {
+            readAheadLock.unlock();
+        }
+    }
+
+    private void shutdownReadAhead() {
+        ThreadPoolExecutor executor;
+        readAheadLock.lock();
+        try {
+            executor = readAheadExecutor;
+            readAheadExecutor = null;
+        } finally {
+            readAheadLock.unlock();
+        }
+        Utils.shutdownExecutor(executor);
+    }
+
+    /**
+     * Read the given pages, and put them into the cache. Pages, which are
+     * stored close to each other in the same chunk, are read with a single
+     * read operation.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map
+     * @param positions the positions of the pages
+     * @param awaitReadAhead whether to wait for pages, which are being read
+     *            ahead right now, instead of reading them again
+     * @return the pages, in the same order as the positions
+     */
+    <K,V> Page<K,V>[] readPages(MVMap<K,V> map, long[] positions, boolean awaitReadAhead) {
+        long[] sorted = positions.clone();
+        // sorted by chunk, and then by offset
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        @SuppressWarnings("unchecked")
+        Page<K,V>[] pages = new Page[n];
+        for (int i = 0; i < n;) {
+            long pos = sorted[i];
+            int chunkId = DataUtils.getPageChunkId(pos);
+            int start = DataUtils.getPageOffset(pos);
+            int maxLength = DataUtils.getPageMaxLength(pos);
+            int end = start + maxLength;
+            int j = i + 1;
+            if (maxLength != DataUtils.PAGE_LARGE) {
+                for (; j < n; j++) {
+                    long p = sorted[j];
+                    int offset = DataUtils.getPageOffset(p);
+                    int l = DataUtils.getPageMaxLength(p);
+                    if (DataUtils.getPageChunkId(p) != chunkId || l == DataUtils.PAGE_LARGE
+                            || offset - end > MAX_READ_GAP || offset + l - start > MAX_READ_LENGTH) {
+                        break;
+                    }
+                    end = Math.max(end, offset + l);
+                }
+            }
+            C chunk = getChunk(pos);
+            if (j == i + 1 || chunk.buffer != null) {
+                // single page, or a chunk, which is not written yet
+                for (int k = i; k < j; k++) {
+                    pages[k] = readPage(map, sorted[k], awaitReadAhead);
+                }
+            } else {
+                ByteBuffer buff = chunk.readBufferForRange(this, start, end - start);
+                for (int k = i; k < j; k++) {
+                    long p = sorted[k];
+                    Page<K,V> page = readPageFromCache(p);
+                    if (page == null) {
+                        ByteBuffer pageBuff = buff.duplicate();
+                        pageBuff.position(DataUtils.getPageOffset(p) - start);
+                        pageBuff = pageBuff.slice();
+                        try {
+                            page = Page.read(pageBuff.duplicate(), p, map);
+                            if (offHeapCache != null) {
+                                cacheSerializedPage(p, chunk, pageBuff);
+                            }
+                            cachePage(page);
+                        } catch (Exception e) {
+                            // let the regular code path deal with it
+                            page = readPage(map, p, false);
+                        }
+                    }
+                    pages[k] = page;
+                }
+            }
+            i = j;
+        }
+        if (n > 1) {
+            @SuppressWarnings("unchecked")
+            Page<K,V>[] result = new Page[n];
+            for (int k = 0; k < n; k++) {
+                result[k] = pages[Arrays.binarySearch(sorted, positions[k])];
+            }
+            pages = result;
+        }
+        return pages;
+    }
+
     private void clearCaches() {
         if (cache != null) {
             cache.clear();
@@ -2057,6 +2558,9 @@ private void clearCaches() {
         if (chunksToC != null) {
             chunksToC.clear();
         }
+        if (offHeapCache != null) {
+            offHeapCache.clear();
+        }
         removedPages.clear();
     }
 
@@ -2099,10 +2603,27 @@ public void accountForRemovedPage(long pos, long version, boolean pinned, int pa
 
     public final class PageSerializationManager
     {
+        /**
+         * The minimum number of unsaved leaf pages per worker,
+         * for parallel serialization to be worth the overhead.
+         */
+        private static final int MIN_LEAVES_PER_WORKER = 16;
+
         private final C chunk;
         private final WriteBuffer buff;
         private final List<Long> toc = new ArrayList<>();
 
+        /**
+         * Keys and values of leaf pages, serialized in advance by worker threads,
+         * or null if parallel serialization is not used for this chunk
+         */
+        private IdentityHashMap<Page<?,?>, SerializedBody> serializedBodies;
+
+        /**
+         * Worker buffers, referenced by serializedBodies
+         */
+        private List<WriteBuffer> workerBuffers;
+
         PageSerializationManager(C chunk, WriteBuffer buff) {
             this.chunk = chunk;
             this.buff = buff;
@@ -2146,6 +2667,103 @@ public void onPageSerialized(Page<?,?> page, boolean isDeleted, int diskSpaceUse
             }
         }
 
+        /**
+         * Serialize keys and values of all unsaved leaf pages of the specified
+         * roots using worker threads. Leaves are partitioned into contiguous
+         * ranges (subtrees) in the order of their subsequent placement into
+         * the chunk, and each worker writes its range into a separate
+         * buffer. Later, {@link Page#write} copies those bytes into the chunk
+         * buffer, so chunk layout is exactly the same, as if pages would be
+         * serialized sequentially.
+         *
+         * @param roots the root pages of changed maps
+         * @param executor to run workers on
+         * @param threads the number of workers
+         */
+        void serializeLeavesInParallel(List<Page<?,?>> roots, ThreadPoolExecutor executor, int threads) {
+            List<Page<?,?>> leaves = new ArrayList<>();
+            for (Page<?,?> p : roots) {
+                if (p.getTotalCount() > 0) {
+                    p.collectUnsavedLeaves(leaves);
+                }
+            }
+            int leafCount = leaves.size();
+            int workerCount = Math.min(threads, leafCount / MIN_LEAVES_PER_WORKER);
+            if (workerCount <= 1) {
+                return;
+            }
+            int compressionLevel = mvStore.getCompressionLevel();
+            List<Future<SerializedBody[]>> futures = new ArrayList<>(workerCount);
+            workerBuffers = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                List<Page<?,?>> range = leaves.subList(leafCount * i / workerCount,
+                                                        leafCount * (i + 1) / workerCount);
+                WriteBuffer workerBuffer = getWriteBuffer();
+                workerBuffers.add(workerBuffer);
+                futures.add(executor.submit(() -> serializeBodies(range, workerBuffer, compressionLevel)));
+            }
+            IdentityHashMap<Page<?,?>, SerializedBody> bodies = new IdentityHashMap<>(leafCount);
+            int index = 0;
+            try {
+                for (Future<SerializedBody[]> future : futures) {
+                    for (SerializedBody body : future.get()) {
+                        bodies.put(leaves.get(index++), body);
+                    }
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL,
+                        "Parallel page serialization failed", e);
+            }
+            serializedBodies = bodies;
+        }
+
+        private SerializedBody[] serializeBodies(List<Page<?,?>> pages, WriteBuffer workerBuffer,
+                                                 int compressionLevel) {
+            // compressors are not thread-safe, so each worker task needs its own
+            Compressor compressor = compressionLevel <= 0 ? null
+                    : compressionLevel == 1 ? new CompressLZF() : new CompressDeflate();
+            SerializedBody[] result = new SerializedBody[pages.size()];
+            for (int i = 0; i < result.length; i++) {
+                int start = workerBuffer.position();
+                int compressType = pages.get(i).writeBody(workerBuffer, compressionLevel, compressor);
+                result[i] = new SerializedBody(workerBuffer, start, workerBuffer.position() - start, compressType);
+            }
+            return result;
+        }
+
+        /**
+         * Copy keys and values of the page, if they were serialized in advance,
+         * into the chunk buffer at its current position.
+         *
+         * @param page to copy serialized keys and values for
+         * @return compression flags of the copied data,
+         *         or -1 if page was not serialized in advance
+         */
+        int copySerializedBody(Page<?,?> page) {
+            SerializedBody body;
+            if (serializedBodies == null || (body = serializedBodies.get(page)) == null) {
+                return -1;
+            }
+            ByteBuffer src = body.buffer.getBuffer().duplicate();
+            src.limit(body.start + body.length).position(body.start);
+            buff.put(src);
+            parallelSerializedPages.incrementAndGet();
+            return body.compressType;
+        }
+
+        /**
+         * Return worker buffers to the pool, once all pages are placed into the chunk.
+         */
+        void releaseSerializedBodies() {
+            serializedBodies = null;
+            if (workerBuffers != null) {
+                for (WriteBuffer workerBuffer : workerBuffers) {
+                    releaseWriteBuffer(workerBuffer);
+                }
+                workerBuffers = null;
+            }
+        }
+
         public void serializeToC() {
             long[] tocArray = new long[toc.size()];
             int index = 0;
@@ -2159,6 +2777,23 @@ public void serializeToC() {
     }
 
 
+    /**
+     * Location of page's keys and values, serialized by a worker thread.
+     */
+    private static final class SerializedBody {
+        final WriteBuffer buffer;
+        final int start;
+        final int length;
+        final int compressType;
+
+        SerializedBody(WriteBuffer buffer, int start, int length, int compressType) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            this.compressType = compressType;
+        }
+    }
+
     private static final class RemovedPageInfo implements Comparable<RemovedPageInfo> {
         final long version;
         final long removedPageInfo;
@@ -2233,12 +2868,10 @@ private static final class BackgroundWriterThread extends Thread {
 
         public final Object sync = new Object();
         private final FileStore<?> store;
-        private final int sleep;
 
-        BackgroundWriterThread(FileStore<?> store, int sleep, String fileStoreName) {
+        BackgroundWriterThread(FileStore<?> store, String fileStoreName) {
             super("MVStore background writer " + fileStoreName);
             this.store = store;
-            this.sleep = sleep;
             setDaemon(true);
         }
 
@@ -2247,7 +2880,7 @@ public void run() {
             while (store.isBackgroundThread()) {
                 synchronized (sync) {
                     try {
-                        sync.wait(sleep);
+                        sync.wait(store.getBackgroundWriterSleep());
                     } catch (InterruptedException ignore) {/**/}
                 }
                 if (!store.isBackgroundThread()) {
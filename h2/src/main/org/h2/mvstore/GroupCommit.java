@@ -0,0 +1,167 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Class GroupCommit coordinates concurrent durable commits, so that a single
+ * chunk write and a single file sync cover all committers, which arrived
+ * while previous write was in progress, or within a short wait period.
+ * <p>
+ * Each committer takes a ticket. The first committer, which finds no leader,
+ * becomes the leader: it optionally waits for more committers to arrive
+ * (up to max wait time, or until batch size is reached), then commits the
+ * store and syncs the file on behalf of all tickets issued so far. Other
+ * committers (followers) just wait until their ticket is covered by a
+ * completed commit.
+ */
+final class GroupCommit {
+
+    private final MVStore store;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * The maximum number of committers in a batch, leader does not wait
+     * for more committers once this number is reached.
+     */
+    private volatile int batchSize;
+
+    /**
+     * The maximum time in nanoseconds for a leader to wait for more committers.
+     */
+    private volatile long maxWaitNanos;
+
+    /**
+     * The last issued ticket.
+     */
+    private long lastTicket;          // guarded by lock
+
+    /**
+     * All tickets up to (and including) this one are durable.
+     */
+    private long completedTicket;     // guarded by lock
+
+    /**
+     * Whether some committer is currently acting as a leader.
+     */
+    private boolean leaderActive;     // guarded by lock
+
+    /**
+     * The size of the previous batch. Leader only waits for more committers,
+     * if there was some concurrency before, so single committer does not pay
+     * for the wait.
+     */
+    private int lastBatchSize;        // guarded by lock
+
+    private final AtomicLong groupCount = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    GroupCommit(MVStore store, int batchSize, int maxWaitMicros) {
+        this.store = store;
+        setBatchSize(batchSize);
+        setMaxWait(maxWaitMicros);
+    }
+
+    void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    void setMaxWait(int micros) {
+        maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, micros));
+    }
+
+    int getMaxWait() {
+        return (int) TimeUnit.NANOSECONDS.toMicros(maxWaitNanos);
+    }
+
+    /**
+     * Make all changes done so far by the current thread durable, possibly
+     * together with changes of other concurrent committers.
+     */
+    void commit() {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            long ticket = ++lastTicket;
+            // wake up the leader, which may be waiting for the batch to fill up
+            changed.signalAll();
+            while (completedTicket < ticket) {
+                if (leaderActive) {
+                    changed.awaitUninterruptibly();
+                } else {
+                    lead(ticket);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        long latency = System.nanoTime() - start;
+        commitCount.incrementAndGet();
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private void lead(long ticket) {
+        leaderActive = true;
+        try {
+            long waitNanos = maxWaitNanos;
+            if (waitNanos > 0 && lastBatchSize > 1) {
+                int size = batchSize;
+                long deadline = System.nanoTime() + waitNanos;
+                while (lastTicket - completedTicket < size && waitNanos > 0) {
+                    try {
+                        waitNanos = changed.awaitNanos(waitNanos);
+                    } catch (InterruptedException ignore) {
+                        break;
+                    }
+                    waitNanos = Math.min(waitNanos, deadline - System.nanoTime());
+                }
+            }
+            // all committers, which took ticket by now, have their changes
+            // already applied to maps, and they will be written together
+            long covered = lastTicket;
+            lock.unlock();
+            try {
+                store.commit();
+                store.sync();
+            } finally {
+                lock.lock();
+            }
+            lastBatchSize = (int) Math.min(Integer.MAX_VALUE, covered - completedTicket);
+            completedTicket = covered;
+            groupCount.incrementAndGet();
+        } finally {
+            leaderActive = false;
+            changed.signalAll();
+        }
+        assert completedTicket >= ticket;
+    }
+
+    void populateInfo(BiConsumer<String, String> consumer) {
+        long groups = groupCount.get();
+        long commits = commitCount.get();
+        consumer.accept("info.GROUP_COMMIT_COUNT", Long.toString(groups));
+        consumer.accept("info.GROUP_COMMIT_MEMBERS", Long.toString(commits));
+        consumer.accept("info.GROUP_COMMIT_AVG_LATENCY_US",
+                Long.toString(commits == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.get() / commits)));
+        consumer.accept("info.GROUP_COMMIT_MAX_LATENCY_US",
+                Long.toString(TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get())));
+    }
+}
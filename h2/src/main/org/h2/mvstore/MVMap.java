@@ -10,16 +10,20 @@
 import java.util.AbstractList;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.LongDataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.util.MemoryEstimator;
 
@@ -34,6 +38,12 @@
  */
 public class MVMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
 
+    /**
+     * The maximum number of queued operations of other threads, which are
+     * applied by a thread holding the lock of the root.
+     */
+    private static final int MAX_COMBINED_OPERATIONS = 256;
+
     /**
      * The store.
      */
@@ -53,9 +63,20 @@
     private final K[] keysBuffer;
     private final V[] valuesBuffer;
 
+    /**
+     * Whether the pages of this map keep the keys in long arrays.
+     */
+    private final boolean longKeys;
+
     private final Object lock = new Object();
     private volatile boolean notificationRequested;
 
+    /**
+     * The operations, which wait to be applied by the thread holding the lock
+     * of the root, if write combining is enabled.
+     */
+    private final ConcurrentLinkedQueue<PendingOperation<K,V>> pendingOperations = new ConcurrentLinkedQueue<>();
+
     /**
      * Whether the map is closed. Volatile so we don't accidentally write to a
      * closed map in multithreaded mode.
@@ -63,6 +84,12 @@
     private volatile  boolean closed;
     private boolean readOnly;
     private boolean isVolatile;
+
+    /**
+     * Whether a full page at the right edge of the tree is split at its end,
+     * when a key is appended to it.
+     */
+    private boolean rightEdgeSplit;
     private final AtomicLong avgKeySize;
     private final AtomicLong avgValSize;
 
@@ -74,6 +101,7 @@ protected MVMap(Map<String, Object> config, DataType<K> keyType, DataType<V> val
                 ((MVStore) config.get("store")).getKeysPerPage(),
                 config.containsKey("singleWriter") && (Boolean) config.get("singleWriter")
         );
+        rightEdgeSplit = config.containsKey("rightEdgeSplit") && (Boolean) config.get("rightEdgeSplit");
         setInitialRoot(createEmptyLeaf(), store.getCurrentVersion());
     }
 
@@ -102,6 +130,7 @@ private MVMap(MVStore store, DataType<K> keyType, DataType<V> valueType, int id,
         this.keysBuffer = singleWriter ? keyType.createStorage(keysPerPage) : null;
         this.valuesBuffer = singleWriter ? valueType.createStorage(keysPerPage) : null;
         this.singleWriter = singleWriter;
+        this.longKeys = keyType == LongDataType.INSTANCE;
         this.avgKeySize = keyType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
         this.avgValSize = valueType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
 
@@ -429,6 +458,70 @@ public V get(Page<K,V> p, K key) {
         return Page.get(p, key);
     }
 
+    /**
+     * Get the values for a number of keys. Each page is only visited once,
+     * and child pages of the same page, which are not loaded yet, are read
+     * together, with as few read operations as possible.
+     *
+     * @param keys the keys
+     * @return the values, in the same order as the keys, null for keys that
+     *         are not found
+     */
+    public final List<V> getAll(List<? extends K> keys) {
+        int size = keys.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keyType.compare(keys.get(a), keys.get(b)));
+        K[] sortedKeys = keyType.createStorage(size);
+        for (int i = 0; i < size; i++) {
+            sortedKeys[i] = keys.get(order[i]);
+        }
+        Object[] sortedValues = new Object[size];
+        if (size > 0) {
+            getAll(getRootPage(), sortedKeys, 0, size, sortedValues);
+        }
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            values[order[i]] = sortedValues[i];
+        }
+        @SuppressWarnings("unchecked")
+        List<V> result = (List<V>) Arrays.asList(values);
+        return result;
+    }
+
+    private static <K,V> void getAll(Page<K,V> p, K[] keys, int from, int to, Object[] values) {
+        if (p.isLeaf()) {
+            for (int i = from; i < to; i++) {
+                int index = p.binarySearch(keys[i]);
+                values[i] = index >= 0 ? p.getValue(index) : null;
+            }
+            return;
+        }
+        // keys are sorted, so that keys of the same child are adjacent
+        int[] indexes = new int[to - from];
+        int[] bounds = new int[to - from + 1];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int index = getChildIndex(p, keys[i]);
+            if (count == 0 || indexes[count - 1] != index) {
+                indexes[count] = index;
+                bounds[count++] = i;
+            }
+        }
+        bounds[count] = to;
+        Page<K,V>[] children = p.getChildPages(indexes, count);
+        for (int i = 0; i < count; i++) {
+            getAll(children[i], keys, bounds[i], bounds[i + 1], values);
+        }
+    }
+
+    private static <K,V> int getChildIndex(Page<K,V> p, K key) {
+        int index = p.binarySearch(key);
+        return index < 0 ? -index - 1 : index + 1;
+    }
+
     @Override
     public final boolean containsKey(Object key) {
         return get(key) != null;
@@ -632,6 +725,16 @@ final Page<K,V> readPage(long pos) {
         return store.readPage(this, pos);
     }
 
+    /**
+     * Read a number of pages.
+     *
+     * @param positions the positions of the pages
+     * @return the pages, in the same order as the positions
+     */
+    final Page<K,V>[] readPages(long[] positions) {
+        return store.readPages(this, positions);
+    }
+
     /**
      * Set the position of the root page.
      * @param rootPos the position, 0 for empty
@@ -922,6 +1025,30 @@ public final void setVolatile(boolean isVolatile) {
         this.isVolatile = isVolatile;
     }
 
+    /**
+     * Set the page split policy for keys appended at the right edge of the
+     * map. If enabled, and a key larger than all other keys is inserted into
+     * a full page, the page is split at its end instead of in the middle, so
+     * that the left page stays full. This is useful for maps with increasing
+     * keys, such as identity or timestamp keys. Other inserts are not
+     * affected.
+     *
+     * @param rightEdgeSplit whether to split pages at the right edge at the end
+     */
+    public final void setRightEdgeSplit(boolean rightEdgeSplit) {
+        this.rightEdgeSplit = rightEdgeSplit;
+    }
+
+    /**
+     * Whether pages at the right edge of the map are split at the end, when
+     * a key is appended.
+     *
+     * @return whether the right edge split policy is used
+     */
+    public final boolean isRightEdgeSplit() {
+        return rightEdgeSplit;
+    }
+
     /**
      * Whether this is volatile map, meaning that changes
      * are not persisted. By default (even if the store is not persisted),
@@ -993,7 +1120,12 @@ public boolean isEmpty() {
         return sizeAsLong() == 0;
     }
 
-    final long getCreateVersion() {
+    /**
+     * Get the version of the store, in which this map was created.
+     *
+     * @return the version
+     */
+    public final long getCreateVersion() {
         return createVersion;
     }
 
@@ -1420,6 +1552,22 @@ public void trimLast() {
         }
     }
 
+    /**
+     * Create a bulk loader, which appends entries in ascending key order to
+     * this map. Leaf pages are built from the entries directly, and the pages
+     * above them are built bottom-up, instead of descending the tree for each
+     * entry. All keys must be larger than the keys that are in the map
+     * already.
+     *
+     * @param fillFactor the percentage (10 to 100) of the number of keys per
+     *            page and of the maximum page size, up to which pages are
+     *            filled
+     * @return the bulk loader, which needs to be closed
+     */
+    public final BulkLoader<K,V> bulkLoader(int fillFactor) {
+        return new BulkLoader<>(this, fillFactor);
+    }
+
     @Override
     public final String toString() {
         return asString(null);
@@ -1548,6 +1696,7 @@ public M create(MVStore store, Map<String, Object> config) {
      */
     public static class Builder<K, V> extends BasicBuilder<MVMap<K, V>, K, V> {
         private boolean singleWriter;
+        private boolean rightEdgeSplit;
 
         public Builder() {}
 
@@ -1574,9 +1723,21 @@ public Builder<K,V> singleWriter() {
             return this;
         }
 
+        /**
+         * Set up this Builder to produce MVMap, which splits full pages at
+         * the right edge at their end, when keys are appended.
+         * @see MVMap#setRightEdgeSplit(boolean)
+         * @return this Builder for chained execution
+         */
+        public Builder<K,V> rightEdgeSplit() {
+            rightEdgeSplit = true;
+            return this;
+        }
+
         @Override
         protected MVMap<K, V> create(Map<String, Object> config) {
             config.put("singleWriter", singleWriter);
+            config.put("rightEdgeSplit", rightEdgeSplit);
             Object type = config.get("type");
             if(type == null || type.equals("rtree")) {
                 return new MVMap<>(config, getKeyType(), getValueType());
@@ -1720,6 +1881,19 @@ public <T extends V> T selectValue(T existingValue, T providedValue) {
          * so we can re-start update process.
          */
         public void reset() {}
+
+        /**
+         * Whether an operation with this decision maker may be applied by
+         * another thread, while the thread, which requested it, waits for the
+         * result (see {@link MVStore.Builder#writeCombining()}). This is the
+         * case if the decision maker is only used for one operation at a time,
+         * and does not depend on the calling thread, but only on its own state.
+         *
+         * @return true if the operation may be combined
+         */
+        public boolean isCombinable() {
+            return false;
+        }
     }
 
     /**
@@ -1741,6 +1915,9 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
                     beforeWrite();
                 }
                 if (attempt > 3 || rootReference.isLocked()) {
+                    if (store.isWriteCombining() && isCombinable(decisionMaker)) {
+                        return operateCombined(key, value, decisionMaker);
+                    }
                     rootReference = lockRoot(rootReference, attempt);
                     locked = true;
                 }
@@ -1815,13 +1992,17 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
                         value = decisionMaker.selectValue(result, value);
                         p = p.copy();
                         if (index < 0) {
+                            boolean rightEdge = rightEdgeSplit && -index - 1 == p.getKeyCount()
+                                    && isRightEdge(pos);
                             p.insertLeaf(-index - 1, key, value);
                             int keyCount;
                             while ((keyCount = p.getKeyCount()) > store.getKeysPerPage()
                                     || p.getMemory() > store.getMaxPageSize()
                                     && keyCount > (p.isLeaf() ? 1 : 2)) {
                                 long totalCount = p.getTotalCount();
-                                int at = keyCount >> 1;
+                                // at the right edge, only the last key (or the
+                                // last two children of a node) go to the new page
+                                int at = rightEdge ? keyCount - (p.isLeaf() ? 1 : 2) : keyCount >> 1;
                                 K k = p.getKey(at);
                                 Page<K,V> split = p.split(at);
                                 unsavedMemoryHolder.value += p.getMemory() + split.getMemory();
@@ -1868,6 +2049,102 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
         }
     }
 
+    /**
+     * Check whether an operation with the given decision maker may be applied
+     * by another thread. The stateless decision makers of this class are
+     * allowed, and the ones, which declare it (see
+     * {@link DecisionMaker#isCombinable()}).
+     *
+     * @param decisionMaker the decision maker
+     * @return true if the operation may be combined
+     */
+    private static boolean isCombinable(DecisionMaker<?> decisionMaker) {
+        return decisionMaker == DecisionMaker.DEFAULT || decisionMaker == DecisionMaker.PUT
+                || decisionMaker == DecisionMaker.REMOVE || decisionMaker == DecisionMaker.IF_ABSENT
+                || decisionMaker == DecisionMaker.IF_PRESENT || decisionMaker.isCombinable();
+    }
+
+    /**
+     * Add, replace or remove a key-value pair, when the root is contended. The
+     * operation is queued, and applied by the thread, which holds the lock of
+     * the root, together with other queued operations. If the root is not
+     * locked, the current thread locks it, and applies the queued operations
+     * itself. The decision maker must be combinable, see
+     * {@link #isCombinable(DecisionMaker)}.
+     *
+     * @param key the key (may not be null)
+     * @param value new value, it may be null when removal is intended
+     * @param decisionMaker command object to make choices during transaction.
+     * @return previous value, if mapping for that key existed, or null otherwise
+     */
+    private V operateCombined(K key, V value, DecisionMaker<? super V> decisionMaker) {
+        assert isCombinable(decisionMaker) : decisionMaker;
+        PendingOperation<K,V> operation = new PendingOperation<>(key, value, decisionMaker);
+        pendingOperations.add(operation);
+        int attempt = 0;
+        while (!operation.done) {
+            RootReference<K,V> rootReference = getRoot();
+            if (!rootReference.isLocked()) {
+                if (rootReference.tryLock(++attempt) != null) {
+                    try {
+                        applyPendingOperations(operation);
+                    } finally {
+                        unlockRoot();
+                    }
+                }
+            } else if (++attempt <= 8) {
+                Thread.yield();
+            } else {
+                // woken up by the thread, which applies the operation
+                LockSupport.parkNanos(this, 100_000);
+            }
+        }
+        return operation.getResult();
+    }
+
+    /**
+     * Apply the queued operations, while the root is locked by the current
+     * thread. Other operations are only applied up to a limit, once the
+     * operation of the current thread is done.
+     *
+     * @param own the operation of the current thread
+     */
+    private void applyPendingOperations(PendingOperation<K,V> own) {
+        int count = 0;
+        PendingOperation<K,V> operation;
+        while ((!own.done || count < MAX_COMBINED_OPERATIONS) && (operation = pendingOperations.poll()) != null) {
+            // the nested operation releases this hold of the lock
+            lockRoot(getRoot(), 0);
+            try {
+                operation.result = operate(operation.key, operation.value, operation.decisionMaker);
+            } catch (Throwable e) {
+                operation.exception = e;
+            }
+            if (operation != own) {
+                store.onOperationCombined();
+            }
+            operation.complete();
+            count++;
+        }
+    }
+
+    /**
+     * Check whether the path leads along the right edge of the tree.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     * @param pos the parent positions of a page, or null for the root
+     * @return true if every position is the last child of its page
+     */
+    private static <K,V> boolean isRightEdge(CursorPos<K,V> pos) {
+        for (; pos != null; pos = pos.parent) {
+            if (pos.index != pos.page.getKeyCount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private RootReference<K,V> lockRoot(RootReference<K,V> rootReference, int attempt) {
         while(true) {
             RootReference<K,V> lockedRootReference = tryLock(rootReference, attempt++);
@@ -1972,6 +2249,16 @@ private void notifyWaiters() {
         }
     }
 
+    /**
+     * Whether the pages of this map keep the keys in primitive long arrays
+     * instead of arrays of keys.
+     *
+     * @return true if the key type is {@link LongDataType}
+     */
+    final boolean hasLongKeys() {
+        return longKeys;
+    }
+
     final boolean isMemoryEstimationAllowed() {
         return avgKeySize != null || avgValSize != null;
     }
@@ -2043,6 +2330,11 @@ Decision getDecision() {
             return decision;
         }
 
+        @Override
+        public boolean isCombinable() {
+            return true;
+        }
+
         @Override
         public String toString() {
             return "equals_to "+expectedValue;
@@ -2085,6 +2377,11 @@ public <T extends V> T selectValue(T existingValue, T providedValue) {
             return existingValue;
         }
 
+        @Override
+        public boolean isCombinable() {
+            return true;
+        }
+
         @Override
         public void reset() {
             decision = null;
@@ -2100,9 +2397,400 @@ public String toString() {
         }
     }
 
+    /**
+     * Appends entries in ascending key order to a map, building pages
+     * bottom-up.
+     * <p>
+     * Entries are collected into leaf pages, and the leaf pages are installed
+     * into the map in batches. To install a batch, the root is locked, the
+     * pages on the right edge of the tree are opened again, the new leaves are
+     * attached to them, the pages above are built level by level, and then
+     * the new root is set. So that each batch becomes visible at once, and
+     * each page above the leaves is copied once per batch, instead of once per
+     * entry.
+     * <p>
+     * The last page of each level gets at least two children, by moving a
+     * child from its left neighbor if needed, so that the tree stays
+     * balanced.
+     * <p>
+     * This class is not thread safe. Other threads may read and update the
+     * map concurrently, as long as they don't add keys larger than the keys of
+     * the loader.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public static final class BulkLoader<K,V> implements AutoCloseable {
+
+        /**
+         * The number of leaf pages to install at once.
+         */
+        private static final int BATCH_PAGES = 1024;
+
+        private final MVMap<K,V> map;
+
+        private final int leafKeys;
+
+        private final long leafMemory;
+
+        private final int nodeChildren;
+
+        private final ArrayList<Page<K,V>> leaves = new ArrayList<>();
+
+        private final ArrayList<Level<K,V>> levels = new ArrayList<>();
+
+        private K[] keys;
+
+        private V[] values;
+
+        private int keyCount;
+
+        private long memory;
+
+        private K lastKey;
+
+        private int unsavedMemory;
+
+        private boolean closed;
+
+        BulkLoader(MVMap<K,V> map, int fillFactor) {
+            DataUtils.checkArgument(fillFactor >= 10 && fillFactor <= 100,
+                    "The fill factor must be between 10 and 100, is {0}", fillFactor);
+            this.map = map;
+            int keysPerPage = map.store.getKeysPerPage();
+            leafKeys = Math.max(2, keysPerPage * fillFactor / 100);
+            nodeChildren = Math.max(3, keysPerPage * fillFactor / 100 + 1);
+            leafMemory = Math.max(1, map.store.getMaxPageSize() / 100 * fillFactor);
+        }
+
+        /**
+         * Add an entry. The key must be larger than all keys added before.
+         *
+         * @param key the key
+         * @param value the value
+         * @throws IllegalArgumentException if the key is not larger than the
+         *             previous key
+         */
+        public void add(K key, V value) {
+            DataUtils.checkArgument(value != null, "The value may not be null");
+            if (lastKey != null && map.keyType.compare(lastKey, key) >= 0) {
+                throw DataUtils.newIllegalArgumentException(
+                        "The keys must be in ascending order, {0} is not larger than {1}", key, lastKey);
+            }
+            lastKey = key;
+            if (keys == null) {
+                keys = map.keyType.createStorage(leafKeys);
+                values = map.valueType.createStorage(leafKeys);
+            }
+            keys[keyCount] = key;
+            values[keyCount++] = value;
+            memory += map.evaluateMemoryForKey(key) + map.evaluateMemoryForValue(value);
+            if (keyCount == leafKeys || memory >= leafMemory) {
+                addLeaf();
+                if (leaves.size() >= BATCH_PAGES) {
+                    install();
+                }
+            }
+        }
+
+        /**
+         * Install the remaining entries into the map.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (keyCount > 0) {
+                    addLeaf();
+                }
+                install();
+            }
+        }
+
+        private void addLeaf() {
+            leaves.add(Page.createLeaf(map, Arrays.copyOf(keys, keyCount), Arrays.copyOf(values, keyCount), 0));
+            keyCount = 0;
+            memory = 0;
+        }
+
+        private void install() {
+            if (leaves.isEmpty()) {
+                return;
+            }
+            map.beforeWrite();
+            RootReference<K,V> rootReference = map.lockRoot(map.getRoot(), 1);
+            Page<K,V> newRoot = null;
+            try {
+                if (rootReference.getAppendCounter() > 0) {
+                    rootReference = map.flushAppendBuffer(rootReference, true);
+                }
+                newRoot = buildRoot(rootReference);
+            } finally {
+                levels.clear();
+                map.unlockRoot(newRoot);
+            }
+            if (newRoot == null) {
+                // single-childed pages of old versions can not be opened again
+                for (Page<K,V> leaf : leaves) {
+                    for (int i = 0; i < leaf.getKeyCount(); i++) {
+                        map.put(leaf.getKey(i), leaf.getValue(i));
+                    }
+                }
+            }
+            leaves.clear();
+        }
+
+        private Page<K,V> buildRoot(RootReference<K,V> rootReference) {
+            Page<K,V> root = rootReference.root;
+            CursorPos<K,V> tip = null;
+            if (root.getTotalCount() > 0) {
+                tip = root.getAppendCursorPos(null);
+                Page<K,V> leaf = tip.page;
+                K last = leaf.getKey(leaf.getKeyCount() - 1);
+                K first = leaves.get(0).getKey(0);
+                if (map.keyType.compare(last, first) >= 0) {
+                    throw DataUtils.newIllegalArgumentException(
+                            "The key {0} is not larger than the last key {1} of the map", first, last);
+                }
+                for (CursorPos<K,V> pos = tip.parent; pos != null; pos = pos.parent) {
+                    if (pos.page.getKeyCount() == 0) {
+                        return null;
+                    }
+                }
+            }
+            unsavedMemory = 0;
+            reopen(tip);
+            for (Page<K,V> leaf : leaves) {
+                unsavedMemory += leaf.getMemory();
+                addChild(0, new Page.PageReference<>(leaf), leaf.getKey(0));
+            }
+            Page<K,V> newRoot = finish();
+            if (tip != null && tip.parent != null) {
+                unsavedMemory += tip.parent.processRemovalInfo(rootReference.version);
+            }
+            map.registerUnsavedMemory(unsavedMemory);
+            return newRoot;
+        }
+
+        /**
+         * Open the pages on the right edge of the tree again, so that new
+         * children can be attached to them. The last leaf is kept as it is.
+         *
+         * @param tip the position of the last leaf, or null if the map is
+         *            empty
+         */
+        private void reopen(CursorPos<K,V> tip) {
+            if (tip == null) {
+                return;
+            }
+            if (tip.parent == null) {
+                addChild(0, new Page.PageReference<>(tip.page), tip.page.getKey(0));
+                return;
+            }
+            int level = 0;
+            for (CursorPos<K,V> pos = tip.parent; pos != null; pos = pos.parent, level++) {
+                Page<K,V> p = pos.page;
+                // the last child is opened again at the level below,
+                // except for leaves
+                int childCount = level == 0 ? p.getKeyCount() + 1 : p.getKeyCount();
+                Node<K,V> node = new Node<>();
+                for (int i = 0; i < childCount; i++) {
+                    Page.PageReference<K,V> ref = p.getChildPageReference(i);
+                    node.children.add(ref);
+                    node.totalCount += ref.count;
+                    if (i > 0) {
+                        node.keys.add(p.getKey(i - 1));
+                    }
+                }
+                if (pos.parent != null) {
+                    Page<K,V> parent = pos.parent.page;
+                    node.firstKey = parent.getKey(parent.getKeyCount() - 1);
+                }
+                Level<K,V> l = new Level<>();
+                l.current = node;
+                levels.add(l);
+            }
+        }
+
+        private void addChild(int level, Page.PageReference<K,V> ref, K key) {
+            if (level == levels.size()) {
+                levels.add(new Level<>());
+            }
+            Level<K,V> l = levels.get(level);
+            if (l.current.children.size() >= nodeChildren) {
+                if (l.previous != null) {
+                    createNode(level, l.previous);
+                }
+                l.previous = l.current;
+                l.current = new Node<>();
+            }
+            l.current.add(ref, key);
+            if (l.previous != null && l.current.children.size() > 1) {
+                createNode(level, l.previous);
+                l.previous = null;
+            }
+        }
+
+        private void createNode(int level, Node<K,V> node) {
+            int size = node.keys.size();
+            K[] nodeKeys = node.keys.toArray(map.keyType.createStorage(size));
+            Page.PageReference<K,V>[] children = node.children.toArray(Page.createRefStorage(size + 1));
+            Page<K,V> page = Page.createNode(map, nodeKeys, children, node.totalCount, 0);
+            unsavedMemory += page.getMemory();
+            addChild(level + 1, new Page.PageReference<>(page), node.firstKey);
+        }
+
+        private Page<K,V> finish() {
+            for (int level = 0; level < levels.size(); level++) {
+                Level<K,V> l = levels.get(level);
+                Node<K,V> node = l.current;
+                Node<K,V> previous = l.previous;
+                if (previous != null) {
+                    // the last node has only one child,
+                    // take the last child of the previous node
+                    int last = previous.children.size() - 1;
+                    Page.PageReference<K,V> ref = previous.children.remove(last);
+                    K key = previous.keys.remove(last - 1);
+                    previous.totalCount -= ref.count;
+                    node.keys.add(0, node.firstKey);
+                    node.children.add(0, ref);
+                    node.totalCount += ref.count;
+                    node.firstKey = key;
+                    createNode(level, previous);
+                    l.previous = null;
+                }
+                if (level == levels.size() - 1 && node.children.size() == 1) {
+                    Page.PageReference<K,V> ref = node.children.get(0);
+                    Page<K,V> page = ref.getPage();
+                    return page != null ? page : map.readPage(ref.getPos());
+                }
+                createNode(level, node);
+            }
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL, "No root page");
+        }
+
+        /**
+         * The open pages of a level.
+         */
+        private static final class Level<K,V> {
+
+            /**
+             * The page that is being filled.
+             */
+            Node<K,V> current = new Node<>();
+
+            /**
+             * The full page before the current one, which is kept until the
+             * current page has at least two children.
+             */
+            Node<K,V> previous;
+
+            Level() {
+            }
+        }
+
+        /**
+         * A page above the leaves, which is being built.
+         */
+        private static final class Node<K,V> {
+
+            /**
+             * The keys that separate the children.
+             */
+            final ArrayList<K> keys = new ArrayList<>();
+
+            /**
+             * The children.
+             */
+            final ArrayList<Page.PageReference<K,V>> children = new ArrayList<>();
+
+            /**
+             * The key that separates this page from its left neighbor.
+             */
+            K firstKey;
+
+            /**
+             * The total number of entries.
+             */
+            long totalCount;
+
+            Node() {
+            }
+
+            void add(Page.PageReference<K,V> ref, K key) {
+                if (children.isEmpty()) {
+                    firstKey = key;
+                } else {
+                    keys.add(key);
+                }
+                children.add(ref);
+                totalCount += ref.count;
+            }
+        }
+    }
+
     private static final class IntValueHolder {
         int value;
 
         IntValueHolder() {}
     }
+
+    /**
+     * An operation, which waits to be applied by the thread holding the lock
+     * of the root.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    private static final class PendingOperation<K,V> {
+
+        final K key;
+        final V value;
+        final DecisionMaker<? super V> decisionMaker;
+        private final Thread thread = Thread.currentThread();
+
+        /**
+         * The previous value, set before the operation is done.
+         */
+        V result;
+
+        /**
+         * The exception thrown by the operation, if any.
+         */
+        Throwable exception;
+
+        /**
+         * Whether the operation was applied.
+         */
+        volatile boolean done;
+
+        PendingOperation(K key, V value, DecisionMaker<? super V> decisionMaker) {
+            this.key = key;
+            this.value = value;
+            this.decisionMaker = decisionMaker;
+        }
+
+        /**
+         * Mark the operation as done, and wake up the waiting thread.
+         */
+        void complete() {
+            done = true;
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Get the result of the operation in the thread, which requested it.
+         *
+         * @return the previous value
+         */
+        V getResult() {
+            Throwable e = exception;
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return result;
+        }
+    }
 }
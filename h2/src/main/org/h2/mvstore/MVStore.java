@@ -170,6 +170,18 @@ public final class MVStore implements AutoCloseable {
 
     private final int keysPerPage;
 
+    /**
+     * Whether operations on a contended map are applied by the thread which
+     * holds the lock of the root, instead of waiting for the lock.
+     */
+    private final boolean writeCombining;
+
+    /**
+     * The number of operations, which were applied by another thread than the
+     * one, which requested them (see writeCombining).
+     */
+    private final AtomicLong combinedOperations = new AtomicLong();
+
     private long updateCounter = 0;
     private long updateAttemptCounter = 0;
 
@@ -234,11 +246,38 @@ public final class MVStore implements AutoCloseable {
     private long leafCount;
     private long nonLeafCount;
 
+    /**
+     * Coordinator of concurrent durable commits, or null if group commit is disabled
+     */
+    private volatile GroupCommit groupCommit;
+
+    /**
+     * The newest version, changes of which and of all older versions are
+     * written and synced to the file
+     */
+    private final AtomicLong durableVersion = new AtomicLong(INITIAL_VERSION);
+
+    /**
+     * The maximum size of the transactional redo log in MB,
+     * or 0 if the redo log is disabled
+     */
+    private int redoLogSize;
+
     /**
      * Callback for maintenance after some unused store versions were dropped
      */
     private volatile LongConsumer oldestVersionTracker;
 
+    /**
+     * Callback, which is invoked before the changes are written to the file
+     */
+    private volatile Runnable beforeStoreCallback;
+
+    /**
+     * Listener, which is notified when the current version is closed
+     */
+    private volatile VersionListener versionListener;
+
 
     /**
      * Create and open the store.
@@ -268,6 +307,7 @@ public final class MVStore implements AutoCloseable {
         }
         this.fileStore = fileStore;
         keysPerPage = DataUtils.getConfigParam(config, "keysPerPage", 48);
+        writeCombining = config.containsKey("writeCombining");
         backgroundExceptionHandler =
                 (UncaughtExceptionHandler)config.get("backgroundExceptionHandler");
         if (fileStore != null) {
@@ -298,11 +338,16 @@ public final class MVStore implements AutoCloseable {
 
             meta = metaMap;
             scrubMetaMap();
+            durableVersion.set(currentVersion - 1);
 
             // setAutoCommitDelay starts the thread, but only if
             // the parameter is different from the old value
             int delay = DataUtils.getConfigParam(config, "autoCommitDelay", 1000);
             setAutoCommitDelay(delay);
+            setGroupCommit(DataUtils.getConfigParam(config, "groupCommitBatchSize", 0),
+                    DataUtils.getConfigParam(config, "groupCommitMaxWait", 1000));
+            setAsyncCommitDelay(DataUtils.getConfigParam(config, "asyncCommitDelay", 0));
+            redoLogSize = DataUtils.getConfigParam(config, "redoLogSize", 0);
         } else {
             autoCommitMemory = 0;
             meta = openMetaMap();
@@ -784,6 +829,125 @@ private long commit(Predicate<MVStore> check) {
         return INITIAL_VERSION;
     }
 
+    /**
+     * Commit the changes and sync the file, so that changes become durable.
+     * Concurrent callers are grouped together, so a single chunk write and a
+     * single file sync are done on behalf of all of them. If group commit is
+     * disabled, this method is the same as {@link #commit()}.
+     *
+     * @see #setGroupCommit(int, int)
+     */
+    public void groupCommit() {
+        GroupCommit gc = groupCommit;
+        // thread, which holds store lock, can not wait for another leader to commit
+        if (gc == null || storeLock.isHeldByCurrentThread()) {
+            commit();
+        } else {
+            gc.commit();
+        }
+    }
+
+    /**
+     * Register an asynchronous commit. Its changes have to be applied to the
+     * maps already. They are written and synced by the background writer
+     * within the asynchronous commit delay, so the caller does not wait for
+     * them. If asynchronous commits are disabled, this method is the same as
+     * {@link #groupCommit()}.
+     *
+     * @see #setAsyncCommitDelay(int)
+     */
+    public void commitAsync() {
+        FileStore<?> f = fileStore;
+        if (f == null || f.getAsyncCommitDelay() <= 0) {
+            groupCommit();
+        } else {
+            f.scheduleAsyncCommit();
+        }
+    }
+
+    /**
+     * Make the changes of the given version and of all older versions
+     * durable, if they are not durable yet. Changes are written and the file
+     * is synced, together with concurrent durable commits, if group commit is
+     * enabled.
+     *
+     * @param version the version, not newer than the current version
+     * @see #getDurableVersion()
+     */
+    public void makeDurable(long version) {
+        if (fileStore != null && durableVersion.get() < version) {
+            if (currentVersion <= version) {
+                // the version has to be closed by a new chunk, even if all
+                // its changes were written already
+                markMetaChanged();
+            }
+            GroupCommit gc = groupCommit;
+            if (gc == null || storeLock.isHeldByCurrentThread()) {
+                commit();
+                sync();
+            } else {
+                gc.commit();
+            }
+        }
+    }
+
+    /**
+     * Get the newest version, changes of which and of all older versions are
+     * written and synced to the file. Changes are counted only once the file
+     * was synced after they were written, for example by
+     * {@link #groupCommit()} with enabled group commit, by
+     * {@link #makeDurable(long)}, or by the background writer for
+     * asynchronous commits.
+     *
+     * @return the version, or -1 for an in-memory store
+     */
+    public long getDurableVersion() {
+        return fileStore == null ? INITIAL_VERSION : durableVersion.get();
+    }
+
+    /**
+     * Enable or disable group commit.
+     *
+     * @param batchSize the maximum number of commits to wait for in a group,
+     *                  0 to disable group commit
+     * @param maxWaitMicros the maximum time in microseconds to wait for more
+     *                  concurrent commits before writing the group,
+     *                  0 to never wait
+     */
+    public void setGroupCommit(int batchSize, int maxWaitMicros) {
+        if (batchSize <= 0 || fileStore == null) {
+            groupCommit = null;
+        } else {
+            GroupCommit gc = groupCommit;
+            if (gc == null) {
+                groupCommit = new GroupCommit(this, batchSize, maxWaitMicros);
+            } else {
+                gc.setBatchSize(batchSize);
+                gc.setMaxWait(maxWaitMicros);
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of commits in a group.
+     *
+     * @return the batch size, or 0 if group commit is disabled
+     */
+    public int getGroupCommitBatchSize() {
+        GroupCommit gc = groupCommit;
+        return gc == null ? 0 : gc.getBatchSize();
+    }
+
+    /**
+     * Get the maximum time to wait for concurrent commits in a group.
+     *
+     * @return the time in microseconds, or 0 if group commit is disabled
+     */
+    public int getGroupCommitMaxWait() {
+        GroupCommit gc = groupCommit;
+        return gc == null ? 0 : gc.getMaxWait();
+    }
+
     private boolean canStartStoreOperation() {
         // we need to prevent re-entrance, which may be possible,
         // because meta map is modified within storeNow() and that
@@ -795,17 +959,28 @@ private long store(boolean syncWrite) {
         assert storeLock.isHeldByCurrentThread();
         if (isOpenOrStopping() && hasUnsavedChanges() && storeOperationInProgress.compareAndSet(false, true)) {
             try {
+                VersionListener listener = versionListener;
+                if (listener != null) {
+                    listener.beforeClose(currentVersion);
+                }
                 @SuppressWarnings({"NonAtomicVolatileUpdate", "NonAtomicOperationOnVolatileField"})
                 long result = ++currentVersion;
                 if (fileStore == null) {
                     setWriteVersion(currentVersion);
+                    if (listener != null) {
+                        listener.afterClose(result - 1);
+                    }
                 } else {
                     if (fileStore.isReadOnly()) {
                         throw DataUtils.newMVStoreException(
                                 DataUtils.ERROR_WRITING_FAILED, "This store is read-only");
                     }
+                    Runnable callback = beforeStoreCallback;
+                    if (callback != null) {
+                        callback.run();
+                    }
                     fileStore.dropUnusedChunks();
-                    storeNow(syncWrite);
+                    storeNow(syncWrite, listener);
                 }
                 return result;
             } finally {
@@ -831,16 +1006,20 @@ private void setWriteVersion(long version) {
     void storeNow() {
         // it is ok, since that path suppose to be single-threaded under storeLock
         ++currentVersion;
-        storeNow(true);
+        storeNow(true, null);
     }
 
-    private void storeNow(boolean syncWrite) {
+    private void storeNow(boolean syncWrite, VersionListener listener) {
         try {
             int currentUnsavedMemory = unsavedMemory;
             long version = currentVersion;
 
             assert storeLock.isHeldByCurrentThread();
-            fileStore.storeIt(collectChangedMapRoots(version), version, syncWrite);
+            ArrayList<Page<?,?>> changed = collectChangedMapRoots(version);
+            if (listener != null) {
+                listener.afterClose(version - 1);
+            }
+            fileStore.storeIt(changed, version, syncWrite);
 
             // some pages might have been changed in the meantime (in the newest
             // version)
@@ -955,7 +1134,11 @@ public void sync() {
         checkOpen();
         FileStore<?> f = fileStore;
         if (f != null) {
+            // chunks are written in order, and the last chunk is set when it
+            // is complete, so it closes the version before it
+            long version = f.lastChunkVersion() - 1;
             f.sync();
+            durableVersion.accumulateAndGet(version, Math::max);
         }
     }
 
@@ -1021,6 +1204,21 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
         return fileStore.readPage(map, pos);
     }
 
+    /**
+     * Read a number of pages, with as few read operations as possible.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     *
+     * @param map the map
+     * @param positions the page positions
+     * @return the pages, in the same order as the positions
+     */
+    <K,V> Page<K,V>[] readPages(MVMap<K,V> map, long[] positions) {
+        checkNotClosed();
+        return fileStore.readPages(map, positions, true);
+    }
+
     /**
      * Remove a page.
      *  @param pos the position of the page
@@ -1054,6 +1252,18 @@ public int getKeysPerPage() {
         return keysPerPage;
     }
 
+    boolean isWriteCombining() {
+        return writeCombining;
+    }
+
+    /**
+     * Called when an operation was applied by another thread than the one,
+     * which requested it.
+     */
+    void onOperationCombined() {
+        combinedOperations.incrementAndGet();
+    }
+
     public long getMaxPageSize() {
         return fileStore == null ? Long.MAX_VALUE : fileStore.getMaxPageSize();
     }
@@ -1205,6 +1415,26 @@ public void setOldestVersionTracker(LongConsumer callback) {
         oldestVersionTracker = callback;
     }
 
+    /**
+     * Set the callback, which is invoked before the changes are written to
+     * the file. It may change maps, and the changes will be written as well.
+     *
+     * @param callback the callback, or null
+     */
+    public void setBeforeStoreCallback(Runnable callback) {
+        beforeStoreCallback = callback;
+    }
+
+    /**
+     * Set the listener, which is notified when the current version is closed
+     * by a commit.
+     *
+     * @param listener the listener, or null
+     */
+    public void setVersionListener(VersionListener listener) {
+        versionListener = listener;
+    }
+
     /**
      * Check whether all data can be read from this version. This requires that
      * all chunks referenced by this version are still available (not
@@ -1391,6 +1621,16 @@ void setCurrentVersion(long curVersion) {
         currentVersion = curVersion;
     }
 
+    /**
+     * Get the maximum size of the redo log, which is used by the transaction
+     * store to make commits durable without writing a chunk.
+     *
+     * @return the size in MB, or 0 if the redo log is disabled
+     */
+    public int getRedoLogSize() {
+        return redoLogSize;
+    }
+
     /**
      * Get the file store.
      *
@@ -1540,6 +1780,17 @@ public void populateInfo(BiConsumer<String, String> consumer) {
             consumer.accept("info.OLDEST_VERS_TO_KEEP", Long.toString(getOldestVersionToKeep()));
             consumer.accept("info.CURRENT_VERSION", Long.toString(getCurrentVersion()));
         }
+        if (fileStore != null) {
+            consumer.accept("info.DURABLE_VERSION", Long.toString(getDurableVersion()));
+        }
+
+        GroupCommit gc = groupCommit;
+        if (gc != null) {
+            gc.populateInfo(consumer);
+        }
+        if (writeCombining) {
+            consumer.accept("info.COMBINED_OPERATIONS", Long.toString(combinedOperations.get()));
+        }
 
         if (fileStore != null) {
             fileStore.populateInfo(consumer);
@@ -1610,6 +1861,30 @@ public int getAutoCommitDelay() {
         return fileStore == null ? 0 : fileStore.getAutoCommitDelay();
     }
 
+    /**
+     * Set the maximum delay in milliseconds to write and sync changes of
+     * asynchronous commits, see {@link #commitAsync()}.
+     * <p>
+     * To disable asynchronous commits, set the value to 0.
+     *
+     * @param millis the maximum delay
+     */
+    public void setAsyncCommitDelay(int millis) {
+        if (fileStore != null) {
+            fileStore.setAsyncCommitDelay(millis);
+        }
+    }
+
+    /**
+     * Get the maximum delay to write and sync changes of asynchronous commits.
+     *
+     * @return the delay in milliseconds, or 0 if asynchronous commits are
+     *         disabled
+     */
+    public int getAsyncCommitDelay() {
+        return fileStore == null ? 0 : fileStore.getAsyncCommitDelay();
+    }
+
     /**
      * Get the maximum memory (in bytes) used for unsaved pages. If this number
      * is exceeded, unsaved changes are stored to disk.
@@ -1746,6 +2021,30 @@ public void countNewPage(boolean leaf) {
         }
     }
 
+    /**
+     * A listener, which is notified when the current version is closed by a
+     * commit. Both methods are called with the store lock held, so they should
+     * return quickly, and may not write to the maps.
+     */
+    public interface VersionListener {
+
+        /**
+         * Called before the version is closed. The maps are still written in
+         * this version.
+         *
+         * @param version the version, which is going to be closed
+         */
+        void beforeClose(long version);
+
+        /**
+         * Called after all maps switched to the next version. The roots of
+         * the closed version don't change anymore.
+         *
+         * @param version the closed version
+         */
+        void afterClose(long version);
+    }
+
     /**
      * Class TxCounter is a simple data structure to hold version of the store
      * along with the counter of open transactions,
@@ -1872,6 +2171,38 @@ public Builder autoCompactFillRate(int percent) {
             return set("autoCompactFillRate", percent);
         }
 
+        /**
+         * Enable continuous background compaction. Chunks with the lowest fill
+         * rate are re-written by the background writer thread at up to the
+         * given rate, instead of compacting only when the store is idle.
+         * Bytes written by other operations are taken from this rate, but at
+         * least a quarter of it is always available for compaction.
+         * <p>
+         * The default value is 0 (compaction is only done when the store is
+         * idle, or when it is explicitly requested).
+         * </p>
+         *
+         * @param mbPerSecond the maximum rate in MB per second
+         * @return this
+         */
+        public Builder autoCompactRate(int mbPerSecond) {
+            return set("autoCompactRate", mbPerSecond);
+        }
+
+        /**
+         * Set the maximum share of time the background compaction may spend on
+         * re-writing chunks. Only used with {@link #autoCompactRate(int)}.
+         * <p>
+         * The default value is 10 (10%).
+         * </p>
+         *
+         * @param percent the maximum share of time
+         * @return this
+         */
+        public Builder autoCompactCpuLoad(int percent) {
+            return set("autoCompactCpuLoad", percent);
+        }
+
         /**
          * Use the following file name. If the file does not exist, it is
          * automatically created. The parent directory already must exist.
@@ -1954,6 +2285,96 @@ public Builder cacheConcurrency(int concurrency) {
             return set("cacheConcurrency", concurrency);
         }
 
+        /**
+         * Use a TinyLFU admission filter for the read cache: once the cache
+         * is full, a page is only added if it is accessed more frequently
+         * than the page it would replace. This protects frequently used pages
+         * from being evicted by large scans.
+         *
+         * @return this
+         */
+        public Builder cacheAdmissionFilter() {
+            return set("cacheAdmissionFilter", 1);
+        }
+
+        /**
+         * Do not lock a segment of the read cache on a cache hit. Accesses
+         * are buffered and applied to the replacement policy later, so that
+         * concurrent readers of the same pages do not block each other. Some
+         * accesses may be lost when the buffers are full.
+         *
+         * @return this
+         */
+        public Builder cacheBufferedReads() {
+            return set("cacheBufferedReads", 1);
+        }
+
+        /**
+         * Set the maximum number of pages to read ahead, when a cursor
+         * traverses the map sequentially. Pages are read into the cache in
+         * background threads, pages close to each other in the file are read
+         * together. The default is 0 (disabled).
+         *
+         * @param pages the number of pages
+         * @return this
+         */
+        public Builder readAhead(int pages) {
+            return set("readAhead", pages);
+        }
+
+        /**
+         * Read pages from a memory mapped view of the file, instead of copying
+         * them into a heap buffer first. Pages are decoded directly from the
+         * operating system page cache. The file is mapped in segments of 1 GB,
+         * and mapped again when it grows. This is not used for encrypted
+         * files, and file systems that do not support memory mapping.
+         *
+         * @return this
+         */
+        public Builder mappedReads() {
+            return set("mappedReads", 1);
+        }
+
+        /**
+         * Combine concurrent writes to the same map. If the root of a map is
+         * contended, an operation is queued instead of waiting for the lock,
+         * and the thread, which holds the lock, applies all queued operations
+         * before releasing it. This reduces retries and copies of pages when
+         * many threads write to the same part of a map, for example when
+         * they insert increasing keys, also within transactions. Only
+         * operations, which don't depend on the calling thread, are combined
+         * (see {@link MVMap.DecisionMaker#isCombinable()}).
+         *
+         * @return this
+         */
+        public Builder writeCombining() {
+            return set("writeCombining", 1);
+        }
+
+        /**
+         * Set the size of the second level page cache in MB. This cache keeps
+         * serialized pages outside of the Java heap, in direct memory, and is
+         * consulted before reading a page from the file. The direct memory
+         * limit of the JVM (-XX:MaxDirectMemorySize) may need to be
+         * increased. The default is 0 (disabled).
+         *
+         * @param mb the cache size in megabytes
+         * @return this
+         */
+        public Builder offHeapCacheSize(int mb) {
+            return set("cacheOffHeapSize", mb);
+        }
+
+        /**
+         * Compress pages in the second level page cache using the LZF
+         * algorithm. This allows to keep more pages, but needs more CPU.
+         *
+         * @return this
+         */
+        public Builder offHeapCacheCompress() {
+            return set("cacheOffHeapCompress", 1);
+        }
+
         /**
          * Compress data before writing using the LZF algorithm. This will save
          * about 50% of the disk space, but will slow down read and write
@@ -1998,6 +2419,87 @@ public Builder pageSplitSize(int pageSplitSize) {
             return set("pageSplitSize", pageSplitSize);
         }
 
+        /**
+         * Set the number of threads to serialize changed pages with. When more
+         * than one thread is used, keys and values of changed leaf pages are
+         * serialized (and compressed) in parallel, and then assembled into a
+         * chunk in the same order as with a single thread, so chunk layout
+         * does not depend on this setting. This applies to the chunks written
+         * by the background writer and by explicit commits alike.
+         * <p>
+         * The default is 1.
+         *
+         * @param threads the number of serialization threads
+         * @return this
+         */
+        public Builder serializationThreads(int threads) {
+            return set("serializationThreads", threads);
+        }
+
+        /**
+         * Enable group commit for {@link MVStore#groupCommit()}. Concurrent
+         * committers are grouped together, and a single chunk write and file
+         * sync are done on behalf of the whole group.
+         * <p>
+         * The default is 0 (group commit is disabled).
+         *
+         * @param batchSize the maximum number of commits in a group
+         * @return this
+         */
+        public Builder groupCommitBatchSize(int batchSize) {
+            return set("groupCommitBatchSize", batchSize);
+        }
+
+        /**
+         * Set the maximum time to wait for more concurrent commits before
+         * writing a group. The wait only happens, if previous group had more
+         * than one commit.
+         * <p>
+         * The default is 1000 microseconds.
+         *
+         * @param micros the maximum wait time in microseconds
+         * @return this
+         */
+        public Builder groupCommitMaxWait(int micros) {
+            return set("groupCommitMaxWait", micros);
+        }
+
+        /**
+         * Set the maximum delay to write and sync changes of asynchronous
+         * commits, see {@link MVStore#commitAsync()}. The background writer
+         * is started with the first asynchronous commit, if auto-commit is
+         * disabled.
+         * <p>
+         * The default is 0 (asynchronous commits are disabled, and they are
+         * the same as regular commits).
+         *
+         * @param millis the maximum delay in milliseconds
+         * @return this
+         */
+        public Builder asyncCommitDelay(int millis) {
+            return set("asyncCommitDelay", millis);
+        }
+
+        /**
+         * Enable the redo log of the transaction store. Commits of
+         * transactional maps are appended to a sequential log file next to the
+         * store file, and only this log is synced, while chunks are written
+         * later by the background writer. The log is replayed when the
+         * transaction store is initialized. Changes of non-transactional maps
+         * are not logged.
+         * <p>
+         * The log is truncated after a chunk, which covers it, is written and
+         * synced, once it grows above the given size.
+         * <p>
+         * The default is 0 (the redo log is disabled).
+         *
+         * @param mb the maximum size of the log in MB
+         * @return this
+         */
+        public Builder redoLogSize(int mb) {
+            return set("redoLogSize", mb);
+        }
+
         /**
          * Set the listener to be used for exceptions that occur when writing in
          * the background thread.
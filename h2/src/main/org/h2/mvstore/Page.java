@@ -11,9 +11,11 @@
 import static org.h2.mvstore.DataUtils.PAGE_TYPE_LEAF;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.h2.compress.Compressor;
 import org.h2.mvstore.FileStore.PageSerializationManager;
+import org.h2.mvstore.type.LongDataType;
 import org.h2.util.Utils;
 
 /**
@@ -78,9 +80,10 @@
     private int diskSpaceUsed;
 
     /**
-     * The keys.
+     * The keys: an array of keys, or an array of primitive long values if the
+     * map has long keys, so that they don't need to be boxed.
      */
-    private K[] keys;
+    private Object keys;
 
     /**
      * Updater for pos field, which can be updated when page is saved,
@@ -119,6 +122,11 @@
             MEMORY_POINTER +          // values
             MEMORY_ARRAY;             // Object[] values
 
+    /**
+     * The estimated number of bytes used per primitive long key.
+     */
+    private static final int LONG_KEY_MEMORY = 8;
+
     /**
      * Marker value for memory field, meaning that memory accounting is replaced by key count.
      */
@@ -137,7 +145,7 @@
         memory = source.memory;
     }
 
-    Page(MVMap<K,V> map, K[] keys) {
+    Page(MVMap<K,V> map, Object keys) {
         this.map = map;
         this.keys = keys;
     }
@@ -186,7 +194,7 @@ static <K,V> Page<K,V> createEmptyNode(MVMap<K,V> map) {
     public static <K,V> Page<K,V> createNode(MVMap<K,V> map, K[] keys, PageReference<K,V>[] children,
                                     long totalCount, int memory) {
         assert keys != null;
-        Page<K,V> page = new NonLeaf<>(map, keys, children, totalCount);
+        Page<K,V> page = new NonLeaf<>(map, toKeyStorage(map, keys), children, totalCount);
         page.initMemoryAccount(memory);
         return page;
     }
@@ -205,11 +213,32 @@ public static <K,V> Page<K,V> createNode(MVMap<K,V> map, K[] keys, PageReference
      */
     static <K,V> Page<K,V> createLeaf(MVMap<K,V> map, K[] keys, V[] values, int memory) {
         assert keys != null;
-        Page<K,V> page = new Leaf<>(map, keys, values);
+        Page<K,V> page = new Leaf<>(map, toKeyStorage(map, keys), values);
         page.initMemoryAccount(memory);
         return page;
     }
 
+    /**
+     * Convert the array of keys to the storage used by the pages of the map.
+     *
+     * @param <K> key type
+     *
+     * @param map the map
+     * @param keys the keys
+     * @return the same array, or an array of primitive values
+     */
+    private static <K> Object toKeyStorage(MVMap<K,?> map, K[] keys) {
+        if (!map.hasLongKeys()) {
+            return keys;
+        }
+        int count = keys.length;
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (Long) keys[i];
+        }
+        return result;
+    }
+
     private void initMemoryAccount(int memoryCount) {
         if(!map.isPersistent()) {
             memory = IN_MEMORY;
@@ -233,6 +262,21 @@ private void initMemoryAccount(int memoryCount) {
      * @return the value, or null if not found
      */
     static <K,V> V get(Page<K,V> p, K key) {
+        if (p.map.hasLongKeys()) {
+            return get(p, ((Long) key).longValue());
+        }
+        while (true) {
+            int index = p.binarySearch(key);
+            if (p.isLeaf()) {
+                return index >= 0 ? p.getValue(index) : null;
+            } else if (index++ < 0) {
+                index = -index;
+            }
+            p = p.getChildPage(index);
+        }
+    }
+
+    private static <K,V> V get(Page<K,V> p, long key) {
         while (true) {
             int index = p.binarySearch(key);
             if (p.isLeaf()) {
@@ -290,8 +334,21 @@ public final int getMapId() {
      * @param index the index
      * @return the key
      */
+    @SuppressWarnings("unchecked")
     public K getKey(int index) {
-        return keys[index];
+        Object k = keys;
+        return k instanceof long[] ? (K) Long.valueOf(((long[]) k)[index]) : ((K[]) k)[index];
+    }
+
+    /**
+     * Get the key at the given index without boxing. This may only be used
+     * if the map has long keys.
+     *
+     * @param index the index
+     * @return the key
+     */
+    public final long getLongKey(int index) {
+        return ((long[]) keys)[index];
     }
 
     /**
@@ -302,6 +359,24 @@ public K getKey(int index) {
      */
     public abstract Page<K,V> getChildPage(int index);
 
+    /**
+     * Get a number of child pages. Child pages, which are not loaded yet,
+     * are read together, with as few read operations as possible.
+     *
+     * @param indexes the indexes of the child pages
+     * @param count the number of indexes to use
+     * @return the child pages, in the same order as the indexes
+     */
+    public abstract Page<K,V>[] getChildPages(int[] indexes, int count);
+
+    /**
+     * Get the reference to the child page at the given index.
+     *
+     * @param index the index
+     * @return the reference
+     */
+    abstract PageReference<K,V> getChildPageReference(int index);
+
     /**
      * Get the position of the child.
      *
@@ -324,7 +399,8 @@ public K getKey(int index) {
      * @return the number of keys
      */
     public final int getKeyCount() {
-        return keys.length;
+        Object k = keys;
+        return k instanceof long[] ? ((long[]) k).length : ((Object[]) k).length;
     }
 
     /**
@@ -413,6 +489,19 @@ int binarySearch(K key) {
         return res;
     }
 
+    /**
+     * Search the key in this page of a map with long keys, without boxing.
+     * See also {@link #binarySearch(Object)}.
+     *
+     * @param key the key
+     * @return the index of the key, or the negated insertion point
+     */
+    int binarySearch(long key) {
+        int res = LongDataType.binarySearch(key, (long[]) keys, getKeyCount(), cachedCompare);
+        cachedCompare = res < 0 ? ~res : res + 1;
+        return res;
+    }
+
     /**
      * Split the page. This modifies the current page.
      *
@@ -428,10 +517,10 @@ int binarySearch(K key) {
      * @param bCount size of the second array/
      * @return the second array.
      */
-    final K[] splitKeys(int aCount, int bCount) {
+    final Object splitKeys(int aCount, int bCount) {
         assert aCount + bCount <= getKeyCount();
-        K[] aKeys = createKeyStorage(aCount);
-        K[] bKeys = createKeyStorage(bCount);
+        Object aKeys = createKeys(aCount);
+        Object bKeys = createKeys(bCount);
         System.arraycopy(keys, 0, aKeys, 0, aCount);
         System.arraycopy(keys, getKeyCount() - bCount, bKeys, 0, bCount);
         keys = aKeys;
@@ -456,9 +545,16 @@ final K[] splitKeys(int aCount, int bCount) {
      */
     final void expandKeys(int extraKeyCount, K[] extraKeys) {
         int keyCount = getKeyCount();
-        K[] newKeys = createKeyStorage(keyCount + extraKeyCount);
+        Object newKeys = createKeys(keyCount + extraKeyCount);
         System.arraycopy(keys, 0, newKeys, 0, keyCount);
-        System.arraycopy(extraKeys, 0, newKeys, keyCount, extraKeyCount);
+        if (newKeys instanceof long[]) {
+            long[] k = (long[]) newKeys;
+            for (int i = 0; i < extraKeyCount; i++) {
+                k[keyCount + i] = (Long) extraKeys[i];
+            }
+        } else {
+            System.arraycopy(extraKeys, 0, newKeys, keyCount, extraKeyCount);
+        }
         keys = newKeys;
     }
 
@@ -491,10 +587,17 @@ final void expandKeys(int extraKeyCount, K[] extraKeys) {
      * @param index the index
      * @param key the new key
      */
+    @SuppressWarnings("unchecked")
     public final void setKey(int index, K key) {
-        keys = keys.clone();
+        if (keys instanceof long[]) {
+            long[] k = ((long[]) keys).clone();
+            k[index] = (Long) key;
+            keys = k;
+            return;
+        }
+        K[] k = ((K[]) keys).clone();
         if(isPersistent()) {
-            K old = keys[index];
+            K old = k[index];
             if (!map.isMemoryEstimationAllowed() || old == null) {
                 int mem = map.evaluateMemoryForKey(key);
                 if (old != null) {
@@ -503,7 +606,8 @@ public final void setKey(int index, K key) {
                 addMemory(mem);
             }
         }
-        keys[index] = key;
+        k[index] = key;
+        keys = k;
     }
 
     /**
@@ -542,14 +646,22 @@ public final void setKey(int index, K key) {
     final void insertKey(int index, K key) {
         int keyCount = getKeyCount();
         assert index <= keyCount : index + " > " + keyCount;
-        K[] newKeys = createKeyStorage(keyCount + 1);
+        Object newKeys = createKeys(keyCount + 1);
         DataUtils.copyWithGap(keys, newKeys, keyCount, index);
         keys = newKeys;
 
-        keys[index] = key;
-
-        if (isPersistent()) {
-            addMemory(MEMORY_POINTER + map.evaluateMemoryForKey(key));
+        if (newKeys instanceof long[]) {
+            ((long[]) newKeys)[index] = (Long) key;
+            if (isPersistent()) {
+                addMemory(LONG_KEY_MEMORY);
+            }
+        } else {
+            @SuppressWarnings("unchecked")
+            K[] k = (K[]) newKeys;
+            k[index] = key;
+            if (isPersistent()) {
+                addMemory(MEMORY_POINTER + map.evaluateMemoryForKey(key));
+            }
         }
     }
 
@@ -564,12 +676,14 @@ public void remove(int index) {
             --index;
         }
         if(isPersistent()) {
-            if (!map.isMemoryEstimationAllowed()) {
+            if (keys instanceof long[]) {
+                addMemory(-LONG_KEY_MEMORY);
+            } else if (!map.isMemoryEstimationAllowed()) {
                 K old = getKey(index);
                 addMemory(-MEMORY_POINTER - map.evaluateMemoryForKey(old));
             }
         }
-        K[] newKeys = createKeyStorage(keyCount - 1);
+        Object newKeys = createKeys(keyCount - 1);
         DataUtils.copyExcept(keys, newKeys, keyCount, index);
         keys = newKeys;
     }
@@ -614,7 +728,7 @@ private void read(ByteBuffer buff) {
         }
 
         int keyCount = DataUtils.readVarInt(buff);
-        keys = createKeyStorage(keyCount);
+        keys = createKeys(keyCount);
         int type = buff.get();
         if(isLeaf() != ((type & 1) == PAGE_TYPE_LEAF)) {
             throw DataUtils.newMVStoreException(
@@ -723,44 +837,19 @@ protected final int write(FileStore<?>.PageSerializationManager pageSerializatio
         buff.put((byte)type);
         int childrenPos = buff.position();
         writeChildren(buff, true);
-        int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, keyCount);
-        writeValues(buff);
-        MVStore store = map.getStore();
-        int expLen = buff.position() - compressStart;
-        if (expLen > 16) {
+        int compressType = pageSerializationManager.copySerializedBody(this);
+        if (compressType < 0) {
+            MVStore store = map.getStore();
             int compressionLevel = store.getCompressionLevel();
-            if (compressionLevel > 0) {
-                Compressor compressor;
-                int compressType;
-                if (compressionLevel == 1) {
-                    compressor = store.getCompressorFast();
-                    compressType = DataUtils.PAGE_COMPRESSED;
-                } else {
-                    compressor = store.getCompressorHigh();
-                    compressType = DataUtils.PAGE_COMPRESSED_HIGH;
-                }
-                byte[] comp = new byte[expLen * 2];
-                ByteBuffer byteBuffer = buff.getBuffer();
-                int pos = 0;
-                byte[] exp;
-                if (byteBuffer.hasArray()) {
-                    exp = byteBuffer.array();
-                    pos = byteBuffer.arrayOffset()  + compressStart;
-                } else {
-                    exp = Utils.newBytes(expLen);
-                    buff.position(compressStart).get(exp);
-                }
-                int compLen = compressor.compress(exp, pos, expLen, comp, 0);
-                int plus = DataUtils.getVarIntLen(expLen - compLen);
-                if (compLen + plus < expLen) {
-                    buff.position(typePos)
-                        .put((byte) (type | compressType));
-                    buff.position(compressStart)
-                        .putVarInt(expLen - compLen)
-                        .put(comp, 0, compLen);
-                }
-            }
+            Compressor compressor = compressionLevel <= 0 ? null
+                    : compressionLevel == 1 ? store.getCompressorFast() : store.getCompressorHigh();
+            compressType = writeBody(buff, compressionLevel, compressor);
+        }
+        if (compressType != 0) {
+            int old = buff.position();
+            buff.position(typePos)
+                .put((byte) (type | compressType));
+            buff.position(old);
         }
         int pageLength = buff.position() - start;
         long pagePos = pageSerializationManager.getPagePosition(getMapId(), start, pageLength, type);
@@ -780,6 +869,48 @@ protected final int write(FileStore<?>.PageSerializationManager pageSerializatio
         return childrenPos;
     }
 
+    /**
+     * Serializes keys and values of this page into the buffer, starting at its
+     * current position, and compresses them, if requested and worthwhile.
+     * It does not depend on the page position, so it can be done in advance,
+     * and concurrently for different pages.
+     *
+     * @param buff the target buffer
+     * @param compressionLevel 0 for no compression, 1 for fast, 2 for high
+     * @param compressor to use, if compression is enabled
+     * @return compression flags to be added to the page type, 0 if not compressed
+     */
+    final int writeBody(WriteBuffer buff, int compressionLevel, Compressor compressor) {
+        int compressStart = buff.position();
+        map.getKeyType().write(buff, keys, getKeyCount());
+        writeValues(buff);
+        int expLen = buff.position() - compressStart;
+        if (expLen > 16 && compressionLevel > 0) {
+            int compressType = compressionLevel == 1 ? DataUtils.PAGE_COMPRESSED : DataUtils.PAGE_COMPRESSED_HIGH;
+            byte[] comp = new byte[expLen * 2];
+            ByteBuffer byteBuffer = buff.getBuffer();
+            int pos = 0;
+            byte[] exp;
+            if (byteBuffer.hasArray()) {
+                exp = byteBuffer.array();
+                pos = byteBuffer.arrayOffset()  + compressStart;
+            } else {
+                exp = Utils.newBytes(expLen);
+                buff.position(compressStart).get(exp);
+            }
+            int compLen = compressor.compress(exp, pos, expLen, comp, 0);
+            int plus = DataUtils.getVarIntLen(expLen - compLen);
+            if (compLen + plus < expLen) {
+                buff.position(compressStart)
+                    .putVarInt(expLen - compLen)
+                    .put(comp, 0, compLen);
+                return compressType;
+            }
+            buff.position(compressStart + expLen);
+        }
+        return 0;
+    }
+
     /**
      * Write values that the buffer contains to the buff.
      *
@@ -805,6 +936,14 @@ protected final int write(FileStore<?>.PageSerializationManager pageSerializatio
      */
     abstract void writeUnsavedRecursive(PageSerializationManager pageSerializationManager);
 
+    /**
+     * Collect all unsaved leaf pages of this subtree, in the same order, in which
+     * they would be visited by {@link #writeUnsavedRecursive(PageSerializationManager)}.
+     *
+     * @param target the list to add leaf pages to
+     */
+    abstract void collectUnsavedLeaves(List<Page<?,?>> target);
+
     /**
      * Unlink the children recursively after all data is written.
      */
@@ -910,15 +1049,20 @@ final void recalculateMemory() {
      *
      * @return memory in bytes
      */
+    @SuppressWarnings("unchecked")
     protected int calculateMemory() {
+        if (keys instanceof long[]) {
+            return getKeyCount() * LONG_KEY_MEMORY;
+        }
 //*
-        return map.evaluateMemoryForKeys(keys, getKeyCount());
+        return map.evaluateMemoryForKeys((K[]) keys, getKeyCount());
 /*/
+        K[] k = (K[]) keys;
         int keyCount = getKeyCount();
         int mem = keyCount * MEMORY_POINTER;
         DataType<K> keyType = map.getKeyType();
         for (int i = 0; i < keyCount; i++) {
-            mem += getMemory(keyType, keys[i]);
+            mem += getMemory(keyType, k[i]);
         }
         return mem;
 //*/
@@ -988,6 +1132,17 @@ public final K[] createKeyStorage(int size) {
         return map.getKeyType().createStorage(size);
     }
 
+    /**
+     * Create the storage for keys of this page.
+     *
+     * @param size number of entries
+     * @return an array of keys, or an array of primitive values if the map
+     *         has long keys
+     */
+    private Object createKeys(int size) {
+        return map.hasLongKeys() ? new long[size] : createKeyStorage(size);
+    }
+
     /**
      * Create array for values storage.
      *
@@ -1132,7 +1287,7 @@ public String toString() {
             this.totalCount = totalCount;
         }
 
-        NonLeaf(MVMap<K,V> map, K[] keys, PageReference<K,V>[] children, long totalCount) {
+        NonLeaf(MVMap<K,V> map, Object keys, PageReference<K,V>[] children, long totalCount) {
             super(map, keys);
             this.children = children;
             this.totalCount = totalCount;
@@ -1162,6 +1317,43 @@ public Page<K,V> getChildPage(int index) {
             return page;
         }
 
+        @Override
+        public Page<K,V>[] getChildPages(int[] indexes, int count) {
+            @SuppressWarnings("unchecked")
+            Page<K,V>[] pages = new Page[count];
+            long[] positions = new long[count];
+            int missing = 0;
+            for (int i = 0; i < count; i++) {
+                PageReference<K,V> ref = children[indexes[i]];
+                Page<K,V> page = ref.getPage();
+                if (page == null) {
+                    positions[missing++] = ref.getPos();
+                } else {
+                    pages[i] = page;
+                }
+            }
+            if (missing > 1) {
+                Page<K,V>[] read = map.readPages(Arrays.copyOf(positions, missing));
+                for (int i = 0, j = 0; i < count; i++) {
+                    if (pages[i] == null) {
+                        pages[i] = read[j++];
+                    }
+                }
+            } else if (missing == 1) {
+                for (int i = 0; i < count; i++) {
+                    if (pages[i] == null) {
+                        pages[i] = map.readPage(positions[0]);
+                    }
+                }
+            }
+            return pages;
+        }
+
+        @Override
+        PageReference<K,V> getChildPageReference(int index) {
+            return children[index];
+        }
+
         @Override
         public long getChildPagePos(int index) {
             return children[index].getPos();
@@ -1176,7 +1368,7 @@ public V getValue(int index) {
         public Page<K,V> split(int at) {
             assert !isSaved();
             int b = getKeyCount() - at;
-            K[] bKeys = splitKeys(at, b - 1);
+            Object bKeys = splitKeys(at, b - 1);
             PageReference<K,V>[] aChildren = createRefStorage(at + 1);
             PageReference<K,V>[] bChildren = createRefStorage(b);
             System.arraycopy(children, 0, aChildren, 0, at + 1);
@@ -1192,7 +1384,8 @@ public Page<K,V> split(int at) {
             for (PageReference<K,V> x : bChildren) {
                 t += x.count;
             }
-            Page<K,V> newPage = createNode(map, bKeys, bChildren, t, 0);
+            Page<K,V> newPage = new NonLeaf<>(map, bKeys, bChildren, t);
+            newPage.initMemoryAccount(0);
             if(isPersistent()) {
                 recalculateMemory();
             }
@@ -1287,7 +1480,11 @@ public void remove(int index) {
         public int removeAllRecursive(long version) {
             int unsavedMemory = removePage(version);
             if (isPersistent()) {
-                for (int i = 0, size = map.getChildPageCount(this); i < size; i++) {
+                int size = map.getChildPageCount(this);
+                // inner pages, which are not loaded yet, are read together
+                int[] indexes = new int[size];
+                int count = 0;
+                for (int i = 0; i < size; i++) {
                     PageReference<K,V> ref = children[i];
                     Page<K,V> page = ref.getPage();
                     if (page != null) {
@@ -1298,10 +1495,15 @@ public int removeAllRecursive(long version) {
                         if (DataUtils.isLeafPosition(pagePos)) {
                             map.store.accountForRemovedPage(pagePos, version, map.isSingleWriter(), -1);
                         } else {
-                            unsavedMemory += map.readPage(pagePos).removeAllRecursive(version);
+                            indexes[count++] = i;
                         }
                     }
                 }
+                if (count > 0) {
+                    for (Page<K,V> page : getChildPages(indexes, count)) {
+                        unsavedMemory += page.removeAllRecursive(version);
+                    }
+                }
             }
             return unsavedMemory;
         }
@@ -1369,6 +1571,19 @@ void writeUnsavedRecursive(PageSerializationManager pageSerializationManager) {
             }
         }
 
+        @Override
+        void collectUnsavedLeaves(List<Page<?,?>> target) {
+            if (!isSaved()) {
+                int len = getRawChildPageCount();
+                for (int i = 0; i < len; i++) {
+                    Page<K,V> p = children[i].getPage();
+                    if (p != null) {
+                        p.collectUnsavedLeaves(target);
+                    }
+                }
+            }
+        }
+
         void writeChildrenRecursive(PageSerializationManager pageSerializationManager) {
             int len = getRawChildPageCount();
             for (int i = 0; i < len; i++) {
@@ -1477,7 +1692,7 @@ private Leaf(MVMap<K,V> map, Leaf<K,V> source) {
             this.values = source.values;
         }
 
-        Leaf(MVMap<K,V> map, K[] keys, V[] values) {
+        Leaf(MVMap<K,V> map, Object keys, V[] values) {
             super(map, keys);
             this.values = values;
         }
@@ -1497,6 +1712,16 @@ public Page<K,V> getChildPage(int index) {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public Page<K,V>[] getChildPages(int[] indexes, int count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        PageReference<K,V> getChildPageReference(int index) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public long getChildPagePos(int index) {
             throw new UnsupportedOperationException();
@@ -1511,7 +1736,7 @@ public V getValue(int index) {
         public Page<K,V> split(int at) {
             assert !isSaved();
             int b = getKeyCount() - at;
-            K[] bKeys = splitKeys(at, b);
+            Object bKeys = splitKeys(at, b);
             V[] bValues = createValueStorage(b);
             if(values != null) {
                 V[] aValues = createValueStorage(at);
@@ -1519,7 +1744,8 @@ public Page<K,V> split(int at) {
                 System.arraycopy(values, at, bValues, 0, b);
                 values = aValues;
             }
-            Page<K,V> newPage = createLeaf(map, bKeys, bValues, 0);
+            Page<K,V> newPage = new Leaf<>(map, bKeys, bValues);
+            newPage.initMemoryAccount(0);
             if(isPersistent()) {
                 recalculateMemory();
             }
@@ -1653,6 +1879,13 @@ void writeUnsavedRecursive(PageSerializationManager pageSerializationManager) {
             }
         }
 
+        @Override
+        void collectUnsavedLeaves(List<Page<?,?>> target) {
+            if (!isSaved()) {
+                target.add(this);
+            }
+        }
+
         @Override
         void releaseSavedPages() {}
 
@@ -722,20 +722,29 @@ protected void doHousekeeping(MVStore mvStore) throws InterruptedException {
         }
 
         int chunksFillRate = getChunksFillRate();
-        int adjustedUpFillRate = 50 + rewritableChunksFillRate / 2;
-        int fillRateToCompare = idle ? rewritableChunksFillRate : adjustedUpFillRate;
-        if (fillRateToCompare < getTargetFillRate(idle)) {
-            int targetFillRate = idle ? adjustedUpFillRate : rewritableChunksFillRate;
-            mvStore.tryExecuteUnderStoreLock(() -> {
-                int writeLimit = autoCommitMemory;
-                if (!idle) {
-                    writeLimit /= 4;
-                }
-                if (rewriteChunks(writeLimit, targetFillRate)) {
-                    dropUnusedChunks();
-                }
-                return true;
-            });
+        CompactionScheduler compactionScheduler = getCompactionScheduler();
+        if (compactionScheduler != null) {
+            if (!compactionScheduler.run(mvStore)) {
+                // the cycle was skipped, try again on the next one
+                stopIdleHousekeeping = false;
+                return;
+            }
+        } else {
+            int adjustedUpFillRate = 50 + rewritableChunksFillRate / 2;
+            int fillRateToCompare = idle ? rewritableChunksFillRate : adjustedUpFillRate;
+            if (fillRateToCompare < getTargetFillRate(idle)) {
+                int targetFillRate = idle ? adjustedUpFillRate : rewritableChunksFillRate;
+                mvStore.tryExecuteUnderStoreLock(() -> {
+                    int writeLimit = autoCommitMemory;
+                    if (!idle) {
+                        writeLimit /= 4;
+                    }
+                    if (rewriteChunks(writeLimit, targetFillRate)) {
+                        dropUnusedChunks();
+                    }
+                    return true;
+                });
+            }
         }
         stopIdleHousekeeping = false;
         if (idle) {
@@ -7,10 +7,15 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -27,6 +32,11 @@
  */
 public class SingleFileStore extends RandomAccessStore {
 
+    /**
+     * The size of a memory mapped segment of the file.
+     */
+    private static final long MAPPED_SEGMENT_SIZE = 1L << 30;
+
     /**
      * The file.
      */
@@ -44,10 +54,39 @@ public class SingleFileStore extends RandomAccessStore {
 
     private final Map<String, Object> config;
 
+    /**
+     * Whether to read from memory mapped segments of the file.
+     */
+    private volatile boolean mappedReads;
+
+    /**
+     * The memory mapped segments of the file, or null if not mapped yet. An
+     * element is null if the segment is not mapped yet. The array is never
+     * modified, but replaced. The buffers are only accessed while the read
+     * lock of mapLock is held, and the file is only truncated while the write
+     * lock is held, so that no reader may access a part of the file after it
+     * is truncated. A replaced buffer stays valid for the readers which still
+     * use it.
+     */
+    private volatile MappedByteBuffer[] mapped;
+
+    /**
+     * The read lock is held while a page is read and decoded (see
+     * beforePageRead and afterPageRead), so that the page may be decoded
+     * directly from the mapped buffer.
+     */
+    private final ReentrantReadWriteLock mapLock = new ReentrantReadWriteLock();
+
+    /**
+     * Serializes the mapping of segments.
+     */
+    private final Object mapSync = new Object();
+
 
     public SingleFileStore(Map<String, Object> config) {
         super(config);
         this.config = config;
+        mappedReads = config.containsKey("mappedReads");
     }
 
     @Override
@@ -57,9 +96,126 @@ public String toString() {
 
     @Override
     public ByteBuffer readFully(SFChunk chunk, long pos, int len) {
+        if (mappedReads) {
+            ByteBuffer buff = readMapped(pos, len);
+            if (buff != null) {
+                readCount.incrementAndGet();
+                readBytes.addAndGet(len);
+                return buff;
+            }
+        }
         return readFully(fileChannel, pos, len);
     }
 
+    @Override
+    protected void beforePageRead() {
+        if (mappedReads) {
+            mapLock.readLock().lock();
+        }
+    }
+
+    @Override
+    protected void afterPageRead() {
+        if (mapLock.getReadHoldCount() > 0) {
+            mapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read a part of the file from the memory mapped segments. The segment is
+     * mapped (again) if needed. Within a page read, a slice of the mapped
+     * buffer is returned, which stays valid until the page read is over.
+     * Otherwise, the data is copied, so that the returned buffer stays valid
+     * after the file is truncated or closed.
+     *
+     * @param pos the position within the file
+     * @param len the number of bytes
+     * @return the data, or null if the range can not be read from a mapped
+     *         segment
+     */
+    private ByteBuffer readMapped(long pos, int len) {
+        int segment = (int) (pos / MAPPED_SEGMENT_SIZE);
+        int offset = (int) (pos % MAPPED_SEGMENT_SIZE);
+        int end = offset + len;
+        if (end > MAPPED_SEGMENT_SIZE) {
+            // spans two segments
+            return null;
+        }
+        Lock readLock = mapLock.readLock();
+        readLock.lock();
+        try {
+            MappedByteBuffer buff = getSegment(segment, end);
+            if (buff == null) {
+                map(segment, end);
+                buff = getSegment(segment, end);
+                if (buff == null) {
+                    return null;
+                }
+            }
+            ByteBuffer src = buff.duplicate();
+            src.limit(end);
+            src.position(offset);
+            if (mapLock.getReadHoldCount() > 1) {
+                // within a page read: the page is decoded before the lock is released
+                return src.slice();
+            }
+            return ByteBuffer.allocate(len).put(src).flip();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private MappedByteBuffer getSegment(int segment, int end) {
+        MappedByteBuffer[] m = mapped;
+        if (m == null || segment >= m.length) {
+            return null;
+        }
+        MappedByteBuffer buff = m[segment];
+        return buff == null || buff.capacity() < end ? null : buff;
+    }
+
+    /**
+     * Map a segment of the file, if it is not mapped yet or if the mapped
+     * part is too small. Other segments are kept as they are. The read lock
+     * of mapLock must be held, so that the file is not truncated meanwhile.
+     *
+     * @param segment the index of the segment
+     * @param end the number of bytes of the segment that need to be mapped
+     */
+    private void map(int segment, int end) {
+        assert mapLock.getReadHoldCount() > 0;
+        synchronized (mapSync) {
+            try {
+                if (getSegment(segment, end) != null || !fileChannel.isOpen()) {
+                    return;
+                }
+                long start = segment * MAPPED_SEGMENT_SIZE;
+                long size = Math.min(MAPPED_SEGMENT_SIZE, fileChannel.size() - start);
+                if (size < end) {
+                    return;
+                }
+                MappedByteBuffer[] m = mapped;
+                m = m == null ? new MappedByteBuffer[segment + 1] : Arrays.copyOf(m, Math.max(m.length, segment + 1));
+                m[segment] = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                mapped = m;
+            } catch (IOException | UnsupportedOperationException e) {
+                // not supported by this file system, or out of address space
+                mappedReads = false;
+                mapped = null;
+            }
+        }
+    }
+
+    private void unmap() {
+        Lock writeLock = mapLock.writeLock();
+        writeLock.lock();
+        try {
+            mapped = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     @Override
     protected void writeFully(SFChunk chunk, long pos, ByteBuffer src) {
         int len = src.remaining();
@@ -113,6 +269,8 @@ private void open(String fileName, boolean readOnly, Function<FileChannel,FileCh
             if (encryptionTransformer != null) {
                 originalFileChannel = fileChannel;
                 fileChannel = encryptionTransformer.apply(fileChannel);
+                // the file contains encrypted data only
+                mappedReads = false;
             }
             fileLock = lockFileChannel(fileChannel, readOnly, fileName);
             saveChunkLock.lock();
@@ -165,6 +323,7 @@ public void close() {
                     "Closing failed for file {0}", getFileName(), e);
         } finally {
             fileLock = null;
+            unmap();
             super.close();
         }
     }
@@ -195,8 +354,13 @@ public void sync() {
     public void truncate(long size) {
         int attemptCount = 0;
         while (true) {
+            // the part of the file beyond the new size must not be accessed,
+            // and must not be mapped again until the file is truncated
+            Lock writeLock = mapLock.writeLock();
+            writeLock.lock();
             try {
                 writeCount.incrementAndGet();
+                mapped = null;
                 fileChannel.truncate(size);
                 setSize(Math.min(super.size(), size));
                 return;
@@ -207,9 +371,32 @@ public void truncate(long size) {
                             "Could not truncate file {0} to size {1}",
                             getFileName(), size, e);
                 }
-                System.gc();
-                Thread.yield();
+            } finally {
+                writeLock.unlock();
+            }
+            System.gc();
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void populateInfo(BiConsumer<String, String> consumer) {
+        super.populateInfo(consumer);
+        Lock readLock = mapLock.readLock();
+        readLock.lock();
+        try {
+            MappedByteBuffer[] m = mapped;
+            if (m != null) {
+                long size = 0;
+                for (MappedByteBuffer buff : m) {
+                    if (buff != null) {
+                        size += buff.capacity();
+                    }
+                }
+                consumer.accept("info.MAPPED_SIZE", Long.toString(size));
             }
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -12,6 +12,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import org.h2.mvstore.DataUtils;
 
 /**
@@ -38,7 +39,17 @@
  * Accessed entries are only moved to the top of the stack if at least a number
  * of other entries have been moved to the front (8 per segment by default).
  * Write access and moving entries to the top of the stack is synchronized per
- * segment.
+ * segment. Optionally, reads do not lock the segment: accesses are recorded in
+ * a lossy striped buffer, and replayed by the next thread, which holds the
+ * lock of the segment, or can acquire it without waiting.
+ * <p>
+ * Optionally, new entries have to pass a TinyLFU admission filter once the
+ * segment is full: the access frequency of the new entry, estimated with a
+ * count-min sketch, has to be higher than the one of the entry that would be
+ * evicted for it. Otherwise the new entry is not added. This protects the
+ * cache from large scans of entries, which are accessed only once. The queue
+ * of resident cold entries acts as the admission window, and entries known
+ * as non-resident are always admitted.
  *
  * @author Thomas Mueller
  * @param <V> the value type
@@ -58,6 +69,8 @@
     private final int stackMoveDistance;
     private final int nonResidentQueueSize;
     private final int nonResidentQueueSizeHigh;
+    private final boolean admissionFilter;
+    private final boolean bufferedReads;
 
     /**
      * Create a new cache with the given memory size.
@@ -75,6 +88,8 @@ public CacheLongKeyLIRS(Config config) {
         this.segmentCount = config.segmentCount;
         this.segmentMask = segmentCount - 1;
         this.stackMoveDistance = config.stackMoveDistance;
+        this.admissionFilter = config.admissionFilter;
+        this.bufferedReads = config.bufferedReads;
         segments = new Segment[segmentCount];
         clear();
         // use the high bits for the segment
@@ -88,7 +103,7 @@ public void clear() {
         long max = getMaxItemSize();
         for (int i = 0; i < segmentCount; i++) {
             segments[i] = new Segment<>(max, stackMoveDistance, 8, nonResidentQueueSize,
-                                        nonResidentQueueSizeHigh);
+                                        nonResidentQueueSizeHigh, admissionFilter, bufferedReads);
         }
     }
 
@@ -158,12 +173,14 @@ public V put(long key, V value, long memory) {
         int hash = getHash(key);
         int segmentIndex = getSegmentIndex(hash);
         Segment<V> s = segments[segmentIndex];
-        // check whether resize is required: synchronize on s, to avoid
+        // check whether resize is required: lock s, to avoid
         // concurrent resizes (concurrent reads read
         // from the old segment)
-        synchronized (s) {
-            s = resizeIfNeeded(s, segmentIndex);
-            return s.put(key, hash, value, memory);
+        s.lock.lock();
+        try {
+            return resizeIfNeeded(s, segmentIndex).put(key, hash, value, memory);
+        } finally {
+            s.lock.unlock();
         }
     }
 
@@ -173,7 +190,7 @@ private Segment<V> resizeIfNeeded(Segment<V> s, int segmentIndex) {
             return s;
         }
         // another thread might have resized
-        // (as we retrieved the segment before synchronizing on it)
+        // (as we retrieved the segment before locking it)
         Segment<V> s2 = segments[segmentIndex];
         if (s == s2) {
             // no other thread resized, so we do
@@ -205,12 +222,14 @@ public V remove(long key) {
         int hash = getHash(key);
         int segmentIndex = getSegmentIndex(hash);
         Segment<V> s = segments[segmentIndex];
-        // check whether resize is required: synchronize on s, to avoid
+        // check whether resize is required: lock s, to avoid
         // concurrent resizes (concurrent reads read
         // from the old segment)
-        synchronized (s) {
-            s = resizeIfNeeded(s, segmentIndex);
-            return s.remove(key, hash);
+        s.lock.lock();
+        try {
+            return resizeIfNeeded(s, segmentIndex).remove(key, hash);
+        } finally {
+            s.lock.unlock();
         }
     }
 
@@ -246,7 +265,7 @@ public V get(long key) {
         int hash = getHash(key);
         Segment<V> s = getSegment(hash);
         Entry<V> e = s.find(key, hash);
-        return s.get(e);
+        return s.get(key, hash, e);
     }
 
     private Segment<V> getSegment(int hash) {
@@ -386,6 +405,9 @@ public long getHits() {
         long x = 0;
         for (Segment<V> s : segments) {
             x += s.hits;
+            if (s.readBuffer != null) {
+                x += s.readBuffer.hits.sum();
+            }
         }
         return x;
     }
@@ -399,6 +421,23 @@ public long getMisses() {
         long x = 0;
         for (Segment<V> s : segments) {
             x += s.misses;
+            if (s.readBuffer != null) {
+                x += s.readBuffer.misses.sum();
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of new entries, which were not added, because they did
+     * not pass the admission filter.
+     *
+     * @return the number of rejected entries
+     */
+    public long getAdmissionRejects() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.admissionRejects;
         }
         return x;
     }
@@ -500,8 +539,11 @@ public void putAll(Map<Long, ? extends V> m) {
      */
     public void trimNonResidentQueue() {
         for (Segment<V> s : segments) {
-            synchronized (s) {
+            s.lock.lock();
+            try {
                 s.trimNonResidentQueue();
+            } finally {
+                s.lock.unlock();
             }
         }
     }
@@ -538,6 +580,28 @@ public void trimNonResidentQueue() {
          */
         long misses;
 
+        /**
+         * The number of new entries rejected by the admission filter.
+         */
+        long admissionRejects;
+
+        /**
+         * The access frequency sketch of the admission filter, or null if
+         * all entries are admitted.
+         */
+        private final FrequencySketch sketch;
+
+        /**
+         * The buffer of reads to be replayed, or null if reads lock the
+         * segment.
+         */
+        final ReadBuffer<Entry<V>> readBuffer;
+
+        /**
+         * The lock, which guards the state of this segment.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
         /**
          * The map array. The size is always a power of 2.
          */
@@ -619,10 +683,22 @@ public void trimNonResidentQueue() {
          * @param len the number of hash table buckets (must be a power of 2)
          * @param nonResidentQueueSize the non-resident queue size low watermark factor
          * @param nonResidentQueueSizeHigh  the non-resident queue size high watermark factor
+         * @param admissionFilter whether to use the admission filter
+         * @param bufferedReads whether reads should be buffered
          */
         Segment(long maxMemory, int stackMoveDistance, int len,
-                int nonResidentQueueSize, int nonResidentQueueSizeHigh) {
+                int nonResidentQueueSize, int nonResidentQueueSizeHigh, boolean admissionFilter,
+                boolean bufferedReads) {
+            this(maxMemory, stackMoveDistance, len, nonResidentQueueSize, nonResidentQueueSizeHigh,
+                    admissionFilter ? new FrequencySketch() : null, bufferedReads ? new ReadBuffer<>() : null);
+        }
+
+        private Segment(long maxMemory, int stackMoveDistance, int len,
+                int nonResidentQueueSize, int nonResidentQueueSizeHigh, FrequencySketch sketch,
+                ReadBuffer<Entry<V>> readBuffer) {
             setMaxMemory(maxMemory);
+            this.sketch = sketch;
+            this.readBuffer = readBuffer;
             this.stackMoveDistance = stackMoveDistance;
             this.nonResidentQueueSize = nonResidentQueueSize;
             this.nonResidentQueueSizeHigh = nonResidentQueueSizeHigh;
@@ -645,17 +721,28 @@ public void trimNonResidentQueue() {
 
         /**
          * Create a new cache segment from an existing one.
-         * The caller must synchronize on the old segment, to avoid
-         * concurrent modifications.
+         * The caller must hold the lock of the old segment, to avoid
+         * concurrent modifications. Buffered reads of the old segment are
+         * replayed on the old segment before its entries are copied, and the
+         * new segment gets its own read buffer, as the buffered entries can
+         * not be replayed on the copies.
          *
          * @param old the old segment
          * @param len the number of hash table buckets (must be a power of 2)
          */
         Segment(Segment<V> old, int len) {
             this(old.maxMemory, old.stackMoveDistance, len,
-                    old.nonResidentQueueSize, old.nonResidentQueueSizeHigh);
+                    old.nonResidentQueueSize, old.nonResidentQueueSizeHigh, old.sketch,
+                    old.readBuffer == null ? null : new ReadBuffer<>());
             hits = old.hits;
             misses = old.misses;
+            ReadBuffer<Entry<V>> oldBuffer = old.readBuffer;
+            if (oldBuffer != null) {
+                old.drainReadBuffer();
+                hits += oldBuffer.hits.sum();
+                misses += oldBuffer.misses.sum();
+            }
+            admissionRejects = old.admissionRejects;
             Entry<V> s = old.stack.stackPrev;
             while (s != old.stack) {
                 Entry<V> e = new Entry<>(s);
@@ -716,20 +803,66 @@ private void addToMap(Entry<V> e) {
          * This method adjusts the internal state of the cache sometimes,
          * to ensure commonly used entries stay in the cache.
          *
+         * @param key the key
+         * @param hash the hash
          * @param e the entry
          * @return the value, or null if there is no resident entry
          */
-        synchronized V get(Entry<V> e) {
-            V value = e == null ? null : e.getValue();
-            if (value == null) {
-                // the entry was not found
-                // or it was a non-resident entry
-                misses++;
-            } else {
+        V get(long key, int hash, Entry<V> e) {
+            ReadBuffer<Entry<V>> buffer = readBuffer;
+            if (buffer != null) {
+                V value = e == null ? null : e.getValue();
+                if (value == null) {
+                    buffer.misses.increment();
+                } else if (buffer.offer(e) && lock.tryLock()) {
+                    try {
+                        drainReadBuffer();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return value;
+            }
+            lock.lock();
+            try {
+                V value = e == null ? null : e.getValue();
+                if (value == null) {
+                    // the entry was not found
+                    // or it was a non-resident entry
+                    // (the access is recorded in the sketch when it is added)
+                    misses++;
+                } else {
+                    access(e);
+                    hits++;
+                    if (sketch != null) {
+                        sketch.increment(key, hash);
+                    }
+                }
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Replay the buffered reads. The lock must be held.
+         */
+        private void drainReadBuffer() {
+            if (readBuffer != null) {
+                readBuffer.drainTo(this::replay);
+            }
+        }
+
+        private void replay(Entry<V> e) {
+            int hash = getHash(e.key);
+            // the entry might have been removed or replaced meanwhile,
+            // or it belongs to the segment before resize
+            if (find(e.key, hash) == e && e.getValue() != null) {
                 access(e);
-                hits++;
+                if (sketch != null) {
+                    sketch.increment(e.key, hash);
+                }
             }
-            return value;
         }
 
         /**
@@ -796,41 +929,79 @@ private void access(Entry<V> e) {
          * @param memory the memory used for the given entry
          * @return the old value, or null if there was no resident entry
          */
-        synchronized V put(long key, int hash, V value, long memory) {
-            Entry<V> e = find(key, hash);
-            boolean existed = e != null;
-            V old = null;
-            if (existed) {
-                old = e.getValue();
-                remove(key, hash);
-            }
-            if (memory + Entry.TOTAL_MEMORY_OVERHEAD > maxMemory) {
-                // the new entry is too big to fit
+        V put(long key, int hash, V value, long memory) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                Entry<V> e = find(key, hash);
+                boolean existed = e != null;
+                V old = null;
+                if (existed) {
+                    old = e.getValue();
+                }
+                if (sketch != null && old == null) {
+                    sketch.increment(key, hash);
+                    if (!existed && !admit(key, hash, memory)) {
+                        admissionRejects++;
+                        return null;
+                    }
+                }
+                if (existed) {
+                    remove(key, hash);
+                }
+                if (memory + Entry.TOTAL_MEMORY_OVERHEAD > maxMemory) {
+                    // the new entry is too big to fit
+                    return old;
+                }
+                e = new Entry<>(key, value, memory);
+                int index = hash & mask;
+                e.mapNext = entries[index];
+                entries[index] = e;
+                usedMemory += e.memory;
+                if (usedMemory > maxMemory) {
+                    // old entries needs to be removed
+                    evict();
+                    // if the cache is full, the new entry is
+                    // cold if possible
+                    if (stackSize > 0) {
+                        // the new cold entry is at the top of the queue
+                        addToQueue(queue, e);
+                    }
+                }
+                mapSize++;
+                // added entries are always added to the stack
+                addToStack(e);
+                if (existed) {
+                    // if it was there before (even non-resident), it becomes hot
+                    access(e);
+                }
                 return old;
+            } finally {
+                lock.unlock();
             }
-            e = new Entry<>(key, value, memory);
-            int index = hash & mask;
-            e.mapNext = entries[index];
-            entries[index] = e;
-            usedMemory += e.memory;
-            if (usedMemory > maxMemory) {
-                // old entries needs to be removed
-                evict();
-                // if the cache is full, the new entry is
-                // cold if possible
-                if (stackSize > 0) {
-                    // the new cold entry is at the top of the queue
-                    addToQueue(queue, e);
-                }
+        }
+
+        /**
+         * Check whether a new entry passes the admission filter. If the
+         * segment has enough free memory, it is always admitted. Otherwise,
+         * it has to be accessed more frequently than the entry, which would
+         * be evicted first.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @param memory the memory used for the entry
+         * @return whether the entry should be added
+         */
+        private boolean admit(long key, int hash, long memory) {
+            sketch.ensureCapacity(mapSize - queue2Size);
+            if (usedMemory + memory + Entry.TOTAL_MEMORY_OVERHEAD <= maxMemory) {
+                return true;
             }
-            mapSize++;
-            // added entries are always added to the stack
-            addToStack(e);
-            if (existed) {
-                // if it was there before (even non-resident), it becomes hot
-                access(e);
+            Entry<V> victim = queueSize > 0 ? queue.queuePrev : stack.stackPrev;
+            if (victim == stack) {
+                return true;
             }
-            return old;
+            return sketch.frequency(key, hash) > sketch.frequency(victim.key, getHash(victim.key));
         }
 
         /**
@@ -841,46 +1012,51 @@ synchronized V put(long key, int hash, V value, long memory) {
          * @param hash the hash
          * @return the old value, or null if there was no resident entry
          */
-        synchronized V remove(long key, int hash) {
-            int index = hash & mask;
-            Entry<V> e = entries[index];
-            if (e == null) {
-                return null;
-            }
-            if (e.key == key) {
-                entries[index] = e.mapNext;
-            } else {
-                Entry<V> last;
-                do {
-                    last = e;
-                    e = e.mapNext;
-                    if (e == null) {
-                        return null;
+        V remove(long key, int hash) {
+            lock.lock();
+            try {
+                int index = hash & mask;
+                Entry<V> e = entries[index];
+                if (e == null) {
+                    return null;
+                }
+                if (e.key == key) {
+                    entries[index] = e.mapNext;
+                } else {
+                    Entry<V> last;
+                    do {
+                        last = e;
+                        e = e.mapNext;
+                        if (e == null) {
+                            return null;
+                        }
+                    } while (e.key != key);
+                    last.mapNext = e.mapNext;
+                }
+                V old = e.getValue();
+                mapSize--;
+                usedMemory -= e.getMemory();
+                if (e.stackNext != null) {
+                    removeFromStack(e);
+                }
+                if (e.isHot()) {
+                    // when removing a hot entry, the newest cold entry gets hot,
+                    // so the number of hot entries does not change
+                    e = queue.queueNext;
+                    if (e != queue) {
+                        removeFromQueue(e);
+                        if (e.stackNext == null) {
+                            addToStackBottom(e);
+                        }
                     }
-                } while (e.key != key);
-                last.mapNext = e.mapNext;
-            }
-            V old = e.getValue();
-            mapSize--;
-            usedMemory -= e.getMemory();
-            if (e.stackNext != null) {
-                removeFromStack(e);
-            }
-            if (e.isHot()) {
-                // when removing a hot entry, the newest cold entry gets hot,
-                // so the number of hot entries does not change
-                e = queue.queueNext;
-                if (e != queue) {
+                    pruneStack();
+                } else {
                     removeFromQueue(e);
-                    if (e.stackNext == null) {
-                        addToStackBottom(e);
-                    }
                 }
-                pruneStack();
-            } else {
-                removeFromQueue(e);
+                return old;
+            } finally {
+                lock.unlock();
             }
-            return old;
         }
 
         /**
@@ -1040,21 +1216,27 @@ private void removeFromQueue(Entry<V> e) {
          * @param nonResident true for non-resident entries
          * @return the key list
          */
-        synchronized List<Long> keys(boolean cold, boolean nonResident) {
-            ArrayList<Long> keys = new ArrayList<>();
-            if (cold) {
-                Entry<V> start = nonResident ? queue2 : queue;
-                for (Entry<V> e = start.queueNext; e != start;
-                        e = e.queueNext) {
-                    keys.add(e.key);
-                }
-            } else {
-                for (Entry<V> e = stack.stackNext; e != stack;
-                        e = e.stackNext) {
-                    keys.add(e.key);
+        List<Long> keys(boolean cold, boolean nonResident) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                ArrayList<Long> keys = new ArrayList<>();
+                if (cold) {
+                    Entry<V> start = nonResident ? queue2 : queue;
+                    for (Entry<V> e = start.queueNext; e != start;
+                            e = e.queueNext) {
+                        keys.add(e.key);
+                    }
+                } else {
+                    for (Entry<V> e = stack.stackNext; e != stack;
+                            e = e.stackNext) {
+                        keys.add(e.key);
+                    }
                 }
+                return keys;
+            } finally {
+                lock.unlock();
             }
-            return keys;
         }
 
         /**
@@ -1062,15 +1244,21 @@ synchronized List<Long> keys(boolean cold, boolean nonResident) {
          *
          * @return the set of keys
          */
-        synchronized Set<Long> keySet() {
-            HashSet<Long> set = new HashSet<>();
-            for (Entry<V> e = stack.stackNext; e != stack; e = e.stackNext) {
-                set.add(e.key);
-            }
-            for (Entry<V> e = queue.queueNext; e != queue; e = e.queueNext) {
-                set.add(e.key);
+        Set<Long> keySet() {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                HashSet<Long> set = new HashSet<>();
+                for (Entry<V> e = stack.stackNext; e != stack; e = e.stackNext) {
+                    set.add(e.key);
+                }
+                for (Entry<V> e = queue.queueNext; e != queue; e = e.queueNext) {
+                    set.add(e.key);
+                }
+                return set;
+            } finally {
+                lock.unlock();
             }
-            return set;
         }
 
         /**
@@ -1219,5 +1407,18 @@ public static class Config {
          * as a factor of the number of all other entries in the map
          */
         public final int nonResidentQueueSizeHigh = 12;
+
+        /**
+         * Whether new entries have to pass the TinyLFU admission filter, once
+         * the cache is full.
+         */
+        public boolean admissionFilter;
+
+        /**
+         * Whether reads should not lock the segment. Accesses are then
+         * buffered, and applied to the replacement policy later on, so that
+         * some of them can be lost.
+         */
+        public boolean bufferedReads;
     }
 }
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.h2.compress.CompressLZF;
+import org.h2.mvstore.DataUtils;
+
+/**
+ * A cache of byte arrays with keys of type long, which keeps the data outside
+ * of the Java heap, in direct byte buffers. It is meant to be used as a second
+ * level cache for serialized pages, behind a cache of deserialized objects,
+ * so that a large cache does not increase the heap size and garbage
+ * collection pauses.
+ * <p>
+ * The cache is split into a number of segments, and each segment is a ring
+ * buffer: new entries are appended at the write position, and the oldest
+ * entries are evicted, when space is needed (FIFO). Entries can not be
+ * updated, and removed entries only release their space once the ring wraps
+ * around. The index of each segment is a primitive open addressing hash
+ * table, so that the heap overhead per entry is about 12 bytes.
+ * <p>
+ * Each entry has a tag, which has to match on lookup, so that stale entries
+ * are not returned even if they were not removed (for example, a version of
+ * the chunk, if chunk ids are reused).
+ * <p>
+ * Optionally, entries are compressed with LZF, if that makes them smaller.
+ * <p>
+ * This implementation is multi-threading safe. Access is synchronized per
+ * segment.
+ * <p>
+ * Note that direct memory is limited by the JVM option
+ * <code>-XX:MaxDirectMemorySize</code>, which defaults to the maximum heap
+ * size.
+ */
+public class CacheLongKeyOffHeap {
+
+    /**
+     * Maximum size of a single segment.
+     */
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final long maxMemory;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxMemory the maximum memory to use, in bytes
+     * @param segmentCount the minimum number of segments, must be a power of 2
+     * @param compress whether to compress entries
+     */
+    public CacheLongKeyOffHeap(long maxMemory, int segmentCount, boolean compress) {
+        DataUtils.checkArgument(Integer.bitCount(segmentCount) == 1,
+                "The segment count must be a power of 2, is {0}", segmentCount);
+        while (maxMemory / segmentCount > MAX_SEGMENT_SIZE) {
+            segmentCount <<= 1;
+        }
+        this.maxMemory = maxMemory;
+        int segmentSize = (int) Math.max(1024, maxMemory / segmentCount);
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentSize, compress);
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+    private Segment getSegment(long key) {
+        return segments[CacheLongKeyLIRS.getHash(key) & segmentMask];
+    }
+
+    /**
+     * Get a copy of the data for the given key.
+     *
+     * @param key the key
+     * @param tag the tag the entry was added with
+     * @return a heap buffer with the data, or null if not found
+     */
+    public ByteBuffer get(long key, long tag) {
+        return getSegment(key).get(key, tag);
+    }
+
+    /**
+     * Add an entry. An existing entry for this key is replaced if it has a
+     * different tag. The remaining bytes of the buffer are copied, and its
+     * position is not changed.
+     *
+     * @param key the key
+     * @param tag the tag
+     * @param data the data
+     */
+    public void put(long key, long tag, ByteBuffer data) {
+        getSegment(key).put(key, tag, data);
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param key the key
+     */
+    public void remove(long key) {
+        getSegment(key).remove(key);
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Get the maximum memory to use.
+     *
+     * @return the maximum memory, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Get the memory used by entries, including the space of removed entries,
+     * which is not reclaimed yet.
+     *
+     * @return the used memory, in bytes
+     */
+    public long getUsedMemory() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.getUsedMemory();
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        int x = 0;
+        for (Segment s : segments) {
+            x += s.getSize();
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the cache hits
+     */
+    public long getHits() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.hits;
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the cache misses
+     */
+    public long getMisses() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.misses;
+        }
+        return x;
+    }
+
+    /**
+     * A segment of the cache.
+     */
+    private static final class Segment {
+
+        /**
+         * Entry header: key (long), tag (long), stored length (int), original
+         * length (int, 0 if not compressed).
+         */
+        private static final int HEADER = 24;
+
+        private final int capacity;
+
+        private final boolean compress;
+
+        private final CompressLZF compressor;
+
+        private ByteBuffer data;
+
+        /**
+         * Entries in insertion order, each one is (offset << 32 | length).
+         */
+        private long[] queue = new long[64];
+
+        private int queueHead;
+
+        private int queueSize;
+
+        private int writePos;
+
+        private long usedMemory;
+
+        private long[] keys = new long[16];
+
+        private int[] offsets = new int[16];
+
+        private int size;
+
+        /**
+         * The number of cache hits.
+         */
+        volatile long hits;
+
+        /**
+         * The number of cache misses.
+         */
+        volatile long misses;
+
+        Segment(int capacity, boolean compress) {
+            this.capacity = capacity;
+            this.compress = compress;
+            this.compressor = compress ? new CompressLZF() : null;
+            clear();
+        }
+
+        synchronized void clear() {
+            // allocated lazily, so that an unused cache does not take memory
+            data = null;
+            queueHead = queueSize = 0;
+            writePos = 0;
+            usedMemory = 0;
+            keys = new long[16];
+            offsets = new int[16];
+            Arrays.fill(offsets, -1);
+            size = 0;
+        }
+
+        synchronized int getSize() {
+            return size;
+        }
+
+        synchronized long getUsedMemory() {
+            return usedMemory;
+        }
+
+        synchronized ByteBuffer get(long key, long tag) {
+            int offset = find(key);
+            if (offset < 0 || data.getLong(offset + 8) != tag) {
+                misses++;
+                return null;
+            }
+            hits++;
+            int storedLength = data.getInt(offset + 16);
+            int length = data.getInt(offset + 20);
+            byte[] stored = new byte[storedLength];
+            ByteBuffer d = data.duplicate();
+            d.position(offset + HEADER);
+            d.get(stored);
+            if (length == 0) {
+                return ByteBuffer.wrap(stored);
+            }
+            byte[] result = new byte[length];
+            compressor.expand(stored, 0, storedLength, result, 0, length);
+            return ByteBuffer.wrap(result);
+        }
+
+        synchronized void put(long key, long tag, ByteBuffer buff) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (data.getLong(offsets[index] + 8) == tag) {
+                    return;
+                }
+                delete(index);
+            }
+            int length = buff.remaining();
+            byte[] bytes = new byte[length];
+            buff.duplicate().get(bytes);
+            int storedLength = length;
+            int originalLength = 0;
+            if (compress && length > 64) {
+                byte[] comp = new byte[length * 2 + 64];
+                int compLength = compressor.compress(bytes, 0, length, comp, 0);
+                if (compLength < length) {
+                    bytes = comp;
+                    storedLength = compLength;
+                    originalLength = length;
+                }
+            }
+            int need = HEADER + storedLength;
+            if (need > capacity / 4) {
+                // too large, would evict too much
+                return;
+            }
+            if (data == null) {
+                data = ByteBuffer.allocateDirect(capacity);
+            }
+            int offset = allocate(need);
+            data.putLong(offset, key);
+            data.putLong(offset + 8, tag);
+            data.putInt(offset + 16, storedLength);
+            data.putInt(offset + 20, originalLength);
+            ByteBuffer d = data.duplicate();
+            d.position(offset + HEADER);
+            d.put(bytes, 0, storedLength);
+            if (queueSize == queue.length) {
+                long[] q = new long[queue.length * 2];
+                for (int i = 0; i < queueSize; i++) {
+                    q[i] = queue[(queueHead + i) % queue.length];
+                }
+                queue = q;
+                queueHead = 0;
+            }
+            queue[(queueHead + queueSize++) % queue.length] = ((long) offset << 32) | need;
+            usedMemory += need;
+            insert(key, offset);
+        }
+
+        synchronized void remove(long key) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                delete(index);
+            }
+        }
+
+        private int allocate(int need) {
+            while (true) {
+                if (queueSize == 0) {
+                    writePos = need;
+                    return 0;
+                }
+                int oldest = (int) (queue[queueHead] >>> 32);
+                if (writePos > oldest) {
+                    if (capacity - writePos >= need) {
+                        break;
+                    } else if (oldest >= need) {
+                        writePos = 0;
+                        break;
+                    }
+                } else if (oldest - writePos >= need) {
+                    break;
+                }
+                evictOldest();
+            }
+            int offset = writePos;
+            writePos += need;
+            return offset;
+        }
+
+        private void evictOldest() {
+            long entry = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            int offset = (int) (entry >>> 32);
+            usedMemory -= (int) entry;
+            int index = indexOf(data.getLong(offset));
+            if (index >= 0 && offsets[index] == offset) {
+                delete(index);
+            }
+        }
+
+        private int find(long key) {
+            int index = indexOf(key);
+            return index < 0 ? -1 : offsets[index];
+        }
+
+        private int indexOf(long key) {
+            int mask = keys.length - 1;
+            for (int i = CacheLongKeyLIRS.getHash(key) & mask;; i = (i + 1) & mask) {
+                if (offsets[i] < 0) {
+                    return -1;
+                } else if (keys[i] == key) {
+                    return i;
+                }
+            }
+        }
+
+        private void insert(long key, int offset) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                long[] oldKeys = keys;
+                int[] oldOffsets = offsets;
+                keys = new long[oldKeys.length * 2];
+                offsets = new int[oldKeys.length * 2];
+                Arrays.fill(offsets, -1);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldOffsets[i] >= 0) {
+                        insert(oldKeys[i], oldOffsets[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = CacheLongKeyLIRS.getHash(key) & mask;
+            while (offsets[i] >= 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            offsets[i] = offset;
+            size++;
+        }
+
+        private void delete(int index) {
+            // backward shift deletion, so that no tombstones are needed
+            int mask = keys.length - 1;
+            int i = index;
+            for (int j = (i + 1) & mask; offsets[j] >= 0; j = (j + 1) & mask) {
+                int home = CacheLongKeyLIRS.getHash(keys[j]) & mask;
+                // move entry j to i, if i lies cyclically within [home, j)
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    offsets[i] = offsets[j];
+                    i = j;
+                }
+            }
+            offsets[i] = -1;
+            size--;
+        }
+    }
+}
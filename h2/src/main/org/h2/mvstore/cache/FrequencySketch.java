@@ -0,0 +1,125 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.cache;
+
+/**
+ * A count-min sketch, which estimates the access frequency of keys within a
+ * recent period of time, as used by the TinyLFU admission policy.
+ * <p>
+ * Each key is mapped to four 4-bit counters, so that the frequency is at most
+ * 15. The counters are packed into an array of longs, a key uses one counter
+ * in each of four longs. The estimate is the minimum of the four counters.
+ * When the number of increments reaches ten times the capacity, all counters
+ * are halved, so that old accesses age out.
+ * <p>
+ * This class is not thread safe, it is guarded by the cache segment. However,
+ * concurrent access (after the segment was resized) may only cause lost
+ * updates.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table;
+
+    private int sampleSize;
+
+    /**
+     * The number of increments since the last reset.
+     */
+    private int size;
+
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /**
+     * Grow the sketch, if it is too small for the given number of entries.
+     * The collected statistics are lost when growing.
+     *
+     * @param capacity the number of entries
+     */
+    void ensureCapacity(int capacity) {
+        if (table != null && table.length >= capacity) {
+            return;
+        }
+        int len = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 28)) - 1) << 1;
+        table = new long[len];
+        sampleSize = 10 * len;
+        size = 0;
+    }
+
+    /**
+     * Get the estimated number of recent accesses of the key.
+     *
+     * @param key the key
+     * @param hash the hash of the key
+     * @return the frequency, 0 to 15
+     */
+    int frequency(long key, int hash) {
+        long[] t = table;
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(t, key, i);
+            int count = (int) ((t[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access of the key.
+     *
+     * @param key the key
+     * @param hash the hash of the key
+     */
+    void increment(long key, int hash) {
+        long[] t = table;
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(t, indexOf(t, key, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private static boolean incrementAt(long[] t, int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((t[i] & mask) != mask) {
+            t[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private static int indexOf(long[] t, long key, int i) {
+        long hash = (key + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return (int) hash & (t.length - 1);
+    }
+
+    /**
+     * Halve all counters, and the number of increments.
+     */
+    private void reset() {
+        long[] t = table;
+        int count = 0;
+        for (int i = 0; i < t.length; i++) {
+            count += Long.bitCount(t[i] & ONE_MASK);
+            t[i] = (t[i] >>> 1) & RESET_MASK;
+        }
+        size = Math.max(0, size - (count >>> 2)) >>> 1;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A lossy buffer of accessed cache entries, which allows to record reads
+ * without locking, and to replay them later on, when the lock is held
+ * anyway, or can be acquired without waiting.
+ * <p>
+ * The buffer is split into a number of stripes, each one is a bounded ring
+ * of references. The stripe is selected by the current thread, so that
+ * concurrent readers seldom compete for the same stripe. If the stripe is
+ * full or contended, the access is dropped: it is only a hint for the
+ * replacement policy.
+ *
+ * @param <E> the entry type
+ */
+final class ReadBuffer<E> {
+
+    /**
+     * The number of entries in a stripe, must be a power of 2.
+     */
+    static final int STRIPE_SIZE = 16;
+
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+
+    private final int stripeMask;
+
+    /**
+     * The number of recorded hits.
+     */
+    final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of recorded misses.
+     */
+    final LongAdder misses = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(64, Runtime.getRuntime().availableProcessors()))
+                * 2 - 1);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * Record an access of the entry.
+     *
+     * @param e the entry
+     * @return true if the stripe is full, and the buffer should be drained
+     */
+    boolean offer(E e) {
+        hits.increment();
+        int index = CacheLongKeyLIRS.getHash(Thread.currentThread().getId()) & stripeMask;
+        return stripes[index].offer(e);
+    }
+
+    /**
+     * Remove all recorded accesses and pass them to the consumer. Only one
+     * thread at a time may drain the buffer.
+     *
+     * @param consumer the consumer
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    /**
+     * A bounded ring of entries with multiple producers and a single
+     * consumer.
+     *
+     * @param <E> the entry type
+     */
+    private static final class Stripe<E> {
+
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+
+        private final AtomicLong writeCounter = new AtomicLong();
+
+        private volatile long readCounter;
+
+        Stripe() {
+        }
+
+        boolean offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= STRIPE_SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) tail & STRIPE_MASK, e);
+                return tail - head + 1 >= STRIPE_SIZE;
+            }
+            // contended, drop the access
+            return false;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head != tail; head++) {
+                int index = (int) head & STRIPE_MASK;
+                E e = buffer.get(index);
+                if (e == null) {
+                    // not published yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+            }
+            readCounter = head;
+        }
+    }
+}
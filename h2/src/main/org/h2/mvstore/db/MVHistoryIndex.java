@@ -0,0 +1,212 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.index.IndexType;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.tx.TransactionStore;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.TableFilter;
+import org.h2.util.DateTimeUtils;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueTimestampTimeZone;
+
+/**
+ * A scan index over the rows of a table as they were in an older version of
+ * the store (FOR SYSTEM_TIME AS OF). The rows are read from the old map roots
+ * retained by the transaction store, without a transaction snapshot and
+ * without row locks. The index is created for one table filter and can not be
+ * used for lookups.
+ */
+public final class MVHistoryIndex extends Index {
+
+    private final MVTable mvTable;
+
+    private final MVPrimaryIndex primaryIndex;
+
+    private final TransactionStore transactionStore;
+
+    private final Expression pointInTime;
+
+    private final boolean version;
+
+    MVHistoryIndex(MVTable table, MVPrimaryIndex primaryIndex, TransactionStore transactionStore,
+            Expression pointInTime, boolean version) {
+        super(table, 0, null, primaryIndex.getIndexColumns(), 0, IndexType.createScan(false));
+        this.mvTable = table;
+        this.primaryIndex = primaryIndex;
+        this.transactionStore = transactionStore;
+        this.pointInTime = pointInTime;
+        this.version = version;
+    }
+
+    /**
+     * Get the version of the store, which the point in time refers to.
+     *
+     * @param session the session
+     * @return the version
+     */
+    public long getVersion(SessionLocal session) {
+        Value v = pointInTime.getValue(session);
+        if (v == ValueNull.INSTANCE) {
+            throw DbException.getInvalidValueException("point in time", v);
+        }
+        if (version) {
+            return v.getLong();
+        }
+        ValueTimestampTimeZone ts = (ValueTimestampTimeZone) v.convertTo(TypeInfo.TYPE_TIMESTAMP_TZ, session);
+        long timeNanos = ts.getTimeNanos();
+        long millis = DateTimeUtils.getEpochSeconds(ts.getDateValue(), timeNanos, ts.getTimeZoneOffsetSeconds())
+                * 1_000L + timeNanos / 1_000_000L % 1_000L;
+        long result = transactionStore.getHistoryVersion(millis);
+        if (result < 0L) {
+            throw DbException.getInvalidValueException("point in time", ts.getTraceSQL());
+        }
+        return result;
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last, boolean reverse) {
+        assert !reverse;
+        long v = getVersion(session);
+        try {
+            return new HistoryCursor(transactionStore.historyIterator(primaryIndex.getMap(null).map, v, null, null));
+        } catch (IllegalArgumentException e) {
+            throw DbException.getInvalidValueException(e, "version", v);
+        } catch (MVStoreException e) {
+            throw mvTable.convertException(e);
+        }
+    }
+
+    @Override
+    public double getCost(SessionLocal session, int[] masks, TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet, boolean isSelectCommand) {
+        return primaryIndex.getCost(session, null, filters, filter, null, allColumnsSet, isSelectCommand);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return primaryIndex.getPlanSQL();
+    }
+
+    @Override
+    public boolean isFindUsingFullTableScan() {
+        return true;
+    }
+
+    @Override
+    public int getColumnIndex(Column col) {
+        return -1;
+    }
+
+    @Override
+    public boolean isFirstColumn(Column column) {
+        return false;
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        return primaryIndex.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return primaryIndex.getRowCountApproximation(session);
+    }
+
+    @Override
+    public void close(SessionLocal session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(SessionLocal session, Row row) {
+        throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF");
+    }
+
+    @Override
+    public void remove(SessionLocal session, Row row) {
+        throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF");
+    }
+
+    @Override
+    public void remove(SessionLocal session) {
+        throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF");
+    }
+
+    @Override
+    public void truncate(SessionLocal session) {
+        throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    /**
+     * A cursor over the rows of an old version.
+     */
+    private static final class HistoryCursor implements Cursor {
+
+        private final Iterator<Entry<Long, SearchRow>> it;
+
+        private Row row;
+
+        HistoryCursor(Iterator<Entry<Long, SearchRow>> it) {
+            this.it = it;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            if (it.hasNext()) {
+                Entry<Long, SearchRow> e = it.next();
+                row = (Row) e.getValue();
+                if (row.getKey() == 0) {
+                    row.setKey(e.getKey());
+                }
+                return true;
+            }
+            row = null;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+    }
+
+}
@@ -6,8 +6,11 @@
 package org.h2.mvstore.db;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 import org.h2.api.ErrorCode;
 import org.h2.command.query.AllColumnsForPlan;
@@ -53,6 +56,8 @@ public MVPrimaryIndex(Database db, MVTable table, int id, IndexColumn[] columns,
         Transaction t = mvTable.getTransactionBegin();
         dataMap = t.openMap(mapName, LongDataType.INSTANCE, valueType);
         dataMap.map.setVolatile(!table.isPersistData() || !indexType.isPersistent());
+        // new rows usually get increasing keys
+        dataMap.map.setRightEdgeSplit(true);
         if (!db.isStarting()) {
             dataMap.clear();
         }
@@ -422,6 +427,45 @@ public String getMapName() {
         return mapName;
     }
 
+    /**
+     * Get a cursor over rows at random positions of this index, to collect a
+     * uniform sample of the table without reading all of it. The positions
+     * are chosen in the map, which also contains uncommitted rows of other
+     * sessions. Rows that are not visible to the session are skipped, so the
+     * cursor may return fewer rows than requested.
+     *
+     * @param session the session
+     * @param count the number of rows
+     * @param seed the seed of the random positions
+     * @return the cursor
+     */
+    public Cursor sample(SessionLocal session, int count, long seed) {
+        long size = dataMap.map.sizeAsLong();
+        long[] positions;
+        if (size <= count) {
+            positions = new long[(int) size];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+        } else {
+            // Floyd's algorithm: distinct positions without a pass over them
+            Random random = new Random(seed);
+            HashSet<Long> set = new HashSet<>(count * 2);
+            for (long j = size - count; j < size; j++) {
+                long t = (long) (random.nextDouble() * (j + 1));
+                set.add(set.contains(t) ? j : t);
+            }
+            positions = new long[count];
+            int i = 0;
+            for (long position : set) {
+                positions[i++] = position;
+            }
+            // read the map in key order
+            Arrays.sort(positions);
+        }
+        return new SampleCursor(getMap(session), positions);
+    }
+
     @Override
     public void addRowsToBuffer(List<Row> rows, String bufferName) {
         throw new UnsupportedOperationException();
@@ -463,6 +507,55 @@ private static Row setRowKey(Row row, long key) {
         return row;
     }
 
+    /**
+     * A cursor over rows at the given positions of the map.
+     */
+    private static final class SampleCursor implements Cursor {
+
+        private final TransactionMap<Long, SearchRow> map;
+        private final long[] positions;
+        private int index;
+        private Row row;
+
+        SampleCursor(TransactionMap<Long, SearchRow> map, long[] positions) {
+            this.map = map;
+            this.positions = positions;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            while (index < positions.length) {
+                // the map can shrink concurrently
+                Long key = map.map.getKey(positions[index++]);
+                if (key == null) {
+                    break;
+                }
+                Row r = (Row) map.get(key);
+                if (r != null) {
+                    row = setRowKey(r, key);
+                    return true;
+                }
+            }
+            row = null;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+    }
+
     /**
      * A cursor.
      */
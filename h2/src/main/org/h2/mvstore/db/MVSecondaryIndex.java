@@ -40,6 +40,11 @@
  */
 public final class MVSecondaryIndex extends MVIndex<SearchRow, Value> {
 
+    /**
+     * The fill factor of pages, when the index is built from sorted rows.
+     */
+    private static final int BULK_LOAD_FILL_FACTOR = 90;
+
     /**
      * The multi-value table.
      */
@@ -131,6 +136,9 @@ public void addBufferedRows(List<String> bufferNames) {
         }
 
         try {
+            if (dataMap.map.isEmpty()) {
+                addBufferedRowsBulk(queue);
+            }
             while (!queue.isEmpty()) {
                 Source s = queue.poll();
                 SearchRow row = s.next();
@@ -153,6 +161,41 @@ public void addBufferedRows(List<String> bufferNames) {
         }
     }
 
+    /**
+     * Build the index from the merged rows bottom-up. The rows are sorted, so
+     * that a duplicate of a unique key directly follows the row it conflicts
+     * with.
+     *
+     * @param queue the sources of rows
+     */
+    private void addBufferedRowsBulk(Queue<Source> queue) {
+        RowFactory uniqueRowFactory = getUniqueRowFactory();
+        SearchRow last = null;
+        try (TransactionMap.CommittedBulkLoader<SearchRow,Value> loader =
+                dataMap.bulkLoaderCommitted(BULK_LOAD_FILL_FACTOR)) {
+            while (!queue.isEmpty()) {
+                Source s = queue.poll();
+                SearchRow row = s.next();
+
+                if (needsUniqueCheck(row)) {
+                    SearchRow unique = uniqueRowFactory.createRow();
+                    unique.copyFrom(row);
+                    unique.setKey(SearchRow.MATCH_ALL_ROW_KEY);
+                    if (last != null && uniqueRowFactory.getRowDataType().compare(last, unique) == 0) {
+                        throw getDuplicateKeyException(row.toString());
+                    }
+                    last = unique;
+                }
+
+                loader.add(row, ValueNull.INSTANCE);
+
+                if (s.hasNext()) {
+                    queue.offer(s);
+                }
+            }
+        }
+    }
+
     private MVMap<SearchRow,Value> openMap(String mapName) {
         RowDataType keyType = getRowFactory().getRowDataType();
         MVMap.Builder<SearchRow,Value> builder = new MVMap.Builder<SearchRow,Value>()
@@ -8,11 +8,20 @@
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.h2.api.DatabaseEventListener;
 import org.h2.api.ErrorCode;
 import org.h2.command.ddl.CreateTableData;
@@ -22,6 +31,7 @@
 import org.h2.engine.Database;
 import org.h2.engine.SessionLocal;
 import org.h2.engine.SysProperties;
+import org.h2.expression.Expression;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
@@ -29,7 +39,11 @@
 import org.h2.message.Trace;
 import org.h2.mode.DefaultNullOrdering;
 import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.RootReference;
+import org.h2.mvstore.tx.CommittedChange;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionStore;
 import org.h2.result.Row;
@@ -44,6 +58,7 @@
 import org.h2.util.Utils;
 import org.h2.value.DataType;
 import org.h2.value.TypeInfo;
+import org.h2.value.VersionedValue;
 
 /**
  * A table stored in a MVStore.
@@ -106,17 +121,50 @@ public String getEventText() {
      */
     private final boolean containsLargeObject;
 
+    /**
+     * Whether a lock of the type of the first index can be granted while
+     * another session holds a lock of the type of the second index. Lock types
+     * are modes of multi-granularity locking: a read lock is an intention
+     * shared (IS) lock, a write lock is an intention exclusive (IX) lock, a
+     * share lock is a shared (S) lock, and an exclusive lock is an exclusive
+     * (X) lock.
+     */
+    private static final boolean[][] COMPATIBLE = {
+            // IS, IX, X, S
+            { true, true, false, true }, // IS
+            { true, true, false, false }, // IX
+            { false, false, false, false }, // X
+            { true, false, false, true }, // S
+    };
+
+    /**
+     * The holder of a write lock, which was granted without waiting.
+     */
+    private static final LockHolder WRITE_LOCK_HOLDER = new LockHolder(1 << Table.WRITE_LOCK, 0L);
+
     /**
      * The session (if any) that has exclusively locked this table.
      */
     private volatile SessionLocal lockExclusiveSession;
 
     /**
-     * The set of sessions (if any) that have a shared lock on the table. Here
-     * we are using a ConcurrentHashMap as a set, as there is no
-     * ConcurrentHashSet.
+     * The time the session with the exclusive lock waited for it, in
+     * nanoseconds.
      */
-    private final ConcurrentHashMap<SessionLocal, SessionLocal> lockSharedSessions = new ConcurrentHashMap<>();
+    private long lockExclusiveWaitNanos;
+
+    /**
+     * The sessions (if any) that have a write lock or a share lock on the
+     * table, and their locks. Exclusive locks are held in
+     * {@link #lockExclusiveSession}, and read locks are not registered.
+     */
+    private final ConcurrentHashMap<SessionLocal, LockHolder> lockSharedSessions = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requested and held exclusive and share locks. Write locks
+     * are granted without the queue lock while it is 0.
+     */
+    private final AtomicInteger strongLocks = new AtomicInteger();
 
     private Column rowIdColumn;
 
@@ -129,6 +177,17 @@ public String getEventText() {
      * prevent starvation, since Java's synchronized locking is biased.
      */
     private final ArrayDeque<SessionLocal> waitingSessions = new ArrayDeque<>();
+
+    /**
+     * The lock for {@link #waitingSessions} and for the sessions waiting in
+     * the queue.
+     */
+    private final ReentrantLock queueLock = new ReentrantLock();
+
+    /**
+     * Signalled when a lock is released.
+     */
+    private final Condition lockReleased = queueLock.newCondition();
     private final Trace traceLock;
     private final AtomicInteger changesUntilAnalyze;
     private int nextAnalyze;
@@ -173,40 +232,68 @@ public boolean lock(SessionLocal session, int lockType) {
         if (lockExclusiveSession == session) {
             return true;
         }
-        if (lockType != Table.EXCLUSIVE_LOCK && lockSharedSessions.containsKey(session)) {
+        LockHolder holder = lockSharedSessions.get(session);
+        if (holder != null && holder.covers(lockType)) {
             return true;
         }
-        synchronized (this) {
-            if (lockType != Table.EXCLUSIVE_LOCK && lockSharedSessions.containsKey(session)) {
+        if (lockType == Table.WRITE_LOCK && holder == null && strongLocks.get() == 0) {
+            // fast path, write locks are compatible with each other
+            if (lockSharedSessions.putIfAbsent(session, WRITE_LOCK_HOLDER) == null) {
+                if (strongLocks.get() == 0) {
+                    addSharedLock(session, lockType);
+                    return false;
+                }
+                // an exclusive or share lock was requested concurrently
+                lockSharedSessions.remove(session, WRITE_LOCK_HOLDER);
+                signalLockReleased();
+            }
+        }
+        boolean strong = lockType == Table.EXCLUSIVE_LOCK || lockType == Table.SHARE_LOCK;
+        if (strong) {
+            strongLocks.incrementAndGet();
+        }
+        boolean granted = false;
+        queueLock.lock();
+        try {
+            holder = lockSharedSessions.get(session);
+            if (holder != null && holder.covers(lockType)) {
                 return true;
             }
-            session.setWaitForLock(this, Thread.currentThread());
+            session.setWaitForLock(this, lockType, Thread.currentThread());
             if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                 WAITING_FOR_LOCK.set(getName());
             }
             waitingSessions.addLast(session);
             try {
                 doLock1(session, lockType);
+                granted = true;
             } finally {
-                session.setWaitForLock(null, null);
+                session.setWaitForLock(null, 0, null);
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                     WAITING_FOR_LOCK.remove();
                 }
                 waitingSessions.remove(session);
             }
+        } finally {
+            if (strong && !granted) {
+                strongLocks.decrementAndGet();
+                lockReleased.signalAll();
+            }
+            queueLock.unlock();
         }
         return false;
     }
 
     private void doLock1(SessionLocal session, int lockType) {
         traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_REQUESTING_FOR, NO_EXTRA_INFO);
+        long start = System.nanoTime();
         // don't get the current time unless necessary
         long max = 0L;
         boolean checkDeadlock = false;
         while (true) {
             // if I'm the next one in the queue
             if (waitingSessions.getFirst() == session && lockExclusiveSession == null) {
-                if (doLock2(session, lockType)) {
+                if (doLock2(session, lockType, System.nanoTime() - start)) {
                     return;
                 }
             }
@@ -236,42 +323,66 @@ private void doLock1(SessionLocal session, int lockType) {
                 if (sleep == 0) {
                     sleep = 1;
                 }
-                wait(sleep);
+                lockReleased.await(sleep, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 // ignore
             }
         }
     }
 
-    private boolean doLock2(SessionLocal session, int lockType) {
+    private boolean doLock2(SessionLocal session, int lockType, long waitNanos) {
+        if (lockType != Table.READ_LOCK) {
+            for (Map.Entry<SessionLocal, LockHolder> entry : lockSharedSessions.entrySet()) {
+                if (entry.getKey() != session && !entry.getValue().isCompatible(lockType)) {
+                    return false;
+                }
+            }
+        }
         switch (lockType) {
         case Table.EXCLUSIVE_LOCK:
-            int size = lockSharedSessions.size();
-            if (size == 0) {
-                traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_ADDED_FOR, NO_EXTRA_INFO);
-                session.registerTableAsLocked(this);
-            } else if (size == 1 && lockSharedSessions.containsKey(session)) {
+            if (lockSharedSessions.containsKey(session)) {
                 traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_ADD_UPGRADED_FOR, NO_EXTRA_INFO);
             } else {
-                return false;
+                traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_ADDED_FOR, NO_EXTRA_INFO);
+                session.registerTableAsLocked(this);
             }
+            lockExclusiveWaitNanos = waitNanos;
             lockExclusiveSession = session;
             if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                 addLockToDebugList(EXCLUSIVE_LOCKS);
             }
             break;
         case Table.WRITE_LOCK:
-            if (lockSharedSessions.putIfAbsent(session, session) == null) {
-                traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_OK, NO_EXTRA_INFO);
-                session.registerTableAsLocked(this);
-                if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
-                    addLockToDebugList(SHARED_LOCKS);
-                }
+        case Table.SHARE_LOCK: {
+            LockHolder holder = lockSharedSessions.get(session);
+            if (holder == null) {
+                lockSharedSessions.put(session, new LockHolder(1 << lockType, waitNanos));
+                addSharedLock(session, lockType);
+            } else {
+                lockSharedSessions.put(session, holder.add(lockType));
             }
         }
+        }
         return true;
     }
 
+    private void addSharedLock(SessionLocal session, int lockType) {
+        traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_OK, NO_EXTRA_INFO);
+        session.registerTableAsLocked(this);
+        if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
+            addLockToDebugList(SHARED_LOCKS);
+        }
+    }
+
+    private void signalLockReleased() {
+        queueLock.lock();
+        try {
+            lockReleased.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
     private void addLockToDebugList(DebuggingThreadLocal<ArrayList<String>> locks) {
         ArrayList<String> list = locks.get();
         if (list == null) {
@@ -293,9 +404,11 @@ private void traceLock(SessionLocal session, int lockType, TraceLockEvent eventE
     public void unlock(SessionLocal s) {
         if (database != null) {
             int lockType;
+            int strong;
             if (lockExclusiveSession == s) {
                 lockType = Table.EXCLUSIVE_LOCK;
-                lockSharedSessions.remove(s);
+                LockHolder holder = lockSharedSessions.remove(s);
+                strong = holder != null && holder.covers(Table.SHARE_LOCK) ? 2 : 1;
                 lockExclusiveSession = null;
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                     ArrayList<String> exclusiveLocks = EXCLUSIVE_LOCKS.get();
@@ -304,7 +417,17 @@ public void unlock(SessionLocal s) {
                     }
                 }
             } else {
-                lockType = lockSharedSessions.remove(s) != null ? Table.WRITE_LOCK : Table.READ_LOCK;
+                LockHolder holder = lockSharedSessions.remove(s);
+                if (holder == null) {
+                    lockType = Table.READ_LOCK;
+                    strong = 0;
+                } else if (holder.covers(Table.SHARE_LOCK)) {
+                    lockType = Table.SHARE_LOCK;
+                    strong = 1;
+                } else {
+                    lockType = Table.WRITE_LOCK;
+                    strong = 0;
+                }
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                     ArrayList<String> sharedLocks = SHARED_LOCKS.get();
                     if (sharedLocks != null) {
@@ -312,11 +435,12 @@ public void unlock(SessionLocal s) {
                     }
                 }
             }
+            if (strong != 0) {
+                strongLocks.addAndGet(-strong);
+            }
             traceLock(s, lockType, TraceLockEvent.TRACE_LOCK_UNLOCK, NO_EXTRA_INFO);
             if (lockType != Table.READ_LOCK && !waitingSessions.isEmpty()) {
-                synchronized (this) {
-                    notifyAll();
-                }
+                signalLockReleased();
             }
         }
     }
@@ -414,13 +538,22 @@ private void rebuildIndexBlockMerge(SessionLocal session, MVIndex<?,?> index) {
         Index scan = getScanIndex(session);
         long remaining = scan.getRowCount(session);
         long total = remaining;
+        int bufferSize = (int) Math.min(total, database.getMaxMemoryRows() / 2);
+        String n = getName() + ':' + index.getName();
+        int threads = database.getSettings().createIndexThreads;
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (threads > 1 && total > bufferSize && index instanceof MVSecondaryIndex
+                && !session.getTransaction().hasChanges()
+                && rebuildIndexParallel(index, n, total, bufferSize, threads)) {
+            return;
+        }
         Cursor cursor = scan.find(session, null, null, false);
         long i = 0;
         Store store = session.getDatabase().getStore();
 
-        int bufferSize = (int) Math.min(total, database.getMaxMemoryRows() / 2);
         ArrayList<Row> buffer = new ArrayList<>(bufferSize);
-        String n = getName() + ':' + index.getName();
         ArrayList<String> bufferNames = Utils.newSmallArrayList();
         while (cursor.next()) {
             Row row = cursor.get();
@@ -450,6 +583,110 @@ private void rebuildIndexBlockMerge(SessionLocal session, MVIndex<?,?> index) {
         }
     }
 
+    /**
+     * Build the index using multiple threads. Every thread scans a range of
+     * primary keys of the same version of the table, and writes sorted blocks
+     * of rows to temporary maps. The blocks are then merged into the index.
+     *
+     * @param index the index to build
+     * @param n the name to report progress with
+     * @param total the number of rows in the table
+     * @param bufferSize the number of rows to keep in memory
+     * @param threads the number of threads
+     * @return true if the index was built, false if the table contains
+     *         uncommitted rows, and the index needs to be built sequentially
+     */
+    private boolean rebuildIndexParallel(MVIndex<?,?> index, String n, long total, int bufferSize, int threads) {
+        MVMap<Long,VersionedValue<SearchRow>> map = primaryIndex.getMVMap();
+        RootReference<Long,VersionedValue<SearchRow>> rootReference = map.flushAndGetRoot();
+        long size = rootReference.root.getTotalCount();
+        int blockSize = Math.max(1, bufferSize / threads);
+        ArrayList<String> bufferNames = Utils.newSmallArrayList();
+        AtomicLong rowCount = new AtomicLong();
+        AtomicBoolean uncommitted = new AtomicBoolean();
+        ThreadPoolExecutor executor = Utils.createFixedThreadPool("H2-create-index", threads);
+        boolean success = false;
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>(threads);
+            Long from = null;
+            for (int t = 1; t <= threads; t++) {
+                // the ranges have the same number of entries, the last one is open
+                Long next = t < threads ? map.getKey(size * t / threads) : null;
+                org.h2.mvstore.Cursor<Long,VersionedValue<SearchRow>> cursor =
+                        new org.h2.mvstore.Cursor<>(rootReference, from, next == null ? null : next - 1);
+                futures.add(executor.submit(
+                        () -> writeSortedBlocks(cursor, index, blockSize, bufferNames, rowCount, uncommitted)));
+                from = next;
+            }
+            for (Future<?> future : futures) {
+                future.get();
+                database.setProgress(DatabaseEventListener.STATE_CREATE_INDEX, n, rowCount.get(), total);
+            }
+            if (uncommitted.get()) {
+                return false;
+            }
+            if (rowCount.get() != total) {
+                throw DbException.getInternalError("rowcount remaining=" + (total - rowCount.get()) + ' '
+                        + getName());
+            }
+            success = true;
+        } catch (InterruptedException e) {
+            throw DbException.convert(e);
+        } catch (ExecutionException e) {
+            throw DbException.convert(e.getCause());
+        } finally {
+            uncommitted.set(!success);
+            Utils.shutdownExecutor(executor);
+            if (!success) {
+                MVStore mvStore = database.getStore().getMvStore();
+                for (String mapName : bufferNames) {
+                    mvStore.removeMap(mapName);
+                }
+            }
+        }
+        // removes the temporary maps
+        index.addBufferedRows(bufferNames);
+        return true;
+    }
+
+    private void writeSortedBlocks(org.h2.mvstore.Cursor<Long,VersionedValue<SearchRow>> cursor,
+            MVIndex<?,?> index, int blockSize, ArrayList<String> bufferNames, AtomicLong rowCount,
+            AtomicBoolean stop) {
+        ArrayList<Row> buffer = new ArrayList<>(blockSize);
+        while (cursor.hasNext() && !stop.get()) {
+            Long key = cursor.next();
+            VersionedValue<SearchRow> value = cursor.getValue();
+            if (value.getOperationId() != 0) {
+                // visibility of the row depends on the transaction
+                stop.set(true);
+                return;
+            }
+            Row row = (Row) value.getCurrentValue();
+            if (row.getKey() == 0) {
+                row.setKey(key);
+            }
+            buffer.add(row);
+            if (buffer.size() >= blockSize) {
+                writeSortedBlock(buffer, index, bufferNames, rowCount);
+            }
+        }
+        if (!buffer.isEmpty() && !stop.get()) {
+            writeSortedBlock(buffer, index, bufferNames, rowCount);
+        }
+    }
+
+    private void writeSortedBlock(ArrayList<Row> buffer, MVIndex<?,?> index, ArrayList<String> bufferNames,
+            AtomicLong rowCount) {
+        sortRows(buffer, index);
+        String mapName = database.getStore().nextTemporaryMapName();
+        synchronized (bufferNames) {
+            bufferNames.add(mapName);
+        }
+        index.addRowsToBuffer(buffer, mapName);
+        rowCount.addAndGet(buffer.size());
+        buffer.clear();
+    }
+
     private void rebuildIndexBuffered(SessionLocal session, Index index) {
         Index scan = getScanIndex(session);
         long remaining = scan.getRowCount(session);
@@ -576,6 +813,63 @@ public Index getScanIndex(SessionLocal session) {
         return primaryIndex;
     }
 
+    @Override
+    public Index getHistoryIndex(Expression pointInTime, boolean version) {
+        return new MVHistoryIndex(this, primaryIndex, transactionStore, pointInTime, version);
+    }
+
+    /**
+     * Set the checkpoint of a consumer of the committed row changes of this
+     * table. The changes are captured from now on, if it is the first
+     * consumer.
+     *
+     * @param consumer the name of the consumer
+     * @param position the first position of a change, which the consumer
+     *            still needs
+     */
+    public void setChangeCheckpoint(String consumer, long position) {
+        try {
+            transactionStore.setChangeCheckpoint(primaryIndex.getMap(null).map, consumer, position);
+        } catch (MVStoreException e) {
+            throw convertException(e);
+        }
+    }
+
+    /**
+     * Remove a consumer of the committed row changes of this table. If it was
+     * the last consumer, the changes are not captured any longer.
+     *
+     * @param consumer the name of the consumer
+     */
+    public void removeChangeConsumer(String consumer) {
+        try {
+            transactionStore.removeChangeConsumer(primaryIndex.getMap(null).map, consumer);
+        } catch (MVStoreException e) {
+            throw convertException(e);
+        }
+    }
+
+    /**
+     * Get the position of the last captured row change of this table.
+     *
+     * @return the position, or 0 if there are no changes
+     */
+    public long getLastChangePosition() {
+        return transactionStore.getLastChangePosition(primaryIndex.getMap(null).map);
+    }
+
+    /**
+     * Iterate over the captured committed row changes of this table in
+     * commit order. Large objects of rows, which were deleted since, may not
+     * be available.
+     *
+     * @param from the first position to return
+     * @return the iterator over changes by position
+     */
+    public Iterator<Map.Entry<Long, CommittedChange<Long, SearchRow>>> getChanges(long from) {
+        return transactionStore.changeIterator(primaryIndex.getMap(null).map, from);
+    }
+
     @Override
     public List<Index> getIndexes() {
         return indexes;
@@ -775,8 +1069,16 @@ private static String getDeadlockDetails(ArrayList<SessionLocal> sessions, int l
     }
 
     private static String lockTypeToString(int lockType) {
-        return lockType == Table.READ_LOCK ? "shared read"
-                : lockType == Table.WRITE_LOCK ? "shared write" : "exclusive";
+        switch (lockType) {
+        case Table.READ_LOCK:
+            return "shared read";
+        case Table.WRITE_LOCK:
+            return "shared write";
+        case Table.SHARE_LOCK:
+            return "share";
+        default:
+            return "exclusive";
+        }
     }
 
     /**
@@ -788,7 +1090,11 @@ private static String lockTypeToString(int lockType) {
      *            the index to sort for
      */
     private static void sortRows(ArrayList<? extends SearchRow> list, final Index index) {
-        list.sort(index::compareRows);
+        // rows with the same values are ordered by key, as in the index
+        list.sort((a, b) -> {
+            int comp = index.compareRows(a, b);
+            return comp != 0 ? comp : Long.compare(a.getKey(), b.getKey());
+        });
     }
 
     @Override
@@ -904,6 +1210,24 @@ public boolean isLockedExclusivelyBy(SessionLocal session) {
         return lockExclusiveSession == session;
     }
 
+    @Override
+    public int getLockType(SessionLocal session) {
+        if (lockExclusiveSession == session) {
+            return Table.EXCLUSIVE_LOCK;
+        }
+        LockHolder holder = lockSharedSessions.get(session);
+        return holder == null ? -1 : holder.covers(Table.SHARE_LOCK) ? Table.SHARE_LOCK : Table.WRITE_LOCK;
+    }
+
+    @Override
+    public long getLockWaitNanos(SessionLocal session) {
+        if (lockExclusiveSession == session) {
+            return lockExclusiveWaitNanos;
+        }
+        LockHolder holder = lockSharedSessions.get(session);
+        return holder == null ? 0L : holder.waitNanos;
+    }
+
     @Override
     protected void invalidate() {
         super.invalidate();
@@ -963,4 +1287,64 @@ private static IndexColumn[] prepareColumns(Database database, IndexColumn[] col
         }
         return cols;
     }
+
+    /**
+     * The write and share locks of a session. Instances are immutable.
+     */
+    private static final class LockHolder {
+
+        /**
+         * The bit set of lock types.
+         */
+        final int lockTypes;
+
+        /**
+         * The time the session waited for the first of the locks, in
+         * nanoseconds.
+         */
+        final long waitNanos;
+
+        LockHolder(int lockTypes, long waitNanos) {
+            this.lockTypes = lockTypes;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * Check whether these locks include a lock of the given type, or a
+         * stronger one.
+         *
+         * @param lockType the lock type
+         * @return true if they do
+         */
+        boolean covers(int lockType) {
+            return lockType == Table.READ_LOCK || (lockTypes & 1 << lockType) != 0;
+        }
+
+        /**
+         * Check whether a lock of the given type can be granted to another
+         * session.
+         *
+         * @param lockType the lock type
+         * @return true if it can
+         */
+        boolean isCompatible(int lockType) {
+            boolean[] compatible = COMPATIBLE[lockType];
+            for (int t = 0; t < compatible.length; t++) {
+                if ((lockTypes & 1 << t) != 0 && !compatible[t]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add a lock.
+         *
+         * @param lockType the lock type
+         * @return the new holder
+         */
+        LockHolder add(int lockType) {
+            return new LockHolder(lockTypes | 1 << lockType, waitNanos);
+        }
+    }
 }
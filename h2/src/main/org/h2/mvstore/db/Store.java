@@ -87,6 +87,9 @@ static char[] decodePassword(byte[] key) {
     public Store(Database db, byte[] key) {
         String dbPath = db.getDatabasePath();
         MVStore.Builder builder = new MVStore.Builder();
+        if (db.getSettings().writeCombining) {
+            builder.writeCombining();
+        }
         boolean encrypted = false;
         if (dbPath != null) {
             String fileName = dbPath + Constants.SUFFIX_MV_FILE;
@@ -94,6 +97,27 @@ public Store(Database db, byte[] key) {
             MVStoreTool.compactCleanUp(fileName);
             builder.fileName(fileName);
             builder.pageSplitSize(db.getPageSize());
+            if (db.getSettings().cacheAdmissionFilter) {
+                builder.cacheAdmissionFilter();
+            }
+            if (db.getSettings().cacheBufferedReads) {
+                builder.cacheBufferedReads();
+            }
+            if (db.getSettings().mappedReads) {
+                builder.mappedReads();
+            }
+            int readAhead = db.getSettings().readAhead;
+            if (readAhead > 0) {
+                builder.readAhead(readAhead);
+            }
+            int cacheOffHeapSize = db.getSettings().cacheOffHeapSize;
+            if (cacheOffHeapSize > 0) {
+                builder.offHeapCacheSize(cacheOffHeapSize);
+            }
+            int serializationThreads = db.getSettings().serializationThreads;
+            if (serializationThreads > 1) {
+                builder.serializationThreads(serializationThreads);
+            }
             if (db.isReadOnly()) {
                 builder.readOnly();
             } else {
@@ -109,6 +133,20 @@ public Store(Database db, byte[] key) {
                 if (autoCompactFillRate <= 100) {
                     builder.autoCompactFillRate(autoCompactFillRate);
                 }
+                int autoCompactRate = db.getSettings().autoCompactRate;
+                if (autoCompactRate > 0) {
+                    builder.autoCompactRate(autoCompactRate);
+                    builder.autoCompactCpuLoad(db.getSettings().autoCompactCpuLoad);
+                }
+                int groupCommitBatchSize = db.getSettings().groupCommitBatchSize;
+                if (groupCommitBatchSize > 0) {
+                    builder.groupCommitBatchSize(groupCommitBatchSize);
+                    builder.groupCommitMaxWait(db.getSettings().groupCommitMaxWait);
+                }
+                int asyncCommitDelay = db.getSettings().asyncCommitDelay;
+                if (asyncCommitDelay > 0) {
+                    builder.asyncCommitDelay(asyncCommitDelay);
+                }
             }
             if (key != null) {
                 encrypted = true;
@@ -138,6 +176,10 @@ public Store(Database db, byte[] key) {
             this.transactionStore = new TransactionStore(mvStore,
                     new MetaType<>(db, mvStore.backgroundExceptionHandler), new ValueDataType(db, null),
                     db.getLockTimeout());
+            int historyRetentionTime = db.getSettings().historyRetentionTime;
+            if (historyRetentionTime > 0 && fileName != null) {
+                transactionStore.setHistoryRetentionTime(historyRetentionTime);
+            }
         } catch (MVStoreException e) {
             throw convertMVStoreException(e);
         }
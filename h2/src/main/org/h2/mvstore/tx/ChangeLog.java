@@ -0,0 +1,364 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.LongDataType;
+import org.h2.mvstore.type.StringDataType;
+import org.h2.util.StringUtils;
+
+/**
+ * Change data capture of transactional maps.
+ * <p>
+ * Committed changes of a captured map are appended to a separate map of the
+ * store, keyed by their position, so that they are persisted together with
+ * the changes themselves. Positions are assigned in commit order, and a
+ * reader never sees a gap below the last position. A map is captured while it
+ * has at least one consumer. Each consumer has a checkpoint, the first
+ * position it still needs, and changes below the checkpoints of all
+ * consumers are removed, except for the last one.
+ * <p>
+ * Changes are collected before the transaction is committing, from the final
+ * undo log record of each entry, so that the old value is the committed value
+ * before the transaction, and the new value is the last value written by it.
+ * They are recorded together with the commit, so that the changes of one
+ * transaction have contiguous positions, and the positions follow the commit
+ * order.
+ * Changes replayed from the redo log after a crash are recorded again, and a
+ * consumer may see them twice.
+ */
+final class ChangeLog {
+
+    private static final String CHANGES_PREFIX = "changes.";
+
+    private static final String CONSUMERS_PREFIX = "changeConsumers.";
+
+    private final TransactionStore transactionStore;
+
+    private final MVStore store;
+
+    /**
+     * The captured maps by map id.
+     */
+    private final ConcurrentHashMap<Integer, Capture> captures = new ConcurrentHashMap<>();
+
+    /**
+     * The lock, which orders the changes of committing transactions.
+     */
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    ChangeLog(TransactionStore transactionStore) {
+        this.transactionStore = transactionStore;
+        this.store = transactionStore.store;
+    }
+
+    /**
+     * Open the captures of existing maps, and remove the ones of maps, which
+     * were removed.
+     */
+    void init() {
+        for (String mapName : store.getMapNames()) {
+            if (mapName.startsWith(CONSUMERS_PREFIX)) {
+                int mapId = StringUtils.parseUInt31(mapName, CONSUMERS_PREFIX.length(), mapName.length());
+                if (store.getMapName(mapId) != null) {
+                    Capture capture = openCapture(mapId);
+                    if (!capture.consumers.isEmpty()) {
+                        captures.put(mapId, capture);
+                        continue;
+                    }
+                }
+                if (!store.isReadOnly()) {
+                    store.removeMap(mapName);
+                    store.removeMap(CHANGES_PREFIX + mapId);
+                }
+            }
+        }
+    }
+
+    private Capture openCapture(int mapId) {
+        MVMap<String, Long> consumers = store.openMap(CONSUMERS_PREFIX + mapId,
+                new MVMap.Builder<String, Long>().keyType(StringDataType.INSTANCE).valueType(LongDataType.INSTANCE));
+        MVMap<Long, CommittedChange<Object,Object>> changes = store.openMap(CHANGES_PREFIX + mapId,
+                new MVMap.Builder<Long, CommittedChange<Object,Object>>().keyType(LongDataType.INSTANCE)
+                        .valueType(new CommittedChange.Type<>(transactionStore, mapId)));
+        return new Capture(consumers, changes);
+    }
+
+    /**
+     * Check whether the given map is captured.
+     *
+     * @param mapId the map id
+     * @return true if it is
+     */
+    boolean isCaptured(int mapId) {
+        return !captures.isEmpty() && captures.containsKey(mapId);
+    }
+
+    /**
+     * Check whether any map is captured.
+     *
+     * @return true if there is at least one
+     */
+    boolean isCapturing() {
+        return !captures.isEmpty();
+    }
+
+    /**
+     * Add a committed change to the changes of a transaction, if it is a
+     * change.
+     *
+     * @param changes the changes of the transaction by map id, or null
+     * @param mapId the map id
+     * @param commitVersion the version of the store
+     * @param transactionId the transaction id
+     * @param key the key
+     * @param oldValue the value before the change, or null
+     * @param newValue the value after the change, or null
+     * @return the changes of the transaction
+     */
+    static HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> addChange(
+            HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> changes, int mapId, long commitVersion,
+            int transactionId, Object key, Object oldValue, Object newValue) {
+        if (oldValue != null || newValue != null) {
+            if (changes == null) {
+                changes = new HashMap<>();
+            }
+            changes.computeIfAbsent(mapId, k -> new ArrayList<>())
+                    .add(new CommittedChange<>(commitVersion, transactionId, key, oldValue, newValue));
+        }
+        return changes;
+    }
+
+    /**
+     * Record the committed changes of a transaction. The changes of each map
+     * get contiguous positions, in the given order. The commit action is
+     * run under the same lock, before the changes are recorded, so that the
+     * changes of a transaction are recorded before the changes of any other
+     * transaction, which overwrites them after the commit.
+     *
+     * @param changes the changes by map id
+     * @param commitAction the action, which makes the changes committed, or
+     *            null if they are committed already
+     */
+    void capture(HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> changes, Runnable commitAction) {
+        commitLock.lock();
+        try {
+            if (commitAction != null) {
+                commitAction.run();
+            }
+            for (Map.Entry<Integer, ArrayList<CommittedChange<Object,Object>>> e : changes.entrySet()) {
+                Capture capture = captures.get(e.getKey());
+                if (capture == null) {
+                    continue;
+                }
+                capture.lock.lock();
+                try {
+                    if (!capture.removed) {
+                        for (CommittedChange<Object,Object> change : e.getValue()) {
+                            capture.changes.put(++capture.lastPosition, change);
+                        }
+                    }
+                } finally {
+                    capture.lock.unlock();
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Set the checkpoint of a consumer. The map is captured from now on, if
+     * it is the first consumer. Changes, which are not needed by any
+     * consumer, are removed.
+     *
+     * @param mapId the map id
+     * @param consumer the name of the consumer
+     * @param position the first position, which the consumer still needs
+     */
+    void setCheckpoint(int mapId, String consumer, long position) {
+        while (true) {
+            Capture capture = captures.computeIfAbsent(mapId, this::openCapture);
+            capture.lock.lock();
+            try {
+                if (capture.removed) {
+                    continue;
+                }
+                capture.consumers.put(consumer, position);
+                long min = Long.MAX_VALUE;
+                for (long p : capture.consumers.values()) {
+                    min = Math.min(min, p);
+                }
+                MVMap<Long, CommittedChange<Object,Object>> changes = capture.changes;
+                // the last change is kept, so that positions are not reused
+                for (Long first; (first = changes.firstKey()) != null && first < min
+                        && first < capture.lastPosition;) {
+                    changes.remove(first);
+                }
+                return;
+            } finally {
+                capture.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove a consumer. If it was the last one, the map is not captured any
+     * longer, and all its changes are removed.
+     *
+     * @param mapId the map id
+     * @param consumer the name of the consumer
+     */
+    void removeConsumer(int mapId, String consumer) {
+        Capture capture = captures.get(mapId);
+        if (capture != null) {
+            capture.lock.lock();
+            try {
+                if (!capture.removed) {
+                    capture.consumers.remove(consumer);
+                    if (capture.consumers.isEmpty()) {
+                        remove(mapId, capture);
+                    }
+                }
+            } finally {
+                capture.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stop capturing a map, which is being removed.
+     *
+     * @param mapId the map id
+     */
+    void removeMap(int mapId) {
+        Capture capture = captures.get(mapId);
+        if (capture != null) {
+            capture.lock.lock();
+            try {
+                if (!capture.removed) {
+                    remove(mapId, capture);
+                }
+            } finally {
+                capture.lock.unlock();
+            }
+        }
+    }
+
+    private void remove(int mapId, Capture capture) {
+        capture.removed = true;
+        captures.remove(mapId, capture);
+        store.removeMap(capture.consumers);
+        store.removeMap(capture.changes);
+    }
+
+    /**
+     * Get the checkpoints of the consumers of a map.
+     *
+     * @param mapId the map id
+     * @return the checkpoints by consumer name
+     */
+    Map<String, Long> getCheckpoints(int mapId) {
+        Capture capture = captures.get(mapId);
+        return capture == null ? Collections.emptyMap() : Collections.unmodifiableMap(capture.consumers);
+    }
+
+    /**
+     * Get the position of the last change of a map.
+     *
+     * @param mapId the map id
+     * @return the position, or 0 if there are no changes
+     */
+    long getLastPosition(int mapId) {
+        Capture capture = captures.get(mapId);
+        if (capture == null) {
+            return 0L;
+        }
+        capture.lock.lock();
+        try {
+            return capture.lastPosition;
+        } finally {
+            capture.lock.unlock();
+        }
+    }
+
+    /**
+     * Iterate over the changes of a map.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param mapId the map id
+     * @param from the first position
+     * @return the iterator over changes by position
+     */
+    @SuppressWarnings("unchecked")
+    <K,V> Iterator<Map.Entry<Long, CommittedChange<K,V>>> iterator(int mapId, long from) {
+        Capture capture = captures.get(mapId);
+        if (capture == null) {
+            return Collections.emptyIterator();
+        }
+        Cursor<Long, CommittedChange<Object,Object>> cursor = capture.changes.cursor(from);
+        return new Iterator<Map.Entry<Long, CommittedChange<K,V>>>() {
+
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Map.Entry<Long, CommittedChange<K,V>> next() {
+                if (!cursor.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Long position = cursor.next();
+                return new AbstractMap.SimpleImmutableEntry<>(position, (CommittedChange<K,V>) cursor.getValue());
+            }
+        };
+    }
+
+    /**
+     * The capture of a map.
+     */
+    private static final class Capture {
+
+        /**
+         * The checkpoints of consumers.
+         */
+        final MVMap<String, Long> consumers;
+
+        final MVMap<Long, CommittedChange<Object,Object>> changes;
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The position of the last change.
+         */
+        long lastPosition; // guarded by lock
+
+        /**
+         * Whether the maps of the capture were removed.
+         */
+        boolean removed; // guarded by lock
+
+        Capture(MVMap<String, Long> consumers, MVMap<Long, CommittedChange<Object,Object>> changes) {
+            this.consumers = consumers;
+            this.changes = changes;
+            Long last = changes.lastKey();
+            lastPosition = last == null ? 0L : last;
+        }
+    }
+}
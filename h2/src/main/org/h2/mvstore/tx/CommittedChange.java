@@ -0,0 +1,140 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.nio.ByteBuffer;
+import org.h2.engine.Constants;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.h2.mvstore.type.DataType;
+import org.h2.value.VersionedValue;
+
+/**
+ * A committed change of an entry of a transactional map, as recorded by the
+ * change data capture. If a transaction changed the entry several times, only
+ * the net change is recorded.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class CommittedChange<K,V> {
+
+    /**
+     * The version of the store, in which the transaction was committed.
+     */
+    public final long commitVersion;
+
+    /**
+     * The id of the transaction.
+     */
+    public final int transactionId;
+
+    /**
+     * The key of the entry.
+     */
+    public final K key;
+
+    /**
+     * The value before the change, or null if the entry was added.
+     */
+    public final V oldValue;
+
+    /**
+     * The value after the change, or null if the entry was removed.
+     */
+    public final V newValue;
+
+    CommittedChange(long commitVersion, int transactionId, K key, V oldValue, V newValue) {
+        this.commitVersion = commitVersion;
+        this.transactionId = transactionId;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    @Override
+    public String toString() {
+        return "version=" + commitVersion + ", tx=" + transactionId + ", key=" + key + ", old=" + oldValue
+                + ", new=" + newValue;
+    }
+
+    /**
+     * A data type for the changes of one map. Keys and values are written
+     * with the data types of this map.
+     */
+    static final class Type<K,V> extends BasicDataType<CommittedChange<K,V>> {
+
+        private final TransactionStore transactionStore;
+
+        private final int mapId;
+
+        Type(TransactionStore transactionStore, int mapId) {
+            this.transactionStore = transactionStore;
+            this.mapId = mapId;
+        }
+
+        @Override
+        public int getMemory(CommittedChange<K,V> change) {
+            MVMap<K,VersionedValue<V>> map = transactionStore.getMap(mapId);
+            DataType<VersionedValue<V>> valueType = map.getValueType();
+            int result = Constants.MEMORY_OBJECT + 12 + 3 * Constants.MEMORY_POINTER
+                    + map.getKeyType().getMemory(change.key);
+            if (change.oldValue != null) {
+                result += valueType.getMemory(VersionedValueCommitted.getInstance(change.oldValue));
+            }
+            if (change.newValue != null) {
+                result += valueType.getMemory(VersionedValueCommitted.getInstance(change.newValue));
+            }
+            return result;
+        }
+
+        @Override
+        public int compare(CommittedChange<K,V> aObj, CommittedChange<K,V> bObj) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(WriteBuffer buff, CommittedChange<K,V> change) {
+            MVMap<K,VersionedValue<V>> map = transactionStore.getMap(mapId);
+            buff.putVarLong(change.commitVersion).putVarInt(change.transactionId);
+            map.getKeyType().write(buff, change.key);
+            writeValue(buff, map.getValueType(), change.oldValue);
+            writeValue(buff, map.getValueType(), change.newValue);
+        }
+
+        private static <V> void writeValue(WriteBuffer buff, DataType<VersionedValue<V>> valueType, V value) {
+            if (value == null) {
+                buff.put((byte) 0);
+            } else {
+                buff.put((byte) 1);
+                valueType.write(buff, VersionedValueCommitted.getInstance(value));
+            }
+        }
+
+        @Override
+        public CommittedChange<K,V> read(ByteBuffer buff) {
+            MVMap<K,VersionedValue<V>> map = transactionStore.getMap(mapId);
+            long commitVersion = DataUtils.readVarLong(buff);
+            int transactionId = DataUtils.readVarInt(buff);
+            K key = map.getKeyType().read(buff);
+            V oldValue = readValue(buff, map.getValueType());
+            V newValue = readValue(buff, map.getValueType());
+            return new CommittedChange<>(commitVersion, transactionId, key, oldValue, newValue);
+        }
+
+        private static <V> V readValue(ByteBuffer buff, DataType<VersionedValue<V>> valueType) {
+            return buff.get() == 0 ? null : valueType.read(buff).getCurrentValue();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public CommittedChange<K,V>[] createStorage(int size) {
+            return new CommittedChange[size];
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.h2.engine.Constants;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.store.fs.FileUtils;
+import org.h2.value.VersionedValue;
+
+/**
+ * Class RedoLog is a sequential log of committed changes of transactional
+ * maps, kept in a separate file next to the store file. A commit appends a
+ * single record with final values of all entries changed by the transaction,
+ * and only the log file is synced, so that chunks can be written lazily.
+ * <p>
+ * Each record contains the version of the store at the time it was appended.
+ * Transaction marks its undo log as committed before that, so if a record has
+ * version below the version of the last chunk, this chunk contains all changes
+ * of the transaction together with the commit marker, and the record can be
+ * ignored. Other records are replayed in order on initialization of the
+ * transaction store.
+ * <p>
+ * Record format: length (int), checksum of the body (int), body: version
+ * (varLong), transaction id (varInt), number of entries (varInt), entries:
+ * map id (varInt), length of the rest of the entry (varInt), key, flag (byte,
+ * 0 for removed entry), value.
+ */
+final class RedoLog {
+
+    private static final int HEADER_LENGTH = 8;
+
+    private final TransactionStore transactionStore;
+
+    private final MVStore store;
+
+    private final String fileName;
+
+    private final long maxSize;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private final AtomicBoolean checkpointInProgress = new AtomicBoolean();
+
+    /**
+     * Positions (logical, i.e. since creation of this object) of records,
+     * where the version of the store changes. Each element is
+     * { position, version }.
+     */
+    private final ArrayDeque<long[]> versionPositions = new ArrayDeque<>(); // guarded by appendLock
+
+    private FileChannel file;           // guarded by appendLock and syncLock
+
+    /**
+     * Logical position of the start of the file.
+     */
+    private long filePosition;          // guarded by appendLock and syncLock
+
+    /**
+     * Logical position of the end of the log.
+     */
+    private volatile long writePosition;
+
+    /**
+     * Logical position up to which the log is synced.
+     */
+    private volatile long syncedPosition;
+
+    /**
+     * Maps created in this version of the store or later may not be stored
+     * yet, so commits which touch them require a checkpoint.
+     */
+    private volatile long durableVersion;
+
+    RedoLog(TransactionStore transactionStore, int maxSizeMB) {
+        this.transactionStore = transactionStore;
+        this.store = transactionStore.store;
+        this.fileName = store.getFileStore().getFileName() + Constants.SUFFIX_MV_STORE_REDO_FILE;
+        this.maxSize = (long) maxSizeMB << 20;
+    }
+
+    /**
+     * Open the log file and replay it.
+     *
+     * @return true if some records were replayed
+     */
+    boolean open() {
+        boolean replayed;
+        try {
+            file = FileUtils.open(fileName, "rw");
+            replayed = replay();
+            // existing records are removed by the next checkpoint
+            writePosition = syncedPosition = file.size();
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_READING_FAILED,
+                    "Could not open redo log {0}", fileName, e);
+        }
+        durableVersion = store.getFileStore().lastChunkVersion();
+        return replayed;
+    }
+
+    private boolean replay() throws IOException {
+        long size = file.size();
+        if (size == 0) {
+            return false;
+        }
+        long lastChunkVersion = store.getFileStore().lastChunkVersion();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        boolean replayed = false;
+        long pos = 0;
+        while (pos + HEADER_LENGTH <= size) {
+            header.clear();
+            DataUtils.readFully(file, pos, header);
+            int length = header.getInt();
+            int check = header.getInt();
+            if (length <= 0 || pos + HEADER_LENGTH + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            DataUtils.readFully(file, pos + HEADER_LENGTH, body);
+            if (check != DataUtils.getFletcher32(body.array(), 0, length)) {
+                // incomplete write of the last record
+                break;
+            }
+            pos += HEADER_LENGTH + length;
+            long version = DataUtils.readVarLong(body);
+            if (version >= lastChunkVersion) {
+                replayRecord(body, version);
+                replayed = true;
+            }
+        }
+        return replayed;
+    }
+
+    private void replayRecord(ByteBuffer body, long version) {
+        int transactionId = DataUtils.readVarInt(body);
+        int count = DataUtils.readVarInt(body);
+        HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> changes = null;
+        for (int i = 0; i < count; i++) {
+            int mapId = DataUtils.readVarInt(body);
+            int length = DataUtils.readVarInt(body);
+            MVMap<Object, VersionedValue<Object>> map = transactionStore.openMap(mapId);
+            if (map == null) {
+                // the map was removed later on
+                body.position(body.position() + length);
+                continue;
+            }
+            Object key = map.getKeyType().read(body);
+            VersionedValue<Object> old;
+            Object value;
+            if (body.get() == 0) {
+                value = null;
+                old = map.remove(key);
+            } else {
+                value = map.getValueType().read(body).getCurrentValue();
+                old = map.put(key, VersionedValueCommitted.getInstance(value));
+            }
+            if (transactionStore.changeLog.isCaptured(mapId)) {
+                changes = ChangeLog.addChange(changes, mapId, version, transactionId, key,
+                        old == null ? null : old.getCommittedValue(), value);
+            }
+        }
+        if (changes != null) {
+            transactionStore.changeLog.capture(changes, null);
+        }
+    }
+
+    /**
+     * Append a commit record for the transaction. It has to be called after
+     * undo log of the transaction is marked as committed, but before any of
+     * its changes become visible to other transactions as committed.
+     *
+     * @param t the transaction
+     * @param cursor the cursor over the undo log of the transaction
+     * @return the end position of the record
+     */
+    long logCommit(Transaction t, UndoLogBuffer.RecordCursor cursor) {
+        WriteBuffer entries = new WriteBuffer();
+        WriteBuffer entry = new WriteBuffer();
+        int count = 0;
+        boolean checkpoint = false;
+        long durableVersion = this.durableVersion;
+        while (cursor.hasNext()) {
+            long undoKey = cursor.next();
+            Record<?,?> op = cursor.getRecord();
+            if (op.mapId < 0) {
+                continue;
+            }
+            MVMap<Object, VersionedValue<Object>> map = transactionStore.openMap(op.mapId);
+            if (map == null || map.isClosed()) {
+                continue;
+            }
+            VersionedValue<Object> current = map.get(op.key);
+            if (current == null || current.getOperationId() != undoKey) {
+                // this is not a final undo log entry for this key
+                continue;
+            }
+            checkpoint |= map.getCreateVersion() >= durableVersion;
+            entry.clear();
+            map.getKeyType().write(entry, op.key);
+            Object value = current.getCurrentValue();
+            if (value == null) {
+                entry.put((byte) 0);
+            } else {
+                entry.put((byte) 1);
+                map.getValueType().write(entry, VersionedValueCommitted.getInstance(value));
+            }
+            ByteBuffer entryBytes = entry.getBuffer();
+            entryBytes.flip();
+            entries.putVarInt(op.mapId).putVarInt(entryBytes.remaining()).put(entryBytes);
+            count++;
+        }
+        t.redoLogCheckpoint = checkpoint;
+        ByteBuffer entriesBytes = entries.getBuffer();
+        entriesBytes.flip();
+        WriteBuffer buff = new WriteBuffer(entriesBytes.remaining() + 32);
+        appendLock.lock();
+        try {
+            long version = store.getCurrentVersion();
+            buff.putInt(0).putInt(0).putVarLong(version).putVarInt(t.transactionId).putVarInt(count)
+                    .put(entriesBytes);
+            ByteBuffer record = buff.getBuffer();
+            record.flip();
+            int bodyLength = record.remaining() - HEADER_LENGTH;
+            record.putInt(0, bodyLength);
+            record.putInt(4, DataUtils.getFletcher32(record.array(), HEADER_LENGTH, bodyLength));
+            long pos = writePosition;
+            long[] last = versionPositions.peekLast();
+            if (last == null || last[1] != version) {
+                versionPositions.add(new long[] { pos, version });
+            }
+            int length = record.remaining();
+            DataUtils.writeFully(file, pos - filePosition, record);
+            pos += length;
+            writePosition = pos;
+            return pos;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Make the log durable up to the given position. Concurrent callers are
+     * served by a single file sync. If the log grows too large, or the
+     * transaction touched a map, which is not in the store file yet, a
+     * checkpoint is done.
+     *
+     * @param position the end position of the record
+     * @param checkpoint whether a checkpoint is required
+     */
+    void sync(long position, boolean checkpoint) {
+        if (syncedPosition < position) {
+            syncLock.lock();
+            try {
+                if (syncedPosition < position) {
+                    long target = writePosition;
+                    file.force(false);
+                    syncedPosition = target;
+                }
+            } catch (IOException e) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                        "Could not sync redo log {0}", fileName, e);
+            } finally {
+                syncLock.unlock();
+            }
+        }
+        checkpointIfNeeded(checkpoint);
+    }
+
+    /**
+     * Do a checkpoint, if it is required, or if the log grows too large.
+     *
+     * @param checkpoint whether a checkpoint is required
+     */
+    void checkpointIfNeeded(boolean checkpoint) {
+        if (checkpoint) {
+            checkpoint();
+        } else if (writePosition - filePosition > maxSize && checkpointInProgress.compareAndSet(false, true)) {
+            try {
+                checkpoint();
+            } finally {
+                checkpointInProgress.set(false);
+            }
+        }
+    }
+
+    /**
+     * Store all changes in a chunk, sync the store file, and remove records,
+     * which are covered by it, from the log.
+     */
+    void checkpoint() {
+        store.commit();
+        FileStore<?> fileStore = store.getFileStore();
+        long version = fileStore.lastChunkVersion();
+        store.sync();
+        durableVersion = Math.max(durableVersion, version);
+        appendLock.lock();
+        try {
+            // records before this position are covered by the chunk
+            long pos = writePosition;
+            long[] first;
+            while ((first = versionPositions.peekFirst()) != null) {
+                if (first[1] >= version) {
+                    pos = first[0];
+                    break;
+                }
+                versionPositions.pollFirst();
+            }
+            if (pos > filePosition) {
+                truncate(pos);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void truncate(long pos) {
+        syncLock.lock();
+        try {
+            long end = writePosition;
+            if (pos == end) {
+                file.truncate(0);
+                file.force(false);
+            } else {
+                // keep the tail, which is not covered yet, write it to a new
+                // file and replace the log with it atomically
+                ByteBuffer tail = ByteBuffer.allocate((int) (end - pos));
+                DataUtils.readFully(file, pos - filePosition, tail);
+                tail.flip();
+                String newName = fileName + Constants.SUFFIX_MV_STORE_NEW_FILE;
+                try (FileChannel newFile = FileUtils.open(newName, "rw")) {
+                    newFile.truncate(0);
+                    DataUtils.writeFully(newFile, 0, tail);
+                    newFile.force(false);
+                }
+                file.close();
+                FileUtils.moveAtomicReplace(newName, fileName);
+                file = FileUtils.open(fileName, "rw");
+            }
+            filePosition = pos;
+            syncedPosition = Math.max(syncedPosition, end);
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                    "Could not truncate redo log {0}", fileName, e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Do a final checkpoint and close the log file.
+     */
+    void close() {
+        try {
+            if (!store.isClosed()) {
+                checkpoint();
+            }
+        } finally {
+            appendLock.lock();
+            try {
+                file.close();
+            } catch (IOException ignore) {
+                // ignore
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+}
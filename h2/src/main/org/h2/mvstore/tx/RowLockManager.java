@@ -0,0 +1,250 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.type.DataType;
+
+/**
+ * Queues of transactions waiting for locked map entries.
+ * <p>
+ * A transaction, which can not update an entry because another open
+ * transaction changed it, is added to the queue of that entry. When the
+ * blocking transaction ends, or rolls back to a savepoint, only the first
+ * waiter of the queue is woken up, and the others wait for that one, in FIFO
+ * order, instead of all of them retrying the update at once. A woken up
+ * waiter, which is blocked again, returns to the head of the queue.
+ * <p>
+ * The wait-for graph has one edge per waiting transaction, because a
+ * transaction waits for at most one entry at a time. The edges are kept in
+ * {@link Transaction#blockingTransaction}, they are checked for cycles when a
+ * transaction is enqueued, and they are moved to the new owner of the entry
+ * when the entry is handed over.
+ */
+final class RowLockManager {
+
+    /**
+     * Queues by map id, and then by key. Keys are compared with the key type
+     * of the map, as they don't need to implement equals() and hashCode().
+     */
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Object, WaitQueue>> queues =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Queues by the id of the transaction, which holds their entries, so that
+     * the end of a transaction doesn't need to look at the queues of other
+     * transactions.
+     */
+    private final ConcurrentHashMap<Integer, Set<WaitQueue>> ownedQueues = new ConcurrentHashMap<>();
+
+    /**
+     * Add a transaction to the queue of an entry.
+     *
+     * @param transaction the waiting transaction
+     * @param owner the transaction, which holds the entry
+     * @param map the map
+     * @param key the key of the entry
+     * @param retry whether the transaction has waited for this entry already,
+     *            and should stay at the head of the queue
+     * @return the waiter
+     */
+    @SuppressWarnings("unchecked")
+    Waiter enqueue(Transaction transaction, Transaction owner, MVMap<?,?> map, Object key, boolean retry) {
+        DataType<Object> keyType = (DataType<Object>) map.getKeyType();
+        ConcurrentSkipListMap<Object, WaitQueue> mapQueues = queues.computeIfAbsent(map.getId(),
+                id -> new ConcurrentSkipListMap<>(keyType));
+        Waiter waiter = new Waiter(transaction, Thread.currentThread());
+        while (true) {
+            WaitQueue queue = mapQueues.computeIfAbsent(key, k -> new WaitQueue(mapQueues, k));
+            synchronized (queue) {
+                if (queue.removed) {
+                    continue;
+                }
+                setOwner(queue, owner);
+                if (retry) {
+                    queue.waiters.addFirst(waiter);
+                } else {
+                    queue.waiters.addLast(waiter);
+                }
+                waiter.queue = queue;
+                return waiter;
+            }
+        }
+    }
+
+    /**
+     * Remove a waiter from its queue.
+     *
+     * @param waiter the waiter
+     * @param proceeding whether the transaction is going to retry the update,
+     *            otherwise the entry is handed over to the next waiter, if it
+     *            was handed over to this one
+     */
+    void dequeue(Waiter waiter, boolean proceeding) {
+        WaitQueue queue = waiter.queue;
+        synchronized (queue) {
+            if (!waiter.granted) {
+                queue.waiters.remove(waiter);
+            } else if (!proceeding) {
+                grant(queue);
+            }
+            removeIfEmpty(queue);
+        }
+    }
+
+    /**
+     * Hand over the entry to the next waiter, if the given transaction did not
+     * take it after it was handed over to it.
+     *
+     * @param transaction the transaction
+     * @param map the map
+     * @param key the key of the entry
+     */
+    void handOver(Transaction transaction, MVMap<?,?> map, Object key) {
+        ConcurrentSkipListMap<Object, WaitQueue> mapQueues = queues.get(map.getId());
+        WaitQueue queue;
+        if (mapQueues != null && (queue = mapQueues.get(key)) != null) {
+            synchronized (queue) {
+                if (queue.owner == transaction) {
+                    grant(queue);
+                    removeIfEmpty(queue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wake up the first waiter of each queue of an entry held by the given
+     * transaction. This is called when the transaction ends or rolls back to
+     * a savepoint.
+     *
+     * @param owner the transaction
+     */
+    void release(Transaction owner) {
+        Set<WaitQueue> owned = ownedQueues.remove(owner.transactionId);
+        if (owned != null) {
+            for (WaitQueue queue : owned) {
+                synchronized (queue) {
+                    // the queue might be handed over to another transaction
+                    // after it was added to this set
+                    if (queue.owner == owner) {
+                        grant(queue);
+                        removeIfEmpty(queue);
+                    }
+                }
+            }
+        }
+    }
+
+    private void grant(WaitQueue queue) {
+        Waiter head = queue.waiters.pollFirst();
+        if (head == null) {
+            setOwner(queue, null);
+            return;
+        }
+        Transaction next = head.transaction;
+        setOwner(queue, next);
+        // the next waiter has to be woken up when this one ends
+        next.notificationRequested = true;
+        for (Waiter waiter : queue.waiters) {
+            waiter.transaction.blockingTransaction = next;
+        }
+        head.granted = true;
+        LockSupport.unpark(head.thread);
+    }
+
+    private void removeIfEmpty(WaitQueue queue) {
+        if (queue.waiters.isEmpty() && !queue.removed) {
+            queue.removed = true;
+            queue.mapQueues.remove(queue.key, queue);
+            setOwner(queue, null);
+        }
+    }
+
+    /**
+     * Change the owner of a queue, the caller must synchronize on the queue.
+     *
+     * @param queue the queue
+     * @param owner the new owner, or {@code null}
+     */
+    private void setOwner(WaitQueue queue, Transaction owner) {
+        Transaction oldOwner = queue.owner;
+        if (oldOwner == owner) {
+            return;
+        }
+        if (oldOwner != null) {
+            Set<WaitQueue> owned = ownedQueues.get(oldOwner.transactionId);
+            if (owned != null) {
+                owned.remove(queue);
+            }
+        }
+        queue.owner = owner;
+        if (owner != null) {
+            ownedQueues.computeIfAbsent(owner.transactionId, id -> ConcurrentHashMap.newKeySet()).add(queue);
+        }
+    }
+
+    /**
+     * A transaction waiting in a queue.
+     */
+    static final class Waiter {
+
+        /**
+         * The waiting transaction.
+         */
+        final Transaction transaction;
+
+        /**
+         * The waiting thread.
+         */
+        final Thread thread;
+
+        /**
+         * Whether the entry was handed over to this waiter.
+         */
+        volatile boolean granted;
+
+        WaitQueue queue;
+
+        Waiter(Transaction transaction, Thread thread) {
+            this.transaction = transaction;
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * The queue of an entry.
+     */
+    private static final class WaitQueue {
+
+        final ConcurrentSkipListMap<Object, WaitQueue> mapQueues;
+
+        final Object key;
+
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        /**
+         * The transaction, which holds the entry, or to which it was handed
+         * over.
+         */
+        Transaction owner;
+
+        /**
+         * Whether the queue was removed from the map, and may not be used.
+         */
+        boolean removed;
+
+        WaitQueue(ConcurrentSkipListMap<Object, WaitQueue> mapQueues, Object key) {
+            this.mapQueues = mapQueues;
+            this.key = key;
+        }
+    }
+}
@@ -20,7 +20,9 @@
     final RootReference<K,V> root;
 
     /**
-     * The committing transactions (see also TransactionStore.committingTransactions).
+     * The committing transactions (see also
+     * TransactionStore.getCommittingTransactions()). Snapshots taken while no
+     * transaction was committing share the same empty set.
      */
     final BitSet committingTransactions;
 
@@ -11,6 +11,7 @@
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
@@ -129,6 +130,28 @@ public final class Transaction {
      */
     boolean wasStored;
 
+    /**
+     * The end position of the commit record in the redo log,
+     * or 0 if commit was not logged.
+     */
+    long redoLogPosition;
+
+    /**
+     * Whether the commit record in the redo log refers to a map, which does not
+     * exist in the store file yet, so that a checkpoint is required.
+     */
+    boolean redoLogCheckpoint;
+
+    /**
+     * Whether the commit waits until changes are durable.
+     */
+    private boolean synchronousCommit = true;
+
+    /**
+     * The version of the store, in which the changes were committed, or -1.
+     */
+    volatile long commitVersion = -1L;
+
     /**
      * How long to wait for blocking transaction to commit or rollback.
      */
@@ -141,9 +164,10 @@ public final class Transaction {
     private final int ownerId;
 
     /**
-     * Blocking transaction, if any
+     * Blocking transaction, if any. This is the edge of the wait-for graph
+     * (see RowLockManager).
      */
-    private volatile Transaction blockingTransaction;
+    volatile Transaction blockingTransaction;
 
     /**
      * Map on which this transaction is blocked.
@@ -158,7 +182,24 @@ public final class Transaction {
     /**
      * Whether other transaction(s) are waiting for this to close.
      */
-    private volatile boolean notificationRequested;
+    volatile boolean notificationRequested;
+
+    /**
+     * Whether this transaction is committing, so that its changes are
+     * considered as committed by other transactions.
+     */
+    volatile boolean committing;
+
+    /**
+     * The place of this transaction in the queue of a locked entry, while it
+     * waits for it.
+     */
+    private volatile RowLockManager.Waiter waiter;
+
+    /**
+     * Undo log records, which are not in the undo log map yet
+     */
+    final UndoLogBuffer undoLogBuffer = new UndoLogBuffer();
 
     /**
      * RootReferences for undo log snapshots
@@ -338,9 +379,10 @@ public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> map
             // The purpose of the following loop is to get a coherent picture
             // In order to get such a "snapshot", we wait for a moment of silence,
             // when no new transaction were committed / closed.
-            BitSet committingTransactions;
+            long commitState;
             do {
-                committingTransactions = store.committingTransactions.get();
+                commitState = store.getCommitState();
+                BitSet committingTransactions = store.getCommittingTransactions(commitState);
                 for (MVMap<Object,VersionedValue<Object>> map : maps) {
                     TransactionMap<?,?> txMap = openMapX(map);
                     txMap.setStatementSnapshot(new Snapshot(map.flushAndGetRoot(), committingTransactions));
@@ -348,10 +390,10 @@ public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> map
                 if (isReadCommitted()) {
                     undoLogRootReferences = store.collectUndoLogRootReferences();
                 }
-            } while (committingTransactions != store.committingTransactions.get());
+            } while (commitState != store.getCommitState());
             // Now we have a snapshot, where each map RootReference point to state of the map,
             // undoLogRootReferences captures the state of undo logs
-            // and committingTransactions mask tells us which of seemingly uncommitted changes
+            // and commit state tells us which of seemingly uncommitted changes
             // should be considered as committed.
             // Subsequent processing uses this snapshot info only.
             for (MVMap<Object,VersionedValue<Object>> map : maps) {
@@ -407,7 +449,7 @@ long log(Record<?,?> logRecord) {
         }
         int currentStatus = getStatus(currentState);
         checkOpen(currentStatus);
-        long undoKey = store.addUndoLogRecord(transactionId, logId, logRecord);
+        long undoKey = store.addUndoLogRecord(this, logId, logRecord);
         return undoKey;
     }
 
@@ -425,7 +467,7 @@ void logUndo() {
         }
         int currentStatus = getStatus(currentState);
         checkOpen(currentStatus);
-        store.removeUndoLogRecord(transactionId);
+        store.removeUndoLogRecord(this);
     }
 
     /**
@@ -603,6 +645,41 @@ public Iterator<TransactionStore.Change> getChanges(long savepointId) {
         return store.getChanges(this, getLogId(), savepointId);
     }
 
+    /**
+     * Set whether the commit of this transaction waits until its changes are
+     * durable. Otherwise, the commit returns once the changes are visible to
+     * other transactions, and they are written later by the background
+     * writer of the store, see {@link org.h2.mvstore.MVStore#commitAsync()}.
+     * Prepared transactions are always committed synchronously.
+     *
+     * @param synchronousCommit whether the commit is synchronous
+     */
+    public void setSynchronousCommit(boolean synchronousCommit) {
+        this.synchronousCommit = synchronousCommit;
+    }
+
+    /**
+     * Check whether the commit of this transaction waits until its changes are
+     * durable.
+     *
+     * @return true if it does
+     */
+    public boolean isSynchronousCommit() {
+        return synchronousCommit;
+    }
+
+    /**
+     * Get the version of the store, in which the changes of this transaction
+     * were committed. They are durable once
+     * {@link TransactionStore#getDurableVersion()} reaches it.
+     *
+     * @return the version, or -1 if the transaction was not committed, or
+     *         it did not change anything
+     */
+    public long getCommitVersion() {
+        return commitVersion;
+    }
+
     /**
      * Sets the new lock timeout.
      *
@@ -651,12 +728,28 @@ void closeIt() {
 
     private void notifyAllWaitingTransactions() {
         if (notificationRequested) {
+            store.lockManager.release(this);
             synchronized (this) {
                 notifyAll();
             }
         }
     }
 
+    /**
+     * Wake up this transaction, if it waits for the given one.
+     *
+     * @param toWaitFor the blocking transaction
+     */
+    private void wakeUp(Transaction toWaitFor) {
+        RowLockManager.Waiter w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w.thread);
+        }
+        synchronized (toWaitFor) {
+            toWaitFor.notifyAll();
+        }
+    }
+
     /**
      * Make this transaction to wait for the specified transaction to be closed,
      * because both of them try to modify the same map entry.
@@ -681,6 +774,88 @@ public boolean waitFor(Transaction toWaitFor, String mapName, Object key, int ti
         return result;
     }
 
+    /**
+     * Make this transaction to wait until the specified transaction, which
+     * holds the given map entry, hands it over to this one. Waiting
+     * transactions are queued per entry, and the entry is handed over to them
+     * one by one, when the transaction, which holds it, ends or rolls back to
+     * a savepoint.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param toWaitFor transaction to wait for
+     * @param map the map containing blocking entry
+     * @param key of the blocking entry
+     * @param timeoutMillis timeout in milliseconds, {@code -1} for default
+     * @param retry whether this transaction has waited for this entry
+     *            already, so that it keeps its place at the head of the queue
+     * @return true if the entry was handed over, or may be free, and this
+     *         transaction can retry, false if timed out
+     */
+    <K, V> boolean waitFor(Transaction toWaitFor, MVMap<K, VersionedValue<V>> map, K key, int timeoutMillis,
+            boolean retry) {
+        RowLockManager lockManager = store.lockManager;
+        RowLockManager.Waiter w = lockManager.enqueue(this, toWaitFor, map, key, retry);
+        boolean proceeding = false;
+        try {
+            blockingTransaction = toWaitFor;
+            blockingMapName = map.getName();
+            blockingKey = key;
+            if (isDeadlocked(toWaitFor)) {
+                tryThrowDeadLockException(false);
+            }
+            waiter = w;
+            toWaitFor.notificationRequested = true;
+            proceeding = awaitHandOver(w, toWaitFor, map, key,
+                    timeoutMillis == -1 ? this.timeoutMillis : timeoutMillis);
+        } finally {
+            waiter = null;
+            lockManager.dequeue(w, proceeding);
+            blockingMapName = null;
+            blockingKey = null;
+            blockingTransaction = null;
+        }
+        return proceeding;
+    }
+
+    private <K, V> boolean awaitHandOver(RowLockManager.Waiter w, Transaction toWaitFor,
+            MVMap<K, VersionedValue<V>> map, K key, int millis) {
+        // the entry might be released before this transaction was enqueued
+        if (!toWaitFor.isLocking(map, key)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        while (!w.granted) {
+            if (getStatus() != STATUS_OPEN) {
+                tryThrowDeadLockException(true);
+            }
+            Transaction blocker = blockingTransaction;
+            if (blocker != null && blocker.getStatus() == STATUS_CLOSED) {
+                // the queue should have been passed on, don't wait for it
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <K, V> boolean isLocking(MVMap<K, VersionedValue<V>> map, K key) {
+        VersionedValue<V> value = map.get(key);
+        long id;
+        if (value == null || (id = value.getOperationId()) == 0) {
+            return false;
+        }
+        int txId = TransactionStore.getTransactionId(id);
+        return txId == transactionId && store.getTransaction(txId) == this && !committing;
+    }
+
     private boolean isDeadlocked(Transaction toWaitFor) {
         // use transaction sequence No as a tie-breaker
         // the youngest transaction should be selected as a victim
@@ -701,7 +876,7 @@ private boolean isDeadlocked(Transaction toWaitFor) {
                 Transaction btx = youngest.blockingTransaction;
                 if (btx != null) {
                     youngest.setStatus(STATUS_ROLLING_BACK);
-                    btx.notifyAllWaitingTransactions();
+                    youngest.wakeUp(btx);
                     return false;
                 }
             }
@@ -12,7 +12,6 @@
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
 import org.h2.engine.IsolationLevel;
@@ -345,6 +344,19 @@ public V putCommitted(K key, V value) {
         return result;
     }
 
+    /**
+     * Create a bulk loader, which appends committed entries in ascending key
+     * order, without adding undo log entries. See
+     * {@link MVMap#bulkLoader(int)}.
+     *
+     * @param fillFactor the percentage (10 to 100), up to which pages are
+     *            filled
+     * @return the bulk loader, which needs to be closed
+     */
+    public CommittedBulkLoader<K,V> bulkLoaderCommitted(int fillFactor) {
+        return new CommittedBulkLoader<>(map.bulkLoader(fillFactor));
+    }
+
     private V set(K key, V value) {
         txDecisionMaker.initialize(key, value);
         return set(key, txDecisionMaker, -1);
@@ -353,11 +365,11 @@ private V set(K key, V value) {
     private V set(Object key, TxDecisionMaker<K,V> decisionMaker, int timeoutMillis) {
         Transaction blockingTransaction;
         VersionedValue<V> result;
-        String mapName = null;
-        do {
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        boolean waited = false;
+        while (true) {
             assert transaction.getBlockerId() == 0;
-            @SuppressWarnings("unchecked")
-            K k = (K) key;
             // second parameter (value) is not really used,
             // since TxDecisionMaker has it embedded
             result = map.operate(k, null, decisionMaker);
@@ -367,6 +379,10 @@ private V set(Object key, TxDecisionMaker<K,V> decisionMaker, int timeoutMillis)
             assert decision != MVMap.Decision.REPEAT;
             blockingTransaction = decisionMaker.getBlockingTransaction();
             if (decision != MVMap.Decision.ABORT || blockingTransaction == null) {
+                if (waited && decision == MVMap.Decision.ABORT) {
+                    // the entry was handed over, but it is not needed
+                    transaction.store.lockManager.handOver(transaction, map, k);
+                }
                 hasChanges |= decision != MVMap.Decision.ABORT;
                 V res = result == null ? null : result.getCurrentValue();
                 return res;
@@ -375,15 +391,15 @@ private V set(Object key, TxDecisionMaker<K,V> decisionMaker, int timeoutMillis)
             if (timeoutMillis == -2) {
                 return null;
             }
-            if (mapName == null) {
-                mapName = map.getName();
+            if (timeoutMillis == 0 || !transaction.waitFor(blockingTransaction, map, k, timeoutMillis, waited)) {
+                break;
             }
-        } while (timeoutMillis != 0 && transaction.waitFor(blockingTransaction, mapName, key, timeoutMillis));
-
+            waited = true;
+        }
         throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTION_LOCKED,
                 "Map entry <{0}> with key <{1}> and value {2} is locked by tx {3} and can not be updated by tx {4}"
                         + " within allocated time interval {5} ms.",
-                mapName, key, result, blockingTransaction.transactionId, transaction.transactionId,
+                map.getName(), key, result, blockingTransaction.transactionId, transaction.transactionId,
                 timeoutMillis == -1 ? transaction.timeoutMillis : timeoutMillis);
     }
 
@@ -561,13 +577,14 @@ <R> R useSnapshot(BiFunction<RootReference<K,VersionedValue<V>>, BitSet, R> snap
         // which they had at some recent moment in time.
         // In order to get such a "snapshot", we wait for a moment of silence,
         // when neither of the variables concurrently changes it's value.
-        AtomicReference<BitSet> holder = transaction.store.committingTransactions;
-        BitSet committingTransactions = holder.get();
+        TransactionStore store = transaction.store;
+        long commitState = store.getCommitState();
         while (true) {
-            BitSet prevCommittingTransactions = committingTransactions;
+            long prevCommitState = commitState;
+            BitSet committingTransactions = store.getCommittingTransactions(commitState);
             RootReference<K,VersionedValue<V>> root = map.getRoot();
-            committingTransactions = holder.get();
-            if (committingTransactions == prevCommittingTransactions) {
+            commitState = store.getCommitState();
+            if (commitState == prevCommitState) {
                 return snapshotConsumer.apply(root, committingTransactions);
             }
         }
@@ -944,6 +961,37 @@ boolean shouldIgnoreRemoval(VersionedValue<?> data) {
         }
     }
 
+    /**
+     * Appends committed entries in ascending key order to a map.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public static final class CommittedBulkLoader<K,V> implements AutoCloseable {
+
+        private final MVMap.BulkLoader<K,VersionedValue<V>> loader;
+
+        CommittedBulkLoader(MVMap.BulkLoader<K,VersionedValue<V>> loader) {
+            this.loader = loader;
+        }
+
+        /**
+         * Add an entry. The key must be larger than all keys added before.
+         *
+         * @param key the key
+         * @param value the value
+         */
+        public void add(K key, V value) {
+            DataUtils.checkArgument(value != null, "The value may not be null");
+            loader.add(key, VersionedValueCommitted.getInstance(value));
+        }
+
+        @Override
+        public void close() {
+            loader.close();
+        }
+    }
+
 
     // This iterator should include all entries applicable for unique index validation,
     // committed and otherwise, only excluding keys removed by the current transaction
@@ -7,14 +7,17 @@
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.h2.engine.IsolationLevel;
-import org.h2.mvstore.Cursor;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
@@ -76,22 +79,70 @@ public class TransactionStore {
     final AtomicReference<VersionedBitSet> openTransactions = new AtomicReference<>(new VersionedBitSet());
 
     /**
-     * This is intended to be the source of ultimate truth about transaction being committed.
-     * Once bit is set, corresponding transaction is logically committed,
-     * although it might be plenty of "uncommitted" entries in various maps
-     * and undo record are still around.
-     * Nevertheless, all of those should be considered by other transactions as committed.
+     * The commit epoch in the upper bits, and the number of committing
+     * transactions in the lower bits.
+     * <p>
+     * The epoch is incremented each time a transaction starts or finishes
+     * committing, so a snapshot only needs to remember this value: if no
+     * transaction is committing, uncommitted changes of other transactions are
+     * simply not visible, and if the value did not change while map roots were
+     * read, the roots are coherent with it. Once a transaction started
+     * committing (see {@link Transaction#committing}), it is logically
+     * committed, although it might be plenty of "uncommitted" entries in
+     * various maps and undo record are still around. Nevertheless, all of
+     * those should be considered by other transactions as committed. For
+     * snapshots taken while commits are in flight, a set of committing
+     * transactions is built once per epoch (see
+     * {@link #getCommittingTransactions(long)}).
+     */
+    private final AtomicLong commitState = new AtomicLong();
+
+    /**
+     * The ids of committing transactions.
      */
-    final AtomicReference<BitSet> committingTransactions = new AtomicReference<>(new BitSet());
+    private final Set<Integer> committingTransactionIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The set of committing transactions built for the commit state in its
+     * version, or null.
+     */
+    private volatile VersionedBitSet committingTransactions;
 
     private boolean init;
 
+    /**
+     * The queues of transactions waiting for locked entries.
+     */
+    final RowLockManager lockManager = new RowLockManager();
+
+    /**
+     * The redo log, or null if it is disabled.
+     */
+    private RedoLog redoLog;
+
+    /**
+     * The old versions retained for point-in-time reads, or null if they are
+     * not retained.
+     */
+    private volatile VersionHistory versionHistory;
+
+    /**
+     * The change data capture of transactional maps.
+     */
+    final ChangeLog changeLog;
+
     /**
      * Soft limit on the number of concurrently opened transactions.
      * Not really needed but used by some test.
      */
     private int maxTransactionId = MAX_OPEN_TRANSACTIONS;
 
+    /**
+     * The number of undo log records a transaction keeps in memory, before
+     * they are moved to its undo log map.
+     */
+    private int undoLogBufferSize = DEFAULT_UNDO_LOG_BUFFER_SIZE;
+
     /**
      * Array holding all open transaction objects.
      * Position in array is "transaction id".
@@ -118,6 +169,19 @@ public class TransactionStore {
     // TODO: introduce constructor parameter instead of a static field, driven by URL parameter
     private static final int MAX_OPEN_TRANSACTIONS = 65535;
 
+    /**
+     * The increment of the commit epoch in the commit state, the lower bits
+     * hold the number of committing transactions.
+     */
+    private static final long COMMIT_EPOCH = 1L << 16;
+
+    /**
+     * The set of committing transactions, if there are none.
+     */
+    static final BitSet NO_COMMITTING_TRANSACTIONS = new BitSet();
+
+    private static final int DEFAULT_UNDO_LOG_BUFFER_SIZE = 256;
+
     /**
      * Generate a string used to name undo log map for a specific transaction.
      * This name will contain transaction id.
@@ -157,6 +221,7 @@ public TransactionStore(MVStore store, MetaType<?> metaDataType, DataType<?> dat
         this.typeRegistry = openTypeRegistry(store, metaDataType);
         this.preparedTransactions = store.openMap("openTransactions", new MVMap.Builder<>());
         this.undoLogBuilder = createUndoLogBuilder();
+        this.changeLog = new ChangeLog(this);
     }
 
     @SuppressWarnings({"unchecked","rawtypes"})
@@ -246,12 +311,82 @@ public void init(RollbackListener listener) {
                     }
                 }
             }
+            changeLog.init();
+            int redoLogSize = store.getRedoLogSize();
+            if (redoLogSize > 0 && !store.isReadOnly()) {
+                RedoLog log = new RedoLog(this, redoLogSize);
+                if (log.open()) {
+                    rollbackAfterReplay();
+                }
+                // make replayed changes persistent
+                log.checkpoint();
+                redoLog = log;
+            }
+            store.setBeforeStoreCallback(this::spillUndoLogBuffers);
             init = true;
         }
     }
 
+    /**
+     * Roll back transactions, which were open in the last stored chunk, and
+     * which are not marked as committed there. Such transaction either was
+     * not committed at all, or it was committed after the chunk, and then all
+     * its changes were replayed from the redo log. Unlike regular rollback, an
+     * entry is restored only if it still holds the uncommitted value of the
+     * transaction, and not a value replayed from the log.
+     */
+    private void rollbackAfterReplay() {
+        BitSet bitSet = openTransactions.get();
+        for (int txId = bitSet.nextSetBit(1); txId > 0; txId = bitSet.nextSetBit(txId + 1)) {
+            Transaction t = transactions.get(txId);
+            if (t == null || t.getStatus() != Transaction.STATUS_OPEN) {
+                continue;
+            }
+            MVMap<Long, Record<?,?>> undoLog = undoLogs[txId];
+            Iterator<Long> iterator = undoLog.keyIteratorReverse(null);
+            while (iterator.hasNext()) {
+                Long undoKey = iterator.next();
+                Record<?,?> op = undoLog.get(undoKey);
+                if (op.mapId < 0) {
+                    continue;
+                }
+                MVMap<Object, VersionedValue<Object>> map = openMap(op.mapId);
+                if (map != null) {
+                    @SuppressWarnings("unchecked")
+                    Record<Object,Object> record = (Record<Object,Object>) op;
+                    VersionedValue<Object> current = map.get(record.key);
+                    if (current != null && current.getOperationId() == undoKey) {
+                        if (record.oldValue == null) {
+                            map.remove(record.key);
+                        } else {
+                            map.put(record.key, record.oldValue);
+                        }
+                    }
+                }
+            }
+            // nothing is left to roll back, transaction will be ended by endLeftoverTransactions()
+            undoLog.clear();
+        }
+    }
+
     private void markUndoLogAsCommitted(int transactionId) {
-        addUndoLogRecord(transactionId, LOG_ID_MASK, Record.COMMIT_MARKER);
+        undoLogs[transactionId].append(getOperationId(transactionId, LOG_ID_MASK), Record.COMMIT_MARKER);
+    }
+
+    /**
+     * Move the buffered undo log records of all open transactions to their
+     * undo log maps. This is called before the store writes a chunk, as the
+     * chunk may contain uncommitted changes of these transactions.
+     */
+    private void spillUndoLogBuffers() {
+        BitSet bitSet = openTransactions.get();
+        for (int txId = bitSet.nextSetBit(1); txId > 0; txId = bitSet.nextSetBit(txId + 1)) {
+            Transaction t = transactions.get(txId);
+            MVMap<Long, Record<?,?>> undoLog = undoLogs[txId];
+            if (t != null && undoLog != null) {
+                t.undoLogBuffer.spill(undoLog);
+            }
+        }
     }
 
     /**
@@ -287,6 +422,19 @@ public void setMaxTransactionId(int max) {
         this.maxTransactionId = max;
     }
 
+    /**
+     * Set the number of undo log records a transaction keeps in memory. Once
+     * there are more records, they are moved to the undo log map of the
+     * transaction. The records are moved in any case before the store writes
+     * a chunk.
+     *
+     * @param size the number of records, 0 to not keep records in memory
+     */
+    public void setUndoLogBufferSize(int size) {
+        DataUtils.checkArgument(size >= 0, "Undo log buffer size is negative: {0}", size);
+        this.undoLogBufferSize = size;
+    }
+
     /**
      * Check whether a given map exists.
      *
@@ -358,11 +506,174 @@ public List<Transaction> getOpenTransactions() {
         return list;
     }
 
+    /**
+     * Set how long old versions of the store are retained for point-in-time
+     * reads. A version is retained when it is closed by a commit of the
+     * store, so the versions of an in-memory store are usually not retained.
+     *
+     * @param ms the retention time in milliseconds, or 0 to release all old
+     *            versions and to stop retaining them
+     */
+    public synchronized void setHistoryRetentionTime(int ms) {
+        VersionHistory history = versionHistory;
+        if (ms > 0) {
+            if (history == null) {
+                versionHistory = history = new VersionHistory(this, ms);
+                store.setVersionListener(history);
+            } else {
+                history.setRetentionTime(ms);
+            }
+        } else if (history != null) {
+            store.setVersionListener(null);
+            versionHistory = null;
+            history.close();
+        }
+    }
+
+    /**
+     * Get how long old versions of the store are retained for point-in-time
+     * reads.
+     *
+     * @return the retention time in milliseconds, or 0 if they are not
+     *         retained
+     */
+    public int getHistoryRetentionTime() {
+        VersionHistory history = versionHistory;
+        return history == null ? 0 : history.getRetentionTime();
+    }
+
+    /**
+     * Get the newest retained version of the store, which was closed at or
+     * before the given time.
+     *
+     * @param time the time in milliseconds since 1970
+     * @return the version, or -1 if there is no such version
+     */
+    public long getHistoryVersion(long time) {
+        VersionHistory history = versionHistory;
+        return history == null ? -1L : history.getVersion(time);
+    }
+
+    /**
+     * Iterate over the entries of a transactional map as they were in a
+     * retained version of the store. Only the changes of transactions, which
+     * were committed in this version, are visible. No locks are taken.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map (see {@link TransactionMap#map})
+     * @param version the version
+     * @param from the first key to return, or null
+     * @param to the last key to return, or null
+     * @return the iterator
+     * @throws IllegalArgumentException if the version is not retained, or if
+     *             the map did not exist in this version
+     */
+    public <K, V> Iterator<Map.Entry<K, V>> historyIterator(MVMap<K, VersionedValue<V>> map, long version,
+            K from, K to) {
+        VersionHistory history = versionHistory;
+        DataUtils.checkArgument(history != null, "Unknown version {0}", version);
+        return history.iterator(map, version, from, to);
+    }
+
+    /**
+     * Set the checkpoint of a consumer of committed changes of a
+     * transactional map. The committed changes of the map are captured from
+     * now on, if it is the first consumer. Changes below the checkpoints of
+     * all consumers are removed.
+     *
+     * @param map the map (see {@link TransactionMap#map})
+     * @param consumer the name of the consumer
+     * @param position the first position of a change, which the consumer
+     *            still needs
+     */
+    public void setChangeCheckpoint(MVMap<?, ?> map, String consumer, long position) {
+        changeLog.setCheckpoint(map.getId(), consumer, position);
+    }
+
+    /**
+     * Remove a consumer of committed changes of a transactional map. If it
+     * was the last consumer, the changes of the map are not captured any
+     * longer, and all captured changes are removed.
+     *
+     * @param map the map (see {@link TransactionMap#map})
+     * @param consumer the name of the consumer
+     */
+    public void removeChangeConsumer(MVMap<?, ?> map, String consumer) {
+        changeLog.removeConsumer(map.getId(), consumer);
+    }
+
+    /**
+     * Get the checkpoints of the consumers of committed changes of a
+     * transactional map.
+     *
+     * @param map the map (see {@link TransactionMap#map})
+     * @return the checkpoints by consumer name
+     */
+    public Map<String, Long> getChangeCheckpoints(MVMap<?, ?> map) {
+        return changeLog.getCheckpoints(map.getId());
+    }
+
+    /**
+     * Get the position of the last captured change of a transactional map.
+     *
+     * @param map the map (see {@link TransactionMap#map})
+     * @return the position, or 0 if there are no changes
+     */
+    public long getLastChangePosition(MVMap<?, ?> map) {
+        return changeLog.getLastPosition(map.getId());
+    }
+
+    /**
+     * Iterate over the captured committed changes of a transactional map in
+     * commit order.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map (see {@link TransactionMap#map})
+     * @param from the first position to return
+     * @return the iterator over changes by position, empty if the map is not
+     *         captured
+     */
+    public <K, V> Iterator<Map.Entry<Long, CommittedChange<K, V>>> changeIterator(
+            MVMap<K, VersionedValue<V>> map, long from) {
+        return changeLog.iterator(map.getId(), from);
+    }
+
+    /**
+     * Get the newest version of the store, which is durable. Transactions
+     * with a commit version up to it are durable, including the ones with
+     * asynchronous commits. Commits, which were made durable only by the redo
+     * log, are counted after the next checkpoint.
+     *
+     * @return the version, or -1 for an in-memory store
+     * @see Transaction#getCommitVersion()
+     */
+    public long getDurableVersion() {
+        return store.getDurableVersion();
+    }
+
+    /**
+     * Wait until the transactions with a commit version up to the given one
+     * are durable, and make them durable now, if they are not yet.
+     *
+     * @param version the commit version
+     * @see Transaction#getCommitVersion()
+     */
+    public void makeDurable(long version) {
+        store.makeDurable(version);
+    }
+
     /**
      * Close the transaction store.
      */
     public synchronized void close() {
+        setHistoryRetentionTime(0);
         store.commit();
+        if (redoLog != null) {
+            redoLog.close();
+            redoLog = null;
+        }
     }
 
     /**
@@ -445,14 +756,16 @@ void storeTransaction(Transaction t) {
     }
 
     /**
-     * Add an undo log entry.
+     * Add an undo log entry. It is kept in memory until there are too many
+     * of them, or until the store writes a chunk.
      *
-     * @param transactionId id of the transaction
+     * @param t the transaction
      * @param logId sequential number of the log record within transaction
      * @param record Record(mapId, key, previousValue) to add
      * @return key for the added record
      */
-    long addUndoLogRecord(int transactionId, long logId, Record<?,?> record) {
+    long addUndoLogRecord(Transaction t, long logId, Record<?,?> record) {
+        int transactionId = t.transactionId;
         MVMap<Long, Record<?,?>> undoLog = undoLogs[transactionId];
         long undoKey = getOperationId(transactionId, logId);
         if (logId == 0 && !undoLog.isEmpty()) {
@@ -462,16 +775,21 @@ long addUndoLogRecord(int transactionId, long logId, Record<?,?> record) {
                     "is still open: {0}",
                     transactionId);
         }
-        undoLog.append(undoKey, record);
+        UndoLogBuffer buffer = t.undoLogBuffer;
+        if (buffer.add(undoKey, record) > undoLogBufferSize) {
+            buffer.spill(undoLog);
+        }
         return undoKey;
     }
 
     /**
-     * Remove an undo log entry.
-     * @param transactionId id of the transaction
+     * Remove the last undo log entry.
+     * @param t the transaction
      */
-    void removeUndoLogRecord(int transactionId) {
-        undoLogs[transactionId].trimLast();
+    void removeUndoLogRecord(Transaction t) {
+        if (!t.undoLogBuffer.trimLast()) {
+            undoLogs[t.transactionId].trimLast();
+        }
     }
 
     /**
@@ -480,6 +798,7 @@ void removeUndoLogRecord(int transactionId) {
      * @param map the map
      */
     void removeMap(TransactionMap<?,?> map) {
+        changeLog.removeMap(map.map.getId());
         store.removeMap(map.map);
     }
 
@@ -496,24 +815,36 @@ void commit(Transaction t, boolean recovery) {
             // It does not change the way this transaction is treated by others,
             // but preserves fact of commit in case of abrupt termination.
             MVMap<Long,Record<?,?>> undoLog = undoLogs[transactionId];
-            Cursor<Long,Record<?,?>> cursor;
+            UndoLogBuffer buffer = t.undoLogBuffer;
+            UndoLogBuffer.RecordCursor cursor;
             if(recovery) {
-                removeUndoLogRecord(transactionId);
-                cursor = undoLog.cursor(null);
+                removeUndoLogRecord(t);
+                cursor = buffer.cursor(undoLog);
             } else {
-                cursor = undoLog.cursor(null);
-                markUndoLogAsCommitted(transactionId);
+                cursor = buffer.cursor(undoLog);
+                // the marker is spilled together with the other records,
+                // if the store writes a chunk before the commit is complete
+                buffer.add(getOperationId(transactionId, LOG_ID_MASK), Record.COMMIT_MARKER);
+                if (redoLog != null) {
+                    t.redoLogPosition = redoLog.logCommit(t, buffer.cursor(undoLog));
+                }
             }
 
             // this is an atomic action that causes all changes
             // made by this transaction, to be considered as "committed"
-            flipCommittingTransactionsBit(transactionId, true);
+            HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> changes = changeLog.isCapturing()
+                    ? collectChanges(transactionId, buffer.cursor(undoLog)) : null;
+            if (changes == null) {
+                setCommitting(t, true);
+            } else {
+                changeLog.capture(changes, () -> setCommitting(t, true));
+            }
 
             CommitDecisionMaker<Object> commitDecisionMaker = new CommitDecisionMaker<>();
             try {
                 while (cursor.hasNext()) {
-                    Long undoKey = cursor.next();
-                    Record<?,?> op = cursor.getValue();
+                    long undoKey = cursor.next();
+                    Record<?,?> op = cursor.getRecord();
                     int mapId = op.mapId;
                     MVMap<Object, VersionedValue<Object>> map = openMap(mapId);
                     if (map != null && !map.isClosed()) { // might be null if map was removed later
@@ -524,25 +855,107 @@ void commit(Transaction t, boolean recovery) {
                         map.operate(key, null, commitDecisionMaker);
                     }
                 }
+                // all changes are applied, so they are in this version or older
+                t.commitVersion = store.getCurrentVersion();
             } finally {
                 try {
-                    undoLog.clear();
+                    buffer.clear();
+                    // a short transaction does not need to change the map
+                    if (!undoLog.isEmpty()) {
+                        undoLog.clear();
+                    }
                 } finally {
-                    flipCommittingTransactionsBit(transactionId, false);
+                    setCommitting(t, false);
                 }
             }
         }
     }
 
-    private void flipCommittingTransactionsBit(int transactionId, boolean flag) {
-        boolean success;
-        do {
-            BitSet original = committingTransactions.get();
-            assert original.get(transactionId) != flag : flag ? "Double commit" : "Mysterious bit's disappearance";
-            BitSet clone = (BitSet) original.clone();
-            clone.set(transactionId, flag);
-            success = committingTransactions.compareAndSet(original, clone);
-        } while(!success);
+    /**
+     * Collect the changes of captured maps of a transaction, before it is
+     * committing. Until then, the entries of the transaction can not be
+     * changed by other transactions, but afterwards they may be overwritten
+     * before the commit is complete.
+     *
+     * @param transactionId the transaction id
+     * @param cursor the cursor over the undo log of the transaction
+     * @return the changes by map id, or null if there are none
+     */
+    private HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> collectChanges(int transactionId,
+            UndoLogBuffer.RecordCursor cursor) {
+        HashMap<Integer, ArrayList<CommittedChange<Object,Object>>> changes = null;
+        long version = store.getCurrentVersion();
+        while (cursor.hasNext()) {
+            long undoKey = cursor.next();
+            Record<?,?> op = cursor.getRecord();
+            int mapId = op.mapId;
+            if (mapId < 0 || !changeLog.isCaptured(mapId)) {
+                continue;
+            }
+            MVMap<Object, VersionedValue<Object>> map = openMap(mapId);
+            if (map == null || map.isClosed()) {
+                continue;
+            }
+            VersionedValue<Object> current = map.get(op.key);
+            // only the final undo log record of the entry is captured
+            if (current != null && current.getOperationId() == undoKey) {
+                VersionedValue<?> old = op.oldValue;
+                changes = ChangeLog.addChange(changes, mapId, version, transactionId, op.key,
+                        old == null ? null : old.getCommittedValue(), current.getCurrentValue());
+            }
+        }
+        return changes;
+    }
+
+    private void setCommitting(Transaction t, boolean committing) {
+        assert t.committing != committing : committing ? "Double commit" : "Mysterious flag's disappearance";
+        // the flag and the ids are changed before the epoch, so that a set
+        // of committing transactions built for the previous epoch is still
+        // coherent with the map roots read before the epoch changed
+        t.committing = committing;
+        if (committing) {
+            committingTransactionIds.add(t.transactionId);
+        } else {
+            committingTransactionIds.remove(t.transactionId);
+        }
+        commitState.addAndGet(committing ? COMMIT_EPOCH + 1 : COMMIT_EPOCH - 1);
+    }
+
+    /**
+     * Get the current commit state. Map roots read after this call, and
+     * before this method returns the same value again, are coherent with it.
+     *
+     * @return the commit state
+     */
+    long getCommitState() {
+        return commitState.get();
+    }
+
+    /**
+     * Get the set of transactions, which were committing in the given commit
+     * state. The caller has to read the map roots after this call, and check
+     * that the commit state did not change in the meantime.
+     *
+     * @param commitState the commit state
+     * @return the set of committing transactions, which must not be modified
+     */
+    BitSet getCommittingTransactions(long commitState) {
+        if ((commitState & (COMMIT_EPOCH - 1)) == 0) {
+            return NO_COMMITTING_TRANSACTIONS;
+        }
+        VersionedBitSet cached = committingTransactions;
+        if (cached != null && cached.getVersion() == commitState) {
+            return cached;
+        }
+        VersionedBitSet set = new VersionedBitSet();
+        for (int transactionId : committingTransactionIds) {
+            set.set(transactionId);
+        }
+        set.setVersion(commitState);
+        if (this.commitState.get() == commitState) {
+            committingTransactions = set;
+        }
+        return set;
     }
 
     <K,V> MVMap<K, VersionedValue<V>> openVersionedMap(String name, DataType<K> keyType, DataType<V> valueType) {
@@ -629,8 +1042,21 @@ void endTransaction(Transaction t, boolean hasChanges) {
             }
 
             if (store.isVersioningRequired()) {
-                if (wasStored || store.getAutoCommitDelay() == 0) {
-                    store.commit();
+                RedoLog log = redoLog;
+                boolean logged = log != null && t.redoLogPosition > 0 && !wasStored;
+                if (!t.isSynchronousCommit() && !wasStored && store.getAsyncCommitDelay() > 0
+                        && (logged || store.getAutoCommitDelay() == 0)) {
+                    // the background writer makes the changes durable
+                    store.commitAsync();
+                    if (logged) {
+                        // a map, which is not in the store file yet, can not
+                        // be recovered from the log, so it is stored now
+                        log.checkpointIfNeeded(t.redoLogCheckpoint);
+                    }
+                } else if (logged) {
+                    log.sync(t.redoLogPosition, t.redoLogCheckpoint);
+                } else if (wasStored || store.getAutoCommitDelay() == 0) {
+                    store.groupCommit();
                 } else {
                     if (isUndoEmpty()) {
                         // to avoid having to store the transaction log,
@@ -661,6 +1087,11 @@ RootReference<Long,Record<?,?>>[] collectUndoLogRootReferences() {
         for (int i = opentransactions.nextSetBit(0); i >= 0; i = opentransactions.nextSetBit(i+1)) {
             MVMap<Long,Record<?,?>> undoLog = undoLogs[i];
             if (undoLog != null) {
+                Transaction t = transactions.get(i);
+                if (t != null && !t.undoLogBuffer.isEmpty()) {
+                    // buffered records are not in the snapshot
+                    return null;
+                }
                 RootReference<Long,Record<?,?>> rootReference = undoLog.getRoot();
                 if (rootReference.needFlush()) {
                     // abort attempt to collect snapshots for all undo logs
@@ -696,6 +1127,10 @@ private boolean isUndoEmpty() {
             if (undoLog != null && !undoLog.isEmpty()) {
                 return false;
             }
+            Transaction t = transactions.get(i);
+            if (t != null && !t.undoLogBuffer.isEmpty()) {
+                return false;
+            }
         }
         return true;
     }
@@ -720,10 +1155,20 @@ Transaction getTransaction(int transactionId) {
     void rollbackTo(Transaction t, long maxLogId, long toLogId) {
         int transactionId = t.getId();
         MVMap<Long,Record<?,?>> undoLog = undoLogs[transactionId];
+        UndoLogBuffer buffer = t.undoLogBuffer;
         RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, transactionId, toLogId, t.listener);
         for (long logId = maxLogId - 1; logId >= toLogId; logId--) {
             Long undoKey = getOperationId(transactionId, logId);
-            undoLog.operate(undoKey, null, decisionMaker);
+            Record<?,?> op = buffer.getLast(undoKey);
+            if (op != null) {
+                decisionMaker.decide(op, null);
+                if (!buffer.removeLast(undoKey)) {
+                    // the record was spilled in the meantime
+                    undoLog.remove(undoKey);
+                }
+            } else {
+                undoLog.operate(undoKey, null, decisionMaker);
+            }
             decisionMaker.reset();
         }
     }
@@ -741,6 +1186,7 @@ Iterator<Change> getChanges(final Transaction t, final long maxLogId,
             final long toLogId) {
 
         final MVMap<Long,Record<?,?>> undoLog = undoLogs[t.getId()];
+        final UndoLogBuffer buffer = t.undoLogBuffer;
         return new Iterator<>() {
 
             private long logId = maxLogId - 1;
@@ -750,11 +1196,15 @@ private void fetchNext() {
                 int transactionId = t.getId();
                 while (logId >= toLogId) {
                     Long undoKey = getOperationId(transactionId, logId);
-                    Record<?,?> op = undoLog.get(undoKey);
+                    Record<?,?> op = buffer.get(undoKey);
+                    if (op == null) {
+                        op = undoLog.get(undoKey);
+                    }
                     logId--;
                     if (op == null) {
                         // partially rolled back: load previous
-                        undoKey = undoLog.floorKey(undoKey);
+                        Long bufferedKey = buffer.floorKey(undoKey);
+                        undoKey = bufferedKey != null ? bufferedKey : undoLog.floorKey(undoKey);
                         if (undoKey == null || getTransactionId(undoKey) != transactionId) {
                             break;
                         }
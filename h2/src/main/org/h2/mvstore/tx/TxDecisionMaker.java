@@ -201,14 +201,8 @@ final boolean isThisTransaction(int transactionId) {
      * @return true if transaction should be considered as committed, false otherwise
      */
     final boolean isCommitted(int transactionId) {
-        Transaction blockingTx;
-        boolean result;
-        TransactionStore store = transaction.store;
-        do {
-            blockingTx = store.getTransaction(transactionId);
-            result = store.committingTransactions.get().get(transactionId);
-        } while (blockingTx != store.getTransaction(transactionId));
-
+        Transaction blockingTx = transaction.store.getTransaction(transactionId);
+        boolean result = blockingTx != null && blockingTx.committing;
         if (!result) {
             blockingTransaction = blockingTx;
         }
@@ -243,6 +237,19 @@ final MVMap.Decision setDecision(MVMap.Decision decision) {
         return this.decision = decision;
     }
 
+    /**
+     * The decision maker is used by one operation of its transaction at a
+     * time, and only depends on the state of the transaction and on its own
+     * state, so the operation may be applied by another thread, while the
+     * thread of the transaction waits for the result.
+     *
+     * @return true
+     */
+    @Override
+    public final boolean isCombinable() {
+        return true;
+    }
+
     @Override
     public final String toString() {
         return "txdm " + transaction.transactionId;
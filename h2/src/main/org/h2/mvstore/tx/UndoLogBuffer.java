@@ -0,0 +1,255 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.Arrays;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+
+/**
+ * Undo log records of a transaction, which are not in its undo log map yet.
+ * <p>
+ * Records are kept in memory, and are moved (spilled) to the undo log map
+ * when there are too many of them, or before the store writes a new chunk,
+ * so that the undo log is persisted together with the uncommitted changes. A
+ * short transaction usually ends before that, and then its undo log map is
+ * not changed at all.
+ * <p>
+ * Records are added and removed only by the thread, which owns the
+ * transaction, or by a thread, which applies a change on its behalf while it
+ * waits (see MVMap.DecisionMaker.isCombinable()), but they may be spilled by
+ * the thread, which stores the changes. Arrays are replaced instead of being cleared, so that a cursor
+ * does not see the records moved away.
+ */
+final class UndoLogBuffer {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The undo keys (operation ids) of the records, in ascending order.
+     */
+    private long[] keys;
+
+    private Record<?,?>[] records;
+
+    private int size;
+
+    /**
+     * Whether records are being spilled, so that the buffer is not spilled
+     * again from within the undo log map if the store decides to write a
+     * chunk in the meantime.
+     */
+    private boolean spilling;
+
+    /**
+     * Add a record.
+     *
+     * @param undoKey the undo key, larger than the keys added before
+     * @param record the record
+     * @return the number of buffered records
+     */
+    synchronized int add(long undoKey, Record<?,?> record) {
+        if (keys == null) {
+            keys = new long[INITIAL_CAPACITY];
+            records = new Record<?,?>[INITIAL_CAPACITY];
+        } else if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            records = Arrays.copyOf(records, size * 2);
+        }
+        keys[size] = undoKey;
+        records[size] = record;
+        return ++size;
+    }
+
+    /**
+     * Remove the last record.
+     *
+     * @return false if there are no buffered records
+     */
+    synchronized boolean trimLast() {
+        if (size == 0) {
+            return false;
+        }
+        records[--size] = null;
+        return true;
+    }
+
+    /**
+     * Get the last record, if it has the given undo key.
+     *
+     * @param undoKey the undo key
+     * @return the record, or null if the last record has another key, or if
+     *         there are no buffered records
+     */
+    synchronized Record<?,?> getLast(long undoKey) {
+        return size > 0 && keys[size - 1] == undoKey ? records[size - 1] : null;
+    }
+
+    /**
+     * Remove the last record, if it has the given undo key.
+     *
+     * @param undoKey the undo key
+     * @return whether the record was removed
+     */
+    synchronized boolean removeLast(long undoKey) {
+        if (size > 0 && keys[size - 1] == undoKey) {
+            records[--size] = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the record with the given undo key.
+     *
+     * @param undoKey the undo key
+     * @return the record, or null if it is not buffered
+     */
+    synchronized Record<?,?> get(long undoKey) {
+        int index = size == 0 ? -1 : Arrays.binarySearch(keys, 0, size, undoKey);
+        return index < 0 ? null : records[index];
+    }
+
+    /**
+     * Get the largest buffered undo key, which is smaller than or equal to
+     * the given key.
+     *
+     * @param undoKey the undo key
+     * @return the undo key, or null if there is no such key
+     */
+    synchronized Long floorKey(long undoKey) {
+        if (size == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, undoKey);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? null : keys[index];
+    }
+
+    /**
+     * Check whether there are buffered records.
+     *
+     * @return true if there are none
+     */
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Move the buffered records to the undo log map.
+     *
+     * @param undoLog the undo log map of the transaction
+     */
+    synchronized void spill(MVMap<Long,Record<?,?>> undoLog) {
+        if (size == 0 || spilling || undoLog.isClosed()) {
+            return;
+        }
+        spilling = true;
+        int count = 0;
+        try {
+            for (; count < size; count++) {
+                undoLog.append(keys[count], records[count]);
+            }
+        } finally {
+            spilling = false;
+            if (count == size) {
+                clear();
+            } else {
+                keys = Arrays.copyOfRange(keys, count, keys.length);
+                records = Arrays.copyOfRange(records, count, records.length);
+                size -= count;
+            }
+        }
+    }
+
+    /**
+     * Remove all buffered records.
+     */
+    synchronized void clear() {
+        keys = null;
+        records = null;
+        size = 0;
+    }
+
+    /**
+     * Open a cursor over all records of the transaction, the ones in the undo
+     * log map followed by the buffered ones. Records added later are not
+     * visible to the cursor.
+     *
+     * @param undoLog the undo log map of the transaction
+     * @return the cursor
+     */
+    synchronized RecordCursor cursor(MVMap<Long,Record<?,?>> undoLog) {
+        return new RecordCursor(undoLog.isEmpty() ? null : undoLog.cursor(null), keys, records, size);
+    }
+
+    /**
+     * A cursor over undo log records.
+     */
+    static final class RecordCursor {
+
+        private Cursor<Long,Record<?,?>> cursor;
+
+        private final long[] keys;
+
+        private final Record<?,?>[] records;
+
+        private final int size;
+
+        private int index = -1;
+
+        private Record<?,?> current;
+
+        RecordCursor(Cursor<Long,Record<?,?>> cursor, long[] keys, Record<?,?>[] records, int size) {
+            this.cursor = cursor;
+            this.keys = keys;
+            this.records = records;
+            this.size = size;
+        }
+
+        /**
+         * Check whether there are more records.
+         *
+         * @return true if there are
+         */
+        boolean hasNext() {
+            if (cursor != null) {
+                if (cursor.hasNext()) {
+                    return true;
+                }
+                cursor = null;
+            }
+            return index + 1 < size;
+        }
+
+        /**
+         * Move to the next record.
+         *
+         * @return the undo key of the record
+         */
+        long next() {
+            if (cursor != null && cursor.hasNext()) {
+                long undoKey = cursor.next();
+                current = cursor.getValue();
+                return undoKey;
+            }
+            cursor = null;
+            current = records[++index];
+            return keys[index];
+        }
+
+        /**
+         * Get the current record.
+         *
+         * @return the record
+         */
+        Record<?,?> getRecord() {
+            return current;
+        }
+    }
+}
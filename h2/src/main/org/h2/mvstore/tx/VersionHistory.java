@@ -0,0 +1,247 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.AbstractMap;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStore.TxCounter;
+import org.h2.value.VersionedValue;
+
+/**
+ * Old versions of the store, which are retained for point-in-time reads.
+ * <p>
+ * When the store closes a version, the version is pinned with a usage
+ * counter, so that the old map roots and the chunks they reference are
+ * kept, and it is recorded together with the time and the set of
+ * transactions, which were committing at that moment. A version is released
+ * when the next retained version is older than the retention time.
+ * <p>
+ * The committing transactions are read before the version is closed, and the
+ * commit state is checked again after all maps switched to the next version.
+ * If a transaction started or finished committing in the meantime, the set
+ * may not be coherent with the map roots, and the version is not retained.
+ */
+final class VersionHistory implements MVStore.VersionListener {
+
+    private final TransactionStore transactionStore;
+
+    private final MVStore store;
+
+    private volatile int retentionTime;
+
+    /**
+     * The retained versions by version.
+     */
+    private final ConcurrentSkipListMap<Long, Entry> versions = new ConcurrentSkipListMap<>();
+
+    /**
+     * The retained versions by the time when they were closed.
+     */
+    private final ConcurrentSkipListMap<Long, Entry> times = new ConcurrentSkipListMap<>();
+
+    /**
+     * The version, which is being closed.
+     */
+    private Entry closing;
+
+    private long lastTime;
+
+    private boolean closed;
+
+    VersionHistory(TransactionStore transactionStore, int retentionTime) {
+        this.transactionStore = transactionStore;
+        this.store = transactionStore.store;
+        this.retentionTime = retentionTime;
+    }
+
+    void setRetentionTime(int retentionTime) {
+        this.retentionTime = retentionTime;
+    }
+
+    int getRetentionTime() {
+        return retentionTime;
+    }
+
+    @Override
+    public synchronized void beforeClose(long version) {
+        if (closed) {
+            return;
+        }
+        Entry entry = closing;
+        if (entry != null) {
+            // the previous version was closed without notification
+            store.deregisterVersionUsage(entry.counter);
+        }
+        long commitState = transactionStore.getCommitState();
+        closing = new Entry(version, commitState, transactionStore.getCommittingTransactions(commitState),
+                store.registerVersionUsage());
+    }
+
+    @Override
+    public synchronized void afterClose(long version) {
+        Entry entry = closing;
+        closing = null;
+        if (entry == null) {
+            return;
+        }
+        // never go backward in time
+        long time = Math.max(System.currentTimeMillis(), lastTime);
+        if (entry.version != version || transactionStore.getCommitState() != entry.commitState) {
+            store.deregisterVersionUsage(entry.counter);
+        } else {
+            lastTime = time;
+            entry.time = time;
+            versions.put(version, entry);
+            times.put(time, entry);
+        }
+        removeExpired(time - retentionTime);
+    }
+
+    private void removeExpired(long oldestTime) {
+        Map.Entry<Long, Entry> first;
+        Map.Entry<Long, Entry> next;
+        // the oldest version is still needed, until the next one is old enough
+        while ((first = versions.firstEntry()) != null && (next = versions.higherEntry(first.getKey())) != null
+                && next.getValue().time <= oldestTime) {
+            release(first.getValue());
+        }
+    }
+
+    private void release(Entry entry) {
+        versions.remove(entry.version, entry);
+        times.remove(entry.time, entry);
+        store.deregisterVersionUsage(entry.counter);
+    }
+
+    /**
+     * Release all retained versions, and stop retaining new ones.
+     */
+    synchronized void close() {
+        closed = true;
+        if (closing != null) {
+            store.deregisterVersionUsage(closing.counter);
+            closing = null;
+        }
+        for (Entry entry : versions.values()) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Get the newest retained version, which was closed at or before the
+     * given time.
+     *
+     * @param time the time in milliseconds since 1970
+     * @return the version, or -1 if there is no such version
+     */
+    long getVersion(long time) {
+        Map.Entry<Long, Entry> e = times.floorEntry(time);
+        return e == null ? -1L : e.getValue().version;
+    }
+
+    /**
+     * Iterate over the committed entries of a map as they were in a retained
+     * version.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map
+     * @param version the version
+     * @param from the first key, or null
+     * @param to the last key, or null
+     * @return the iterator
+     * @throws IllegalArgumentException if the version is not retained, or if
+     *             the map did not exist in this version
+     */
+    <K, V> Iterator<Map.Entry<K, V>> iterator(MVMap<K, VersionedValue<V>> map, long version, K from, K to) {
+        Entry entry = versions.get(version);
+        DataUtils.checkArgument(entry != null, "Unknown version {0}", version);
+        MVMap<K, VersionedValue<V>> old = map.openVersion(version);
+        return new HistoryIterator<>(old.cursor(from, to, false), entry.committingTransactions);
+    }
+
+    /**
+     * A retained version.
+     */
+    private static final class Entry {
+
+        final long version;
+
+        final long commitState;
+
+        final BitSet committingTransactions;
+
+        final TxCounter counter;
+
+        /**
+         * The time when the version was closed.
+         */
+        long time;
+
+        Entry(long version, long commitState, BitSet committingTransactions, TxCounter counter) {
+            this.version = version;
+            this.commitState = commitState;
+            this.committingTransactions = committingTransactions;
+            this.counter = counter;
+        }
+    }
+
+    /**
+     * An iterator over the entries of an old version of a map, which were
+     * committed in this version.
+     */
+    private static final class HistoryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Cursor<K, VersionedValue<V>> cursor;
+
+        private final BitSet committingTransactions;
+
+        private Map.Entry<K, V> current;
+
+        HistoryIterator(Cursor<K, VersionedValue<V>> cursor, BitSet committingTransactions) {
+            this.cursor = cursor;
+            this.committingTransactions = committingTransactions;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null && cursor.hasNext()) {
+                K key = cursor.next();
+                VersionedValue<V> data = cursor.getValue();
+                if (data != null) {
+                    long id = data.getOperationId();
+                    // unlike readers of the current version, there are no own
+                    // changes to see
+                    V value = id == 0 || committingTransactions.get(TransactionStore.getTransactionId(id))
+                            ? data.getCurrentValue() : data.getCommittedValue();
+                    if (value != null) {
+                        current = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+            }
+            return current != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> e = current;
+            current = null;
+            return e;
+        }
+    }
+
+}
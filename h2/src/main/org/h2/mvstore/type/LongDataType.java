@@ -40,6 +40,30 @@ public Long read(ByteBuffer buff) {
         return DataUtils.readVarLong(buff);
     }
 
+    @Override
+    public void write(WriteBuffer buff, Object storage, int len) {
+        if (storage instanceof long[]) {
+            long[] keys = (long[]) storage;
+            for (int i = 0; i < len; i++) {
+                buff.putVarLong(keys[i]);
+            }
+        } else {
+            super.write(buff, storage, len);
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer buff, Object storage, int len) {
+        if (storage instanceof long[]) {
+            long[] keys = (long[]) storage;
+            for (int i = 0; i < len; i++) {
+                keys[i] = DataUtils.readVarLong(buff);
+            }
+        } else {
+            super.read(buff, storage, len);
+        }
+    }
+
     @Override
     public Long[] createStorage(int size) {
         return size == 0 ? EMPTY_LONG_ARR : new Long[size];
@@ -53,9 +77,29 @@ public int compare(Long one, Long two) {
     @Override
     public int binarySearch(Long keyObj, Object storageObj, int size, int initialGuess) {
         long key = keyObj;
-        Long[] storage = cast(storageObj);
-        int low = 0;
+        if (storageObj instanceof long[]) {
+            return binarySearch(key, (long[]) storageObj, size, initialGuess);
+        }
         int high = size - 1;
+        return binarySearch(key, cast(storageObj), 0, high, getInitialIndex(high, initialGuess));
+    }
+
+    /**
+     * Search a key in a sorted array of primitive values, starting at the
+     * given index.
+     *
+     * @param key the key
+     * @param storage the sorted values
+     * @param size the number of values to search in
+     * @param initialGuess the index of the previous result plus one, or 0
+     * @return the index of the key, if found, or the negated insertion point
+     */
+    public static int binarySearch(long key, long[] storage, int size, int initialGuess) {
+        int high = size - 1;
+        return binarySearch(key, storage, 0, high, getInitialIndex(high, initialGuess));
+    }
+
+    private static int getInitialIndex(int high, int initialGuess) {
         // the cached index minus one, so that
         // for the first time (when cachedCompare is 0),
         // the default value is used
@@ -63,7 +107,22 @@ public int binarySearch(Long keyObj, Object storageObj, int size, int initialGue
         if (x < 0 || x > high) {
             x = high >>> 1;
         }
-        return binarySearch(key, storage, low, high, x);
+        return x;
+    }
+
+    private static int binarySearch(long key, long[] storage, int low, int high, int x) {
+        while (low <= high) {
+            long midVal = storage[x];
+            if (key > midVal) {
+                low = x + 1;
+            } else if (key < midVal) {
+                high = x - 1;
+            } else {
+                return x;
+            }
+            x = (low + high) >>> 1;
+        }
+        return ~low;
     }
 
     private static int binarySearch(long key, Long[] storage, int low, int high, int x) {
@@ -784,7 +784,8 @@ public void remove(SchemaObject obj) {
      * @return the created {@link Table} object
      */
     public Table createTable(CreateTableData data) {
-        synchronized (database) {
+        database.lock();
+        try {
             if (!data.temporary || data.globalTemporary) {
                 database.lockMeta(data.session);
             }
@@ -802,6 +803,8 @@ public Table createTable(CreateTableData data) {
                 data.tableEngineParams = this.tableEngineParams;
             }
             return database.getTableEngine(tableEngine).createTable(data);
+        } finally {
+            database.unlock();
         }
     }
 
@@ -812,10 +815,13 @@ public Table createTable(CreateTableData data) {
      * @return the created {@link TableSynonym} object
      */
     public TableSynonym createSynonym(CreateSynonymData data) {
-        synchronized (database) {
+        database.lock();
+        try {
             database.lockMeta(data.session);
             data.schema = this;
             return new TableSynonym(data);
+        } finally {
+            database.unlock();
         }
     }
 
@@ -837,10 +843,13 @@ public TableSynonym createSynonym(CreateSynonymData data) {
     public TableLink createTableLink(int id, String tableName, String driver,
             String url, String user, String password, String originalSchema,
             String originalTable, boolean emitUpdates, boolean force) {
-        synchronized (database) {
+        database.lock();
+        try {
             return new TableLink(this, id, tableName,
                     driver, url, user, password,
                     originalSchema, originalTable, emitUpdates, force);
+        } finally {
+            database.unlock();
         }
     }
 
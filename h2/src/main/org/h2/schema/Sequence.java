@@ -5,6 +5,8 @@
  */
 package org.h2.schema;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import org.h2.api.ErrorCode;
 import org.h2.command.ddl.SequenceOptions;
 import org.h2.engine.DbObject;
@@ -53,18 +55,96 @@ public boolean isCycle() {
 
     }
 
+    /**
+     * A block of values reserved by a session. Values from a block are
+     * returned without access to the shared state of the sequence.
+     */
+    public static final class Block {
+
+        long next;
+
+        long remaining;
+
+        /**
+         * The state published by the allocation of this block. Its base value
+         * is the end of the block.
+         */
+        State state;
+
+        /**
+         * Whether this block has no more values.
+         *
+         * @return true if this block is empty
+         */
+        public boolean isEmpty() {
+            return remaining == 0L;
+        }
+
+    }
+
+    /**
+     * The base value together with the options used by the lock-free path.
+     * Instances are immutable, a new one is published for each allocation and
+     * each modification, so a successful compare-and-set of an instance also
+     * proves that nothing else was changed after it was read.
+     */
+    private static final class State {
+
+        final long base;
+
+        final long increment;
+
+        final int modificationCount;
+
+        State(long base, long increment, int modificationCount) {
+            this.base = base;
+            this.increment = increment;
+            this.modificationCount = modificationCount;
+        }
+
+        State withBase(long base) {
+            return new State(base, increment, modificationCount);
+        }
+
+    }
+
     /**
      * The default cache size for sequences.
      */
     public static final int DEFAULT_CACHE_SIZE = 32;
 
-    private long baseValue;
-    private long margin;
+    /**
+     * The next value, the increment and the modification count. It is
+     * advanced with compare-and-set operations without synchronization while
+     * it stays within the margin, only changes of the margin and of the
+     * options are locked. The modification count is incremented each time the
+     * sequence is modified, so that sessions can detect their stale blocks.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>();
+
+    /**
+     * The value written to the metadata. Values up to the margin may be
+     * returned without a flush. It is changed before the base value, so
+     * that a thread, which reads the base value and then the margin, never
+     * sees an older margin.
+     */
+    private volatile long margin;
+
+    /**
+     * Whether the sequence is closed. Values are not allocated any more, once
+     * the final value is written.
+     */
+    private volatile boolean closed;
 
     private TypeInfo dataType;
 
+    /**
+     * The increment, guarded by the lock. The lock-free path uses the
+     * increment of the state instead.
+     */
     private long increment;
     private long cacheSize;
+    private long sessionCacheSize;
     private long startValue;
     private long minValue;
     private long maxValue;
@@ -72,6 +152,11 @@ public boolean isCycle() {
     private boolean belongsToTable;
     private boolean writeWithMargin;
 
+    /**
+     * The lock for changes of the margin and of the options.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Creates a new sequence.
      *
@@ -125,9 +210,12 @@ public Sequence(SessionLocal session, Schema schema, int id, String name, Sequen
         } else if (cycle == Cycle.EXHAUSTED) {
             baseValue = startValue;
         }
-        this.margin = this.baseValue = baseValue;
+        this.margin = baseValue;
+        this.state.set(new State(baseValue, increment, 0));
         this.increment = increment;
         this.cacheSize = cacheSize;
+        t = options.getSessionCacheSize(session);
+        this.sessionCacheSize = t != null ? checkSessionCacheSize(minValue, maxValue, increment, t) : 1L;
         this.startValue = startValue;
         this.minValue = minValue;
         this.maxValue = maxValue;
@@ -136,8 +224,26 @@ public Sequence(SessionLocal session, Schema schema, int id, String name, Sequen
     }
 
     /**
-     * Allows the base value, start value, min value, max value, increment and
-     * cache size to be updated atomically, including atomic validation. Useful
+     * Locks this sequence, so that its options can be read or changed
+     * atomically.
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Unlocks this sequence.
+     *
+     * @see #lock()
+     */
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Allows the base value, start value, min value, max value, increment,
+     * cache size and session cache size to be updated atomically, including
+     * atomic validation. Useful
      * because setting these attributes one after the other could otherwise
      * result in an invalid sequence state (e.g. min value &gt; max value, start
      * value &lt; min value, etc).
@@ -155,40 +261,52 @@ public Sequence(SessionLocal session, Schema schema, int id, String name, Sequen
      *            the new cycle value, or {@code null} if no change
      * @param cacheSize
      *            the new cache size ({@code null} if no change)
+     * @param sessionCacheSize
+     *            the new session cache size ({@code null} if no change)
      */
-    public synchronized void modify(Long baseValue, Long startValue, Long minValue, Long maxValue, Long increment,
-            Cycle cycle, Long cacheSize) {
-        long baseValueAsLong = baseValue != null ? baseValue : this.baseValue;
-        long startValueAsLong = startValue != null ? startValue : this.startValue;
-        long minValueAsLong = minValue != null ? minValue : this.minValue;
-        long maxValueAsLong = maxValue != null ? maxValue : this.maxValue;
-        long incrementAsLong = increment != null ? increment : this.increment;
-        long cacheSizeAsLong;
-        boolean mayAdjustCacheSize;
-        if (cacheSize != null) {
-            cacheSizeAsLong = cacheSize;
-            mayAdjustCacheSize = false;
-        } else {
-            cacheSizeAsLong = this.cacheSize;
-            mayAdjustCacheSize = true;
-        }
-        cacheSizeAsLong = checkOptions(baseValueAsLong, startValueAsLong, minValueAsLong, maxValueAsLong,
-                incrementAsLong, cacheSizeAsLong, mayAdjustCacheSize);
-        if (cycle == null) {
-            cycle = this.cycle;
-            if (cycle == Cycle.EXHAUSTED && baseValue != null) {
-                cycle = Cycle.NO_CYCLE;
+    public void modify(Long baseValue, Long startValue, Long minValue, Long maxValue, Long increment,
+            Cycle cycle, Long cacheSize, Long sessionCacheSize) {
+        lock();
+        try {
+            State oldState = state.get();
+            long baseValueAsLong = baseValue != null ? baseValue : oldState.base;
+            long startValueAsLong = startValue != null ? startValue : this.startValue;
+            long minValueAsLong = minValue != null ? minValue : this.minValue;
+            long maxValueAsLong = maxValue != null ? maxValue : this.maxValue;
+            long incrementAsLong = increment != null ? increment : this.increment;
+            long cacheSizeAsLong;
+            boolean mayAdjustCacheSize;
+            if (cacheSize != null) {
+                cacheSizeAsLong = cacheSize;
+                mayAdjustCacheSize = false;
+            } else {
+                cacheSizeAsLong = this.cacheSize;
+                mayAdjustCacheSize = true;
             }
-        } else if (cycle == Cycle.EXHAUSTED) {
-            baseValueAsLong = startValueAsLong;
-        }
-        this.margin = this.baseValue = baseValueAsLong;
-        this.startValue = startValueAsLong;
-        this.minValue = minValueAsLong;
-        this.maxValue = maxValueAsLong;
-        this.increment = incrementAsLong;
-        this.cacheSize = cacheSizeAsLong;
-        this.cycle = cycle;
+            cacheSizeAsLong = checkOptions(baseValueAsLong, startValueAsLong, minValueAsLong, maxValueAsLong,
+                    incrementAsLong, cacheSizeAsLong, mayAdjustCacheSize);
+            long sessionCacheSizeAsLong = checkSessionCacheSize(minValueAsLong, maxValueAsLong, incrementAsLong,
+                    sessionCacheSize != null ? sessionCacheSize : this.sessionCacheSize);
+            if (cycle == null) {
+                cycle = this.cycle;
+                if (cycle == Cycle.EXHAUSTED && baseValue != null) {
+                    cycle = Cycle.NO_CYCLE;
+                }
+            } else if (cycle == Cycle.EXHAUSTED) {
+                baseValueAsLong = startValueAsLong;
+            }
+            this.margin = baseValueAsLong;
+            state.set(new State(baseValueAsLong, incrementAsLong, oldState.modificationCount + 1));
+            this.startValue = startValueAsLong;
+            this.minValue = minValueAsLong;
+            this.maxValue = maxValueAsLong;
+            this.increment = incrementAsLong;
+            this.cacheSize = cacheSizeAsLong;
+            this.sessionCacheSize = sessionCacheSizeAsLong;
+            this.cycle = cycle;
+        } finally {
+            unlock();
+        }
     }
 
     /**
@@ -238,6 +356,13 @@ private long checkOptions(long baseValue, long startValue, long minValue, long m
                 Long.toString(cacheSize));
     }
 
+    private static long checkSessionCacheSize(long minValue, long maxValue, long increment, long sessionCacheSize) {
+        if (sessionCacheSize <= 1L) {
+            return 1L;
+        }
+        return Math.min(sessionCacheSize, getMaxCacheSize(maxValue - minValue, increment));
+    }
+
     private static long getMaxCacheSize(long range, long increment) {
         if (increment > 0L) {
             if (range < 0) {
@@ -356,8 +481,11 @@ public String getCreateSQL() {
             dataType.getSQL(builder.append(" AS "), DEFAULT_SQL_FLAGS);
         }
         builder.append(' ');
-        synchronized (this) {
-            getSequenceOptionsSQL(builder, writeWithMargin ? margin : baseValue);
+        lock();
+        try {
+            getSequenceOptionsSQL(builder, writeWithMargin ? margin : state.get().base);
+        } finally {
+            unlock();
         }
         if (belongsToTable) {
             builder.append(" BELONGS_TO_TABLE");
@@ -371,8 +499,13 @@ public String getCreateSQL() {
      * @param builder the builder
      * @return the builder
      */
-    public synchronized StringBuilder getSequenceOptionsSQL(StringBuilder builder) {
-        return getSequenceOptionsSQL(builder, baseValue);
+    public StringBuilder getSequenceOptionsSQL(StringBuilder builder) {
+        lock();
+        try {
+            return getSequenceOptionsSQL(builder, state.get().base);
+        } finally {
+            unlock();
+        }
     }
 
     private StringBuilder getSequenceOptionsSQL(StringBuilder builder, long value) {
@@ -403,6 +536,9 @@ private StringBuilder getSequenceOptionsSQL(StringBuilder builder, long value) {
                 builder.append(" CACHE ").append(cacheSize);
             }
         }
+        if (sessionCacheSize > 1L) {
+            builder.append(" SESSION CACHE ").append(sessionCacheSize);
+        }
         return builder;
     }
 
@@ -414,31 +550,172 @@ private StringBuilder getSequenceOptionsSQL(StringBuilder builder, long value) {
      * @return the next value
      */
     public Value getNext(SessionLocal session) {
+        return ValueBigint.get(allocate(session, 1L, null)).castTo(dataType, session);
+    }
+
+    /**
+     * Get the next value for this sequence from a block of values reserved by
+     * the session. If the block is empty or stale, a new block with the
+     * session cache size is reserved.
+     *
+     * @param session the session
+     * @param block the block of the session
+     * @return the next value
+     */
+    public Value getNext(SessionLocal session, Block block) {
+        if (block.remaining == 0L || block.state.modificationCount != state.get().modificationCount) {
+            allocate(session, sessionCacheSize, block);
+        }
+        long result = block.next;
+        block.next = result + block.state.increment;
+        block.remaining--;
+        return ValueBigint.get(result).castTo(dataType, session);
+    }
+
+    /**
+     * Reserve at least the specified number of values for a session with one
+     * call, if the block of the session does not have enough values already.
+     * Unused values of the block are returned to the sequence, if possible.
+     *
+     * @param session the session
+     * @param block the block of the session
+     * @param count the number of values
+     */
+    public void reserve(SessionLocal session, Block block, long count) {
+        if (block.remaining >= count && block.state.modificationCount == state.get().modificationCount) {
+            return;
+        }
+        release(block);
+        allocate(session, Math.max(count, sessionCacheSize), block);
+    }
+
+    /**
+     * Return unused values of a block to the sequence, if no other values
+     * were returned by the sequence after them and the sequence was not
+     * modified, and clear the block.
+     *
+     * @param block the block
+     */
+    public void release(Block block) {
+        if (block.remaining > 0L) {
+            block.remaining = 0L;
+            State s = block.state;
+            // fails if the state was replaced, even if the base value was
+            // changed back to the end of the block in the meantime
+            state.compareAndSet(s, s.withBase(block.next));
+        }
+    }
+
+    /**
+     * Allocate values.
+     *
+     * @param session the session
+     * @param count the number of values to allocate
+     * @param block the block to fill, or {@code null} to allocate only one
+     *            value
+     * @return the first allocated value
+     */
+    private long allocate(SessionLocal session, long count, Block block) {
+        State oldState, newState;
+        long increment, result, newBase;
+        // lock-free path, the values up to the margin were already written
+        do {
+            oldState = state.get();
+            increment = oldState.increment;
+            if (count > 1L && count > Long.MAX_VALUE / Math.abs(increment)) {
+                count = 1L;
+            }
+            result = oldState.base;
+            newBase = result + increment * count;
+            if (closed || (increment > 0 ? newBase > margin || newBase < result
+                    : newBase < margin || newBase > result)) {
+                return allocateWithFlush(session, count, block);
+            }
+            newState = oldState.withBase(newBase);
+        } while (!state.compareAndSet(oldState, newState));
+        if (increment > 0 ? newBase > margin : newBase < margin) {
+            // the margin was lowered concurrently by a flush without margin,
+            // the allocated values need to be written before they are used
+            flushAllocated(session, increment, newBase);
+        }
+        if (block != null) {
+            block.next = result;
+            block.remaining = count;
+            block.state = newState;
+        }
+        return result;
+    }
+
+    private long allocateWithFlush(SessionLocal session, long count, Block block) {
         long result;
-        boolean needsFlush;
-        synchronized (this) {
+        boolean needsFlush = false;
+        lock();
+        try {
+            if (closed) {
+                throw DbException.get(ErrorCode.DATABASE_IS_CLOSED);
+            }
             if (cycle == Cycle.EXHAUSTED) {
                 throw DbException.get(ErrorCode.SEQUENCE_EXHAUSTED, getName());
             }
-            result = baseValue;
-            long newBase = result + increment;
-            needsFlush = increment > 0 ? increment(result, newBase) : decrement(result, newBase);
+            State oldState, newState;
+            long newBase;
+            do {
+                oldState = state.get();
+                result = oldState.base;
+                long oldMargin = margin;
+                Cycle oldCycle = cycle;
+                newBase = result + increment * count;
+                if (increment > 0 ? newBase > maxValue || newBase < result
+                        : newBase < minValue || newBase > result) {
+                    // values near the end of the sequence are returned one by one
+                    count = 1L;
+                    newBase = result + increment;
+                }
+                newBase = increment > 0 ? increment(result, newBase) : decrement(result, newBase);
+                needsFlush |= margin != oldMargin || cycle != oldCycle;
+                newState = oldState.withBase(newBase);
+            } while (!state.compareAndSet(oldState, newState));
+            if (block != null) {
+                block.next = result;
+                block.remaining = count;
+                block.state = newState;
+            }
+        } finally {
+            unlock();
         }
         if (needsFlush) {
             flush(session);
         }
-        return ValueBigint.get(result).castTo(dataType, session);
+        return result;
     }
 
-    private boolean increment(long oldBase, long newBase) {
-        boolean needsFlush = false;
+    private void flushAllocated(SessionLocal session, long increment, long newBase) {
+        boolean needsFlush;
+        lock();
+        try {
+            if (closed) {
+                // the final value might not include the allocated values
+                throw DbException.get(ErrorCode.DATABASE_IS_CLOSED);
+            }
+            needsFlush = increment > 0 ? newBase > margin : newBase < margin;
+            if (needsFlush) {
+                margin = newBase;
+            }
+        } finally {
+            unlock();
+        }
+        if (needsFlush) {
+            flush(session);
+        }
+    }
+
+    private long increment(long oldBase, long newBase) {
         /*
          * If old base is not negative and new base is negative there is an
          * overflow.
          */
         if (newBase > maxValue || (~oldBase & newBase) < 0) {
             newBase = minValue;
-            needsFlush = true;
             if (cycle == Cycle.CYCLE) {
                 margin = newBase + increment * (cacheSize - 1);
             } else {
@@ -455,21 +732,17 @@ private boolean increment(long oldBase, long newBase) {
                 newMargin = newBase;
             }
             margin = newMargin;
-            needsFlush = true;
         }
-        baseValue = newBase;
-        return needsFlush;
+        return newBase;
     }
 
-    private boolean decrement(long oldBase, long newBase) {
-        boolean needsFlush = false;
+    private long decrement(long oldBase, long newBase) {
         /*
          * If old base is negative and new base is not negative there is an
          * overflow.
          */
         if (newBase < minValue || (oldBase & ~newBase) < 0) {
             newBase = maxValue;
-            needsFlush = true;
             if (cycle == Cycle.CYCLE) {
                 margin = newBase + increment * (cacheSize - 1);
             } else {
@@ -486,20 +759,35 @@ private boolean decrement(long oldBase, long newBase) {
                 newMargin = newBase;
             }
             margin = newMargin;
-            needsFlush = true;
         }
-        baseValue = newBase;
-        return needsFlush;
+        return newBase;
     }
 
     /**
      * Flush the current value to disk.
      */
     public void flushWithoutMargin() {
-        if (margin != baseValue) {
-            margin = baseValue;
-            flush(null);
+        flushWithoutMargin(false);
+    }
+
+    private void flushWithoutMargin(boolean close) {
+        lock();
+        try {
+            // the lock-free path checks the closed flag, and then checks
+            // the margin again after the base value is changed
+            closed |= close;
+            long base = state.get().base;
+            if (margin == base) {
+                return;
+            }
+            // values up to the old margin may be returned concurrently
+            do {
+                margin = base;
+            } while ((base = state.get().base) != margin);
+        } finally {
+            unlock();
         }
+        flush(null);
     }
 
     /**
@@ -551,7 +839,7 @@ private void flushInternal(SessionLocal session) {
      * Flush the current value to disk and close this object.
      */
     public void close() {
-        flushWithoutMargin();
+        flushWithoutMargin(true);
     }
 
     @Override
@@ -565,13 +853,17 @@ public void removeChildrenAndResources(SessionLocal session) {
         invalidate();
     }
 
-    public synchronized long getBaseValue() {
-        // Use synchronized because baseValue is not volatile
-        return baseValue;
+    public long getBaseValue() {
+        return state.get().base;
     }
 
-    public synchronized long getCurrentValue() {
-        return baseValue - increment;
+    public long getCurrentValue() {
+        lock();
+        try {
+            return state.get().base - increment;
+        } finally {
+            unlock();
+        }
     }
 
     public void setBelongsToTable(boolean b) {
@@ -582,4 +874,8 @@ public long getCacheSize() {
         return cacheSize;
     }
 
+    public long getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
 }
@@ -394,10 +394,12 @@ public void setRowId(boolean rowId) {
      * @return the new or converted value
      */
     Value validateConvertUpdateSequence(SessionLocal session, Value value, Row row) {
+        boolean generated = false;
         check: {
             if (value == null) {
                 if (sequence != null) {
                     value = session.getNextValueFor(sequence, null);
+                    generated = true;
                     break check;
                 }
                 value = getDefaultOrGenerated(session, row);
@@ -417,7 +419,7 @@ Value validateConvertUpdateSequence(SessionLocal session, Value value, Row row)
         if (domain != null) {
             domain.checkConstraints(session, value);
         }
-        if (sequence != null && session.getMode().updateSequenceOnManualIdentityInsertion) {
+        if (sequence != null && !generated && session.getMode().updateSequenceOnManualIdentityInsertion) {
             updateSequenceIfRequired(session, value.getLong());
         }
         return value;
@@ -455,11 +457,14 @@ private DbException getDataConversionError(Value value, DbException cause) {
     }
 
     private void updateSequenceIfRequired(SessionLocal session, long value) {
+        // unused values reserved by this session go back to the sequence first
+        session.releaseSequenceValues(sequence);
         /*
          * Synchronization is necessary due to possible race with concurrent
          * sessions
          */
-        synchronized (sequence) {
+        sequence.lock();
+        try {
             if (sequence.getCycle() == Sequence.Cycle.EXHAUSTED) {
                 return;
             }
@@ -473,13 +478,15 @@ private void updateSequenceIfRequired(SessionLocal session, long value) {
                 return;
             }
             try {
-                sequence.modify(value + inc, null, null, null, null, null, null);
+                sequence.modify(value + inc, null, null, null, null, null, null, null);
             } catch (DbException ex) {
                 if (ex.getErrorCode() == ErrorCode.SEQUENCE_ATTRIBUTES_INVALID_7) {
                     return;
                 }
                 throw ex;
             }
+        } finally {
+            sequence.unlock();
         }
         sequence.flush(session);
     }
@@ -753,6 +753,9 @@ public InformationSchemaTable(Schema schema, int id, int type) {
                     column("TABLE_NAME"), //
                     column("SESSION_ID", TypeInfo.TYPE_INTEGER), //
                     column("LOCK_TYPE"), //
+                    column("LOCK_MODE"), //
+                    column("GRANTED", TypeInfo.TYPE_BOOLEAN), //
+                    column("WAIT_DURATION", TypeInfo.TYPE_DOUBLE), //
             };
             break;
         case QUERY_STATISTICS:
@@ -2547,19 +2550,39 @@ private void locks(SessionLocal session, ArrayList<Row> rows) {
 
     private void locks(SessionLocal session, ArrayList<Row> rows, SessionLocal sessionWithLocks) {
         for (Table table : sessionWithLocks.getLocks()) {
-            add(session, rows,
-                    // TABLE_SCHEMA
-                    table.getSchema().getName(),
-                    // TABLE_NAME
-                    table.getName(),
-                    // SESSION_ID
-                    ValueInteger.get(sessionWithLocks.getId()),
-                    // LOCK_TYPE
-                    table.isLockedExclusivelyBy(sessionWithLocks) ? "WRITE" : "READ"
-            );
+            int lockType = table.getLockType(sessionWithLocks);
+            if (lockType < 0) {
+                continue;
+            }
+            locks(session, rows, sessionWithLocks, table, lockType, true, table.getLockWaitNanos(sessionWithLocks));
+        }
+        Table table = sessionWithLocks.getWaitForLock();
+        if (table != null) {
+            locks(session, rows, sessionWithLocks, table, sessionWithLocks.getWaitForLockType(), false,
+                    sessionWithLocks.getWaitForLockNanos());
         }
     }
 
+    private void locks(SessionLocal session, ArrayList<Row> rows, SessionLocal sessionWithLocks, Table table,
+            int lockType, boolean granted, long waitNanos) {
+        add(session, rows,
+                // TABLE_SCHEMA
+                table.getSchema().getName(),
+                // TABLE_NAME
+                table.getName(),
+                // SESSION_ID
+                ValueInteger.get(sessionWithLocks.getId()),
+                // LOCK_TYPE
+                lockType == Table.EXCLUSIVE_LOCK ? "WRITE" : "READ",
+                // LOCK_MODE
+                Table.getLockModeName(lockType),
+                // GRANTED
+                ValueBoolean.get(granted),
+                // WAIT_DURATION
+                ValueDouble.get(waitNanos / 1_000_000d)
+        );
+    }
+
     private void queryStatistics(SessionLocal session, ArrayList<Row> rows) {
         QueryStatisticsData control = database.getQueryStatisticsData();
         if (control != null) {
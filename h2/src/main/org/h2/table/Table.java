@@ -24,6 +24,7 @@
 import org.h2.engine.DbObject;
 import org.h2.engine.Right;
 import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
@@ -62,20 +63,26 @@ public abstract class Table extends SchemaObject {
     public static final int TYPE_MEMORY = 1;
 
     /**
-     * Read lock.
+     * Read lock (intention shared, IS).
      */
     public static final int READ_LOCK = 0;
 
     /**
-     * Write lock.
+     * Write lock (intention exclusive, IX).
      */
     public static final int WRITE_LOCK = 1;
 
     /**
-     * Exclusive lock.
+     * Exclusive lock (X).
      */
     public static final int EXCLUSIVE_LOCK = 2;
 
+    /**
+     * Share lock (S). It is compatible with read locks and other share locks,
+     * but not with write locks.
+     */
+    public static final int SHARE_LOCK = 3;
+
     /**
      * The columns of this table.
      */
@@ -300,6 +307,20 @@ public Index getScanIndex(SessionLocal session, int[] masks,
         return getScanIndex(session);
     }
 
+    /**
+     * Get an index to scan the rows of this table as they were at a point in
+     * time (FOR SYSTEM_TIME AS OF).
+     *
+     * @param pointInTime the expression, which returns the version of the
+     *            store or the timestamp
+     * @param version whether the expression returns a version of the store
+     * @return the index
+     * @throws DbException if the table does not support it
+     */
+    public Index getHistoryIndex(Expression pointInTime, boolean version) {
+        throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF " + getTraceSQL());
+    }
+
     /**
      * Get all indexes for this table.
      *
@@ -515,6 +536,49 @@ public boolean isLockedExclusivelyBy(SessionLocal session) {
         return false;
     }
 
+    /**
+     * Get the type of the lock held by the session on this table. Read locks
+     * are not registered.
+     *
+     * @param session the session
+     * @return the lock type, or -1 if the session has no lock
+     */
+    public int getLockType(SessionLocal session) {
+        return isLockedExclusivelyBy(session) ? EXCLUSIVE_LOCK : -1;
+    }
+
+    /**
+     * Get the time the session waited for its lock on this table.
+     *
+     * @param session the session
+     * @return the wait time in nanoseconds
+     */
+    @SuppressWarnings("unused")
+    public long getLockWaitNanos(SessionLocal session) {
+        return 0L;
+    }
+
+    /**
+     * Get the name of the mode of a lock type in multi-granularity locking.
+     *
+     * @param lockType the lock type
+     * @return IS, IX, X, or S
+     */
+    public static String getLockModeName(int lockType) {
+        switch (lockType) {
+        case READ_LOCK:
+            return "IS";
+        case WRITE_LOCK:
+            return "IX";
+        case EXCLUSIVE_LOCK:
+            return "X";
+        case SHARE_LOCK:
+            return "S";
+        default:
+            throw DbException.getInternalError("lockType=" + lockType);
+        }
+    }
+
     /**
      * Update a list of rows in this table.
      *
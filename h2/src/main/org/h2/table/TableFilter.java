@@ -139,6 +139,21 @@ public class TableFilter implements ColumnResolver {
      */
     private LinkedHashMap<Column, String> derivedColumnMap;
 
+    /**
+     * The point in time (FOR SYSTEM_TIME AS OF), or null.
+     */
+    private Expression pointInTime;
+
+    /**
+     * Whether the point in time is a version of the store.
+     */
+    private boolean pointInTimeVersion;
+
+    /**
+     * The index, which reads the rows at the point in time, or null.
+     */
+    private Index historyIndex;
+
     /**
      * Create a new table filter object.
      *
@@ -208,6 +223,37 @@ public void lock(SessionLocal s) {
      */
     public PlanItem getBestPlanItem(SessionLocal s, TableFilter[] filters, int filter,
             AllColumnsForPlan allColumnsSet, boolean isSelectCommand) {
+        PlanItem item;
+        if (historyIndex != null) {
+            // old versions can only be scanned
+            item = new PlanItem();
+            item.setIndex(historyIndex);
+            item.cost = historyIndex.getCost(s, null, filters, filter, null, allColumnsSet, isSelectCommand);
+        } else {
+            item = getBestIndexPlanItem(s, filters, filter, allColumnsSet, isSelectCommand);
+        }
+        if (nestedJoin != null) {
+            setEvaluatable(true);
+            item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, filters, filter, allColumnsSet, isSelectCommand));
+            // TODO optimizer: calculate cost of a join: should use separate
+            // expected row number and lookup cost
+            item.cost += item.cost * item.getNestedJoinPlan().cost;
+        }
+        if (join != null) {
+            setEvaluatable(true);
+            do {
+                filter++;
+            } while (filters[filter] != join);
+            item.setJoinPlan(join.getBestPlanItem(s, filters, filter, allColumnsSet, isSelectCommand));
+            // TODO optimizer: calculate cost of a join: should use separate
+            // expected row number and lookup cost
+            item.cost += item.cost * item.getJoinPlan().cost;
+        }
+        return item;
+    }
+
+    private PlanItem getBestIndexPlanItem(SessionLocal s, TableFilter[] filters, int filter,
+            AllColumnsForPlan allColumnsSet, boolean isSelectCommand) {
         PlanItem item1 = null;
         SortOrder sortOrder = null;
         if (select != null) {
@@ -256,24 +302,6 @@ public PlanItem getBestPlanItem(SessionLocal s, TableFilter[] filters, int filte
         if (item1 != null && item1.cost < item.cost) {
             item = item1;
         }
-
-        if (nestedJoin != null) {
-            setEvaluatable(true);
-            item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, filters, filter, allColumnsSet, isSelectCommand));
-            // TODO optimizer: calculate cost of a join: should use separate
-            // expected row number and lookup cost
-            item.cost += item.cost * item.getNestedJoinPlan().cost;
-        }
-        if (join != null) {
-            setEvaluatable(true);
-            do {
-                filter++;
-            } while (filters[filter] != join);
-            item.setJoinPlan(join.getBestPlanItem(s, filters, filter, allColumnsSet, isSelectCommand));
-            // TODO optimizer: calculate cost of a join: should use separate
-            // expected row number and lookup cost
-            item.cost += item.cost * item.getJoinPlan().cost;
-        }
         return item;
     }
 
@@ -311,7 +339,7 @@ public void setPlanItem(PlanItem item) {
      */
     private void setScanIndexes() {
         if (index == null) {
-            setIndex(table.getScanIndex(session), false);
+            setIndex(historyIndex != null ? historyIndex : table.getScanIndex(session), false);
         }
         if (join != null) {
             join.setScanIndexes();
@@ -794,6 +822,10 @@ public StringBuilder getPlanSQL(StringBuilder builder, boolean isJoin, int sqlFl
         if (table instanceof TableView && ((TableView) table).isInvalid()) {
             throw DbException.get(ErrorCode.VIEW_IS_INVALID_2, table.getName(), "not compiled");
         }
+        if (pointInTime != null) {
+            builder.append(" FOR SYSTEM_TIME AS OF ").append(pointInTimeVersion ? "VERSION " : "TIMESTAMP ");
+            pointInTime.getUnenclosedSQL(builder, sqlFlags);
+        }
         if (alias != null) {
             builder.append(' ');
             ParserUtil.quoteIdentifier(builder, alias, sqlFlags);
@@ -1261,6 +1293,29 @@ public IndexHints getIndexHints() {
         return indexHints;
     }
 
+    /**
+     * Read the rows of the table as they were at the given point in time (FOR
+     * SYSTEM_TIME AS OF).
+     *
+     * @param pointInTime the expression, which returns the version of the
+     *            store or the timestamp
+     * @param version whether the expression returns a version of the store
+     */
+    public void setPointInTime(Expression pointInTime, boolean version) {
+        historyIndex = table.getHistoryIndex(pointInTime, version);
+        this.pointInTime = pointInTime;
+        pointInTimeVersion = version;
+    }
+
+    /**
+     * Get the point in time (FOR SYSTEM_TIME AS OF).
+     *
+     * @return the expression, or null if the current rows are read
+     */
+    public Expression getPointInTime() {
+        return pointInTime;
+    }
+
     /**
      * Returns whether this is a table filter with implicit DUAL table for a
      * SELECT without a FROM clause.
@@ -24,6 +24,7 @@
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -764,6 +765,25 @@ public static ThreadPoolExecutor createSingleThreadExecutor(String threadName, B
                                         });
     }
 
+    /**
+     * Creates a thread pool with a fixed number of daemon threads.
+     *
+     * @param threadName the name of the threads
+     * @param threadCount the number of threads
+     * @return the new executor
+     */
+    public static ThreadPoolExecutor createFixedThreadPool(String threadName, int threadCount) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                                        new LinkedBlockingQueue<>(),
+                                        r -> {
+                                            Thread thread = new Thread(r,
+                                                    threadName + '-' + counter.incrementAndGet());
+                                            thread.setDaemon(true);
+                                            return thread;
+                                        });
+    }
+
     /**
      * Makes sure that all currently submitted tasks are processed before this method returns.
      * It is assumed that there will be no new submissions to this executor, once this method has started.
@@ -25,6 +25,7 @@ public class BenchB implements Bench, Runnable {
     private static final int ACCOUNTS = 100000;
 
     private int threadCount = 10;
+    private boolean virtualThreads;
 
     // master data
     private Database database;
@@ -221,7 +222,9 @@ public void runTest() throws Exception {
     private void processTransactions() throws Exception {
         Thread[] threads = new Thread[threadCount];
         for (int i = 0; i < threadCount; i++) {
-            threads[i] = new Thread(new BenchB(this, i), "BenchB-" + i);
+            BenchB client = new BenchB(this, i);
+            threads[i] = virtualThreads ? newVirtualThread(client) : new Thread(client);
+            threads[i].setName("BenchB-" + i);
         }
         for (Thread t : threads) {
             t.start();
@@ -239,4 +242,32 @@ public String getName() {
     public void setThreadCount(int threadCount) {
         this.threadCount = threadCount;
     }
+
+    /**
+     * Run each connection in its own virtual thread instead of a platform
+     * thread. This requires Java 21 or later.
+     *
+     * @param virtualThreads whether virtual threads should be used
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Create a virtual thread. Utils21 is not used here, because it silently
+     * creates a platform thread unless the multi-release classes are on the
+     * class path, and the test would not measure what it claims to.
+     *
+     * @param task the task
+     * @return the new (unstarted) thread
+     */
+    private static Thread newVirtualThread(Runnable task) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (Thread) Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class)
+                    .invoke(builder, task);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
+    }
 }
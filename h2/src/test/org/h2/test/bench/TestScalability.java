@@ -37,6 +37,11 @@ public class TestScalability implements Database.DatabaseTest {
      */
     boolean trace;
 
+    /**
+     * Whether each connection should run in its own virtual thread.
+     */
+    boolean virtualThreads;
+
     /**
      * This method is called when executing this sample application.
      *
@@ -80,6 +85,8 @@ private void test(String... args) throws Exception {
                 exit = true;
             } else if ("-size".equals(arg)) {
                 size = Integer.parseInt(args[++i]);
+            } else if ("-virtualThreads".equals(arg)) {
+                virtualThreads = true;
             }
         }
 
@@ -112,6 +119,7 @@ protected int getTransactionsPerClient(int size) {
                 return size * 8;
             }
         };
+        test.setVirtualThreads(virtualThreads);
         testAll(dbs, test, size);
 
         List<Measurement> results = dbs.get(0).results.get(0);
@@ -194,7 +202,7 @@ private void testAll(ArrayList<RunSequence> runSequences, BenchB test, int size)
 
                 for (int runNo = 0, threadCount = 1; runNo < runSequence.runCount; runNo++, threadCount <<= 1) {
                     System.out.println("Testing the performance of " + dbName
-                            + " (" + threadCount + " threads)");
+                            + " (" + threadCount + (virtualThreads ? " virtual" : "") + " threads)");
 
                     DatabaseMetaData meta = conn.getMetaData();
                     System.out.println(" " + meta.getDatabaseProductName() + " " +
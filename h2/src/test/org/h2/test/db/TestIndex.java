@@ -92,6 +92,8 @@ public void test() throws SQLException {
         reconnect();
         testConstraint();
         testLargeIndex();
+        testCreateIndexMerged();
+        testCreateIndexParallel();
         testMultiColumnIndex();
         // long time;
         // time = System.nanoTime();
@@ -569,6 +571,75 @@ private void testLargeIndex() throws SQLException {
         stat.execute("DROP TABLE IF EXISTS TEST");
     }
 
+    private void testCreateIndexMerged() throws SQLException {
+        if (config.memory) {
+            return;
+        }
+        // sorted blocks of rows are merged, and the index is built bottom-up
+        try (Connection c = getConnection("index;MAX_MEMORY_ROWS=1000")) {
+            Statement s = c.createStatement();
+            s.execute("DROP TABLE IF EXISTS TEST");
+            s.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, A INT, B INT, C INT) AS "
+                    + "SELECT X, MOD(X * 7919, 1000), CASE WHEN MOD(X, 10) = 0 THEN NULL ELSE X END, "
+                    + "MOD(X, 10) FROM SYSTEM_RANGE(1, 20000)");
+            s.execute("CREATE INDEX IDX_A ON TEST(A DESC, C)");
+            s.execute("CREATE UNIQUE INDEX IDX_B ON TEST(B)");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, s).execute("CREATE UNIQUE INDEX IDX_A_C ON TEST(A, C)");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, s)
+                    .execute("CREATE UNIQUE NULLS NOT DISTINCT INDEX IDX_B_2 ON TEST(B)");
+            ResultSet rs = s.executeQuery("SELECT COUNT(*), MIN(ID), MAX(ID) FROM TEST WHERE A = 123");
+            rs.next();
+            assertEquals(20, rs.getInt(1));
+            rs = s.executeQuery("SELECT COUNT(*) FROM TEST WHERE A BETWEEN 100 AND 199 AND C = 3");
+            rs.next();
+            assertEquals(200, rs.getInt(1));
+            rs = s.executeQuery("SELECT COUNT(*) FROM TEST WHERE B > 10000");
+            rs.next();
+            assertEquals(9000, rs.getInt(1));
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, s).execute("INSERT INTO TEST VALUES(20001, 1, 1, 1)");
+            s.execute("INSERT INTO TEST VALUES(20001, 1, 20001, 1)");
+            rs = s.executeQuery("SELECT COUNT(*) FROM TEST WHERE B >= 20000");
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+            s.execute("DROP TABLE TEST");
+        }
+    }
+
+    private void testCreateIndexParallel() throws SQLException {
+        if (config.memory) {
+            return;
+        }
+        // key ranges of the table are read and sorted by different threads
+        try (Connection c = getConnection("index;MAX_MEMORY_ROWS=1000;CREATE_INDEX_THREADS=4")) {
+            Statement s = c.createStatement();
+            s.execute("DROP TABLE IF EXISTS TEST");
+            s.execute("CREATE TABLE TEST(A INT, B INT) AS "
+                    + "SELECT MOD(X * 7919, 1000), X FROM SYSTEM_RANGE(1, 20000)");
+            s.execute("DELETE FROM TEST WHERE MOD(B, 7) = 0");
+            s.execute("CREATE INDEX IDX_A ON TEST(A)");
+            ResultSet rs = s.executeQuery("SELECT COUNT(*), SUM(B) FROM TEST WHERE A = 123");
+            rs.next();
+            assertEquals(18, rs.getInt(1));
+            rs = s.executeQuery("SELECT COUNT(*) FROM TEST WHERE A >= 0");
+            rs.next();
+            assertEquals(17143, rs.getInt(1));
+            // the first and the last row are read by different threads
+            s.execute("UPDATE TEST SET B = 1 WHERE B = 20000");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, s).execute("CREATE UNIQUE INDEX IDX_B ON TEST(B)");
+            s.execute("UPDATE TEST SET B = 20000 WHERE A = 0 AND B = 1");
+            s.execute("CREATE UNIQUE INDEX IDX_B ON TEST(B)");
+            rs = s.executeQuery("SELECT B FROM TEST WHERE B BETWEEN 19990 AND 20000 ORDER BY B");
+            for (int b = 19990; b <= 20000; b++) {
+                if (b % 7 != 0) {
+                    assertTrue(rs.next());
+                    assertEquals(b, rs.getInt(1));
+                }
+            }
+            assertFalse(rs.next());
+            s.execute("DROP TABLE TEST");
+        }
+    }
+
     private void testHashIndex(boolean primaryKey, boolean hash)
             throws SQLException {
         if (config.memory) {
@@ -55,6 +55,7 @@ public void test() throws Exception {
         testBackupWithYoungDeadChunks();
         testCase();
         testReconnectFast();
+        testSerializationThreads();
         test1_1();
         deleteDb("openClose");
     }
@@ -215,6 +216,29 @@ private void testReconnectFast() throws SQLException {
         conn.close();
     }
 
+    private void testSerializationThreads() throws SQLException {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("openClose");
+        try (Connection conn = getConnection("openClose;SERIALIZATION_THREADS=4")) {
+            Statement stat = conn.createStatement();
+            stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR) AS "
+                    + "SELECT X, 'Hello ' || X FROM SYSTEM_RANGE(1, 20000)");
+            stat.execute("CHECKPOINT");
+            ResultSet rs = stat.executeQuery("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS "
+                    + "WHERE SETTING_NAME = 'info.PARALLEL_SERIALIZED_PAGES'");
+            assertTrue(rs.next());
+            assertTrue(rs.getLong(1) > 0);
+        }
+        try (Connection conn = getConnection("openClose")) {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*), SUM(ID) FROM TEST");
+            rs.next();
+            assertEquals(20000, rs.getInt(1));
+            assertEquals(200010000L, rs.getLong(2));
+        }
+    }
+
     private void testCase() throws Exception {
         if (config.memory) {
             return;
@@ -55,6 +55,8 @@ public void test() throws Exception {
         testRowId();
         testSortIndex();
         testAutoAnalyze();
+        testAutoAnalyzeAsync();
+        testAnalyzeSample();
         testInAndBetween();
         testNestedIn();
         testConstantIn1();
@@ -380,6 +382,70 @@ private void testAutoAnalyze() throws SQLException {
         conn.close();
     }
 
+    private void testAutoAnalyzeAsync() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;ANALYZE_AUTO=100;ANALYZE_AUTO_DELAY=0");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int)");
+        stat.execute("insert into test select x, mod(x, 10) from system_range(1, 1000)");
+        // analyzed in the background thread
+        long start = System.nanoTime();
+        while (getSelectivity(stat, "ID") != 100) {
+            if (System.nanoTime() - start > 10_000_000_000L) {
+                fail("table was not analyzed");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(1, getSelectivity(stat, "V"));
+        stat.execute("drop table test");
+        // the background thread can not see local temporary tables,
+        // they are analyzed on commit
+        stat.execute("create local temporary table test(id int primary key, v int)");
+        stat.execute("insert into test select x, mod(x, 10) from system_range(1, 1000)");
+        assertEquals(100, getSelectivity(stat, "ID"));
+        assertEquals(1, getSelectivity(stat, "V"));
+        conn.close();
+
+        deleteDb("optimizations");
+        conn = getConnection("optimizations;ANALYZE_AUTO=100;ANALYZE_AUTO_ASYNC=FALSE");
+        stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int)");
+        stat.execute("insert into test select x, mod(x, 10) from system_range(1, 1000)");
+        // analyzed on commit
+        assertEquals(100, getSelectivity(stat, "ID"));
+        assertEquals(1, getSelectivity(stat, "V"));
+        conn.close();
+    }
+
+    private void testAnalyzeSample() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int)");
+        // the first half of the table has only one distinct value
+        stat.execute("insert into test select x, case when x <= 5000 then 0 else x end "
+                + "from system_range(1, 10000)");
+        stat.execute("analyze table test sample_size 200");
+        int v = getSelectivity(stat, "V");
+        // the rows are not the first ones
+        assertTrue(v > 20 && v < 80);
+        assertEquals(100, getSelectivity(stat, "ID"));
+        // the same sample
+        stat.execute("analyze table test sample_size 200");
+        assertEquals(v, getSelectivity(stat, "V"));
+        stat.execute("analyze table test sample_size 0");
+        assertEquals(50, getSelectivity(stat, "V"));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private static int getSelectivity(Statement stat, String column) throws SQLException {
+        ResultSet rs = stat.executeQuery("select selectivity from information_schema.columns "
+                + "where table_name = 'TEST' and column_name = '" + column + "'");
+        rs.next();
+        return rs.getInt(1);
+    }
+
     private void testInAndBetween() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
@@ -41,6 +41,8 @@ public void test() throws Exception {
         testAlterSequenceColumn();
         testAlterSequence();
         testCache();
+        testSessionCache();
+        testMultiRowInsert();
         testTwo();
         testMetaTable();
         testCreateWithMinValue();
@@ -403,6 +405,66 @@ private void testDefaultMinMax() throws SQLException {
         conn.close();
     }
 
+    private void testSessionCache() throws SQLException {
+        deleteDb("sequence");
+        Connection conn = getConnection("sequence");
+        Connection conn2 = getConnection("sequence");
+        Statement stat = conn.createStatement();
+        Statement stat2 = conn2.createStatement();
+        stat.execute("create sequence test_seq session cache 10");
+        assertSingleValue(stat, "values next value for test_seq", 1);
+        assertSingleValue(stat2, "values next value for test_seq", 11);
+        assertSingleValue(stat, "values next value for test_seq", 2);
+        assertSingleValue(stat2, "values next value for test_seq", 12);
+        ResultSet rs = stat.executeQuery("script nodata");
+        boolean found = false;
+        while (rs.next()) {
+            found |= rs.getString(1).contains("SESSION CACHE 10");
+        }
+        assertTrue(found);
+        // values of a closed session are returned if nothing was taken after them
+        conn2.close();
+        assertSingleValue(stat, "select base_value from information_schema.sequences"
+                + " where sequence_name = 'TEST_SEQ'", 13);
+        stat.execute("alter sequence test_seq no session cache");
+        assertSingleValue(stat, "values next value for test_seq", 13);
+        assertSingleValue(stat, "values next value for test_seq", 14);
+        stat.execute("alter sequence test_seq restart with 100 session cache 5");
+        assertSingleValue(stat, "values next value for test_seq", 100);
+        assertSingleValue(stat, "values next value for test_seq", 101);
+        stat.execute("alter sequence test_seq restart with 200");
+        assertSingleValue(stat, "values next value for test_seq", 200);
+        stat.execute("drop sequence test_seq");
+        conn.close();
+    }
+
+    private void testMultiRowInsert() throws SQLException {
+        deleteDb("sequence");
+        Connection conn = getConnection("sequence");
+        Connection conn2 = getConnection("sequence");
+        Statement stat = conn.createStatement();
+        Statement stat2 = conn2.createStatement();
+        stat.execute("create table test(id bigint generated by default as identity primary key, v int)");
+        stat.execute("insert into test(v) values 1, 2, 3");
+        stat2.execute("insert into test(v) values 4");
+        stat.execute("insert into test(v) values 5, 6");
+        ResultSet rs = stat.executeQuery("select id, v from test order by id");
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getLong(1));
+            assertEquals(i, rs.getInt(2));
+        }
+        assertFalse(rs.next());
+        // explicit values between generated ones
+        stat.execute("set mode MySQL");
+        stat.execute("insert into test(id, v) values (default, 7), (8, 8), (default, 9)");
+        assertSingleValue(stat, "select max(id) from test", 9);
+        stat.execute("set mode Regular");
+        stat.execute("drop table test");
+        conn2.close();
+        conn.close();
+    }
+
     private void testTwo() throws SQLException {
         deleteDb("sequence");
         Connection conn = getConnection("sequence");
@@ -13,6 +13,7 @@
 import org.h2.api.ErrorCode;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
+import org.h2.util.Task;
 
 /**
  * Tests the meta data tables information_schema.locks and sessions.
@@ -37,6 +38,7 @@ public boolean isEnabled() {
     public void test() throws Exception {
         testCancelStatement();
         testLocks();
+        testLockWait();
         testAbortStatement();
         deleteDb("sessionsLocks");
     }
@@ -61,6 +63,9 @@ private void testLocks() throws SQLException {
         assertEquals("TEST", rs.getString("TABLE_NAME"));
         rs.getString("SESSION_ID");
         assertEquals("READ", rs.getString("LOCK_TYPE"));
+        assertEquals("IX", rs.getString("LOCK_MODE"));
+        assertTrue(rs.getBoolean("GRANTED"));
+        assertEquals(0d, rs.getDouble("WAIT_DURATION"));
         assertFalse(rs.next());
         conn2.commit();
         conn2.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
@@ -76,6 +81,58 @@ private void testLocks() throws SQLException {
         conn2.close();
     }
 
+    private void testLockWait() throws Exception {
+        deleteDb("sessionsLocks");
+        Connection conn = getConnection("sessionsLocks");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        Connection conn2 = getConnection("sessionsLocks");
+        conn2.setAutoCommit(false);
+        Statement stat2 = conn2.createStatement();
+        stat2.execute("insert into test values(1, 'Hello')");
+        Connection conn3 = getConnection("sessionsLocks");
+        Statement stat3 = conn3.createStatement();
+        stat3.execute("set lock_timeout 10000");
+        Task task = new Task() {
+            @Override
+            public void call() throws SQLException {
+                stat3.execute("alter table test add column x int");
+            }
+        };
+        task.execute();
+        ResultSet rs;
+        // the exclusive lock waits for the write lock of the open transaction
+        while (true) {
+            rs = stat.executeQuery("select lock_type, lock_mode, wait_duration from information_schema.locks " +
+                    "where not granted");
+            if (rs.next()) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals("WRITE", rs.getString(1));
+        assertEquals("X", rs.getString(2));
+        assertTrue(rs.getDouble(3) >= 0d);
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select lock_mode from information_schema.locks where granted");
+        assertTrue(rs.next());
+        assertEquals("IX", rs.getString(1));
+        assertFalse(rs.next());
+        // write locks of other sessions queue behind the exclusive lock
+        stat.execute("set lock_timeout 100");
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat).execute("insert into test(id, name) values(2, 'World')");
+        stat.execute("set lock_timeout 10000");
+        conn2.commit();
+        task.get();
+        rs = stat.executeQuery("select count(*) from information_schema.locks");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("insert into test values(2, 'World', 1)");
+        conn3.close();
+        conn2.close();
+        conn.close();
+    }
+
     private void testCancelStatement() throws Exception {
         deleteDb("sessionsLocks");
         Connection conn = getConnection("sessionsLocks");
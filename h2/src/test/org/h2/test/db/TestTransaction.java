@@ -62,6 +62,8 @@ public void test() throws Exception {
         testIsolationLevelsCountAggregate();
         testIsolationLevelsCountAggregate2();
         testIsolationLevelsMetadata();
+        testPointInTime();
+        testSynchronousCommit();
         deleteDb("transaction");
     }
 
@@ -1361,4 +1363,108 @@ private void testIsolationLevelsMetadata() throws SQLException {
         deleteDb("transaction");
     }
 
+    private void testPointInTime() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("transaction");
+        try (Connection conn1 = getConnection("transaction;HISTORY_RETENTION_TIME=60000");
+                Connection conn2 = getConnection("transaction")) {
+            Statement stat1 = conn1.createStatement();
+            Statement stat2 = conn2.createStatement();
+            stat1.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, V INT)");
+            stat1.execute("INSERT INTO TEST VALUES (1, 10), (2, 20)");
+            // uncommitted changes are not visible in old versions
+            conn2.setAutoCommit(false);
+            stat2.execute("INSERT INTO TEST VALUES (4, 40)");
+            stat1.execute("CHECKPOINT");
+            long version = getCurrentVersion(stat1) - 1;
+            Thread.sleep(5);
+            stat1.execute("SET @T = CURRENT_TIMESTAMP(3)");
+            Thread.sleep(5);
+            conn2.commit();
+            stat1.execute("UPDATE TEST SET V = 11 WHERE ID = 1");
+            stat1.execute("DELETE FROM TEST WHERE ID = 2");
+            stat1.execute("INSERT INTO TEST VALUES (3, 30)");
+            stat1.execute("CHECKPOINT");
+
+            assertPointInTime(stat1, "SELECT ID, V FROM TEST ORDER BY ID", "1:11 3:30 4:40");
+            assertPointInTime(stat1, "SELECT ID, V FROM TEST FOR SYSTEM_TIME AS OF VERSION " + version
+                    + " ORDER BY ID", "1:10 2:20");
+            assertPointInTime(stat1, "SELECT ID, V FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP @T T ORDER BY ID",
+                    "1:10 2:20");
+            assertPointInTime(stat1, "SELECT ID, V FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP @T WHERE ID = 2",
+                    "2:20");
+            assertPointInTime(stat1, "SELECT COUNT(*), MAX(V) FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP @T",
+                    "2:20");
+            assertPointInTime(stat1, "SELECT ID, V FROM TEST WHERE ID IN"
+                    + " (SELECT ID FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP @T)", "1:11");
+            ResultSet rs = stat1.executeQuery("EXPLAIN SELECT * FROM TEST FOR SYSTEM_TIME AS OF VERSION 1");
+            rs.next();
+            assertContains(rs.getString(1), "FOR SYSTEM_TIME AS OF VERSION 1");
+
+            assertThrows(ErrorCode.INVALID_VALUE_2, stat1)
+                    .executeQuery("SELECT * FROM TEST FOR SYSTEM_TIME AS OF VERSION -1");
+            assertThrows(ErrorCode.INVALID_VALUE_2, stat1)
+                    .executeQuery("SELECT * FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP TIMESTAMP '2000-01-01 00:00:00'");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat1)
+                    .executeQuery("SELECT * FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP @T FOR UPDATE");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat1)
+                    .executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES FOR SYSTEM_TIME AS OF VERSION 1");
+        }
+    }
+
+    private void testSynchronousCommit() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction;WRITE_DELAY=0;ASYNC_COMMIT_DELAY=50");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY)");
+        stat.execute("SET SYNCHRONOUS_COMMIT OFF");
+        stat.execute("INSERT INTO TEST VALUES 1");
+        stat.execute("SET SYNCHRONOUS_COMMIT = ON");
+        conn.setAutoCommit(false);
+        stat.execute("SET LOCAL SYNCHRONOUS_COMMIT OFF");
+        stat.execute("INSERT INTO TEST VALUES 2");
+        conn.commit();
+        conn.setAutoCommit(true);
+        assertThrows(ErrorCode.SYNTAX_ERROR_2, stat).execute("SET LOCAL LOCK_TIMEOUT 10");
+        // the background writer stores the changes in time
+        Thread.sleep(500);
+        assertTrue(getStoreInfo(stat, "info.DURABLE_VERSION") >= 0);
+        stat.execute("SHUTDOWN IMMEDIATELY");
+        conn = getConnection("transaction");
+        stat = conn.createStatement();
+        ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM TEST");
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        conn.close();
+    }
+
+    private static long getCurrentVersion(Statement stat) throws SQLException {
+        return getStoreInfo(stat, "info.CURRENT_VERSION");
+    }
+
+    private static long getStoreInfo(Statement stat, String name) throws SQLException {
+        ResultSet rs = stat.executeQuery(
+                "SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = '" + name + "'");
+        rs.next();
+        return rs.getLong(1);
+    }
+
+    private void assertPointInTime(Statement stat, String sql, String expected) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        try (ResultSet rs = stat.executeQuery(sql)) {
+            while (rs.next()) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(rs.getInt(1)).append(':').append(rs.getInt(2));
+            }
+        }
+        assertEquals(expected, builder.toString());
+    }
+
 }
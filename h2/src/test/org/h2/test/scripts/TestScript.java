@@ -201,7 +201,7 @@ public void test() throws Exception {
         }
         for (String s : new String[] { "array-cat", "array-contains", "array-get",
                 "array-slice", "autocommit", "cancel-session", "casewhen",
-                "cardinality", "cast", "coalesce", "convert", "csvread", "csvwrite", "current_catalog",
+                "cardinality", "cast", "changes", "coalesce", "convert", "csvread", "csvwrite", "current_catalog",
                 "current_schema", "current_user", "currval", "data_type_sql",
                 "database-path", "db_object", "decode", "disk-space-used",
                 "file-read", "file-write", "greatest", "h2version", "identity",
@@ -0,0 +1,63 @@
+-- Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+-- and the EPL 1.0 (https://h2database.com/html/license.html).
+-- Initial Developer: H2 Group
+--
+
+CREATE TABLE TEST(ID INT PRIMARY KEY, V VARCHAR);
+> ok
+
+INSERT INTO TEST VALUES (1, 'a');
+> update count: 1
+
+CALL CHANGES_CHECKPOINT('TEST', 'C1', 1);
+>> 0
+
+SELECT COUNT(*) FROM CHANGES('TEST', 1);
+>> 0
+
+INSERT INTO TEST VALUES (2, 'b');
+> update count: 1
+
+UPDATE TEST SET V = 'c' WHERE ID = 1;
+> update count: 1
+
+DELETE FROM TEST WHERE ID = 2;
+> update count: 1
+
+SELECT POSITION, OPERATION, OLD_ID, OLD_V, NEW_ID, NEW_V FROM CHANGES('TEST', 1) ORDER BY POSITION;
+> POSITION OPERATION OLD_ID OLD_V NEW_ID NEW_V
+> -------- --------- ------ ----- ------ -----
+> 1        INSERT    null   null  2      b
+> 2        UPDATE    1      a     1      c
+> 3        DELETE    2      b     null   null
+> rows (ordered): 3
+
+SELECT POSITION FROM CHANGES('TEST', 2, 1);
+>> 2
+
+CALL CHANGES_CHECKPOINT('TEST', 'C1', 3);
+>> 3
+
+SELECT POSITION FROM CHANGES('TEST', 1);
+>> 3
+
+CALL CHANGES_CHECKPOINT('TEST', 'C1', NULL);
+>> 0
+
+SELECT COUNT(*) FROM CHANGES('TEST', 1);
+>> 0
+
+SELECT * FROM CHANGES('TEST');
+> exception INVALID_PARAMETER_COUNT_2
+
+DROP TABLE TEST;
+> ok
+
+CREATE LOCAL TEMPORARY TABLE TEST(ID INT);
+> ok
+
+SELECT * FROM CHANGES('TEST', 1);
+> exception FEATURE_NOT_SUPPORTED_1
+
+DROP TABLE TEST;
+> ok
@@ -28,12 +28,14 @@ public static void main(String... a) throws Exception {
 
     @Override
     public void test() throws Exception {
-        testConcurrent();
+        testConcurrent(false);
+        testConcurrent(true);
     }
 
-    private void testConcurrent() {
+    private void testConcurrent(boolean bufferedReads) {
         CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
         cc.maxMemory = 100;
+        cc.bufferedReads = bufferedReads;
         final CacheLongKeyLIRS<Integer> test = new CacheLongKeyLIRS<>(cc);
         int threadCount = 8;
         final CountDownLatch wait = new CountDownLatch(1);
@@ -88,7 +90,11 @@ public void call() throws Exception {
         for (int x : getCounts) {
             totalCount += x;
         }
-        trace("requests: " + totalCount);
+        trace("requests: " + totalCount + (bufferedReads ? " (buffered reads)" : ""));
+        // every read is counted, even if the access itself was dropped
+        assertEquals(totalCount, test.getHits() + test.getMisses());
+        assertTrue(test.size() <= 100);
+        assertEquals(test.size(), test.keySet().size());
     }
 
 }
@@ -45,6 +45,8 @@ private void testCache() {
         testLimitNonResident();
         testLimitMemory();
         testScanResistance();
+        testAdmissionFilter();
+        testBufferedReads();
         testRandomOperations();
     }
 
@@ -506,6 +508,109 @@ private <V> void verify(CacheLongKeyLIRS<V> cache, int expectedMemory, int value
         }
     }
 
+    private void testAdmissionFilter() {
+        CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
+        cc.maxMemory = 100 * (16 + MEMORY_OVERHEAD);
+        cc.segmentCount = 1;
+        cc.stackMoveDistance = 0;
+        cc.admissionFilter = true;
+        CacheLongKeyLIRS<Integer> test = new CacheLongKeyLIRS<>(cc);
+        // the working set is accessed a few times
+        for (int j = 0; j < 5; j++) {
+            for (int i = 0; i < 90; i++) {
+                if (test.get(i) == null) {
+                    test.put(i, i);
+                }
+            }
+        }
+        assertEquals(90, test.size());
+        assertEquals(0, test.getAdmissionRejects());
+        // a large scan of entries, which are only read once
+        for (int i = 1000; i < 10000; i++) {
+            if (test.get(i) == null) {
+                test.put(i, i);
+            }
+        }
+        assertTrue(test.getAdmissionRejects() > 8000);
+        for (int i = 0; i < 90; i++) {
+            assertEquals(i, test.peek(i).intValue());
+        }
+        assertTrue(test.size() <= 100);
+        // an entry, which is read repeatedly, is admitted eventually
+        for (int j = 0; j < 10 && test.peek(20000) == null; j++) {
+            if (test.get(20000) == null) {
+                test.put(20000, 20000);
+            }
+        }
+        assertNotNull(test.peek(20000));
+        assertEquals(4 * 90, test.getHits());
+    }
+
+    private void testBufferedReads() {
+        CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
+        cc.maxMemory = 10 * (16 + MEMORY_OVERHEAD);
+        cc.segmentCount = 1;
+        cc.stackMoveDistance = 0;
+        cc.bufferedReads = true;
+        CacheLongKeyLIRS<Integer> test = new CacheLongKeyLIRS<>(cc);
+        Random r = new Random(1);
+        HashMap<Integer, Integer> good = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = r.nextInt(20);
+            switch (r.nextInt(3)) {
+            case 0:
+                test.put(key, i);
+                good.put(key, i);
+                break;
+            case 1:
+                test.remove(key);
+                good.remove(key);
+                break;
+            default:
+                Integer x = test.get(key);
+                if (x != null) {
+                    assertEquals(good.get(key), x);
+                }
+            }
+            if ((i & 1023) == 0) {
+                // buffered reads are replayed first
+                verify(test, 0, null);
+            }
+        }
+        assertTrue(test.size() <= 10);
+        // hot entries stay, even if the reads are not applied immediately
+        test.clear();
+        for (int i = 0; i < 8; i++) {
+            test.put(i, i);
+            test.get(i);
+        }
+        for (int i = 100; i < 1000; i++) {
+            for (int j = 0; j < 8; j++) {
+                assertEquals(j, test.get(j).intValue());
+            }
+            test.put(i, i);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, test.peek(i).intValue());
+        }
+        // the statistics of buffered reads are kept when the segment is resized
+        cc.maxMemory = 1000 * (16 + MEMORY_OVERHEAD);
+        test = new CacheLongKeyLIRS<>(cc);
+        for (int i = 0; i < 4; i++) {
+            test.put(i, i);
+        }
+        for (int i = 0; i < 4; i++) {
+            test.get(i);
+            test.get(i + 1000);
+        }
+        for (int i = 4; i < 500; i++) {
+            test.put(i, i);
+        }
+        assertEquals(4, test.getHits());
+        assertEquals(4, test.getMisses());
+        verify(test, 0, null);
+    }
+
     private static <V> CacheLongKeyLIRS<V> createCache(int maxSize, int elements) {
         CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
         cc.maxMemory = maxSize + elements * MEMORY_OVERHEAD;
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2004-2025 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.cache.CacheLongKeyOffHeap;
+import org.h2.store.fs.FileUtils;
+import org.h2.test.TestBase;
+
+/**
+ * Tests the off-heap second level cache.
+ */
+public class TestCacheLongKeyOffHeap extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().testFromMain();
+    }
+
+    @Override
+    public void test() throws Exception {
+        testGetPutRemove();
+        testEviction();
+        testCompression();
+        testRandomOperations();
+        testStore();
+    }
+
+    private void testGetPutRemove() {
+        CacheLongKeyOffHeap cache = new CacheLongKeyOffHeap(64 * 1024, 1, false);
+        assertNull(cache.get(1, 0));
+        cache.put(1, 0, ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        ByteBuffer buff = cache.get(1, 0);
+        assertEquals(3, buff.remaining());
+        assertEquals(3, buff.get(2));
+        // a different tag does not match
+        assertNull(cache.get(1, 1));
+        cache.put(1, 1, ByteBuffer.wrap(new byte[] { 4 }));
+        assertNull(cache.get(1, 0));
+        assertEquals(1, cache.get(1, 1).remaining());
+        assertEquals(1, cache.size());
+        cache.remove(1);
+        assertNull(cache.get(1, 1));
+        assertEquals(0, cache.size());
+        cache.put(2, 0, ByteBuffer.wrap(new byte[10]));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getUsedMemory());
+        assertNull(cache.get(2, 0));
+        assertTrue(cache.getHits() > 0);
+        assertTrue(cache.getMisses() > 0);
+    }
+
+    private void testEviction() {
+        CacheLongKeyOffHeap cache = new CacheLongKeyOffHeap(64 * 1024, 1, false);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, 0, ByteBuffer.wrap(new byte[1000]));
+            assertTrue(cache.getUsedMemory() <= 64 * 1024);
+        }
+        // the oldest entries are evicted
+        assertNull(cache.get(0, 0));
+        assertNotNull(cache.get(999, 0));
+        assertTrue(cache.size() > 50);
+        // too large entries are not kept
+        cache.put(1000, 0, ByteBuffer.wrap(new byte[32 * 1024]));
+        assertNull(cache.get(1000, 0));
+    }
+
+    private void testCompression() {
+        CacheLongKeyOffHeap cache = new CacheLongKeyOffHeap(64 * 1024, 1, true);
+        byte[] data = new byte[4000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 10);
+        }
+        ByteBuffer buff = ByteBuffer.wrap(data);
+        buff.position(100);
+        cache.put(1, 0, buff);
+        assertEquals(100, buff.position());
+        assertTrue(cache.getUsedMemory() < 1000);
+        ByteBuffer result = cache.get(1, 0);
+        assertEquals(3900, result.remaining());
+        for (int i = 0; i < 3900; i++) {
+            assertEquals(data[i + 100], result.get(i));
+        }
+    }
+
+    private void testRandomOperations() {
+        Random r = new Random(1);
+        CacheLongKeyOffHeap cache = new CacheLongKeyOffHeap(1 << 20, 4, r.nextBoolean());
+        Map<Long, byte[]> map = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = r.nextInt(2000);
+            switch (r.nextInt(3)) {
+            case 0: {
+                byte[] data = new byte[r.nextInt(2000)];
+                r.nextBytes(data);
+                cache.remove(key);
+                cache.put(key, 0, ByteBuffer.wrap(data));
+                map.put(key, data);
+                break;
+            }
+            case 1:
+                cache.remove(key);
+                map.remove(key);
+                break;
+            default: {
+                ByteBuffer buff = cache.get(key, 0);
+                if (buff != null) {
+                    // entries may be evicted, but never changed
+                    assertTrue(Arrays.equals(map.get(key), buff.array()));
+                }
+            }
+            }
+        }
+        assertTrue(cache.getUsedMemory() <= 1 << 20);
+    }
+
+    private void testStore() {
+        String fileName = getBaseDir() + "/" + getTestName() + ".h3";
+        FileUtils.createDirectories(getBaseDir());
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 10000; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).
+                cacheSize(0).offHeapCacheSize(1).offHeapCacheCompress().open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int j = 0; j < 3; j++) {
+                for (int i = 0; i < 10000; i++) {
+                    assertEquals("Hello " + i, map.get(i));
+                }
+            }
+            long reads = s.getFileStore().getReadCount();
+            for (int i = 0; i < 10000; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+            // all pages are served by the off-heap cache
+            assertEquals(reads, s.getFileStore().getReadCount());
+            Map<String, String> info = new HashMap<>();
+            s.getFileStore().populateInfo(info::put);
+            assertTrue(Integer.parseInt(info.get("info.CACHE_OFF_HEAP_HIT_RATIO")) > 50);
+        }
+        FileUtils.delete(fileName);
+    }
+}
@@ -8,7 +8,10 @@
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -25,13 +28,17 @@
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.OffHeapStore;
+import org.h2.mvstore.Page;
 import org.h2.mvstore.RandomAccessStore;
+import org.h2.mvstore.SingleFileStore;
 import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.LongDataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.mvstore.type.StringDataType;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
+import org.h2.util.Task;
 import org.h2.util.Utils;
 
 /**
@@ -61,9 +68,16 @@ public void test() throws Exception {
         testEntrySet();
         testCompressEmptyPage();
         testCompressed();
+        testParallelSerialization();
         testFileFormatExample();
         testMaxChunkLength();
         testCacheInfo();
+        testReadAhead();
+        testGetAll();
+        testMappedReads();
+        testBulkLoader();
+        testLongKeys();
+        testRightEdgeSplit();
         testRollback();
         testVersionsToKeep();
         testVersionsToKeep2();
@@ -72,6 +86,7 @@ public void test() throws Exception {
         testOffHeapStorage();
         testNewerWriteVersion();
         testCompactFully();
+        testAutoCompactRate();
         testBackgroundExceptionListener();
         testOldVersion();
         testAtomicOperations();
@@ -264,6 +279,107 @@ private void testCompressed() {
         }
     }
 
+    private void testParallelSerialization() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        for (int level = 0; level <= 2; level++) {
+            Map<String, String> parallel = writeParallelSerialization(fileName, level, 4);
+            Map<String, String> serial = writeParallelSerialization(fileName, level, 1);
+            // the chunks, and the positions of all pages, are the same
+            assertEquals(serial.keySet().toString(), parallel.keySet().toString());
+            for (Map.Entry<String, String> e : serial.entrySet()) {
+                assertEquals(e.getKey(), e.getValue(), parallel.get(e.getKey()));
+            }
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private Map<String, String> writeParallelSerialization(String fileName, int level, int threads) {
+        FileUtils.delete(fileName);
+        MVStore.Builder builder = new MVStore.Builder().fileName(fileName).autoCommitDisabled()
+                .serializationThreads(threads);
+        if (level == 1) {
+            builder.compress();
+        } else if (level == 2) {
+            builder.compressHigh();
+        }
+        try (MVStore s = builder.open()) {
+            for (int m = 0; m < 4; m++) {
+                MVMap<Integer, String> map = s.openMap("data" + m);
+                for (int i = 0; i < 5000; i++) {
+                    map.put(i, "Hello " + m + " " + i);
+                }
+            }
+            s.commit();
+            MVMap<Integer, String> map = s.openMap("data0");
+            for (int i = 0; i < 5000; i += 3) {
+                map.put(i, "Hi " + i);
+            }
+            s.commit();
+            Map<String, String> info = new HashMap<>();
+            s.getFileStore().populateInfo(info::put);
+            String pages = info.get("info.PARALLEL_SERIALIZED_PAGES");
+            if (threads > 1) {
+                // the leaves were serialized by the worker threads
+                assertTrue(Long.parseLong(pages) > 0);
+            } else {
+                assertNull(pages);
+            }
+        }
+        TreeMap<String, String> layout = new TreeMap<>();
+        try (MVStore s = new MVStore.Builder().fileName(fileName).readOnly().open()) {
+            for (int m = 0; m < 4; m++) {
+                MVMap<Integer, String> map = s.openMap("data" + m);
+                assertEquals(5000, map.size());
+                for (int i = 0; i < 5000; i++) {
+                    String expected = m == 0 && i % 3 == 0 ? "Hi " + i : "Hello " + m + " " + i;
+                    assertEquals(expected, map.get(i));
+                }
+            }
+            // the chunk header contains the time, so its length, and with it
+            // the offsets of all pages, may differ by a few bytes from run to run;
+            // offsets are therefore compared relative to the first known page of a chunk
+            Map<String, String> layoutMap = s.getLayoutMap();
+            Map<Integer, Integer> firstOffsets = new HashMap<>();
+            for (Map.Entry<String, String> e : layoutMap.entrySet()) {
+                String key = e.getKey();
+                String position = null;
+                if (key.startsWith(DataUtils.LAYOUT_CHUNK)) {
+                    position = DataUtils.parseMap(e.getValue()).get("root");
+                } else if (key.startsWith(DataUtils.LAYOUT_ROOT)) {
+                    position = e.getValue();
+                }
+                if (position != null) {
+                    long pos = DataUtils.parseHexLong(position);
+                    firstOffsets.merge(DataUtils.getPageChunkId(pos), DataUtils.getPageOffset(pos), Math::min);
+                }
+            }
+            for (Map.Entry<String, String> e : layoutMap.entrySet()) {
+                String key = e.getKey();
+                if (key.startsWith(DataUtils.LAYOUT_CHUNK)) {
+                    HashMap<String, String> chunk = DataUtils.parseMap(e.getValue());
+                    int chunkId = DataUtils.parseHexInt(chunk.get("chunk"));
+                    chunk.remove("time");
+                    chunk.put("root", relativePagePosition(firstOffsets, chunk.get("root")));
+                    chunk.put("toc", Long.toString(
+                            DataUtils.parseHexLong(chunk.get("toc")) - firstOffsets.get(chunkId)));
+                    layout.put(key, new TreeMap<>(chunk).toString());
+                } else if (key.startsWith(DataUtils.LAYOUT_ROOT)) {
+                    layout.put(key, relativePagePosition(firstOffsets, e.getValue()));
+                } else {
+                    layout.put(key, e.getValue());
+                }
+            }
+        }
+        return layout;
+    }
+
+    private static String relativePagePosition(Map<Integer, Integer> firstOffsets, String position) {
+        long pos = DataUtils.parseHexLong(position);
+        int chunkId = DataUtils.getPageChunkId(pos);
+        return chunkId + ":" + (DataUtils.getPageOffset(pos) - firstOffsets.get(chunkId)) + ":"
+                + DataUtils.getPageMaxLength(pos) + ":" + DataUtils.getPageType(pos);
+    }
+
     private void testFileFormatExample() {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
@@ -321,6 +437,394 @@ private void testCacheInfo() {
         }
     }
 
+    private void testReadAhead() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).pageSplitSize(1024).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20000; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).readAhead(16).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            int i = 0;
+            for (Cursor<Integer, String> c = map.cursor(null); c.hasNext(); i++) {
+                assertEquals(i, c.next().intValue());
+                assertEquals("Hello " + i, c.getValue());
+            }
+            assertEquals(20000, i);
+            i = 15000;
+            for (Cursor<Integer, String> c = map.cursor(15000, 1000, true); c.hasNext(); i--) {
+                assertEquals(i, c.next().intValue());
+            }
+            assertEquals(999, i);
+            Map<String, String> info = new HashMap<>();
+            s.getFileStore().populateInfo(info::put);
+            assertTrue(Long.parseLong(info.get("info.READ_AHEAD_PAGES")) > 0);
+        }
+        // pages read ahead together need fewer read operations
+        long[] reads = new long[2];
+        for (int readAhead = 0; readAhead <= 1; readAhead++) {
+            try (MVStore s = new MVStore.Builder().fileName(fileName).readAhead(readAhead * 64).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                long count = 0;
+                for (Cursor<Integer, String> c = map.cursor(null); c.hasNext(); c.next()) {
+                    count++;
+                }
+                assertEquals(20000, count);
+                reads[readAhead] = s.getFileStore().getReadCount();
+            }
+        }
+        assertTrue(reads[1] + " < " + reads[0], reads[1] < reads[0]);
+    }
+
+    private void testBulkLoader() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        Random r = new Random(1);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int key = 0;
+            for (int load = 0; load < 10; load++) {
+                if (load % 3 == 1) {
+                    // regular updates in between
+                    for (int i = 0; i < 100; i++) {
+                        map.put(++key, "put " + key);
+                        expected.put(key, "put " + key);
+                    }
+                }
+                int count = r.nextInt(load % 2 == 0 ? 10 : 50000);
+                try (MVMap.BulkLoader<Integer, String> loader = map.bulkLoader(10 + r.nextInt(91))) {
+                    for (int i = 0; i < count; i++) {
+                        key += 1 + r.nextInt(3);
+                        loader.add(key, "Hello " + key);
+                        expected.put(key, "Hello " + key);
+                    }
+                }
+                if (r.nextBoolean()) {
+                    s.commit();
+                }
+                assertEquals(expected.size(), map.size());
+                assertBalanced(map.getRootPage());
+            }
+            Iterator<Entry<Integer, String>> it = expected.entrySet().iterator();
+            for (Cursor<Integer, String> c = map.cursor(null); c.hasNext();) {
+                Entry<Integer, String> e = it.next();
+                assertEquals(e.getKey(), c.next());
+                assertEquals(e.getValue(), c.getValue());
+            }
+            assertFalse(it.hasNext());
+            int last = key;
+            assertThrows(IllegalArgumentException.class, () -> {
+                try (MVMap.BulkLoader<Integer, String> loader = map.bulkLoader(100)) {
+                    loader.add(last, "x");
+                }
+            });
+            assertThrows(IllegalArgumentException.class, () -> {
+                MVMap.BulkLoader<Integer, String> loader = map.bulkLoader(100);
+                loader.add(last + 2, "x");
+                loader.add(last + 1, "x");
+            });
+            assertEquals(expected.size(), map.size());
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            assertBalanced(map.getRootPage());
+            for (Cursor<Integer, String> c = map.cursor(null); c.hasNext();) {
+                int k = c.next();
+                assertTrue(c.getValue().endsWith(" " + k));
+            }
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private int assertBalanced(Page<Integer, String> p) {
+        if (p.isLeaf()) {
+            return 1;
+        }
+        assertTrue(p.getKeyCount() > 0);
+        int depth = -1;
+        long count = 0;
+        for (int i = 0; i <= p.getKeyCount(); i++) {
+            Page<Integer, String> child = p.getChildPage(i);
+            int d = assertBalanced(child);
+            if (depth >= 0) {
+                assertEquals(depth, d);
+            }
+            depth = d;
+            count += child.getTotalCount();
+        }
+        assertEquals(p.getTotalCount(), count);
+        return depth + 1;
+    }
+
+    private void testLongKeys() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        Random r = new Random(1);
+        TreeMap<Long, String> expected = new TreeMap<>();
+        MVMap.Builder<Long, String> builder = new MVMap.Builder<Long, String>()
+                .keyType(LongDataType.INSTANCE).valueType(StringDataType.INSTANCE);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).pageSplitSize(1000).open()) {
+            // pages of this map keep the keys in long arrays
+            MVMap<Long, String> map = s.openMap("data", builder);
+            map.put(Long.MIN_VALUE, "min");
+            expected.put(Long.MIN_VALUE, "min");
+            for (int i = 0; i < 20_000; i++) {
+                long key = r.nextInt(10_000) - 5_000;
+                if (r.nextInt(4) == 0) {
+                    assertEquals(expected.remove(key), map.remove(key));
+                } else {
+                    assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                }
+                if (i % 5_000 == 0) {
+                    s.commit();
+                }
+            }
+            try (MVMap.BulkLoader<Long, String> loader = map.bulkLoader(100)) {
+                for (long key = 1L << 40; key < (1L << 40) + 5_000; key++) {
+                    loader.add(key, "bulk");
+                    expected.put(key, "bulk");
+                }
+            }
+            map.put(Long.MAX_VALUE, "max");
+            expected.put(Long.MAX_VALUE, "max");
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.higherKey(-5_000L), map.higherKey(-5_000L));
+            assertEquals(expected.ceilingKey(-1L), map.ceilingKey(-1L));
+            assertEquals(expected.floorKey((1L << 40) - 1), map.floorKey((1L << 40) - 1));
+            Long k = expected.ceilingKey(123L);
+            assertEquals(expected.headMap(k).size(), map.getKeyIndex(k));
+            assertEquals(Long.valueOf(Long.MIN_VALUE), map.getKey(0));
+            MVMap<Long, String> append = s.openMap("append", new MVMap.Builder<Long, String>()
+                    .keyType(LongDataType.INSTANCE).valueType(StringDataType.INSTANCE).singleWriter());
+            for (long key = 0; key < 10_000; key++) {
+                append.append(key, "a" + key);
+            }
+            assertEquals("a9999", append.get(9_999L));
+            assertEquals(10_000, append.size());
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Long, String> map = s.openMap("data", builder);
+            Iterator<Entry<Long, String>> it = expected.entrySet().iterator();
+            for (Cursor<Long, String> c = map.cursor(null); c.hasNext();) {
+                Entry<Long, String> e = it.next();
+                assertEquals(e.getKey(), c.next());
+                assertEquals(e.getValue(), c.getValue());
+            }
+            assertFalse(it.hasNext());
+            // the bounds are compared as primitive values
+            it = expected.subMap(-100L, true, 100L, true).entrySet().iterator();
+            for (Cursor<Long, String> c = map.cursor(-100L, 100L, false); c.hasNext();) {
+                assertEquals(it.next().getKey(), c.next());
+            }
+            assertFalse(it.hasNext());
+            it = expected.descendingMap().subMap(100L, true, -100L, true).entrySet().iterator();
+            for (Cursor<Long, String> c = map.cursor(100L, -100L, true); c.hasNext();) {
+                assertEquals(it.next().getKey(), c.next());
+            }
+            assertFalse(it.hasNext());
+            assertEquals("max", map.get(Long.MAX_VALUE));
+            assertNull(map.get(-5_001L));
+            MVMap<Long, String> append = s.openMap("append", builder);
+            assertEquals(Long.valueOf(9_999), append.lastKey());
+            assertEquals("a1234", append.get(1_234L));
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testRightEdgeSplit() {
+        try (MVStore s = new MVStore.Builder().keysPerPage(16).pageSplitSize(1 << 20).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            MVMap<Integer, String> dense = s.openMap("dense",
+                    new MVMap.Builder<Integer, String>().rightEdgeSplit());
+            assertFalse(map.isRightEdgeSplit());
+            assertTrue(dense.isRightEdgeSplit());
+            for (int i = 0; i < 1_600; i++) {
+                map.put(i, "v" + i);
+                dense.put(i, "v" + i);
+            }
+            assertBalanced(dense.getRootPage());
+            // half full pages when split in the middle, full pages otherwise
+            int leaves = countLeaves(map.getRootPage());
+            int denseLeaves = countLeaves(dense.getRootPage());
+            assertTrue(leaves + " " + denseLeaves, denseLeaves <= 1_600 / 15 + 1);
+            assertTrue(leaves + " " + denseLeaves, leaves > 1_600 / 10);
+            // keys that are not appended still split in the middle
+            Random r = new Random(1);
+            TreeMap<Integer, String> expected = new TreeMap<>(dense);
+            for (int i = 0; i < 2_000; i++) {
+                int key = r.nextInt(4_000) - 1_000;
+                assertEquals(expected.put(key, "r" + i), dense.put(key, "r" + i));
+            }
+            assertBalanced(dense.getRootPage());
+            assertEquals(expected.size(), dense.size());
+            Iterator<Entry<Integer, String>> it = expected.entrySet().iterator();
+            for (Cursor<Integer, String> c = dense.cursor(null); c.hasNext();) {
+                Entry<Integer, String> e = it.next();
+                assertEquals(e.getKey(), c.next());
+                assertEquals(e.getValue(), c.getValue());
+            }
+            assertFalse(it.hasNext());
+        }
+    }
+
+    private static int countLeaves(Page<?, ?> p) {
+        if (p.isLeaf()) {
+            return 1;
+        }
+        int count = 0;
+        for (int i = 0; i <= p.getKeyCount(); i++) {
+            count += countLeaves(p.getChildPage(i));
+        }
+        return count;
+    }
+
+    private void testMappedReads() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).mappedReads().cacheSize(0).open()) {
+            s.setRetentionTime(0);
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int round = 1; round <= 3; round++) {
+                // the file grows, and is mapped again
+                for (int i = 0; i < 5000 * round; i++) {
+                    map.put(i, "Hello " + i + " " + round);
+                }
+                s.commit();
+                for (int i = 0; i < 5000 * round; i++) {
+                    assertEquals("Hello " + i + " " + round, map.get(i));
+                }
+            }
+            Map<String, String> info = new HashMap<>();
+            s.getFileStore().populateInfo(info::put);
+            assertTrue(Long.parseLong(info.get("info.MAPPED_SIZE")) > 0);
+            // outside of a page read, the data is copied out of the mapped segments
+            long end = s.getFileStore().size();
+            ByteBuffer buff = ((SingleFileStore) s.getFileStore()).readFully(null, end - 4096, 4096);
+            assertFalse(buff.isDirect());
+            assertEquals(4096, buff.remaining());
+            // the file is truncated, and mapped again
+            map.clear();
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "Hello " + i);
+            }
+            s.commit();
+            s.compactFile(1000);
+            buff.get(4095);
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).mappedReads().open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            assertEquals(100, map.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+        }
+        // pages are decoded from the mapped segments while chunks are moved
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).mappedReads().cacheSize(0).
+                autoCommitDisabled().open()) {
+            s.setRetentionTime(0);
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20000; i++) {
+                map.put(i, "Hello " + i);
+            }
+            s.commit();
+            Task[] tasks = new Task[4];
+            for (int t = 0; t < tasks.length; t++) {
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        Random r = new Random();
+                        while (!stop) {
+                            int i = r.nextInt(20000);
+                            assertTrue(map.get(i).startsWith("Hello " + i));
+                        }
+                    }
+                }.execute();
+            }
+            for (int round = 0; round < 30; round++) {
+                for (int i = 0; i < 20000; i += 2) {
+                    map.put(i, "Hello " + i + " " + round);
+                }
+                s.commit();
+                s.compactFile(200);
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+        }
+        // encrypted files are not mapped
+        FileUtils.delete(fileName);
+        char[] password = "007".toCharArray();
+        try (MVStore s = new MVStore.Builder().fileName(fileName).encryptionKey(password.clone()).
+                mappedReads().cacheSize(0).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            map.put(1, "Hello");
+            s.commit();
+            assertEquals("Hello", map.get(1));
+            Map<String, String> info = new HashMap<>();
+            s.getFileStore().populateInfo(info::put);
+            assertNull(info.get("info.MAPPED_SIZE"));
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).encryptionKey(password.clone()).
+                mappedReads().open()) {
+            assertEquals("Hello", s.<Integer, String>openMap("data").get(1));
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testGetAll() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).pageSplitSize(1024).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20000; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        Random r = new Random(1);
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            keys.add(r.nextInt(21000));
+        }
+        // child pages of the same page are read together
+        long[] reads = new long[2];
+        for (int bulk = 0; bulk <= 1; bulk++) {
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                List<String> values;
+                if (bulk == 0) {
+                    values = new ArrayList<>();
+                    for (Integer key : keys) {
+                        values.add(map.get(key));
+                    }
+                } else {
+                    values = map.getAll(keys);
+                }
+                assertEquals(keys.size(), values.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    int key = keys.get(i);
+                    assertEquals(key < 20000 ? "Hello " + key : null, values.get(i));
+                }
+                reads[bulk] = s.getFileStore().getReadCount();
+            }
+        }
+        assertTrue(reads[1] + " < " + reads[0], reads[1] < reads[0]);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            assertEquals(0, map.getAll(new ArrayList<>()).size());
+            s.removeMap(map);
+            s.commit();
+            assertFalse(s.hasMap("data"));
+        }
+    }
+
     private void testVersionsToKeep() {
         try (MVStore s = new MVStore.Builder().open()) {
             assertEquals(5, s.getVersionsToKeep());
@@ -497,6 +1001,49 @@ private void testCompactFully() {
         assertTrue("old: " + sizeOld + " new: " + sizeNew, sizeNew < sizeOld);
     }
 
+    private void testAutoCompactRate() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                autoCompactRate(1).
+                autoCompactCpuLoad(100).
+                open()) {
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int j = 0; j < 50; j++) {
+                for (int i = 0; i < 200; i++) {
+                    m.put(i * 50 + j, "Hello World " + j);
+                }
+                s.commit();
+            }
+            for (int i = 0; i < 10_000; i += 2) {
+                m.remove(i);
+            }
+            s.commit();
+            FileStore<?> fileStore = s.getFileStore();
+            int fillRate = fileStore.getChunksFillRate();
+            s.setAutoCommitDelay(10);
+            Map<String, String> info = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                sleep(10);
+                fileStore.populateInfo(info::put);
+                if (Long.parseLong(info.get("info.COMPACT_REWRITTEN_PAGES")) > 0) {
+                    break;
+                }
+            }
+            assertTrue(Long.parseLong(info.get("info.COMPACT_CYCLES")) > 0);
+            assertTrue(Long.parseLong(info.get("info.COMPACT_REWRITTEN_PAGES")) > 0);
+            assertTrue(Long.parseLong(info.get("info.COMPACT_REWRITTEN_BYTES")) > 0);
+            s.commit();
+            assertTrue(fileStore.getChunksFillRate() + " <= " + fillRate, fileStore.getChunksFillRate() > fillRate);
+            assertEquals(5000, m.size());
+            assertEquals("Hello World 1", m.get(51));
+        }
+    }
+
     private static void compactMoveChunks(MVStore s) {
         FileStore fileStore = s.getFileStore();
         if (fileStore instanceof RandomAccessStore) {
@@ -10,11 +10,13 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -25,6 +27,9 @@
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.tx.Transaction;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.tx.TransactionStore;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.FileUtils;
@@ -52,6 +57,8 @@ public void test() throws Exception {
         testInterruptReopenAsync();
         testInterruptReopenRetryNIO();
         testConcurrentSaveCompact();
+        testConcurrentGroupCommit();
+        testConcurrentWriteCombining();
         testConcurrentDataType();
         testConcurrentAutoCommitAndChange();
         testConcurrentReplaceAndRead();
@@ -147,6 +154,167 @@ public void call() {
         }
     }
 
+    private void testConcurrentGroupCommit() throws Exception {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        MVStore.Builder builder = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                groupCommitBatchSize(4).
+                groupCommitMaxWait(500);
+        int threadCount = 4;
+        int count = 200;
+        try (MVStore s = builder.open()) {
+            assertEquals(4, s.getGroupCommitBatchSize());
+            assertEquals(500, s.getGroupCommitMaxWait());
+            MVMap<Integer, Integer> map = s.openMap("data");
+            Task[] tasks = new Task[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int offset = t * count;
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        for (int i = 0; i < count; i++) {
+                            map.put(offset + i, i);
+                            s.groupCommit();
+                        }
+                    }
+                }.execute();
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            Map<String, String> info = new HashMap<>();
+            s.populateInfo(info::put);
+            assertEquals(threadCount * count, Long.parseLong(info.get("info.GROUP_COMMIT_MEMBERS")));
+            long groups = Long.parseLong(info.get("info.GROUP_COMMIT_COUNT"));
+            assertTrue(groups > 0 && groups <= threadCount * count);
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, Integer> map = s.openMap("data");
+            assertEquals(threadCount * count, map.size());
+        }
+    }
+
+    private void testConcurrentWriteCombining() throws InterruptedException {
+        String fileName = "memFS:" + getTestName();
+        FileUtils.delete(fileName);
+        int threadCount = 8;
+        int count = 2_000;
+        try (MVStore s = new MVStore.Builder().fileName(fileName).writeCombining().open()) {
+            MVMap<Integer, Integer> map = s.openMap("data");
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            AtomicInteger sequence = new AtomicInteger();
+            Task[] tasks = new Task[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int thread = t;
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        for (int i = 0; i < count; i++) {
+                            // all threads insert at the right edge of the map
+                            map.put(sequence.incrementAndGet(), thread);
+                            map.merge(0, 1, Integer::sum);
+                            if (i % 10 == 0) {
+                                Transaction tx = ts.begin();
+                                TransactionMap<Integer, Integer> txMap = tx.openMap("tx");
+                                txMap.put(thread * count + i, i);
+                                tx.commit();
+                            }
+                        }
+                    }
+                }.execute();
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            assertEquals(threadCount * count, map.get(0).intValue());
+            assertEquals(threadCount * count + 1, map.size());
+            assertEquals(threadCount * count, map.lastKey().intValue());
+            Transaction tx = ts.begin();
+            assertEquals(threadCount * count / 10, tx.openMap("tx").size());
+            tx.commit();
+            ts.close();
+        }
+        FileUtils.delete(fileName);
+        // transactional inserts into the same map, as into the primary index
+        // of a table, are combined while the root of the map is locked
+        try (MVStore s = new MVStore.Builder().fileName(fileName).writeCombining().open()) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction tx = ts.begin();
+            tx.openMap("rows");
+            tx.commit();
+            MVMap<Object, Object> map = s.openMap("rows");
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch unlock = new CountDownLatch(1);
+            // this decision maker can not be combined, and holds the lock
+            MVMap.DecisionMaker<Object> blocker = new MVMap.DecisionMaker<Object>() {
+                private int attempt;
+
+                @Override
+                public MVMap.Decision decide(Object existingValue, Object providedValue) {
+                    if (++attempt <= 3) {
+                        // the fourth attempt locks the root
+                        return MVMap.Decision.REPEAT;
+                    }
+                    locked.countDown();
+                    try {
+                        unlock.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return MVMap.Decision.ABORT;
+                }
+            };
+            Task lockTask = new Task() {
+                @Override
+                public void call() {
+                    map.operate(0L, null, blocker);
+                }
+            }.execute();
+            locked.await();
+            AtomicReferenceArray<Thread> threads = new AtomicReferenceArray<>(2);
+            Task[] tasks = new Task[threads.length()];
+            for (int t = 0; t < tasks.length; t++) {
+                int thread = t;
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        threads.set(thread, Thread.currentThread());
+                        Transaction tx = ts.begin();
+                        TransactionMap<Long, Integer> txMap = tx.openMap("rows");
+                        assertNull(txMap.putIfAbsent(thread + 1L, thread));
+                        tx.commit();
+                    }
+                }.execute();
+            }
+            // wait until both inserts are queued
+            for (int t = 0; t < threads.length(); t++) {
+                while (threads.get(t) == null || threads.get(t).getState() != Thread.State.TIMED_WAITING) {
+                    Thread.sleep(1);
+                }
+            }
+            unlock.countDown();
+            lockTask.get();
+            for (Task t : tasks) {
+                t.get();
+            }
+            Map<String, String> info = new HashMap<>();
+            s.populateInfo(info::put);
+            assertTrue(Long.parseLong(info.get("info.COMBINED_OPERATIONS")) > 0);
+            tx = ts.begin();
+            TransactionMap<Long, Integer> txMap = tx.openMap("rows");
+            assertEquals(2, txMap.sizeAsLong());
+            assertEquals(0, txMap.get(1L).intValue());
+            assertEquals(1, txMap.get(2L).intValue());
+            tx.commit();
+            ts.close();
+        }
+        FileUtils.delete(fileName);
+    }
+
     private void testConcurrentDataType() throws InterruptedException {
         final ObjectDataType type = new ObjectDataType();
         final Object[] data = new Object[]{
@@ -18,9 +18,13 @@
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.engine.Constants;
+import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.tx.CommittedChange;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionMap;
 import org.h2.mvstore.tx.TransactionStore;
@@ -32,6 +36,7 @@
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
 import org.h2.util.Task;
+import org.h2.value.VersionedValue;
 
 /**
  * Test concurrent transactions.
@@ -55,11 +60,17 @@ public void test() throws Exception {
         testConcurrentAdd();
         testCountWithOpenTransactions();
         testConcurrentUpdate();
+        testAtomicCommitVisibility();
         testRepeatedChange();
         testTransactionAge();
         testGetModifiedMaps();
         testKeyIterator();
         testTwoPhaseCommit();
+        testRedoLog();
+        testChangeCapture();
+        testConcurrentChangeCapture();
+        testAsyncCommit();
+        testUndoLogBuffer();
         testSavepoint();
         testConcurrentTransactionsReadCommitted();
         testSingleConnection();
@@ -67,6 +78,7 @@ public void test() throws Exception {
         testStoreMultiThreadedReads();
         testCommitAfterMapRemoval();
         testDeadLock();
+        testRowLockQueue();
     }
 
     private void testHCLFKey() {
@@ -286,6 +298,69 @@ private void testConcurrentUpdate() {
         }
     }
 
+    private void testAtomicCommitVisibility() throws Exception {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            int keyCount = 10;
+            Transaction tx0 = ts.begin();
+            TransactionMap<Integer, Integer> map0 = tx0.openMap("data");
+            for (int i = 0; i < keyCount; i++) {
+                map0.put(i, 100);
+            }
+            tx0.commit();
+            // open transactions with uncommitted changes, which are never
+            // visible to the others
+            ArrayList<Transaction> idle = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Transaction tx = ts.begin();
+                tx.openMap("data").put(keyCount + i, 1);
+                idle.add(tx);
+            }
+            Task[] tasks = new Task[2];
+            for (int i = 0; i < tasks.length; i++) {
+                Random r = new Random(i);
+                tasks[i] = new Task() {
+                    @Override
+                    public void call() {
+                        while (!stop) {
+                            Transaction tx = ts.begin();
+                            TransactionMap<Integer, Integer> map = tx.openMap("data");
+                            int from = r.nextInt(keyCount), to = r.nextInt(keyCount);
+                            try {
+                                map.put(from, map.lock(from) - 1);
+                                map.put(to, map.lock(to) + 1);
+                                tx.commit();
+                            } catch (MVStoreException e) {
+                                tx.rollback();
+                            }
+                        }
+                    }
+                };
+                tasks[i].execute();
+            }
+            long end = System.nanoTime() + 1_000_000_000L;
+            int count = 0;
+            while (System.nanoTime() < end || count < 100) {
+                Transaction tx = ts.begin(null, 0, 0, IsolationLevel.READ_COMMITTED);
+                TransactionMap<Integer, Integer> map = tx.openMap("data");
+                int sum = 0;
+                for (Iterator<Entry<Integer, Integer>> it = map.entryIterator(null, null); it.hasNext();) {
+                    sum += it.next().getValue();
+                }
+                assertEquals(keyCount * 100, sum);
+                tx.commit();
+                count++;
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            for (Transaction tx : idle) {
+                tx.rollback();
+            }
+        }
+    }
+
     private void testRepeatedChange() {
         try (MVStore s = MVStore.open(null)) {
             TransactionStore ts = new TransactionStore(s);
@@ -536,6 +611,325 @@ private void testTwoPhaseCommit() {
         FileUtils.delete(fileName);
     }
 
+    private void testRedoLog() {
+        String fileName = getBaseDir() + "/testRedoLog.h3";
+        String redoLogName = fileName + Constants.SUFFIX_MV_STORE_REDO_FILE;
+        FileUtils.delete(fileName);
+        FileUtils.delete(redoLogName);
+
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        Transaction tx = ts.begin();
+        tx.openMap("test").put(0, "created");
+        // new map requires a checkpoint
+        tx.commit();
+        long version = s.getFileStore().lastChunkVersion();
+
+        tx = ts.begin();
+        TransactionMap<Integer, String> m = tx.openMap("test");
+        for (int i = 1; i <= 100; i++) {
+            m.put(i, "Hello " + i);
+        }
+        tx.commit();
+        assertEquals(version, s.getFileStore().lastChunkVersion());
+        assertTrue(FileUtils.size(redoLogName) > 0);
+
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(1, "Changed");
+        m.remove(2);
+        // uncommitted change of a transaction, which commits later
+        s.commit();
+        tx.commit();
+
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(3, "Uncommitted");
+        m.put(101, "Uncommitted");
+        s.commit();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.remove(4);
+        // simulate a crash
+        s.closeImmediately();
+
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        ts = new TransactionStore(s);
+        ts.init();
+        ts.endLeftoverTransactions();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        assertEquals("created", m.get(0));
+        assertEquals("Changed", m.get(1));
+        assertNull(m.get(2));
+        assertEquals("Hello 3", m.get(3));
+        assertEquals("Hello 4", m.get(4));
+        assertEquals("Hello 100", m.get(100));
+        assertNull(m.get(101));
+        assertEquals(100, m.sizeAsLong());
+        tx.commit();
+        ts.close();
+        s.close();
+        assertEquals(0, FileUtils.size(redoLogName));
+
+        FileUtils.delete(fileName);
+        FileUtils.delete(redoLogName);
+    }
+
+    private void testChangeCapture() {
+        String fileName = getBaseDir() + "/testChangeCapture.h3";
+        FileUtils.delete(fileName);
+        MVStore s = MVStore.open(fileName);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, String> m = tx.openMap("test");
+        m.put(1, "a");
+        tx.commit();
+        // changes before the first consumer are not captured
+        ts.setChangeCheckpoint(m.map, "c1", 1);
+        assertEquals(0, ts.getLastChangePosition(m.map));
+
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(1, "b");
+        m.put(2, "x");
+        m.put(2, "y");
+        m.put(3, "z");
+        m.remove(3);
+        tx.commit();
+        int txId = tx.getId();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.remove(1);
+        tx.commit();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(5, "u");
+        tx.rollback();
+        assertEquals("1:1:a:b 2:2:null:y 3:1:b:null", getChanges(ts, m.map, 1));
+        Iterator<Entry<Long, CommittedChange<Integer, String>>> it = ts.changeIterator(m.map, 1);
+        assertEquals(txId, it.next().getValue().transactionId);
+        assertEquals(3, ts.getLastChangePosition(m.map));
+        s.close();
+
+        s = MVStore.open(fileName);
+        ts = new TransactionStore(s);
+        ts.init();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(2, "w");
+        tx.commit();
+        assertEquals("1:1:a:b 2:2:null:y 3:1:b:null 4:2:y:w", getChanges(ts, m.map, 1));
+        ts.setChangeCheckpoint(m.map, "c2", 2);
+        ts.setChangeCheckpoint(m.map, "c1", 4);
+        assertEquals("2:2:null:y 3:1:b:null 4:2:y:w", getChanges(ts, m.map, 1));
+        assertEquals(2, ts.getChangeCheckpoints(m.map).size());
+        ts.removeChangeConsumer(m.map, "c2");
+        ts.setChangeCheckpoint(m.map, "c1", 5);
+        // the last change is kept
+        assertEquals("4:2:y:w", getChanges(ts, m.map, 1));
+        ts.removeChangeConsumer(m.map, "c1");
+        assertEquals("", getChanges(ts, m.map, 1));
+        assertEquals(0, ts.getLastChangePosition(m.map));
+        for (String mapName : s.getMapNames()) {
+            assertFalse(mapName, mapName.startsWith("change"));
+        }
+        ts.close();
+        s.close();
+    }
+
+    private void testConcurrentChangeCapture() throws Exception {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction tx = ts.begin();
+            TransactionMap<Integer, String> m = tx.openMap("test");
+            tx.commit();
+            ts.setChangeCheckpoint(m.map, "c", 1);
+            int threadCount = 4, count = 200;
+            Task[] tasks = new Task[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int thread = t;
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        for (int i = 0; i < count; i++) {
+                            Transaction tx = ts.begin(null, 10_000, 0, IsolationLevel.READ_COMMITTED);
+                            TransactionMap<Integer, String> map = tx.openMap("test");
+                            for (int j = 1; j <= 3; j++) {
+                                map.put(thread * 10 + j, thread + "-" + i);
+                            }
+                            // all transactions overwrite the same entry
+                            map.put(0, thread + "-" + i);
+                            tx.commit();
+                        }
+                    }
+                }.execute();
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            // the changes of each transaction have contiguous positions, and
+            // the changes of the same entry follow the commit order
+            long expected = 1;
+            String last = null;
+            int inBlock = 0, txId = -1;
+            for (Iterator<Entry<Long, CommittedChange<Integer, String>>> it = ts.changeIterator(m.map, 1);
+                    it.hasNext();) {
+                Entry<Long, CommittedChange<Integer, String>> e = it.next();
+                CommittedChange<Integer, String> change = e.getValue();
+                assertEquals(expected++, e.getKey().longValue());
+                if (inBlock++ % 4 == 0) {
+                    txId = change.transactionId;
+                } else {
+                    assertEquals(txId, change.transactionId);
+                }
+                if (change.key == 0) {
+                    assertEquals(last, change.oldValue);
+                    last = change.newValue;
+                }
+            }
+            assertEquals(threadCount * count * 4 + 1, expected);
+            ts.close();
+        }
+    }
+
+    private static String getChanges(TransactionStore ts, MVMap<Integer, VersionedValue<String>> map, long from) {
+        StringBuilder builder = new StringBuilder();
+        for (Iterator<Entry<Long, CommittedChange<Integer, String>>> it = ts.changeIterator(map, from);
+                it.hasNext();) {
+            Entry<Long, CommittedChange<Integer, String>> e = it.next();
+            CommittedChange<Integer, String> change = e.getValue();
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(e.getKey()).append(':').append(change.key).append(':').append(change.oldValue)
+                    .append(':').append(change.newValue);
+        }
+        return builder.toString();
+    }
+
+    private void testAsyncCommit() throws InterruptedException {
+        String fileName = getBaseDir() + "/testAsyncCommit.h3";
+        FileUtils.delete(fileName);
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().asyncCommitDelay(50).open();
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        Transaction tx = ts.begin();
+        tx.openMap("test").put(0, "created");
+        tx.commit();
+        long version = tx.getCommitVersion();
+        assertTrue(version >= 0);
+        // without group commit the file is not synced
+        assertTrue(ts.getDurableVersion() < version);
+        ts.makeDurable(version);
+        assertTrue(ts.getDurableVersion() >= version);
+
+        tx = ts.begin();
+        assertTrue(tx.isSynchronousCommit());
+        tx.setSynchronousCommit(false);
+        TransactionMap<Integer, String> m = tx.openMap("test");
+        for (int i = 1; i <= 10; i++) {
+            m.put(i, "Hello " + i);
+        }
+        long chunkVersion = s.getFileStore().lastChunkVersion();
+        tx.commit();
+        version = tx.getCommitVersion();
+        assertTrue(version >= 0);
+        // the background writer stores the changes in time
+        for (int i = 0; i < 200 && ts.getDurableVersion() < version; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(ts.getDurableVersion() >= version);
+        assertTrue(s.getFileStore().lastChunkVersion() > chunkVersion);
+
+        tx = ts.begin();
+        tx.setSynchronousCommit(false);
+        tx.openMap("test").put(11, "Hello 11");
+        tx.commit();
+        ts.makeDurable(tx.getCommitVersion());
+        assertTrue(ts.getDurableVersion() >= tx.getCommitVersion());
+        // simulate a crash
+        s.closeImmediately();
+
+        s = MVStore.open(fileName);
+        ts = new TransactionStore(s);
+        ts.init();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        assertEquals(12, m.sizeAsLong());
+        assertEquals("Hello 10", m.get(10));
+        assertEquals("Hello 11", m.get(11));
+        tx.commit();
+        ts.close();
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
+    private void testUndoLogBuffer() {
+        String fileName = getBaseDir() + "/testUndoLogBuffer.h3";
+        FileUtils.delete(fileName);
+
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        ts.setUndoLogBufferSize(10);
+        Transaction tx = ts.begin();
+        MVMap<Object, Object> undoLog = s.openMap(TransactionStore.UNDO_LOG_NAME_PREFIX + '.' + tx.getId());
+        TransactionMap<Integer, String> m = tx.openMap("test");
+        for (int i = 0; i < 5; i++) {
+            m.put(i, "v" + i);
+        }
+        // the records of a short transaction are kept in memory
+        assertEquals(0, undoLog.size());
+        int count = 0;
+        for (Iterator<Change> it = tx.getChanges(0); it.hasNext(); it.next()) {
+            count++;
+        }
+        assertEquals(5, count);
+        long sp = tx.setSavepoint();
+        for (int i = 5; i < 20; i++) {
+            m.put(i, "v" + i);
+        }
+        assertEquals(11, undoLog.size());
+        tx.rollbackToSavepoint(sp);
+        assertEquals(5, undoLog.size());
+        assertEquals("v4", m.get(4));
+        assertNull(m.get(5));
+        assertEquals(5, m.sizeAsLong());
+        tx.commit();
+        assertEquals(0, undoLog.size());
+
+        tx = ts.begin();
+        m = tx.openMap("test");
+        m.put(0, "changed");
+        m.put(100, "new");
+        assertEquals(0, undoLog.size());
+        // the undo log is stored together with the uncommitted changes
+        s.commit();
+        assertEquals(2, undoLog.size());
+        m.put(1, "changed");
+        s.closeImmediately();
+
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        ts = new TransactionStore(s);
+        ts.init();
+        assertEquals(1, ts.getOpenTransactions().size());
+        ts.endLeftoverTransactions();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        assertEquals("v0", m.get(0));
+        assertEquals("v1", m.get(1));
+        assertNull(m.get(100));
+        assertEquals(5, m.sizeAsLong());
+        tx.commit();
+        s.close();
+
+        FileUtils.delete(fileName);
+    }
+
     private void testSavepoint() {
         try (MVStore s = MVStore.open(null)) {
             TransactionStore ts = new TransactionStore(s);
@@ -927,6 +1321,53 @@ private void testCommitAfterMapRemoval() {
         }
     }
 
+    private void testRowLockQueue() throws Exception {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s,
+                                    new MetaType<>(null, s.backgroundExceptionHandler), new ObjectDataType(), 10000);
+            ts.init();
+            Transaction owner = ts.begin((map, key, existingValue, restoredValue) -> {}, 10000, 100,
+                    IsolationLevel.READ_COMMITTED);
+            TransactionMap<Long,Long> m = owner.openMap("test", LongDataType.INSTANCE, LongDataType.INSTANCE);
+            m.put(1L, 1L);
+            int waiterCount = 5;
+            long[] seen = new long[waiterCount];
+            Task[] tasks = new Task[waiterCount];
+            for (int i = 0; i < waiterCount; i++) {
+                int index = i;
+                Transaction tx = ts.begin((map, key, existingValue, restoredValue) -> {}, 10000, index + 1,
+                        IsolationLevel.READ_COMMITTED);
+                tasks[i] = new Task() {
+                    @Override
+                    public void call() throws Exception {
+                        TransactionMap<Long, Long> map = tx.openMap("test", LongDataType.INSTANCE,
+                                LongDataType.INSTANCE);
+                        long value = map.lock(1L);
+                        seen[index] = value;
+                        map.put(1L, value + 1);
+                        tx.commit();
+                    }
+                }.execute();
+                // wait until this transaction is queued, before the next one
+                while (tx.getBlockerId() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            owner.commit();
+            for (Task task : tasks) {
+                task.get();
+            }
+            // the entry was handed over in the order the transactions came
+            for (int i = 0; i < waiterCount; i++) {
+                assertEquals(i + 1, seen[i]);
+            }
+            Transaction t = ts.begin();
+            m = t.openMap("test", LongDataType.INSTANCE, LongDataType.INSTANCE);
+            assertEquals(waiterCount + 1, (long) m.get(1L));
+            t.commit();
+        }
+    }
+
     private void testDeadLock() {
         int threadCount = 2;
         for (int i = 1; i < threadCount; i++) {